@@ -0,0 +1,132 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.layouts.GridLayout;
+
+/**
+ * Builds the networks used by the benchmarks. All networks are built with
+ * update events turned off, as they would be when run without a GUI, and
+ * with a fixed expected fan-in per neuron so that the cost of an update grows
+ * linearly with the number of neurons.
+ */
+final class BenchmarkNetworks {
+
+    /** Expected number of afferent synapses per neuron. */
+    static final int FAN_IN = 100;
+
+    /** Seed for the random inputs and activations of benchmark networks. */
+    static final long SEED = 42;
+
+    /** Not instantiable. */
+    private BenchmarkNetworks() {
+    }
+
+    /**
+     * @return an empty network which does not fire update events.
+     */
+    static Network newNetwork() {
+        Network net = new Network();
+        net.setFireUpdates(false);
+        return net;
+    }
+
+    /**
+     * @param numNeurons a number of neurons
+     * @return the connection density which gives neurons the expected fan-in
+     *         {@link #FAN_IN} in a recurrent network of that size.
+     */
+    static double density(final int numNeurons) {
+        return Math.min(1.0, (double) FAN_IN / numNeurons);
+    }
+
+    /**
+     * Adds loose neurons to a network and connects them recurrently with
+     * loose synapses.
+     *
+     * @param net the network to add to
+     * @param numNeurons the number of neurons to add
+     * @param rule the update rule of the neurons
+     * @return the new neurons
+     */
+    static List<Neuron> addLooseNetwork(final Network net,
+            final int numNeurons, final NeuronUpdateRule rule) {
+        List<Neuron> neurons = new ArrayList<Neuron>(numNeurons);
+        Random rand = new Random(SEED);
+        for (int i = 0; i < numNeurons; i++) {
+            Neuron n = new Neuron(net, rule.deepCopy());
+            n.forceSetActivation(rand.nextDouble());
+            net.addNeuron(n);
+            neurons.add(n);
+        }
+        for (Synapse s : Sparse.connectSparse(neurons, neurons,
+                density(numNeurons), false, false, true)) {
+            s.setStrength(rand.nextGaussian() / Math.sqrt(FAN_IN));
+            net.addSynapse(s);
+        }
+        return neurons;
+    }
+
+    /**
+     * Adds a neuron group laid out in a grid to a network.
+     *
+     * @param net the network to add to
+     * @param numNeurons the number of neurons in the group
+     * @param rule the update rule of the neurons
+     * @return the new group
+     */
+    static NeuronGroup addNeuronGroup(final Network net, final int numNeurons,
+            final NeuronUpdateRule rule) {
+        NeuronGroup ng = new NeuronGroup(net, numNeurons);
+        ng.setNeuronType(rule);
+        ng.setLayout(new GridLayout());
+        ng.applyLayout();
+        Random rand = new Random(SEED);
+        for (Neuron n : ng.getNeuronList()) {
+            n.forceSetActivation(rand.nextDouble());
+        }
+        net.addGroup(ng);
+        return ng;
+    }
+
+    /**
+     * @param numNeurons the number of neurons to drive
+     * @param scale the standard deviation of the inputs
+     * @return fixed random external inputs, one per neuron.
+     */
+    static double[] randomInputs(final int numNeurons, final double scale) {
+        double[] inputs = new double[numNeurons];
+        Random rand = new Random(SEED);
+        for (int i = 0; i < numNeurons; i++) {
+            inputs[i] = scale * rand.nextGaussian();
+        }
+        return inputs;
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.simbrain.network.connections.AllToAll;
+import org.simbrain.network.connections.ConnectNeurons;
+import org.simbrain.network.connections.Radial;
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.layouts.GridLayout;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+
+/**
+ * Measures building a recurrent synapse group with each of the main
+ * connection managers. Each invocation connects a fresh neuron group, so the
+ * measured time includes creating and adding the synapses but not building
+ * the neurons.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ConnectionBenchmark {
+
+    /** Number of neurons in the group. */
+    @Param({ "100", "500", "1000" })
+    private int size;
+
+    /** The connection manager to build the synapse group with. */
+    @Param({ "AllToAll", "Sparse", "Radial" })
+    private String connection;
+
+    /** The group to connect, rebuilt for each invocation. */
+    private NeuronGroup ng;
+
+    /**
+     * Builds a fresh, unconnected neuron group.
+     */
+    @Setup(Level.Invocation)
+    public void setUp() {
+        Network net = BenchmarkNetworks.newNetwork();
+        ng = BenchmarkNetworks.addNeuronGroup(net, size, new LinearRule());
+    }
+
+    /**
+     * @return the connection manager named by {@link #connection}.
+     */
+    private ConnectNeurons createConnection() {
+        switch (connection) {
+        case "AllToAll":
+            return new AllToAll(false);
+        case "Sparse":
+            return new Sparse(BenchmarkNetworks.density(size), false, false);
+        case "Radial":
+            // Choose the average connection distance which gives the same
+            // expected fan-in as the sparse connection (away from edges).
+            double lambda = GridLayout.DEFAULT_H_SPACING
+                    * Math.sqrt(BenchmarkNetworks.FAN_IN
+                            / (Math.PI * Radial.DEFAULT_DIST_CONST));
+            return new Radial(Radial.DEFAULT_DIST_CONST, lambda);
+        default:
+            throw new IllegalStateException("Unknown connection: "
+                    + connection);
+        }
+    }
+
+    /**
+     * Connects the group to itself.
+     *
+     * @return the new synapse group
+     */
+    @Benchmark
+    public SynapseGroup connect() {
+        return SynapseGroup.createSynapseGroup(ng, ng, createConnection());
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.update_actions.BufferedUpdate;
+import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.PriorityUpdate;
+
+/**
+ * Measures {@link Network#update()} of a recurrent network of loose sigmoidal
+ * neurons and synapses under each of the network update actions which update
+ * loose neurons. {@link ConcurrentBufferedUpdate} uses one thread per
+ * available processor; see {@link ParallelUpdateBenchmark} for the parallel
+ * update over a range of thread counts.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NetworkUpdateBenchmark {
+
+    /** Number of neurons in the network. */
+    @Param({ "100", "1000", "5000" })
+    private int size;
+
+    /** The update action to update the network with. */
+    @Param({ "Buffered", "Priority", "ConcurrentBuffered" })
+    private String updateAction;
+
+    /** The network being updated. */
+    private Network net;
+
+    /**
+     * Builds the network and installs the update action.
+     */
+    @Setup
+    public void setUp() {
+        net = BenchmarkNetworks.newNetwork();
+        BenchmarkNetworks.addLooseNetwork(net, size, new SigmoidalRule());
+        net.getUpdateManager().clear();
+        net.getUpdateManager().addAction(createAction());
+        // Let any lazily built state settle.
+        net.update();
+    }
+
+    /**
+     * @return the update action named by {@link #updateAction}.
+     */
+    private NetworkUpdateAction createAction() {
+        switch (updateAction) {
+        case "Buffered":
+            return new BufferedUpdate(net);
+        case "Priority":
+            return new PriorityUpdate(net);
+        case "ConcurrentBuffered":
+            return ConcurrentBufferedUpdate.createConcurrentBufferedUpdate(net);
+        default:
+            throw new IllegalStateException("Unknown update action: "
+                    + updateAction);
+        }
+    }
+
+    /**
+     * Updates the network once.
+     */
+    @Benchmark
+    public void update() {
+        net.update();
+    }
+
+}
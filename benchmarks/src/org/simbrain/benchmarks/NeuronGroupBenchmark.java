@@ -0,0 +1,106 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+
+/**
+ * Measures {@link NeuronGroup#update()} of a recurrently connected neuron
+ * group for each of the major neuron update rules, in both the normal and
+ * packed modes. The group's synapses are not updated; each neuron also
+ * receives a fixed random external input so that spiking rules keep firing.
+ * Packed mode only differs from normal mode for the rules which have packed
+ * kernels.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class NeuronGroupBenchmark {
+
+    /** Number of neurons in the group. */
+    @Param({ "100", "1000", "10000" })
+    private int size;
+
+    /**
+     * Simple class name of the update rule, in package
+     * org.simbrain.network.neuron_update_rules.
+     */
+    @Param({ "LinearRule", "SigmoidalRule", "BinaryRule", "DecayRule",
+            "IntegrateAndFireRule", "IzhikevichRule", "AdExIFRule",
+            "HodgkinHuxleyRule" })
+    private String rule;
+
+    /** Whether the group is updated in packed mode. */
+    @Param({ "false", "true" })
+    private boolean packed;
+
+    /** The group being updated. */
+    private NeuronGroup ng;
+
+    /** External input to each neuron. */
+    private double[] inputs;
+
+    /**
+     * Builds the group and its recurrent connections.
+     *
+     * @throws ReflectiveOperationException if the rule can't be instantiated
+     */
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        Network net = BenchmarkNetworks.newNetwork();
+        NeuronUpdateRule base = (NeuronUpdateRule) Class.forName(
+                "org.simbrain.network.neuron_update_rules." + rule)
+                .newInstance();
+        ng = BenchmarkNetworks.addNeuronGroup(net, size, base);
+        net.addGroup(SynapseGroup.createSynapseGroup(ng, ng, new Sparse(
+                BenchmarkNetworks.density(size), false, false)));
+        ng.setPacked(packed);
+        inputs = BenchmarkNetworks.randomInputs(size, 10);
+    }
+
+    /**
+     * Sets the external inputs and updates the group once.
+     */
+    @Benchmark
+    public void update() {
+        ng.setInputValues(inputs);
+        ng.update();
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
+
+/**
+ * Measures {@link Network#update()} under {@link ParallelBufferedUpdate} for a
+ * range of thread counts, both for a network of loose neurons (as in
+ * {@link NetworkUpdateBenchmark}) and for the same network as a recurrent
+ * neuron group and synapse group.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class ParallelUpdateBenchmark {
+
+    /** Number of neurons in the network. */
+    @Param({ "1000", "5000", "20000" })
+    private int size;
+
+    /** Number of threads to update with. */
+    @Param({ "1", "2", "4", "8" })
+    private int threads;
+
+    /** Whether the neurons and synapses are in groups. */
+    @Param({ "false", "true" })
+    private boolean grouped;
+
+    /** The network being updated. */
+    private Network net;
+
+    /**
+     * Builds the network and installs the update action.
+     */
+    @Setup
+    public void setUp() {
+        net = BenchmarkNetworks.newNetwork();
+        if (grouped) {
+            NeuronGroup ng = BenchmarkNetworks.addNeuronGroup(net, size,
+                    new SigmoidalRule());
+            net.addGroup(SynapseGroup.createSynapseGroup(ng, ng, new Sparse(
+                    BenchmarkNetworks.density(size), false, false)));
+        } else {
+            BenchmarkNetworks.addLooseNetwork(net, size, new SigmoidalRule());
+        }
+        net.getUpdateManager().clear();
+        net.getUpdateManager().addAction(
+                new ParallelBufferedUpdate(net, threads));
+        // Build the chunks before measuring.
+        net.update();
+    }
+
+    /**
+     * Removes the update action, which removes its network listeners.
+     */
+    @TearDown
+    public void tearDown() {
+        net.getUpdateManager().clear();
+    }
+
+    /**
+     * Updates the network once.
+     */
+    @Benchmark
+    public void update() {
+        net.update();
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.SynapseUpdateRule;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.synapse_update_rules.HebbianRule;
+import org.simbrain.network.synapse_update_rules.OjaRule;
+import org.simbrain.network.synapse_update_rules.STDPRule;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * Measures {@link SynapseGroup#update()} of a recurrent synapse group with
+ * each of the main learning rules. Only the synapses are updated; the neurons
+ * keep the state they had after a short run in which the network was driven
+ * by random external inputs. STDP groups connect spiking (Izhikevich) neurons
+ * so that some of them are spiking; the others connect linear neurons.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class SynapseGroupBenchmark {
+
+    /** Number of updates run before measuring, to give neurons state. */
+    private static final int SETTLING_UPDATES = 100;
+
+    /** Number of neurons in the group. */
+    @Param({ "100", "1000", "5000" })
+    private int size;
+
+    /** The learning rule of the synapses. */
+    @Param({ "Hebbian", "STDP", "Oja" })
+    private String learningRule;
+
+    /** The synapse group being updated. */
+    private SynapseGroup sg;
+
+    /**
+     * Builds the group, sets its learning rule and runs the network for
+     * {@link #SETTLING_UPDATES} updates.
+     */
+    @Setup
+    public void setUp() {
+        Network net = BenchmarkNetworks.newNetwork();
+        NeuronGroup ng;
+        if ("STDP".equals(learningRule)) {
+            IzhikevichRule iz = new IzhikevichRule();
+            iz.setAddNoise(true);
+            ng = BenchmarkNetworks.addNeuronGroup(net, size, iz);
+        } else {
+            ng = BenchmarkNetworks.addNeuronGroup(net, size, new LinearRule());
+        }
+        sg = SynapseGroup.createSynapseGroup(ng, ng, new Sparse(
+                BenchmarkNetworks.density(size), false, false));
+        sg.setLearningRule(createRule(), Polarity.BOTH);
+        net.addGroup(sg);
+        double[] inputs = BenchmarkNetworks.randomInputs(size, 10);
+        for (int i = 0; i < SETTLING_UPDATES; i++) {
+            ng.setInputValues(inputs);
+            net.update();
+        }
+    }
+
+    /**
+     * @return the learning rule named by {@link #learningRule}.
+     */
+    private SynapseUpdateRule createRule() {
+        switch (learningRule) {
+        case "Hebbian":
+            HebbianRule hebb = new HebbianRule();
+            hebb.setLearningRate(0.001);
+            return hebb;
+        case "STDP":
+            STDPRule stdp = new STDPRule();
+            stdp.setLearningRate(0.001);
+            return stdp;
+        case "Oja":
+            OjaRule oja = new OjaRule();
+            oja.setLearningRate(0.001);
+            return oja;
+        default:
+            throw new IllegalStateException("Unknown learning rule: "
+                    + learningRule);
+        }
+    }
+
+    /**
+     * Updates the synapses of the group once.
+     */
+    @Benchmark
+    public void update() {
+        sg.update();
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.workspace.Coupling;
+import org.simbrain.workspace.MismatchedAttributesException;
+import org.simbrain.workspace.PotentialConsumer;
+import org.simbrain.workspace.PotentialProducer;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.updater.UpdateAllBuffered;
+
+/**
+ * Measures one {@link UpdateAllBuffered} workspace update of a ring of
+ * network components, each neuron of which is coupled to the input of the
+ * corresponding neuron of the next network. An update evaluates every
+ * coupling and then updates the networks in parallel on the workspace
+ * updater's threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+public class WorkspaceUpdateBenchmark {
+
+    /** Number of network components in the ring. */
+    private static final int NUM_NETWORKS = 4;
+
+    /** Number of neurons (and couplings) per network. */
+    @Param({ "100", "1000" })
+    private int size;
+
+    /** Number of workspace updater threads. */
+    @Param({ "1", "2", "4", "8" })
+    private int threads;
+
+    /** The workspace update action. */
+    private UpdateAllBuffered updateAll;
+
+    /**
+     * Builds the workspace, its networks and their couplings.
+     *
+     * @throws MismatchedAttributesException if a coupling can't be made
+     */
+    @Setup
+    public void setUp() throws MismatchedAttributesException {
+        Workspace workspace = new Workspace();
+        workspace.getUpdater().setNumThreads(threads);
+        List<NetworkComponent> components = new ArrayList<NetworkComponent>();
+        List<List<Neuron>> neurons = new ArrayList<List<Neuron>>();
+        for (int i = 0; i < NUM_NETWORKS; i++) {
+            Network net = BenchmarkNetworks.newNetwork();
+            neurons.add(BenchmarkNetworks.addLooseNetwork(net, size,
+                    new SigmoidalRule()));
+            NetworkComponent component = new NetworkComponent("Network " + i,
+                    net);
+            workspace.addWorkspaceComponent(component);
+            components.add(component);
+        }
+        for (int i = 0; i < NUM_NETWORKS; i++) {
+            int j = (i + 1) % NUM_NETWORKS;
+            for (int k = 0; k < size; k++) {
+                PotentialProducer producer = NetworkComponent
+                        .getNeuronProducer(components.get(i),
+                                neurons.get(i).get(k), "getActivation");
+                PotentialConsumer consumer = NetworkComponent
+                        .getNeuronConsumer(components.get(j),
+                                neurons.get(j).get(k), "setInputValue");
+                workspace.getCouplingManager().addCoupling(
+                        new Coupling<Double>(producer, consumer));
+            }
+        }
+        updateAll = new UpdateAllBuffered(workspace.getUpdater());
+    }
+
+    /**
+     * Updates the couplings and then the networks once.
+     */
+    @Benchmark
+    public void update() {
+        updateAll.invoke();
+    }
+
+}
@@ -20,7 +20,10 @@ package org.simbrain.network;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
@@ -33,10 +36,14 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.listeners.NeuronListener;
 import org.simbrain.network.listeners.SynapseListener;
+import org.simbrain.workspace.Attribute;
 import org.simbrain.workspace.AttributeType;
+import org.simbrain.workspace.Consumer;
 import org.simbrain.workspace.PotentialConsumer;
 import org.simbrain.workspace.PotentialProducer;
 import org.simbrain.workspace.Producer;
+import org.simbrain.workspace.ValueVector;
+import org.simbrain.workspace.VectorRegion;
 import org.simbrain.workspace.WorkspaceComponent;
 
 /**
@@ -47,6 +54,14 @@ public final class NetworkComponent extends WorkspaceComponent {
     /** Reference to root network, the main model network. */
     private Network network = new Network();
 
+    /**
+     * The index of each neuron in its group, by group, so that compiling the
+     * couplings to every neuron of a group does not search the group's list
+     * once per neuron. Rebuilt for a group when found to be out of date.
+     */
+    private final Map<NeuronGroup, Map<Neuron, Integer>> neuronIndices =
+            new WeakHashMap<NeuronGroup, Map<Neuron, Integer>>();
+
     /**
      * Create a new network component.
      *
@@ -249,7 +264,7 @@ public final class NetworkComponent extends WorkspaceComponent {
                     }
                 }
             } else if (type.getTypeName().equalsIgnoreCase("Synapse")) {
-                for (Synapse synapse : network.getFlatSynapseList()) {
+                for (Synapse synapse : network.getFlatSynapseView()) {
                     String description = type.getDescription(synapse.getId());
                     PotentialConsumer consumer = getAttributeManager()
                             .createPotentialConsumer(synapse, type);
@@ -355,7 +370,7 @@ public final class NetworkComponent extends WorkspaceComponent {
                     }
                 }
             } else if (type.getTypeName().equalsIgnoreCase("Synapse")) {
-                for (Synapse synapse : network.getFlatSynapseList()) {
+                for (Synapse synapse : network.getFlatSynapseView()) {
                     String description = type.getDescription(synapse.getId());
                     PotentialProducer producer = getAttributeManager()
                             .createPotentialProducer(synapse, type);
@@ -395,6 +410,200 @@ public final class NetworkComponent extends WorkspaceComponent {
         return returnList;
     }
 
+    /**
+     * Neuron activations and input values are backed by the vectors of the
+     * neuron groups holding them, so that couplings to whole groups, and
+     * couplings to runs of neurons within groups, are copied in bulk.
+     */
+    @Override
+    public VectorRegion getVectorRegion(final Attribute attribute) {
+        Object object = attribute.getBaseObject();
+        String method = attribute.getMethodName();
+        boolean producer = attribute instanceof Producer;
+        boolean consumer = attribute instanceof Consumer;
+        if (object instanceof Neuron) {
+            Neuron neuron = (Neuron) object;
+            NeuronValues values;
+            if (producer && method.equals("getActivation")
+                    || consumer && method.equals("setActivation")) {
+                values = NeuronValues.ACTIVATION;
+            } else if (consumer && method.equals("setInputValue")) {
+                values = NeuronValues.INPUT;
+            } else {
+                return null;
+            }
+            if (!(neuron.getParentGroup() instanceof NeuronGroup)) {
+                return null;
+            }
+            NeuronGroup group = (NeuronGroup) neuron.getParentGroup();
+            int index = indexInGroup(group, neuron);
+            if (index < 0) {
+                return null;
+            }
+            return VectorRegion.element(new GroupVector(group, values, false),
+                    index);
+        } else if (object instanceof NeuronGroup) {
+            NeuronGroup group = (NeuronGroup) object;
+            if (producer && method.equals("getExternalActivations")) {
+                return VectorRegion.whole(new GroupVector(group,
+                        NeuronValues.ACTIVATION, true));
+            } else if (producer && method.equals("getActivations")
+                    || consumer && method.equals("setActivations")) {
+                return VectorRegion.whole(new GroupVector(group,
+                        NeuronValues.ACTIVATION, false));
+            } else if (consumer && method.equals("setInputValues")) {
+                return VectorRegion.whole(new GroupVector(group,
+                        NeuronValues.INPUT, false));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the index of a neuron in a group's neuron list, from an index
+     * of the group's neurons built on first use and rebuilt whenever the
+     * index gives a position which no longer holds the neuron.
+     *
+     * @param group the group
+     * @param neuron the neuron
+     * @return the index of the neuron, or -1 if it is not in the group
+     */
+    private int indexInGroup(final NeuronGroup group, final Neuron neuron) {
+        List<Neuron> neurons = group.getNeuronListUnsafe();
+        synchronized (neuronIndices) {
+            Map<Neuron, Integer> indices = neuronIndices.get(group);
+            Integer index = indices == null ? null : indices.get(neuron);
+            if (index == null || index >= neurons.size()
+                    || neurons.get(index) != neuron) {
+                indices = new HashMap<Neuron, Integer>(
+                        (int) (neurons.size() / 0.75) + 1);
+                for (int i = 0, n = neurons.size(); i < n; i++) {
+                    indices.put(neurons.get(i), i);
+                }
+                neuronIndices.put(group, indices);
+                index = indices.get(neuron);
+            }
+            return index == null ? -1 : index;
+        }
+    }
+
+    /** Values of neurons which couplings can read and write in bulk. */
+    private enum NeuronValues {
+
+        /** Activations. */
+        ACTIVATION {
+            @Override
+            double get(Neuron neuron) {
+                return neuron.getActivation();
+            }
+
+            @Override
+            void set(Neuron neuron, double value) {
+                neuron.setActivation(value);
+            }
+        },
+
+        /** Input values. */
+        INPUT {
+            @Override
+            double get(Neuron neuron) {
+                return neuron.getInputValue();
+            }
+
+            @Override
+            void set(Neuron neuron, double value) {
+                neuron.setInputValue(value);
+            }
+        };
+
+        /**
+         * @param neuron a neuron
+         * @return its value
+         */
+        abstract double get(Neuron neuron);
+
+        /**
+         * @param neuron a neuron
+         * @param value its new value
+         */
+        abstract void set(Neuron neuron, double value);
+    }
+
+    /**
+     * Values of the neurons of a neuron group, in order.
+     */
+    private static final class GroupVector implements ValueVector {
+
+        /** The group. */
+        private final NeuronGroup group;
+
+        /** The values. */
+        private final NeuronValues values;
+
+        /**
+         * Whether the vector is limited to the neurons sampled by
+         * {@link NeuronGroup#getExternalActivations()}.
+         */
+        private final boolean external;
+
+        /**
+         * Construct a vector.
+         *
+         * @param group the group
+         * @param values the values
+         * @param external whether to limit the vector to the neurons sampled
+         *            for external components
+         */
+        GroupVector(final NeuronGroup group, final NeuronValues values,
+                final boolean external) {
+            this.group = group;
+            this.values = values;
+            this.external = external;
+        }
+
+        @Override
+        public int size() {
+            int size = group.size();
+            if (external && NeuronGroup.isUseSubSampling()
+                    && size >= NeuronGroup.getNumSubSamples()) {
+                return NeuronGroup.getNumSubSamples();
+            }
+            return size;
+        }
+
+        @Override
+        public void get(int from, double[] dest, int offset, int count) {
+            List<Neuron> neurons = group.getNeuronListUnsafe();
+            for (int i = 0; i < count; i++) {
+                dest[offset + i] = values.get(neurons.get(from + i));
+            }
+        }
+
+        @Override
+        public void set(int from, double[] src, int offset, int count) {
+            List<Neuron> neurons = group.getNeuronListUnsafe();
+            for (int i = 0; i < count; i++) {
+                values.set(neurons.get(from + i), src[offset + i]);
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof GroupVector)) {
+                return false;
+            }
+            GroupVector other = (GroupVector) o;
+            return other.group == group && other.values == values
+                    && other.external == external;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(group) * 31 + values.hashCode()
+                    + (external ? 1 : 0);
+        }
+    }
+
     @Override
     public Object getObjectFromKey(String objectKey) {
         if (objectKey.startsWith("Neuron_")) {
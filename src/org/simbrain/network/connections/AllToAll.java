@@ -147,15 +147,17 @@ public class AllToAll implements ConnectNeurons {
      *            connection class will be added.
      */
     public void connectNeurons(SynapseGroup synGroup) {
-        List<Synapse> syns = connectAllToAll(synGroup.getSourceNeurons(),
-                synGroup.getTargetNeurons(), synGroup.isRecurrent(),
-                selfConnectionAllowed, false);
         // Set the capacity of the synapse group's list to accommodate the
         // synapses this group will add.
         synGroup.preAllocateSynapses(synGroup.getSourceNeuronGroup().size()
                 * synGroup.getTargetNeuronGroup().size());
-        for (Synapse s : syns) {
-            synGroup.addNewSynapse(s);
+        boolean noSelf = synGroup.isRecurrent() && !selfConnectionAllowed;
+        for (Neuron source : synGroup.getSourceNeurons()) {
+            for (Neuron target : synGroup.getTargetNeurons()) {
+                if (!(noSelf && source.equals(target))) {
+                    synGroup.addNewConnection(source, target);
+                }
+            }
         }
     }
 
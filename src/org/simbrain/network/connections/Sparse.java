@@ -308,8 +308,7 @@ public class Sparse implements ConnectNeurons {
             Neuron tar;
             for (int j = 0; j < numConnectsPerSrc; j++) {
                 tar = targetNeurons[sparseOrdering[i][j]];
-                Synapse s = new Synapse(src, tar);
-                synapseGroup.addNewSynapse(s);
+                synapseGroup.addNewConnection(src, tar);
             }
         }
     }
@@ -348,8 +347,7 @@ public class Sparse implements ConnectNeurons {
             }
             for (int j = 0; j < currentOrderingIndices[i]; j++) {
                 tar = targetNeurons[o[j]];
-                Synapse s = new Synapse(src, tar);
-                synapseGroup.addNewSynapse(s);
+                synapseGroup.addNewConnection(src, tar);
             }
         }
 
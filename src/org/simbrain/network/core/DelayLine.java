@@ -0,0 +1,171 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.util.Arrays;
+
+/**
+ * <b>DelayLine</b> is the recent history of a neuron's activations and spikes,
+ * one entry per network update, kept in circular buffers whose length is a
+ * power of two so that looking up the entry of d updates ago is a mask and an
+ * array index. A neuron holds one delay line shared by all its efferent
+ * synapses which have a delay (see {@link Synapse#setDelay(int)}), so memory
+ * scales with the longest delay per neuron rather than with the total delay
+ * over synapses.
+ *
+ * Entries are recorded when first read on an update (see
+ * {@link Neuron#getDelayedActivation(int)}), so the neuron's values are
+ * recorded as the synapses would have seen them at that point. Updates on
+ * which the line is not read are filled in with the neuron's activation when
+ * it is next read, and no spike. Entries from before the line was first read
+ * are zero (and no spike).
+ *
+ * Within an update (between recordings) lookups only read, so synapses may
+ * be evaluated concurrently once a line has been recorded for the update.
+ */
+public class DelayLine {
+
+    /** Recorded activations, indexed by update modulo the length. */
+    private final double[] activations;
+
+    /** Recorded spikes, one bit per entry, 64 entries per word. */
+    private final long[] spikes;
+
+    /** Length of the buffers minus one, for masking update numbers. */
+    private final int mask;
+
+    /** The update last recorded, or -1 if none has been. */
+    private volatile long lastUpdate = -1;
+
+    /**
+     * Creates an empty delay line.
+     *
+     * @param maxDelay the longest delay (in updates) the line must hold
+     */
+    public DelayLine(final int maxDelay) {
+        int length = Integer.highestOneBit(Math.max(maxDelay, 1)) << 1;
+        activations = new double[length];
+        spikes = new long[(length + 63) >>> 6];
+        mask = length - 1;
+    }
+
+    /**
+     * Creates a delay line holding the entries of another, for a longer
+     * longest delay.
+     *
+     * @param maxDelay the longest delay (in updates) the line must hold
+     * @param toCopy the line whose entries to copy
+     */
+    DelayLine(final int maxDelay, final DelayLine toCopy) {
+        this(maxDelay);
+        long last = toCopy.lastUpdate;
+        if (last >= 0) {
+            for (long u = Math.max(0, last - toCopy.mask); u <= last; u++) {
+                int i = (int) (u & mask);
+                activations[i] = toCopy.activations[(int) (u & toCopy.mask)];
+                setSpike(i, toCopy.isSpikeAt((int) (u & toCopy.mask)));
+            }
+        }
+        lastUpdate = last;
+    }
+
+    /**
+     * Records a neuron's values for an update, unless they have already been
+     * recorded for that update. Updates skipped since the last recording take
+     * the same activation and no spike.
+     *
+     * @param update the number of the current network update
+     * @param activation the neuron's activation
+     * @param spike whether the neuron is spiking
+     */
+    public void record(final long update, final double activation,
+            final boolean spike) {
+        long last = lastUpdate;
+        if (update == last) {
+            return;
+        }
+        if (update < last) {
+            // The update count was reset: start over.
+            clear();
+            last = -1;
+        }
+        long first = last < 0 ? update : Math.max(last + 1, update - mask);
+        for (long u = first; u <= update; u++) {
+            int i = (int) (u & mask);
+            activations[i] = activation;
+            setSpike(i, spike && u == update);
+        }
+        lastUpdate = update;
+    }
+
+    /**
+     * @param delay a number of updates, at most {@link #getMaxDelay()}
+     * @return the activation recorded that many updates before the last
+     *         recorded update.
+     */
+    public double getActivation(final int delay) {
+        return activations[(int) ((lastUpdate - delay) & mask)];
+    }
+
+    /**
+     * @param delay a number of updates, at most {@link #getMaxDelay()}
+     * @return whether a spike was recorded that many updates before the last
+     *         recorded update.
+     */
+    public boolean isSpike(final int delay) {
+        return isSpikeAt((int) ((lastUpdate - delay) & mask));
+    }
+
+    /**
+     * @return the longest delay this line holds.
+     */
+    public int getMaxDelay() {
+        return mask;
+    }
+
+    /**
+     * Forgets all recorded entries.
+     */
+    public void clear() {
+        Arrays.fill(activations, 0);
+        Arrays.fill(spikes, 0);
+        lastUpdate = -1;
+    }
+
+    /**
+     * @param i an entry index
+     * @return the spike bit of the entry
+     */
+    private boolean isSpikeAt(final int i) {
+        return (spikes[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * @param i an entry index
+     * @param spike the spike bit to set
+     */
+    private void setSpike(final int i, final boolean spike) {
+        if (spike) {
+            spikes[i >>> 6] |= (1L << i);
+        } else {
+            spikes[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+}
@@ -34,6 +34,10 @@ import org.simbrain.network.groups.Group;
 import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.Subnetwork;
 import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.subnetworks.FeedForward;
+import org.simbrain.network.subnetworks.Hopfield;
+import org.simbrain.network.subnetworks.KWTA;
+import org.simbrain.network.trainers.MappedTrainingSet;
 import org.simbrain.network.listeners.GroupListener;
 import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.listeners.NetworkListener;
@@ -42,6 +46,7 @@ import org.simbrain.network.listeners.SynapseListener;
 import org.simbrain.network.listeners.TextListener;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
 import org.simbrain.network.update_actions.CustomUpdate;
 import org.simbrain.util.SimbrainConstants.Polarity;
 import org.simbrain.util.SimbrainPreferences;
@@ -88,6 +93,12 @@ public class Network {
     /** Time step. */
     private double timeStep = DEFAULT_TIME_STEP;
 
+    /**
+     * The number of updates run so far. Unlike {@link #getIterations()} it does
+     * not depend on the time step, and indexes neurons' delay lines.
+     */
+    private long updateCount;
+
     /**
      * Two types of time used in simulations.
      */
@@ -158,6 +169,13 @@ public class Network {
      */
     private volatile boolean fireUpdates = true;
 
+    /**
+     * Buffer to which the state of the network is published after every
+     * update, for a GUI to sample, or null. While set, update events are not
+     * fired for the neurons, synapses and groups updated.
+     */
+    private volatile SnapshotBuffer snapshotBuffer;
+
     /**
      * An internal id giving networks unique numbers within the same simbrain
      * session.
@@ -201,7 +219,8 @@ public class Network {
     		updateManager.getActionList().get(i).invoke();
     	}
 
-    	if (fireUpdates) {
+    	SnapshotBuffer snapshots = snapshotBuffer;
+    	if (fireUpdates && snapshots == null) {
     	    // Fire update events for GUI update. Loose items, then groups.
     	    fireSynapsesUpdated(synapseList); // Loose synapses
     	    fireNeuronsUpdated(neuronList); // Loose neurons
@@ -214,6 +233,10 @@ public class Network {
         clearInputs();
         // Update Time
         updateTime();
+        updateCount++;
+        if (fireUpdates && snapshots != null) {
+            snapshots.publish(this);
+        }
         setUpdateCompleted(true);
     }
 
@@ -476,18 +499,27 @@ public class Network {
     }
 
     /**
-     * Find a synapse with a given string id.
+     * Find a synapse with a given string id. Synapse groups in sparse mode
+     * stay in it: see {@link SynapseGroup#getSynapse(String)}.
      *
      * @param id
      *            id to search for.
      * @return synapse with that id, null otherwise
      */
     public Synapse getSynapse(final String id) {
-        for (Synapse s : getFlatSynapseList()) {
+        for (Synapse s : synapseList) {
             if (s.getId().equalsIgnoreCase(id)) {
                 return s;
             }
         }
+        for (Group group : getFlatGroupList()) {
+            if (group instanceof SynapseGroup) {
+                Synapse s = ((SynapseGroup) group).getSynapse(id);
+                if (s != null) {
+                    return s;
+                }
+            }
+        }
         return null;
     }
 
@@ -864,7 +896,9 @@ public class Network {
 
     /**
      * Create "flat" list of synapses, which includes the top-level synapses
-     * plus all subnet synapses.
+     * plus all subnet synapses. Synapse groups in sparse mode are taken out of
+     * it; code which only reads the synapses should use
+     * {@link #getFlatSynapseView()}.
      *
      * @return the flat list
      */
@@ -883,6 +917,27 @@ public class Network {
         return ret;
     }
 
+    /**
+     * Create a read-only "flat" list of synapses, like
+     * {@link #getFlatSynapseList()}, but leaving synapse groups in sparse mode
+     * (see {@link SynapseGroup#getSynapseView()}).
+     *
+     * @return the flat list
+     */
+    public List<Synapse> getFlatSynapseView() {
+        List<Synapse> ret = new ArrayList<Synapse>(synapseList);
+        for (int i = 0; i < groupList.size(); i++) {
+            if (groupList.get(i) instanceof SynapseGroup) {
+                SynapseGroup group = (SynapseGroup) groupList.get(i);
+                ret.addAll(group.getSynapseView());
+            } else if (groupList.get(i) instanceof Subnetwork) {
+                Subnetwork group = (Subnetwork) groupList.get(i);
+                ret.addAll(group.getFlatSynapseView());
+            }
+        }
+        return Collections.unmodifiableList(ret);
+    }
+
     /**
      * Create a "flat" list of groups, which includes the top-level groups plus
      * all subgroups.
@@ -999,6 +1054,7 @@ public class Network {
         xstream.omitField(Network.class, "synapseListeners");
         xstream.omitField(Network.class, "textListeners");
         xstream.omitField(Network.class, "updateCompleted");
+        xstream.omitField(Network.class, "snapshotBuffer");
         xstream.omitField(Network.class, "logger");
         xstream.omitField(Network.class, "synapseVisibilityThreshold");
 
@@ -1011,11 +1067,48 @@ public class Network {
         xstream.omitField(ConcurrentBufferedUpdate.class, "collectorThread");
         xstream.omitField(ConcurrentBufferedUpdate.class,
                 "synchronizingBarrier");
+        xstream.omitField(ParallelBufferedUpdate.class, "neurons");
+        xstream.omitField(ParallelBufferedUpdate.class, "chunks");
+        xstream.omitField(ParallelBufferedUpdate.class, "updateTask");
+        xstream.omitField(ParallelBufferedUpdate.class, "inputGroups");
+        xstream.omitField(ParallelBufferedUpdate.class, "outputGroups");
+        xstream.omitField(ParallelBufferedUpdate.class, "updatedGroups");
+        xstream.omitField(ParallelBufferedUpdate.class, "synapseGroups");
+        xstream.omitField(ParallelBufferedUpdate.class, "dirty");
+        xstream.omitField(ParallelBufferedUpdate.class, "listening");
+        xstream.omitField(ParallelBufferedUpdate.class, "neuronListener");
+        xstream.omitField(ParallelBufferedUpdate.class, "groupListener");
+        xstream.omitField(ParallelBufferedUpdate.class, "removalListener");
         xstream.omitField(CustomUpdate.class, "interpreter");
         xstream.omitField(CustomUpdate.class, "theAction");
 
+        xstream.omitField(NeuronGroup.class, "packedState");
+        xstream.omitField(Hopfield.class, "engine");
+        xstream.omitField(Hopfield.class, "engineNeurons");
+        xstream.omitField(Hopfield.class, "upperSynapses");
+        xstream.omitField(Hopfield.class, "lowerSynapses");
+        xstream.omitField(KWTA.class, "thresholds");
+        xstream.omitField(FeedForward.class, "denseEngine");
+        xstream.omitField(MappedTrainingSet.class, "inputTable");
+        xstream.omitField(MappedTrainingSet.class, "targetTable");
+        xstream.omitField(MappedTrainingSet.class, "inputCache");
+        xstream.omitField(MappedTrainingSet.class, "targetCache");
+        xstream.omitField(NeuronGroup.class, "groupExInputs");
+        xstream.omitField(NeuronGroup.class, "groupInInputs");
+        xstream.omitField(NeuronGroup.class, "recorder");
+        xstream.omitField(NeuronGroup.class, "inputSource");
+        xstream.omitField(NeuronGroup.class, "inputRow");
+        xstream.omitField(Neuron.class, "groupExcitatoryInput");
+        xstream.omitField(Neuron.class, "groupInhibitoryInput");
+        xstream.omitField(Neuron.class, "packedState");
+        xstream.omitField(Neuron.class, "packedIndex");
+        xstream.omitField(Neuron.class, "delayLine");
+
         xstream.omitField(SynapseGroup.class, "exTemp");
         xstream.omitField(SynapseGroup.class, "inTemp");
+        xstream.omitField(SynapseGroup.class, "sparseMatrix");
+        xstream.omitField(SynapseGroup.class, "sparseBuilder");
+        xstream.omitField(SynapseGroup.class, "eventEngine");
         xstream.omitField(Sparse.class, "sparseOrdering");
         xstream.omitField(Sparse.class, "currentOrderingIndices");
         xstream.omitField(Sparse.class, "sourceNeurons");
@@ -1027,6 +1120,9 @@ public class Network {
 
         // TODO: Backwards compatible
         xstream.omitField(Synapse.class, "sendWeightedInput");
+        xstream.omitField(Synapse.class, "delayManager");
+        xstream.omitField(Synapse.class, "dlyPtr");
+        xstream.omitField(Synapse.class, "dlyVal");
 
         return xstream;
     }
@@ -1056,6 +1152,11 @@ public class Network {
         for (Neuron neuron : this.getFlatNeuronList()) {
             neuron.postUnmarshallingInit();
         }
+        for (Group group : this.getFlatGroupList()) {
+            if (group instanceof NeuronGroup) {
+                ((NeuronGroup) group).postUnmarshallingInit();
+            }
+        }
 
         // Uncompress compressed matrix rep if needed
         for (SynapseGroup group : this.getSynapseGroups()) {
@@ -1075,6 +1176,12 @@ public class Network {
      * operations occur in {@link #readResolve()}.
      */
     public void preSaveInit() {
+        // Packed groups hold neuron and rule state outside the neurons
+        for (Group group : this.getFlatGroupList()) {
+            if (group instanceof NeuronGroup) {
+                ((NeuronGroup) group).invalidatePackedState();
+            }
+        }
         for (SynapseGroup group : this.getSynapseGroups()) {
             group.preSaveInit();
         }
@@ -1116,6 +1223,13 @@ public class Network {
         return (long) (time / timeStep);
     }
 
+    /**
+     * @return the number of updates run so far.
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
     /**
      * Set the current time.
      *
@@ -1206,7 +1320,7 @@ public class Network {
     public void setTimeStep(final double timeStep) {
         double oldTimeStep = this.timeStep;
         this.timeStep = timeStep;
-        for (Synapse s : getFlatSynapseList()) {
+        for (Synapse s : getFlatSynapseView()) {
             int newDelay = (int) (s.getDelay() * oldTimeStep / timeStep);
             if (s.getDelay() != 0 && newDelay == 0) {
                 s.setDelay(1);
@@ -1628,6 +1742,15 @@ public class Network {
         neuronListeners.add(listener);
     }
 
+    /**
+     * Remove a neuron listener.
+     *
+     * @param listener the listener to remove
+     */
+    public void removeNeuronListener(final NeuronListener listener) {
+        neuronListeners.remove(listener);
+    }
+
     /**
      * Register a synapse listener.
      *
@@ -1901,6 +2024,27 @@ public class Network {
         this.fireUpdates = fireUpdates;
     }
 
+    /**
+     * @return the buffer the state of the network is published to after every
+     *         update, or null
+     */
+    public SnapshotBuffer getSnapshotBuffer() {
+        return snapshotBuffer;
+    }
+
+    /**
+     * Sets a buffer to publish the state of the network to after every
+     * update, instead of firing update events for the neurons, synapses and
+     * groups updated, so that a GUI can draw the network at its own rate
+     * without slowing the update down. Updates are not published while
+     * {@link #isFireUpdates()} is false.
+     *
+     * @param snapshotBuffer the buffer, or null to fire update events again
+     */
+    public void setSnapshotBuffer(final SnapshotBuffer snapshotBuffer) {
+        this.snapshotBuffer = snapshotBuffer;
+    }
+
     public String getName() {
     	return name;
     }
@@ -0,0 +1,216 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.util.Collection;
+
+/**
+ * The visible state of some of the neurons and synapses of a network after an
+ * update: activations and spikes of the neurons, strengths of the synapses and
+ * spikes of their sources. Snapshots are taken on the thread updating the
+ * network and read on another thread, usually to draw the network, through a
+ * {@link SnapshotBuffer}.
+ */
+public final class NetworkSnapshot {
+
+    /** The neurons and synapses captured. */
+    private Watch watch;
+
+    /** Activations of the neurons. */
+    private double[] activations = new double[0];
+
+    /** Whether each neuron spiked. */
+    private boolean[] spikes = new boolean[0];
+
+    /** Strengths of the synapses. */
+    private double[] strengths = new double[0];
+
+    /** Whether the source of each synapse spiked. */
+    private boolean[] sourceSpikes = new boolean[0];
+
+    /** The number of updates of the network. */
+    private long updateCount;
+
+    /** The time of the network. */
+    private double time;
+
+    /**
+     * Whether the snapshot has been published but not yet read; only changed
+     * by the thread holding the snapshot.
+     */
+    boolean fresh;
+
+    /**
+     * Capture the state of the neurons and synapses of a watch.
+     *
+     * @param network the network
+     * @param watched the neurons and synapses to capture
+     */
+    void capture(final Network network, final Watch watched) {
+        watch = watched;
+        Neuron[] neurons = watched.neurons;
+        if (activations.length < neurons.length) {
+            activations = new double[neurons.length];
+            spikes = new boolean[neurons.length];
+        }
+        for (int i = 0; i < neurons.length; i++) {
+            activations[i] = neurons[i].getActivation();
+            spikes[i] = neurons[i].isSpike();
+        }
+        Synapse[] synapses = watched.synapses;
+        if (strengths.length < synapses.length) {
+            strengths = new double[synapses.length];
+            sourceSpikes = new boolean[synapses.length];
+        }
+        for (int i = 0; i < synapses.length; i++) {
+            strengths[i] = synapses[i].getStrength();
+            sourceSpikes[i] = synapses[i].getSource().isSpike();
+        }
+        updateCount = network.getUpdateCount();
+        time = network.getTime();
+    }
+
+    /**
+     * @return the neurons and synapses captured
+     */
+    public Watch getWatch() {
+        return watch;
+    }
+
+    /**
+     * @param index index of a neuron in the watch
+     * @return its activation
+     */
+    public double getActivation(final int index) {
+        return activations[index];
+    }
+
+    /**
+     * @param index index of a neuron in the watch
+     * @return whether it spiked
+     */
+    public boolean isSpike(final int index) {
+        return spikes[index];
+    }
+
+    /**
+     * @param index index of a synapse in the watch
+     * @return its strength
+     */
+    public double getStrength(final int index) {
+        return strengths[index];
+    }
+
+    /**
+     * @param index index of a synapse in the watch
+     * @return whether its source spiked
+     */
+    public boolean isSourceSpike(final int index) {
+        return sourceSpikes[index];
+    }
+
+    /**
+     * @return the number of updates of the network when captured
+     */
+    public long getUpdateCount() {
+        return updateCount;
+    }
+
+    /**
+     * @return the time of the network when captured
+     */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * The neurons and synapses whose state is captured, in the order their
+     * values are indexed in a snapshot.
+     */
+    public static final class Watch {
+
+        /** An empty watch. */
+        public static final Watch EMPTY = new Watch(new Neuron[0],
+                new Synapse[0]);
+
+        /** The neurons. */
+        private final Neuron[] neurons;
+
+        /** The synapses. */
+        private final Synapse[] synapses;
+
+        /**
+         * @param neurons the neurons
+         * @param synapses the synapses
+         */
+        private Watch(final Neuron[] neurons, final Synapse[] synapses) {
+            this.neurons = neurons;
+            this.synapses = synapses;
+        }
+
+        /**
+         * Construct a watch.
+         *
+         * @param neurons the neurons
+         * @param synapses the synapses
+         */
+        public Watch(final Collection<? extends Neuron> neurons,
+                final Collection<? extends Synapse> synapses) {
+            this(neurons.toArray(new Neuron[neurons.size()]), synapses
+                    .toArray(new Synapse[synapses.size()]));
+        }
+
+        /**
+         * @return the number of neurons
+         */
+        public int getNeuronCount() {
+            return neurons.length;
+        }
+
+        /**
+         * @param index the index of a neuron
+         * @return the neuron
+         */
+        public Neuron getNeuron(final int index) {
+            return neurons[index];
+        }
+
+        /**
+         * @return the number of synapses
+         */
+        public int getSynapseCount() {
+            return synapses.length;
+        }
+
+        /**
+         * @param index the index of a synapse
+         * @return the synapse
+         */
+        public Synapse getSynapse(final int index) {
+            return synapses[index];
+        }
+
+        /**
+         * @return whether there is nothing to capture
+         */
+        boolean isEmpty() {
+            return neurons.length == 0 && synapses.length == 0;
+        }
+    }
+}
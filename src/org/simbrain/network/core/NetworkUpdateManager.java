@@ -29,6 +29,7 @@ import org.simbrain.network.listeners.NetworkEvent;
 import org.simbrain.network.update_actions.BufferedUpdate;
 import org.simbrain.network.update_actions.ConcurrentBufferedUpdate;
 import org.simbrain.network.update_actions.CustomUpdate;
+import org.simbrain.network.update_actions.ParallelBufferedUpdate;
 import org.simbrain.network.update_actions.PriorityUpdate;
 import org.simbrain.network.update_actions.UpdateGroup;
 
@@ -130,8 +131,7 @@ public class NetworkUpdateManager {
         // By default these guys are always available
         availableActionList.add(new BufferedUpdate(network));
         availableActionList.add(new PriorityUpdate(network));
-        availableActionList.add(ConcurrentBufferedUpdate
-                .createConcurrentBufferedUpdate(network));
+        availableActionList.add(new ParallelBufferedUpdate(network));
 
         // Add update actions for all groups available
         for (Group group : network.getGroupList()) {
@@ -227,7 +227,9 @@ public class NetworkUpdateManager {
      */
     public void removeAction(NetworkUpdateAction action) {
         actionList.remove(action);
-        for (UpdateManagerListener listener : listeners) {
+        // Copied, since a removed action may stop listening
+        for (UpdateManagerListener listener : new ArrayList<UpdateManagerListener>(
+                listeners)) {
             listener.actionRemoved(action);
         }
     }
@@ -262,7 +264,8 @@ public class NetworkUpdateManager {
      */
     public void clear() {
         for (NetworkUpdateAction action : actionList) {
-            for (UpdateManagerListener l : listeners) {
+            for (UpdateManagerListener l : new ArrayList<UpdateManagerListener>(
+                    listeners)) {
                 l.actionRemoved(action);
             }
         }
@@ -25,14 +25,17 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.simbrain.network.core.Network.TimeType;
 import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.neuron_update_rules.LinearRule;
 import org.simbrain.network.neuron_update_rules.interfaces.ActivityGenerator;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
 import org.simbrain.network.neuron_update_rules.interfaces.BoundedUpdateRule;
+import org.simbrain.network.neuron_update_rules.packed.PackedNeuronState;
 import org.simbrain.util.SimbrainConstants.Polarity;
 
 /**
@@ -98,9 +101,31 @@ public class Neuron {
      */
     private double inputValue;
 
+    /**
+     * Excitatory input delivered to this neuron by synapse groups which
+     * compute the input to their targets in bulk rather than through synapses
+     * in {@link #fanIn} (sparse weight matrices, event-driven spike
+     * propagation). Set by the parent neuron group each update. See
+     * {@link #getWeightedInputs()} and {@link #getSynapticInput()}.
+     */
+    private double groupExcitatoryInput;
+
+    /**
+     * Inhibitory input delivered to this neuron by synapse groups which
+     * compute the input to their targets in bulk. See
+     * {@link #groupExcitatoryInput}.
+     */
+    private double groupInhibitoryInput;
+
     /** Reference to network this neuron is part of. */
     private final Network parent;
 
+    /**
+     * History of this neuron's activations and spikes, read by efferent
+     * synapses with a delay. Null if no efferent synapse has had a delay.
+     */
+    private volatile DelayLine delayLine;
+
     /** List of synapses this neuron attaches to. */
     private Map<Neuron, Synapse> fanOut = new HashMap<Neuron, Synapse>(
             PRE_ALLOCATED_NUM_SYNAPSES);
@@ -137,6 +162,16 @@ public class Neuron {
     /** Memory of last activation. */
     private double lastActivation;
 
+    /**
+     * The packed state holding this neuron's activation, buffers and spikes
+     * while its group is updated in packed mode, or null. While set, those
+     * values are read and written there rather than in this neuron's fields.
+     */
+    private PackedNeuronState packedState;
+
+    /** Index of this neuron in {@link #packedState}. */
+    private int packedIndex;
+
     /** Parent group, if any (null if none). */
     private Group parentGroup;
 
@@ -304,6 +339,9 @@ public class Neuron {
         for (Synapse s : getFanOut().values()) {
             s.initSpikeResponder();
         }
+        if (parentGroup instanceof NeuronGroup) {
+            ((NeuronGroup) parentGroup).invalidatePackedState();
+        }
         if (getNetwork() != null) {
             getNetwork().updateTimeType();
             getNetwork().fireNeuronTypeChanged(oldRule, updateRule);
@@ -330,6 +368,15 @@ public class Neuron {
      *            Activation
      */
     public void setActivation(final double act) {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            packed.setLastActivation(packedIndex,
+                    packed.getActivation(packedIndex));
+            if (!isClamped()) {
+                packed.setActivation(packedIndex, act);
+            }
+            return;
+        }
         lastActivation = getActivation();
         if (isClamped()) {
             return;
@@ -359,6 +406,13 @@ public class Neuron {
      *            the new activation value
      */
     public void forceSetActivation(final double act) {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            packed.setLastActivation(packedIndex,
+                    packed.getActivation(packedIndex));
+            packed.setActivation(packedIndex, act);
+            return;
+        }
         lastActivation = getActivation();
         activation = act;
     }
@@ -367,6 +421,10 @@ public class Neuron {
      * @return the level of activation.
      */
     public double getActivation() {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            return packed.getActivation(packedIndex);
+        }
         return activation;
     }
 
@@ -451,6 +509,18 @@ public class Neuron {
         }
     }
 
+    /**
+     * Removes all the afferent synapses belonging to a given set in one pass
+     * over {@link #fanIn}.
+     *
+     * @param synapses the synapses to remove
+     */
+    public void removeAfferents(final Set<Synapse> synapses) {
+        if (fanIn != null) {
+            fanIn.removeIf(s -> synapses.contains(s));
+        }
+    }
+
     /**
      * Remove this neuron from source neuron via a weight.
      *
@@ -472,7 +542,8 @@ public class Neuron {
      * @return weighted input to this node
      */
     public double getWeightedInputs() {
-        double wtdSum = inputValue;
+        double wtdSum = inputValue + groupExcitatoryInput
+                + groupInhibitoryInput;
         for (int i = 0, n = fanIn.size(); i < n; i++) {
             wtdSum += fanIn.get(i).calcWeightedSum();
         }
@@ -489,7 +560,8 @@ public class Neuron {
      * neuron.
      */
     public double getSynapticInput() {
-        double wtdSum = inputValue;
+        double wtdSum = inputValue + groupExcitatoryInput
+                + groupInhibitoryInput;
         for (int i = 0, n = fanIn.size(); i < n; i++) {
         	wtdSum += fanIn.get(i).calcPSR();
         }
@@ -628,6 +700,13 @@ public class Neuron {
      *            temporary value
      */
     public void setBuffer(final double d) {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            packed.setLastActivation(packedIndex,
+                    packed.getActivation(packedIndex));
+            packed.setBuffer(packedIndex, d);
+            return;
+        }
         lastActivation = getActivation();
         buffer = d;
     }
@@ -636,6 +715,10 @@ public class Neuron {
      * @return Returns the current value in the buffer.
      */
     public double getBuffer() {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            return packed.getBuffer(packedIndex);
+        }
         return buffer;
     }
 
@@ -646,6 +729,35 @@ public class Neuron {
         return inputValue;
     }
 
+    /**
+     * @return the excitatory input delivered by synapse groups which compute
+     *         their input in bulk.
+     */
+    public double getGroupExcitatoryInput() {
+        return groupExcitatoryInput;
+    }
+
+    /**
+     * @return the inhibitory input delivered by synapse groups which compute
+     *         their input in bulk.
+     */
+    public double getGroupInhibitoryInput() {
+        return groupInhibitoryInput;
+    }
+
+    /**
+     * Sets the input delivered by synapse groups which compute their input in
+     * bulk (see {@link #groupExcitatoryInput}).
+     *
+     * @param excitatory the excitatory part of the input
+     * @param inhibitory the inhibitory part of the input
+     */
+    public void setGroupInputs(final double excitatory,
+            final double inhibitory) {
+        this.groupExcitatoryInput = excitatory;
+        this.groupInhibitoryInput = inhibitory;
+    }
+
     /**
      * Set the input value of the neuron. This is used in
      * {@link #getWeightedInputs()} as an "external input" to the neuron. When
@@ -964,6 +1076,10 @@ public class Neuron {
      */
     public void setClamped(final boolean clamped) {
         this.clamped = clamped;
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            packed.setClamped(packedIndex, clamped);
+        }
         this.getNetwork().fireNeuronChanged(this);
     }
 
@@ -1172,18 +1288,117 @@ public class Neuron {
     }
 
     public boolean isSpike() {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            return packed.isSpike(packedIndex);
+        }
         return spike;
     }
 
+    /**
+     * Returns this neuron's activation as of a number of network updates ago,
+     * as recorded in its {@link DelayLine}.
+     *
+     * @param delay the number of updates ago
+     * @return the delayed activation
+     */
+    public double getDelayedActivation(final int delay) {
+        return recordDelayLine(delay).getActivation(delay);
+    }
+
+    /**
+     * Returns whether this neuron spiked a number of network updates ago, as
+     * recorded in its {@link DelayLine}.
+     *
+     * @param delay the number of updates ago
+     * @return whether the neuron spiked then
+     */
+    public boolean isDelayedSpike(final int delay) {
+        return recordDelayLine(delay).isSpike(delay);
+    }
+
+    /**
+     * Records the current activation and spike in this neuron's delay line
+     * for the current update, if it has a delay line and they have not been
+     * recorded already. Code which reads this neuron's spikes on behalf of
+     * delayed synapses without going through the delay line (e.g. event-driven
+     * synapse groups) calls this on every update so that the history has no
+     * gaps.
+     */
+    public void recordDelayLine() {
+        DelayLine line = delayLine;
+        if (line != null) {
+            line.record(parent.getUpdateCount(), getActivation(), isSpike());
+        }
+    }
+
+    /**
+     * Records the current activation and spike in the delay line for the
+     * current update, if they have not been already.
+     *
+     * @param delay the delay about to be read
+     * @return the delay line
+     */
+    private DelayLine recordDelayLine(final int delay) {
+        DelayLine line = delayLine;
+        if (line == null || line.getMaxDelay() < delay) {
+            line = reserveDelay(delay);
+        }
+        line.record(parent.getUpdateCount(), getActivation(), isSpike());
+        return line;
+    }
+
+    /**
+     * Makes sure this neuron's delay line holds at least a given number of
+     * updates, creating or lengthening it if need be. Called when an efferent
+     * synapse's delay is set.
+     *
+     * @param delay the longest delay the line must hold
+     * @return the delay line
+     */
+    public synchronized DelayLine reserveDelay(final int delay) {
+        DelayLine line = delayLine;
+        if (line == null) {
+            line = new DelayLine(delay);
+            delayLine = line;
+        } else if (line.getMaxDelay() < delay) {
+            line = new DelayLine(delay, line);
+            delayLine = line;
+        }
+        return line;
+    }
+
+    /**
+     * @return this neuron's delay line, or null if no efferent synapse has had
+     *         a delay.
+     */
+    public DelayLine getDelayLine() {
+        return delayLine;
+    }
+
     public void setSpike(boolean spike) {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            packed.setSpike(packedIndex, spike);
+            return;
+        }
         this.spike = spike;
     }
 
     public boolean getSpkBuffer() {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            return packed.getSpkBuffer(packedIndex);
+        }
         return spkBuffer;
     }
 
     public void setSpkBuffer(boolean spkBuffer) {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            packed.setSpkBuffer(packedIndex, spkBuffer);
+            return;
+        }
         this.spkBuffer = spkBuffer;
     }
 
@@ -1191,6 +1406,34 @@ public class Neuron {
      * @return the lastActivation
      */
     public double getLastActivation() {
+        PackedNeuronState packed = packedState;
+        if (packed != null) {
+            return packed.getLastActivation(packedIndex);
+        }
         return lastActivation;
     }
+
+    /**
+     * Moves this neuron's activation, buffers and spikes into or out of a
+     * packed state. While packed they are held only by the packed state; when
+     * released (or moved to another packed state) they are copied back into
+     * this neuron. Called by {@link PackedNeuronState}.
+     *
+     * @param state the packed state now holding this neuron's values, or null
+     *            to hold them in this neuron again
+     * @param index the index of this neuron in the packed state
+     */
+    public void setPackedState(final PackedNeuronState state,
+            final int index) {
+        PackedNeuronState old = packedState;
+        if (old != null) {
+            activation = old.getActivation(packedIndex);
+            lastActivation = old.getLastActivation(packedIndex);
+            buffer = old.getBuffer(packedIndex);
+            spike = old.isSpike(packedIndex);
+            spkBuffer = old.getSpkBuffer(packedIndex);
+        }
+        packedState = state;
+        packedIndex = index;
+    }
 }
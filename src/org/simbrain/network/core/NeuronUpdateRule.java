@@ -53,6 +53,8 @@ public abstract class NeuronUpdateRule {
 			@Override
 			public double[] getSeparatedInput(Neuron n) {
 				double [] ei = new double[2];
+				ei[0] = n.getGroupExcitatoryInput();
+				ei[1] = n.getGroupInhibitoryInput();
 				for (Synapse s : n.getFanIn()) {
 					double wt = s.calcWeightedSum();
 					if (wt > 0) {
@@ -107,6 +109,8 @@ public abstract class NeuronUpdateRule {
 			@Override
 			public double[] getSeparatedInput(Neuron n) {
 				double [] ei = new double[2];
+				ei[0] = n.getGroupExcitatoryInput();
+				ei[1] = n.getGroupInhibitoryInput();
 				for (Synapse s : n.getFanIn()) {
 					double psr = s.calcPSR();
 					if (psr > 0) {
@@ -0,0 +1,100 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.core;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.simbrain.network.core.NetworkSnapshot.Watch;
+
+/**
+ * Passes snapshots of the state of a network from the thread updating it to
+ * one thread reading them, without either waiting for the other. When set on
+ * a network (see {@link Network#setSnapshotBuffer(SnapshotBuffer)}) a snapshot
+ * is published after every update, and the reader samples the latest at its
+ * own rate; snapshots published in between are overwritten.
+ * <p>
+ * Three snapshots are used: one being written, one being read, and the latest
+ * published, which the writer and reader exchange for theirs. A snapshot is
+ * only ever held by one thread, so it is never read while being written.
+ */
+public final class SnapshotBuffer {
+
+    /** The neurons and synapses to capture. */
+    private volatile Watch watch = Watch.EMPTY;
+
+    /** The snapshot being written; used by the writer only. */
+    private NetworkSnapshot back = new NetworkSnapshot();
+
+    /** The latest snapshot published. */
+    private final AtomicReference<NetworkSnapshot> middle = new AtomicReference<NetworkSnapshot>(
+            new NetworkSnapshot());
+
+    /** The snapshot being read; used by the reader only. */
+    private NetworkSnapshot front = new NetworkSnapshot();
+
+    /**
+     * Sets the neurons and synapses captured by later snapshots.
+     *
+     * @param watch the neurons and synapses to capture
+     */
+    public void setWatch(final Watch watch) {
+        this.watch = watch;
+    }
+
+    /**
+     * @return the neurons and synapses captured by later snapshots
+     */
+    public Watch getWatch() {
+        return watch;
+    }
+
+    /**
+     * Capture the state of a network and publish it. Called by the thread
+     * updating the network.
+     *
+     * @param network the network
+     */
+    void publish(final Network network) {
+        Watch watched = watch;
+        if (watched.isEmpty()) {
+            return;
+        }
+        back.capture(network, watched);
+        back.fresh = true;
+        back = middle.getAndSet(back);
+    }
+
+    /**
+     * Take the latest snapshot published. The snapshot may be read until the
+     * next call. Called by the thread reading snapshots.
+     *
+     * @return the snapshot, or null if none has been published since the
+     *         last call
+     */
+    public NetworkSnapshot sample() {
+        // Only the reader marks a published snapshot as read, so one found
+        // fresh is still fresh, or replaced by a newer one, when exchanged
+        if (!middle.get().fresh) {
+            return null;
+        }
+        front.fresh = false;
+        front = middle.getAndSet(front);
+        return front;
+    }
+}
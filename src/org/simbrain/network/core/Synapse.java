@@ -114,18 +114,6 @@ public class Synapse {
      */
     private boolean frozen;
 
-    /** Manages synaptic delay */
-    private double[] delayManager;
-
-    /**
-     * Points to the location in the delay manager that corresponds to the
-     * current time.
-     */
-    private int dlyPtr = 0;
-
-    /** The value {@link #dlyPtr} points to in the delay manager. */
-    private double dlyVal = 0;
-
     /**
      * This special tag denotes that the synapse is a template to other
      * synapses. That is, it exists solely to store parameter values for a large
@@ -294,6 +282,54 @@ public class Synapse {
         return new Synapse(s);
     }
 
+    /**
+     * Copies a template synapse onto a pair of neurons without adding the
+     * copy to their fan-in or fan-out.
+     *
+     * @param template the synapse whose parameters to copy
+     * @param source the source neuron
+     * @param target the target neuron
+     */
+    private Synapse(final Synapse template, final Neuron source,
+            final Neuron target) {
+        setLearningRule(template.getLearningRule().deepCopy());
+        setUpperBound(template.getUpperBound());
+        setLowerBound(template.getLowerBound());
+        setIncrement(template.getIncrement());
+        setSpikeResponder(template.getSpikeResponder());
+        setEnabled(template.isEnabled());
+        this.source = source;
+        this.target = target;
+        parentNetwork = source.getNetwork();
+        isTemplate = false;
+    }
+
+    /**
+     * Makes a frozen synapse standing for a connection whose weight is held
+     * somewhere other than a synapse object (e.g. a sparse synapse group, see
+     * {@link org.simbrain.network.groups.SynapseGroup#getSynapseView()}). The
+     * synapse is not added to its neurons' fan-in or fan-out, so it takes no
+     * part in updates, and being frozen its strength cannot be changed.
+     *
+     * @param template the synapse whose other parameters to copy
+     * @param source the source neuron
+     * @param target the target neuron
+     * @param strength the strength of the connection
+     * @param id the id of the connection, or null for none
+     * @return the detached synapse
+     */
+    public static Synapse createDetached(final Synapse template,
+            final Neuron source, final Neuron target, final double strength,
+            final String id) {
+        Synapse s = new Synapse(template, source, target);
+        s.forceSetStrength(strength);
+        s.setFrozen(true);
+        if (id != null) {
+            s.id = id;
+        }
+        return s;
+    }
+
     /**
      * Set a default spike responder if the source neuron is a spiking neuron,
      * else set the spikeResponder to null.
@@ -331,20 +367,31 @@ public class Synapse {
             return 0;
         } else {
             if (spikeResponder != null) {
+                // Responders see delayed spikes through isSpikeArriving()
                 spikeResponder.update(this);
-            } else {
-                return calcWeightedSum();
-            }
-            if (delay == 0) {
                 return psr;
             } else {
-                dlyVal = dequeu();
-                enqueu(psr);
-                return dlyVal;
+                return calcWeightedSum();
             }
         }
     }
 
+    /**
+     * Whether a spike from the source neuron arrives at this synapse on the
+     * current update: whether the source is spiking if there is no delay,
+     * otherwise whether it spiked {@link #getDelay()} updates ago. Spike
+     * responders should use this rather than the source's spike state.
+     *
+     * @return true if a spike arrives
+     */
+    public boolean isSpikeArriving() {
+        if (delay == 0) {
+            return source.isSpike();
+        } else {
+            return source.isDelayedSpike(delay);
+        }
+    }
+
     /**
      * For non-spiking neurons returns the weighted sum, i.e. the activation of
      * the pre-synaptic (source) neuron multiplied by the strength of this
@@ -356,14 +403,12 @@ public class Synapse {
         if (!enabled) {
             return 0;
         } else {
-            psr = source.getActivation() * strength;
-            if (delay != 0) {
-                dlyVal = dequeu();
-                enqueu(psr);
-                return dlyVal;
+            if (delay == 0) {
+                psr = source.getActivation() * strength;
             } else {
-                return psr;
+                psr = source.getDelayedActivation(delay) * strength;
             }
+            return psr;
         }
     }
 
@@ -652,7 +697,11 @@ public class Synapse {
     }
 
     /**
-     * Delay manager.
+     * Sets the number of updates it takes the source neuron's activation or
+     * spikes to reach the target. Delayed values are read from the source
+     * neuron's {@link DelayLine}, which is shared by all its efferent
+     * synapses. Weighted inputs multiply the delayed activation by the
+     * current strength.
      *
      * @param dly Amount of delay
      */
@@ -661,19 +710,9 @@ public class Synapse {
             return;
         }
         delay = dly;
-
-        if (delay <= 0) {
-            delayManager = null;
-
-            return;
-        }
-
-        delayManager = new double[delay];
-
-        for (int i = 0; i < delay; i++) {
-            delayManager[i] = 0;
+        if (delay > 0 && source != null) {
+            source.reserveDelay(delay);
         }
-        dlyPtr = 0;
     }
 
     //
@@ -708,29 +747,6 @@ public class Synapse {
         return delay;
     }
 
-    /**
-     * @return the deque.
-     */
-    private double dequeu() {
-        if (dlyPtr == delay) {
-            dlyPtr = 0;
-        }
-        return delayManager[dlyPtr++];
-    }
-
-    /**
-     * Enqueeu.
-     *
-     * @param val Value to enqueu
-     */
-    private void enqueu(final double val) {
-        if (dlyPtr == 0) {
-            delayManager[delay - 1] = val;
-        } else {
-            delayManager[dlyPtr - 1] = val;
-        }
-    }
-
     @Override
     public String toString() {
         String ret = new String();
@@ -972,12 +988,10 @@ public class Synapse {
         bBuf.putInt(delay);
         bBuf.putDouble(strength);
         bBuf.putDouble(psr);
-        if (delay > 0) {
-            for (double d : delayManager) {
-                bBuf.putDouble(d);
-            }
-        }
-        bBuf.putInt(dlyPtr);
+        // Delayed values are held by the source neuron's delay line. The
+        // space the per-synapse delay buffer used to take is kept (zeroed) so
+        // that the format is unchanged.
+        bBuf.position(bBuf.position() + 8 * Math.max(delay, 0) + 4);
         byte enFr = 0x0;
         byte en = (byte) (enabled ? 2 : 0);
         byte fr = (byte) (frozen ? 1 : 0);
@@ -990,12 +1004,9 @@ public class Synapse {
         setDelay(byteValues.getInt());
         setStrength(byteValues.getDouble());
         setPsr(byteValues.getDouble());
-        if (delay > 0) {
-            for (int i = 0; i < delay; i++) {
-                delayManager[i] = byteValues.getDouble();
-            }
-        }
-        dlyPtr = byteValues.getInt();
+        // Skip the per-synapse delay buffer of older versions.
+        byteValues.position(byteValues.position() + 8 * Math.max(delay, 0)
+                + 4);
         byte enFr = byteValues.get();
         setEnabled(enFr >= 2);
         setFrozen(enFr == 1 || enFr == 3);
@@ -1025,6 +1036,10 @@ public class Synapse {
                 System.out.println("Warning:" + getId() + " has null fanOut");
                 // removeSynapse(synapse);
             }
+            // Delay lines are not saved
+            if (delay > 0) {
+                getSource().reserveDelay(delay);
+            }
         }
 
     }
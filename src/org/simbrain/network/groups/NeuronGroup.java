@@ -23,6 +23,7 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -34,11 +35,15 @@ import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.core.Synapse;
+import org.simbrain.network.inputs.InputSource;
 import org.simbrain.network.layouts.GridLayout;
 import org.simbrain.network.layouts.Layout;
 import org.simbrain.network.layouts.LineLayout;
 import org.simbrain.network.layouts.LineLayout.LineOrientation;
 import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.neuron_update_rules.packed.PackedNeuronState;
+import org.simbrain.network.recording.ActivationRecorder;
+import org.simbrain.network.recording.RecordingFormat;
 import org.simbrain.util.Utils;
 import org.simbrain.util.math.SimbrainMath;
 
@@ -100,6 +105,16 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     /** Data (input vectors) for testing the network. */
     private double[][] testData;
 
+    /**
+     * A source of input rows used in input mode in place of
+     * {@link #testData}, for inputs too large to hold in memory. Not saved
+     * with the network (see {@link #postUnmarshallingInit()}).
+     */
+    private InputSource inputSource;
+
+    /** The row most recently read from {@link #inputSource}. */
+    private double[] inputRow;
+
     /**
      * Whether or not {@link #writeActsToFile()} will write activations as a
      * state matrix or a spike train.
@@ -109,6 +124,12 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     /** The output stream which writes activation values to a file.*/
     private PrintWriter valueWriter;
 
+    /**
+     * Writes activations or spikes to a binary file when recording in binary
+     * form, in place of {@link #valueWriter}.
+     */
+    private ActivationRecorder recorder;
+
     /** Whether or not this group is in a state that allows recording. */
     private boolean recording;
 
@@ -134,6 +155,35 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     
     /** Indices used with subsampling. */
     private int[] subsamplingIndices;
+
+    /**
+     * Whether this group is updated in "packed" mode, where neuron state is
+     * held in primitive arrays and updated in bulk. See
+     * {@link PackedNeuronState}.
+     */
+    private boolean packed = false;
+
+    /**
+     * The packed state of the neurons when in packed mode. Built lazily on
+     * update and discarded whenever the neurons or their rules change. Null
+     * when not packed or when the group's neurons cannot be packed (e.g. mixed
+     * rule types), in which case the group updates normally.
+     */
+    private PackedNeuronState packedState;
+
+    /**
+     * Scratch array in which the excitatory inputs from incoming synapse
+     * groups that compute their input in bulk (see
+     * {@link SynapseGroup#prepareGroupInputs()}) are accumulated each update.
+     * Null when no incoming synapse group does.
+     */
+    private double[] groupExInputs;
+
+    /**
+     * Scratch array for the inhibitory inputs from incoming synapse groups
+     * that compute their input in bulk. See {@link #groupExInputs}.
+     */
+    private double[] groupInInputs;
     
     /**
      * Reset the indices used for subsampling
@@ -290,14 +340,25 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     @Override
     public void update() {
         if (inputMode) {
-            if (testData == null) {
+            if (testData == null && inputSource == null) {
                 throw new NullPointerException("Test data variable is null,"
                         + " but neuron group " + getLabel() + " is in input"
                         + " mode.");
             }
             // Surrounded by checks, so actually safe.
             readNextInputUnsafe();
+        } else if (packed) {
+            updateGroupInputs();
+            if (packedState == null) {
+                packedState = PackedNeuronState.pack(neuronList);
+            }
+            if (packedState != null) {
+                packedState.update(getParentNetwork());
+            } else {
+                Network.updateNeurons(neuronList);
+            }
         } else {
+            updateGroupInputs();
             Network.updateNeurons(neuronList);
         }
         if (isRecording()) {
@@ -313,7 +374,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      */
     public void readNextInputs() {
         if (inputMode) {
-            if (testData == null) {
+            if (testData == null && inputSource == null) {
                 throw new NullPointerException("Test data variable is null,"
                         + " but neuron group " + getLabel() + " is in input"
                         + " mode.");
@@ -335,22 +396,36 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      *  being injected into the cell, for non-spiking neurons activations are
      *  set immediately to the value at that index in the table.
      *  
+     *  If the group has an {@link #inputSource} the row is read from it
+     *  instead. When the source is exhausted the last row read is applied
+     *  again.
+     *
      *  This method is unsafe because it does not check if the group is in
      *  input mode or if the input table is non-null. 
      */
     private void readNextInputUnsafe() {
-        if (inputIndex >= testData.length) {
-            inputIndex = 0;
+        double[] inputs;
+        if (inputSource != null) {
+            if (inputRow == null || inputRow.length != size()) {
+                inputRow = new double[size()];
+            }
+            inputSource.nextRow(inputRow);
+            inputs = inputRow;
+        } else {
+            if (inputIndex >= testData.length) {
+                inputIndex = 0;
+            }
+            inputs = testData[inputIndex];
+            inputIndex++;
         }
         if (isSpikingNeuronGroup()) {
-            setInputValues(testData[inputIndex]);
+            setInputValues(inputs);
             for (int i = 0; i < size(); i++) {
                 neuronList.get(i).setToBufferVals();
             }
         } else {
-            forceSetActivations(testData[inputIndex]);
+            forceSetActivations(inputs);
         }
-        inputIndex++;
     }
 
     /**
@@ -364,6 +439,10 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * activations differently if the neuron group contains only spiking
      * neurons.
      *
+     * If the file has the extension {@link ActivationRecorder#FILE_EXTENSION}
+     * the recording is binary (see {@link #startRecording(File,
+     * RecordingFormat)}), with activations as floats, otherwise it is text.
+     *
      * @param outputFile the file to write the activations to 
      */
     public void startRecording(final File outputFile) {
@@ -374,17 +453,46 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
                 break;
             }
         }
+        if (outputFile.getName().toLowerCase().endsWith("."
+                + ActivationRecorder.FILE_EXTENSION)) {
+            startRecording(outputFile, spikeRecord ? RecordingFormat.SPIKES
+                    : RecordingFormat.FLOAT);
+            return;
+        }
+        closeRecording();
         recordAsSpikes = spikeRecord;
-        recording = true;
         try {
-            if (valueWriter != null) {
-                valueWriter.close();
-            }
             FileWriter fw = new FileWriter(outputFile);
             valueWriter = new PrintWriter(fw);
         } catch (IOException e) {
             e.printStackTrace();
         }
+        // Only record if the file could be opened
+        recording = valueWriter != null;
+        this.getParentNetwork().fireGroupParametersChanged(this);
+        this.getParentNetwork().fireGroupChanged(this, "Recording Started");
+    }
+
+    /**
+     * Starts recording activations or spikes to a binary file, which can be
+     * read with {@link org.simbrain.network.recording.ActivationRecording}.
+     * Values are copied out on each update and written to the file on a
+     * separate thread, so recording large groups costs the update little.
+     *
+     * @param outputFile the file to write to
+     * @param format whether to record activations (as floats or doubles) or
+     *            spikes
+     */
+    public void startRecording(final File outputFile,
+            final RecordingFormat format) {
+        closeRecording();
+        recordAsSpikes = format.isSpikes();
+        try {
+            recorder = new ActivationRecorder(outputFile, format, size());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        recording = recorder != null;
         this.getParentNetwork().fireGroupParametersChanged(this);
         this.getParentNetwork().fireGroupChanged(this, "Recording Started");
     }
@@ -393,13 +501,28 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * Halts recording of activations. Closes all involved output streams.
      */
     public void stopRecording() {
+        closeRecording();
+        recording = false;
+        this.getParentNetwork().fireGroupParametersChanged(this);
+        this.getParentNetwork().fireGroupChanged(this, "Recording Stopped");
+    }
+
+    /**
+     * Closes whichever output stream is open.
+     */
+    private void closeRecording() {
         if (valueWriter != null) {
             valueWriter.close();
             valueWriter = null;
         }
-        recording = false;
-        this.getParentNetwork().fireGroupParametersChanged(this);
-        this.getParentNetwork().fireGroupChanged(this, "Recording Stopped");
+        if (recorder != null) {
+            try {
+                recorder.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            recorder = null;
+        }
     }
 
     /**
@@ -409,9 +532,14 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * methods writes the activations to a file as spike trains in [neuron
      * id][spk time] couplets. Otherwise it writes the neurons' activation
      * values as a state matrix to the file. Flushes the output stream every
-     * {@link #FLUSH_FREQUENCY} invocations.
+     * {@link #FLUSH_FREQUENCY} invocations. Binary recordings are handed to
+     * their {@link ActivationRecorder} instead.
      */
     public void writeActsToFile() {
+        if (recorder != null) {
+            recorder.record(getParentNetwork().getTime(), neuronList);
+            return;
+        }
         try {
             if (writeCounter >= FLUSH_FREQUENCY) {
                 valueWriter.flush();
@@ -505,6 +633,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         for (Neuron neuron : neuronList) {
             neuron.setUpdateRule(base.deepCopy());
         }
+        invalidatePackedState();
     }
 
     /**
@@ -527,6 +656,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         for (Neuron neuron : neuronList) {
             neuron.setUpdateRule(rule);
         }
+        invalidatePackedState();
     }
 
     /**
@@ -635,6 +765,7 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      *            whether to fire a neuron added event
      */
     public void addNeuron(Neuron neuron, boolean fireEvent) {
+        invalidatePackedState();
         neuronList.add(neuron);
         neuron.setParentGroup(this);
         if (getParentNetwork() != null) {
@@ -665,6 +796,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      *            the neuron to delete
      */
     public void removeNeuron(Neuron toDelete) {
+        invalidatePackedState();
+        materializeSynapseGroups();
         neuronList.remove(toDelete);
         if (isEmpty()) {
             delete();
@@ -676,6 +809,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * Removes all neurons with no incoming or outgoing synapses from the group.
      */
     public void prune() {
+        invalidatePackedState();
+        materializeSynapseGroups();
         Iterator<Neuron> reaper = neuronList.iterator();
         while (reaper.hasNext()) {
             Neuron n = reaper.next();
@@ -1375,6 +1510,52 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         this.testData = testData;
     }
 
+    /**
+     * @return the source of input rows used in input mode in place of the
+     *         test data, or null if the test data is used.
+     */
+    public InputSource getInputSource() {
+        return inputSource;
+    }
+
+    /**
+     * Sets a source of input rows to be used in input mode in place of the
+     * test data, e.g. a
+     * {@link org.simbrain.network.inputs.MappedInputSource} streaming a
+     * table too large to hold in memory. The group does not close the
+     * source. The source is not saved with the network.
+     *
+     * @param inputSource the source, or null to use the test data again
+     * @exception IllegalArgumentException if the source's rows are not as
+     *                long as the group
+     */
+    public void setInputSource(InputSource inputSource)
+            throws IllegalArgumentException {
+        if (inputSource != null && inputSource.getNumColumns() != size()) {
+            throw new IllegalArgumentException("Data Inconsistency:"
+                    + " Input source does not have a column number equal"
+                    + " to the number of neurons in the group.");
+        }
+        if (inputSource != null) {
+            testAndSetIfSpiking();
+        } else if (testData == null && inputMode) {
+            throw new IllegalArgumentException("Cannot remove the input"
+                    + " source of a group in input mode without test data.");
+        }
+        this.inputSource = inputSource;
+    }
+
+    /**
+     * Initializes the group after it is opened. Input sources are not saved,
+     * so a group which was in input mode reading from one, with no test data
+     * to fall back on, is taken out of input mode.
+     */
+    public void postUnmarshallingInit() {
+        if (inputMode && testData == null && inputSource == null) {
+            inputMode = false;
+        }
+    }
+
     /**
      * Tests if this neuron group can be considered a spiking neuron group
      * and sets that value to true/false acordingly.
@@ -1458,6 +1639,8 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
      * Clear the neuron list.
      */
     public void clearNeuronList() {
+        invalidatePackedState();
+        materializeSynapseGroups();
         neuronList.clear();
     }
 
@@ -1517,21 +1700,18 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
     /**
      * Sets whether or not this neuron group is in input mode. When in input
      * mode the neuron group will draw activations from its {@link #testData}
-     *  field instead of from any impinging synapses or its own neuron update
-     *  functions. This function removes the neurons from the neuron set in
-     *  ConcurrentBufferedUpdate, preventing it from updating the neurons in
-     *  this group, and re-adds those neurons when input mode is turned off.
-     *  Thus the update action associated with this neuron group MUST be added
-     *  to the network update sequence even if ParallelBufferedUpdate is
-     *  selected in order for input values to update the group properly.
+     *  field (or its {@link #inputSource}, if set) instead of from any
+     *  impinging synapses or its own neuron update functions. Parallel
+     *  buffered update reads the inputs of groups in input mode itself
+     *  instead of updating their neurons.
      * @param inputMode whether or not this group will run in input mode during
      * network and workspace updates.
      * @throws IllegalArgumentException if input mode is set to true, but the
-     * {@link #testData} field is set to null.
+     * {@link #testData} field is set to null and there is no input source.
      */
     public void setInputMode(boolean inputMode)
             throws IllegalArgumentException {
-        if (testData == null && inputMode) {
+        if (testData == null && inputSource == null && inputMode) {
             throw new IllegalArgumentException("Cannot set input mode to true"
                     + " if there is no input data stored in NeuronGroup field:"
                     + " testData");
@@ -1545,6 +1725,114 @@ public class NeuronGroup extends Group implements CopyableGroup<NeuronGroup> {
         return isSpikingNeuronGroup;
     }
 
+    /**
+     * @return true if this group is in packed mode.
+     */
+    public boolean isPacked() {
+        return packed;
+    }
+
+    /**
+     * Sets whether this group is updated in packed mode. In packed mode the
+     * activations, buffers, spikes and rule state variables of the neurons
+     * are held in contiguous primitive arrays and updated by bulk kernels,
+     * which is much faster for large groups. The neurons themselves remain
+     * usable (by the GUI, couplings, scripts, etc.): their accessors read and
+     * write the arrays while packed. Packed mode only takes effect when all neurons use the
+     * same rule and that rule has a packed kernel (Linear, Sigmoidal,
+     * Izhikevich, Integrate and Fire and AdEx); otherwise the group updates
+     * normally.
+     *
+     * @param packed whether to use packed mode
+     */
+    public void setPacked(boolean packed) {
+        if (!packed) {
+            invalidatePackedState();
+        }
+        this.packed = packed;
+    }
+
+    /**
+     * Discards the packed state of this group (if any) after writing the
+     * neuron and rule state it holds back to the neurons. The state is rebuilt on the next
+     * update. Must be called when neurons are added or removed, when update
+     * rules are replaced, or when rule parameters are edited, since the
+     * packed state holds copies of rule parameters.
+     */
+    public void invalidatePackedState() {
+        if (packedState != null) {
+            packedState.unpack();
+            packedState = null;
+        }
+    }
+
+    /**
+     * @return the packed state of this group, or null if the group is not
+     *         packed or has not been updated since it was last invalidated.
+     */
+    public PackedNeuronState getPackedState() {
+        return packedState;
+    }
+
+    /**
+     * Computes the input delivered to each neuron by incoming synapse groups
+     * which compute the input to their targets in bulk (sparse weight
+     * matrices, event-driven spike propagation) and sets it as the neurons'
+     * group inputs. Clears the neurons' group inputs once no incoming group
+     * does so any longer. Called at the start of {@link #update()}; update
+     * actions which update this group's neurons without calling
+     * {@link #update()} must call it first.
+     */
+    public void updateGroupInputs() {
+        boolean anyGroupInputs = false;
+        for (SynapseGroup sg : incomingSgs) {
+            if (!sg.prepareGroupInputs()) {
+                continue;
+            }
+            if (!anyGroupInputs) {
+                if (groupExInputs == null
+                        || groupExInputs.length != neuronList.size()) {
+                    groupExInputs = new double[neuronList.size()];
+                    groupInInputs = new double[neuronList.size()];
+                } else {
+                    Arrays.fill(groupExInputs, 0);
+                    Arrays.fill(groupInInputs, 0);
+                }
+                anyGroupInputs = true;
+            }
+            sg.addGroupInputs(groupExInputs, groupInInputs);
+        }
+        if (anyGroupInputs) {
+            for (int i = 0, n = groupExInputs.length; i < n; i++) {
+                neuronList.get(i).setGroupInputs(groupExInputs[i],
+                        groupInInputs[i]);
+            }
+        } else if (groupExInputs != null) {
+            for (Neuron neuron : neuronList) {
+                neuron.setGroupInputs(0, 0);
+            }
+            groupExInputs = null;
+            groupInInputs = null;
+        }
+    }
+
+    /**
+     * Converts any sparse synapse group entering or leaving this group back
+     * to synapse objects, and suspends event-driven propagation through them.
+     * Both index neurons by position, so this must be done before neurons are
+     * removed.
+     */
+    private void materializeSynapseGroups() {
+        for (SynapseGroup sg : incomingSgs) {
+            sg.materializeSynapses();
+            sg.suspendEventDriven();
+        }
+        for (SynapseGroup sg : outgoingSgs) {
+            sg.materializeSynapses();
+            sg.suspendEventDriven();
+        }
+    }
+
     public void setSpikingNeuronGroup(boolean isSpikingNeuronGroup) {
         this.isSpikingNeuronGroup = isSpikingNeuronGroup;
     }
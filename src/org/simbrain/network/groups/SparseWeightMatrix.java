@@ -0,0 +1,606 @@
+/*
+ * Copyright (C) 2005,2007 The Authors. See http://www.simbrain.net/credits This
+ * program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package org.simbrain.network.groups;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
+
+/**
+ * The weights of a synapse group stored in compressed sparse row (CSR) format,
+ * where rows are source neurons and columns are target neurons. This is the
+ * runtime counterpart of
+ * {@link SynapseGroup#getRowCompressedMatrixRepresentation()}: each synapse
+ * costs one int (its target index) plus one double or float (its strength)
+ * instead of a full {@link Synapse} object, and the input a synapse group
+ * delivers to its target neurons is computed as a single sparse matrix-vector
+ * product.
+ *
+ * Within a row, entries are sorted by target index. Each entry keeps the id of
+ * the synapse it stands for, so that synapses recreated from the matrix (see
+ * {@link SynapseGroup#materializeSynapses()}) keep their ids.
+ */
+public class SparseWeightMatrix {
+
+    /** The prefix of the synapse ids given by a network. */
+    private static final String ID_PREFIX = "Synapse_";
+
+    /** Number of rows (source neurons). */
+    private final int numSources;
+
+    /** Number of columns (target neurons). */
+    private final int numTargets;
+
+    /**
+     * Index of the first entry of each row. Row i occupies entries
+     * rowPtr[i] (inclusive) to rowPtr[i + 1] (exclusive).
+     */
+    private final int[] rowPtr;
+
+    /** Target (column) index of each entry. */
+    private final int[] targetIndices;
+
+    /** Strength of each entry, if stored at double precision; else null. */
+    private final double[] dStrengths;
+
+    /** Strength of each entry, if stored at float precision; else null. */
+    private final float[] fStrengths;
+
+    /**
+     * The inhibitory entries; the rest are excitatory. Kept apart from the
+     * strengths so that an entry whose strength is zero keeps its polarity.
+     */
+    private final BitSet inhibitory;
+
+    /** Number of excitatory entries. */
+    private final int numExcitatory;
+
+    /**
+     * The number N of the id "Synapse_N" of each entry's synapse, or -1 if
+     * its id is not of that form, in which case it is in {@link #otherIds}.
+     */
+    private final int[] idNumbers;
+
+    /** Ids of entries which are not of the form "Synapse_N", by entry. */
+    private final Map<Integer, String> otherIds;
+
+    /**
+     * Builds a sparse matrix from the synapses of a synapse group. Each target
+     * neuron's fan-in is visited in target order, so that each row comes out
+     * sorted by target index without a separate sort.
+     *
+     * @param sources the source neurons (rows), in index order
+     * @param targets the target neurons (columns), in index order
+     * @param exSynapses the excitatory synapses of the group
+     * @param inSynapses the inhibitory synapses of the group
+     * @param precision the precision with which to store strengths
+     * @throws IllegalStateException if a synapse of the group does not appear
+     *             in the fan-in of a target neuron.
+     */
+    SparseWeightMatrix(final List<Neuron> sources, final List<Neuron> targets,
+            final Set<Synapse> exSynapses, final Set<Synapse> inSynapses,
+            final Precision precision) {
+        numSources = sources.size();
+        numTargets = targets.size();
+        Map<Neuron, Integer> srcMap = new HashMap<Neuron, Integer>(
+                (int) (numSources / 0.75) + 1);
+        for (int i = 0; i < numSources; i++) {
+            srcMap.put(sources.get(i), i);
+        }
+        // First pass: count the entries in each row.
+        rowPtr = new int[numSources + 1];
+        for (int j = 0; j < numTargets; j++) {
+            for (Synapse s : targets.get(j).getFanIn()) {
+                if (exSynapses.contains(s) || inSynapses.contains(s)) {
+                    rowPtr[srcMap.get(s.getSource()) + 1]++;
+                }
+            }
+        }
+        for (int i = 0; i < numSources; i++) {
+            rowPtr[i + 1] += rowPtr[i];
+        }
+        int nnz = rowPtr[numSources];
+        if (nnz != exSynapses.size() + inSynapses.size()) {
+            throw new IllegalStateException("Synapse group contains synapses"
+                    + " which are not connected to its target neurons.");
+        }
+        // Second pass: fill in the rows.
+        targetIndices = new int[nnz];
+        idNumbers = new int[nnz];
+        otherIds = new HashMap<Integer, String>();
+        if (precision == Precision.FLOAT_32) {
+            fStrengths = new float[nnz];
+            dStrengths = null;
+        } else {
+            dStrengths = new double[nnz];
+            fStrengths = null;
+        }
+        inhibitory = new BitSet(nnz);
+        int[] cursor = new int[numSources];
+        System.arraycopy(rowPtr, 0, cursor, 0, numSources);
+        for (int j = 0; j < numTargets; j++) {
+            for (Synapse s : targets.get(j).getFanIn()) {
+                if (exSynapses.contains(s) || inSynapses.contains(s)) {
+                    int k = cursor[srcMap.get(s.getSource())]++;
+                    targetIndices[k] = j;
+                    idNumbers[k] = parseIdNumber(s.getId());
+                    if (idNumbers[k] < 0) {
+                        otherIds.put(k, s.getId());
+                    }
+                    if (dStrengths != null) {
+                        dStrengths[k] = s.getStrength();
+                    } else {
+                        fStrengths[k] = (float) s.getStrength();
+                    }
+                    if (!exSynapses.contains(s)) {
+                        inhibitory.set(k);
+                    }
+                }
+            }
+        }
+        numExcitatory = nnz - inhibitory.cardinality();
+    }
+
+    /**
+     * Builds a sparse matrix from arrays already in compressed sparse row
+     * format.
+     *
+     * @param numSources number of rows
+     * @param numTargets number of columns
+     * @param rowPtr index of the first entry of each row, and one past the
+     *            last
+     * @param targetIndices target index of each entry
+     * @param dStrengths strengths at double precision, or null
+     * @param fStrengths strengths at float precision, or null
+     * @param inhibitory the inhibitory entries
+     * @param idNumbers id numbers of the entries
+     * @param otherIds ids of entries not of the form "Synapse_N"
+     */
+    private SparseWeightMatrix(final int numSources, final int numTargets,
+            final int[] rowPtr, final int[] targetIndices,
+            final double[] dStrengths, final float[] fStrengths,
+            final BitSet inhibitory, final int[] idNumbers,
+            final Map<Integer, String> otherIds) {
+        this.numSources = numSources;
+        this.numTargets = numTargets;
+        this.rowPtr = rowPtr;
+        this.targetIndices = targetIndices;
+        this.dStrengths = dStrengths;
+        this.fStrengths = fStrengths;
+        this.inhibitory = inhibitory;
+        this.idNumbers = idNumbers;
+        this.otherIds = otherIds;
+        numExcitatory = targetIndices.length - inhibitory.cardinality();
+    }
+
+    /**
+     * Returns a copy of this matrix storing strengths at another precision.
+     *
+     * @param precision the precision of the copy
+     * @return the copy, or this matrix if it already has that precision
+     */
+    SparseWeightMatrix withPrecision(final Precision precision) {
+        if (precision == getPrecision()) {
+            return this;
+        }
+        int nnz = targetIndices.length;
+        double[] d = null;
+        float[] f = null;
+        if (precision == Precision.FLOAT_32) {
+            f = new float[nnz];
+            for (int k = 0; k < nnz; k++) {
+                f[k] = (float) dStrengths[k];
+            }
+        } else {
+            d = new double[nnz];
+            for (int k = 0; k < nnz; k++) {
+                d[k] = fStrengths[k];
+            }
+        }
+        return new SparseWeightMatrix(numSources, numTargets, rowPtr,
+                targetIndices, d, f, inhibitory, idNumbers, otherIds);
+    }
+
+    /**
+     * Parses the number N of a synapse id of the form "Synapse_N".
+     *
+     * @param id the id
+     * @return N, or -1 if the id is not of that form
+     */
+    private static int parseIdNumber(final String id) {
+        if (id == null || !id.startsWith(ID_PREFIX)) {
+            return -1;
+        }
+        String num = id.substring(ID_PREFIX.length());
+        try {
+            int n = Integer.parseInt(num);
+            // Only ids which print back the same way, e.g. not "Synapse_01"
+            return n >= 0 && Integer.toString(n).equals(num) ? n : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Adds the weighted input this matrix delivers to each target neuron to a
+     * pair of accumulators, i.e. computes W<sup>T</sup>a where a is the vector
+     * of source activations, with positive products added to the excitatory
+     * accumulator and the rest to the inhibitory one (as
+     * {@link org.simbrain.network.core.NeuronUpdateRule.InputType
+     * #getSeparatedInput(Neuron)} separates weighted inputs). Sources with
+     * zero activation are skipped, so the cost scales with the number of
+     * active sources.
+     *
+     * @param sources the source neurons, in index order
+     * @param exOut excitatory accumulator indexed by target neuron
+     * @param inOut inhibitory accumulator indexed by target neuron
+     */
+    public void multiply(final List<Neuron> sources, final double[] exOut,
+            final double[] inOut) {
+        for (int i = 0; i < numSources; i++) {
+            double act = sources.get(i).getActivation();
+            if (act == 0) {
+                continue;
+            }
+            for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+                double wt = act * (dStrengths != null ? dStrengths[k]
+                        : fStrengths[k]);
+                if (wt > 0) {
+                    exOut[targetIndices[k]] += wt;
+                } else {
+                    inOut[targetIndices[k]] += wt;
+                }
+            }
+        }
+    }
+
+    /**
+     * @return a row compressed representation of the matrix in the format of
+     *         {@link SynapseGroup#getRowCompressedMatrixRepresentation()}.
+     */
+    public long[] toRowCompressedRepresentation() {
+        int numSyns = getNumEntries();
+        long[] compRowRep = new long[numSources + (2 * numSyns)];
+        compRowRep[0] = numSyns;
+        int l = 1;
+        int currRow = 0;
+        for (int i = 0; i < numSources; i++) {
+            for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+                while (currRow < i) {
+                    compRowRep[l++] = -1L;
+                    currRow++;
+                }
+                compRowRep[l++] = targetIndices[k];
+                compRowRep[numSyns + numSources + k] = Double
+                        .doubleToLongBits(getStrength(k));
+            }
+        }
+        return compRowRep;
+    }
+
+    /**
+     * @return the number of stored entries (synapses).
+     */
+    public int getNumEntries() {
+        return targetIndices.length;
+    }
+
+    /**
+     * @return the number of entries whose strength is not negative.
+     */
+    public int getNumExcitatory() {
+        return numExcitatory;
+    }
+
+    /**
+     * @return the number of entries whose strength is negative.
+     */
+    public int getNumInhibitory() {
+        return targetIndices.length - numExcitatory;
+    }
+
+    /**
+     * @return the number of rows (source neurons).
+     */
+    public int getNumSources() {
+        return numSources;
+    }
+
+    /**
+     * @return the number of columns (target neurons).
+     */
+    public int getNumTargets() {
+        return numTargets;
+    }
+
+    /**
+     * @param row a source index
+     * @return the index of the first entry of the row
+     */
+    public int getRowStart(final int row) {
+        return rowPtr[row];
+    }
+
+    /**
+     * @param row a source index
+     * @return one past the index of the last entry of the row
+     */
+    public int getRowEnd(final int row) {
+        return rowPtr[row + 1];
+    }
+
+    /**
+     * @param k an entry index
+     * @return the target index of the entry
+     */
+    public int getTargetIndex(final int k) {
+        return targetIndices[k];
+    }
+
+    /**
+     * @param k an entry index
+     * @return the strength of the entry
+     */
+    public double getStrength(final int k) {
+        return dStrengths != null ? dStrengths[k] : fStrengths[k];
+    }
+
+    /**
+     * @param k an entry index
+     * @return whether the entry is excitatory. This is its polarity when it
+     *         was added, which holds even if its strength is zero.
+     */
+    public boolean isExcitatory(final int k) {
+        return !inhibitory.get(k);
+    }
+
+    /**
+     * Multiplies every strength by a non-negative factor, which leaves the
+     * polarity of every entry unchanged.
+     *
+     * @param factor the factor
+     */
+    void scale(final double factor) {
+        if (dStrengths != null) {
+            for (int k = 0; k < dStrengths.length; k++) {
+                dStrengths[k] *= factor;
+            }
+        } else {
+            for (int k = 0; k < fStrengths.length; k++) {
+                fStrengths[k] *= factor;
+            }
+        }
+    }
+
+    /**
+     * @param k an entry index
+     * @return the id of the synapse the entry stands for, or null if it had
+     *         none
+     */
+    public String getId(final int k) {
+        int n = idNumbers[k];
+        if (n >= 0) {
+            return ID_PREFIX + n;
+        }
+        return otherIds.get(k);
+    }
+
+    /**
+     * @return the precision with which strengths are stored.
+     */
+    public Precision getPrecision() {
+        return dStrengths != null ? Precision.FLOAT_64 : Precision.FLOAT_32;
+    }
+
+    /**
+     * Collects the entries of a sparse matrix one connection at a time, in any
+     * order, without synapse objects, and sorts them into compressed sparse
+     * row format. Used by {@link SynapseGroup#makeSparseConnections(Precision)}
+     * to build a sparse group straight from its connection strategy.
+     */
+    static final class Builder {
+
+        /** Row index of each source neuron. */
+        private final Map<Neuron, Integer> srcMap;
+
+        /** Column index of each target neuron. */
+        private final Map<Neuron, Integer> tarMap;
+
+        /** Number of rows (source neurons). */
+        private final int numSources;
+
+        /** Number of columns (target neurons). */
+        private final int numTargets;
+
+        /** Row of each entry added. */
+        private int[] rows = new int[64];
+
+        /** Column of each entry added. */
+        private int[] cols = new int[64];
+
+        /** Strength of each entry added. */
+        private double[] strengths = new double[64];
+
+        /** The entries added as inhibitory. */
+        private final BitSet inhibitory = new BitSet();
+
+        /** Id number of each entry added, or -1 (see {@link #others}). */
+        private int[] ids = new int[64];
+
+        /** Ids of entries added which are not of the form "Synapse_N". */
+        private final Map<Integer, String> others = new HashMap<Integer, String>();
+
+        /** The number of entries added. */
+        private int size;
+
+        /** The number of entries added as excitatory. */
+        private int numExcitatory;
+
+        /**
+         * @param sources the source neurons (rows), in index order
+         * @param targets the target neurons (columns), in index order
+         */
+        Builder(final List<Neuron> sources, final List<Neuron> targets) {
+            srcMap = indexMap(sources);
+            tarMap = indexMap(targets);
+            numSources = sources.size();
+            numTargets = targets.size();
+        }
+
+        /**
+         * @param neurons a list of neurons
+         * @return the index of each neuron in the list
+         */
+        private static Map<Neuron, Integer> indexMap(
+                final List<Neuron> neurons) {
+            Map<Neuron, Integer> map = new HashMap<Neuron, Integer>(
+                    (int) (neurons.size() / 0.75) + 1);
+            for (int i = 0, n = neurons.size(); i < n; i++) {
+                map.put(neurons.get(i), i);
+            }
+            return map;
+        }
+
+        /**
+         * Add a connection.
+         *
+         * @param source the source neuron
+         * @param target the target neuron
+         * @param strength the strength of the connection
+         * @param excitatory whether the connection was made excitatory
+         * @param id the id of the connection
+         * @throws IllegalArgumentException if the source or target is not one
+         *             of the neurons of the matrix
+         */
+        void add(final Neuron source, final Neuron target,
+                final double strength, final boolean excitatory,
+                final String id) {
+            Integer row = srcMap.get(source);
+            Integer col = tarMap.get(target);
+            if (row == null || col == null) {
+                throw new IllegalArgumentException("Connection from "
+                        + source.getId() + " to " + target.getId()
+                        + " is not between the neurons of the group.");
+            }
+            if (size == rows.length) {
+                int capacity = size + (size >> 1);
+                rows = Arrays.copyOf(rows, capacity);
+                cols = Arrays.copyOf(cols, capacity);
+                strengths = Arrays.copyOf(strengths, capacity);
+                ids = Arrays.copyOf(ids, capacity);
+            }
+            rows[size] = row;
+            cols[size] = col;
+            strengths[size] = strength;
+            ids[size] = parseIdNumber(id);
+            if (ids[size] < 0 && id != null) {
+                others.put(size, id);
+            }
+            if (excitatory) {
+                numExcitatory++;
+            } else {
+                inhibitory.set(size);
+            }
+            size++;
+        }
+
+        /**
+         * @return the number of entries added
+         */
+        int size() {
+            return size;
+        }
+
+        /**
+         * @return the number of entries added as excitatory
+         */
+        int getNumExcitatory() {
+            return numExcitatory;
+        }
+
+        /**
+         * Sort the entries added into a matrix.
+         *
+         * @param precision the precision with which to store strengths
+         * @return the matrix
+         */
+        SparseWeightMatrix build(final Precision precision) {
+            int[] rowPtr = new int[numSources + 1];
+            for (int e = 0; e < size; e++) {
+                rowPtr[rows[e] + 1]++;
+            }
+            int longest = 0;
+            for (int i = 0; i < numSources; i++) {
+                longest = Math.max(longest, rowPtr[i + 1]);
+                rowPtr[i + 1] += rowPtr[i];
+            }
+            // Order the entries by row, then each row by column
+            int[] order = new int[size];
+            int[] cursor = Arrays.copyOf(rowPtr, numSources);
+            for (int e = 0; e < size; e++) {
+                order[cursor[rows[e]]++] = e;
+            }
+            long[] keys = new long[longest];
+            for (int i = 0; i < numSources; i++) {
+                int start = rowPtr[i];
+                int n = rowPtr[i + 1] - start;
+                for (int j = 0; j < n; j++) {
+                    int e = order[start + j];
+                    keys[j] = ((long) cols[e] << 32) | e;
+                }
+                Arrays.sort(keys, 0, n);
+                for (int j = 0; j < n; j++) {
+                    order[start + j] = (int) keys[j];
+                }
+            }
+            int[] targetIndices = new int[size];
+            int[] idNumbers = new int[size];
+            BitSet inhibitoryEntries = new BitSet(size);
+            Map<Integer, String> otherIds = new HashMap<Integer, String>();
+            double[] d = null;
+            float[] f = null;
+            if (precision == Precision.FLOAT_32) {
+                f = new float[size];
+            } else {
+                d = new double[size];
+            }
+            for (int k = 0; k < size; k++) {
+                int e = order[k];
+                targetIndices[k] = cols[e];
+                idNumbers[k] = ids[e];
+                if (inhibitory.get(e)) {
+                    inhibitoryEntries.set(k);
+                }
+                if (ids[e] < 0 && others.containsKey(e)) {
+                    otherIds.put(k, others.get(e));
+                }
+                if (d != null) {
+                    d[k] = strengths[e];
+                } else {
+                    f[k] = (float) strengths[e];
+                }
+            }
+            return new SparseWeightMatrix(numSources, numTargets, rowPtr,
+                    targetIndices, d, f, inhibitoryEntries, idNumbers,
+                    otherIds);
+        }
+    }
+
+}
@@ -0,0 +1,633 @@
+/*
+ * Copyright (C) 2005,2007 The Authors. See http://www.simbrain.net/credits This
+ * program is free software; you can redistribute it and/or modify it under the
+ * terms of the GNU General Public License as published by the Free Software
+ * Foundation; either version 2 of the License, or (at your option) any later
+ * version. This program is distributed in the hope that it will be useful, but
+ * WITHOUT ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or
+ * FITNESS FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details. You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software Foundation, Inc.,
+ * 59 Temple Place - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package org.simbrain.network.groups;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.simbrain.network.core.DelayLine;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.synapse_update_rules.spikeresponders.ConvolvedJumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.JumpAndDecay;
+import org.simbrain.network.synapse_update_rules.spikeresponders.SpikeResponder;
+
+/**
+ * Event-driven propagation of spikes through the synapses of a synapse group
+ * whose spike responders are {@link JumpAndDecay} or
+ * {@link ConvolvedJumpAndDecay}. Updating every synapse's spike responder on
+ * every time step costs time proportional to the number of synapses even when
+ * almost no source neuron spikes. Here work is only done when a source spikes,
+ * and is proportional to its fan-out within the group:
+ * <ul>
+ * <li>Synapses are grouped into a few channels, each a distinct set of
+ * responder parameters (type, jump height, baseline, time constant). Each
+ * channel keeps an excitatory and an inhibitory accumulator per target neuron
+ * holding the sum of (psr - baseline) over its synapses into that target of
+ * that polarity. Between spikes a responder decays every synapse's psr -
+ * baseline by the same factor each step, so decaying the accumulators decays
+ * all of them at once.</li>
+ * <li>Each synapse's psr is stored only as of the last event on it, and
+ * decayed analytically (by a power of the decay factor) when the next event
+ * arrives, so synapses cost nothing while idle.</li>
+ * <li>Delays are handled by a ring buffer of pending events with one slot per
+ * time step up to the longest delay, rather than by reading each synapse's
+ * source's delay line on every step. Synapses are sorted by source, then
+ * delay, then channel, into segments which each share an event time, so a
+ * spike schedules one event per distinct delay of its source.</li>
+ * </ul>
+ * The decay factor is that of the responders' own update, (1 - dt / tau) per
+ * step, and a delayed spike is delivered on the step it arrives at the synapse
+ * (see {@link Synapse#isSpikeArriving()}), so the results match updating the
+ * responders one synapse at a time.
+ *
+ * Strengths are read from the synapses when their source spikes, so learning
+ * rules still apply. A synapse's polarity is that of its strength when its
+ * last spike arrived: a synapse whose strength changes sign moves to the other
+ * accumulator of its channel on its next spike. Responder parameters and
+ * delays are read once, so the owning group rebuilds its engine when they
+ * change (see {@link SynapseGroup#setEventDriven(boolean)}).
+ */
+public class SpikePropagationEngine {
+
+    /** The source neurons, in index order. */
+    private final Neuron[] sources;
+
+    /** The channels. */
+    private final Channel[] channels;
+
+    /**
+     * Index of the first segment of each source. Source i's segments are
+     * srcSegPtr[i] (inclusive) to srcSegPtr[i + 1] (exclusive).
+     */
+    private final int[] srcSegPtr;
+
+    /**
+     * Index of the first synapse of each segment. Segment s covers synapses
+     * segPtr[s] (inclusive) to segPtr[s + 1] (exclusive).
+     */
+    private final int[] segPtr;
+
+    /** Delay of each segment, in time steps. */
+    private final int[] segDelay;
+
+    /** Channel of each segment. */
+    private final int[] segChannel;
+
+    /**
+     * Time step at which each segment's synapses last had an event, i.e. at
+     * which their values in {@link #psrs} were current.
+     */
+    private final long[] segTime;
+
+    /** The synapses, sorted into segments. */
+    private final Synapse[] synapses;
+
+    /** Target index of each synapse. */
+    private final int[] targets;
+
+    /**
+     * Whether each synapse's input counts as excitatory, i.e. its strength
+     * was not negative when its last spike arrived (or the engine was built).
+     */
+    private final boolean[] excitatory;
+
+    /** Psr of each synapse as of its segment's last event. */
+    private final double[] psrs;
+
+    /**
+     * Constant part of each target's excitatory input: the baselines of its
+     * excitatory synapses.
+     */
+    private final double[] exBaseline;
+
+    /**
+     * Constant part of each target's inhibitory input: the baselines of its
+     * inhibitory synapses.
+     */
+    private final double[] inBaseline;
+
+    /**
+     * Ring buffer of pending events, one slot per time step (modulo the
+     * length). Each slot holds the indices of the segments whose event falls
+     * on that step.
+     */
+    private final int[][] pending;
+
+    /** The number of events in each slot of {@link #pending}. */
+    private final int[] numPending;
+
+    /** The number of time steps propagated so far. */
+    private long time;
+
+    /**
+     * Builds an engine for a set of synapses. Synapses must be enabled and use
+     * a {@link JumpAndDecay} or {@link ConvolvedJumpAndDecay} spike responder
+     * (see {@link #isSupported(SpikeResponder)}).
+     *
+     * @param sourceList the source neurons, in index order
+     * @param targetList the target neurons, in index order
+     * @param synapseSets the synapses to propagate spikes through
+     */
+    SpikePropagationEngine(final List<Neuron> sourceList,
+            final List<Neuron> targetList,
+            final Collection<? extends Collection<Synapse>> synapseSets) {
+        sources = sourceList.toArray(new Neuron[sourceList.size()]);
+        int numTargets = targetList.size();
+        Map<Neuron, Integer> srcMap = indexMap(sourceList);
+        Map<Neuron, Integer> tarMap = indexMap(targetList);
+        List<Channel> channelList = new ArrayList<Channel>();
+        Map<Channel, Integer> channelIndex = new HashMap<Channel, Integer>();
+        int numSyns = 0;
+        for (Collection<Synapse> set : synapseSets) {
+            numSyns += set.size();
+        }
+        synapses = new Synapse[numSyns];
+        final int[] src = new int[numSyns];
+        final int[] dly = new int[numSyns];
+        final int[] chn = new int[numSyns];
+        int k = 0;
+        int maxDelay = 0;
+        for (Collection<Synapse> set : synapseSets) {
+            for (Synapse s : set) {
+                synapses[k] = s;
+                src[k] = srcMap.get(s.getSource());
+                dly[k] = s.getDelay();
+                chn[k] = channelOf(s, channelList, channelIndex);
+                maxDelay = Math.max(maxDelay, dly[k]);
+                k++;
+            }
+        }
+        channels = channelList.toArray(new Channel[channelList.size()]);
+
+        // Sort synapses by source, then delay, then channel.
+        Integer[] order = new Integer[numSyns];
+        for (int i = 0; i < numSyns; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                if (src[a] != src[b]) {
+                    return Integer.compare(src[a], src[b]);
+                }
+                if (dly[a] != dly[b]) {
+                    return Integer.compare(dly[a], dly[b]);
+                }
+                return Integer.compare(chn[a], chn[b]);
+            }
+        });
+        Synapse[] unsorted = synapses.clone();
+        targets = new int[numSyns];
+        psrs = new double[numSyns];
+        excitatory = new boolean[numSyns];
+        exBaseline = new double[numTargets];
+        inBaseline = new double[numTargets];
+
+        // Fill in synapse arrays and segment boundaries.
+        srcSegPtr = new int[sources.length + 1];
+        int[] segStarts = new int[numSyns + 1];
+        int[] segDelays = new int[numSyns];
+        int[] segChannels = new int[numSyns];
+        int numSegs = 0;
+        int prev = -1;
+        for (int i = 0; i < numSyns; i++) {
+            int o = order[i];
+            Synapse s = unsorted[o];
+            synapses[i] = s;
+            int t = tarMap.get(s.getTarget());
+            targets[i] = t;
+            psrs[i] = s.getPsr();
+            excitatory[i] = s.getStrength() >= 0;
+            Channel c = channels[chn[o]];
+            c.accumulator(excitatory[i], numTargets)[t] += psrs[i]
+                    - c.baseLine;
+            if (excitatory[i]) {
+                exBaseline[t] += c.baseLine;
+            } else {
+                inBaseline[t] += c.baseLine;
+            }
+            if (prev < 0 || src[o] != src[prev] || dly[o] != dly[prev]
+                    || chn[o] != chn[prev]) {
+                segStarts[numSegs] = i;
+                segDelays[numSegs] = dly[o];
+                segChannels[numSegs] = chn[o];
+                numSegs++;
+                srcSegPtr[src[o] + 1] = numSegs;
+            }
+            prev = o;
+        }
+        segStarts[numSegs] = numSyns;
+        for (int i = 0; i < sources.length; i++) {
+            // Sources with no synapses end where the previous source did.
+            srcSegPtr[i + 1] = Math.max(srcSegPtr[i + 1], srcSegPtr[i]);
+        }
+        segPtr = Arrays.copyOf(segStarts, numSegs + 1);
+        segDelay = Arrays.copyOf(segDelays, numSegs);
+        segChannel = Arrays.copyOf(segChannels, numSegs);
+        segTime = new long[numSegs];
+
+        pending = new int[maxDelay + 1][];
+        numPending = new int[maxDelay + 1];
+        for (int i = 0; i <= maxDelay; i++) {
+            pending[i] = new int[4];
+        }
+        scheduleInFlight();
+    }
+
+    /**
+     * Schedules the spikes already on their way along delayed synapses when
+     * the engine is built, as recorded in the sources' delay lines, so that
+     * they are not lost when the engine replaces the synapses' own updates.
+     * The first step propagated is counted as step 1.
+     */
+    private void scheduleInFlight() {
+        for (int i = 0; i < sources.length; i++) {
+            sources[i].recordDelayLine();
+            DelayLine line = sources[i].getDelayLine();
+            if (line == null) {
+                continue;
+            }
+            for (int seg = srcSegPtr[i], end = srcSegPtr[i + 1]; seg < end;
+                    seg++) {
+                // A spike the source fired ago updates back is still in
+                // transit, and arrives delay - ago + 1 updates from now
+                for (int ago = 1; ago <= segDelay[seg]; ago++) {
+                    if (line.isSpike(ago)) {
+                        schedule(seg, (1 + segDelay[seg] - ago)
+                                % pending.length);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @param responder a spike responder
+     * @return true if synapses with the given responder can be propagated by
+     *         an engine.
+     */
+    public static boolean isSupported(final SpikeResponder responder) {
+        return responder != null
+                && (responder.getClass() == JumpAndDecay.class
+                || responder.getClass() == ConvolvedJumpAndDecay.class);
+    }
+
+    /**
+     * Advances the engine by one time step: decays every channel, delivers
+     * the events falling on this step and those caused by sources which are
+     * spiking now, and adds the resulting input to each target to a pair of
+     * accumulators. Must be called exactly once per time step, where the
+     * target neurons would otherwise compute their synaptic inputs.
+     *
+     * @param timeStep the network time step
+     * @param exOut excitatory accumulator indexed by target neuron
+     * @param inOut inhibitory accumulator indexed by target neuron
+     */
+    public void propagate(final double timeStep, final double[] exOut,
+            final double[] inOut) {
+        time++;
+        for (int c = 0; c < channels.length; c++) {
+            Channel ch = channels[c];
+            double decay = 1 - timeStep / ch.timeConstant;
+            if (decay != ch.decay) {
+                rebase(c, decay);
+            }
+            decay(ch.exAcc, decay);
+            decay(ch.inAcc, decay);
+        }
+        int slot = (int) (time % pending.length);
+        int[] due = pending[slot];
+        for (int e = 0, n = numPending[slot]; e < n; e++) {
+            fire(due[e]);
+        }
+        numPending[slot] = 0;
+        for (int i = 0; i < sources.length; i++) {
+            // Keep the history the synapses read once they resume.
+            sources[i].recordDelayLine();
+            if (!sources[i].isSpike()) {
+                continue;
+            }
+            for (int seg = srcSegPtr[i], end = srcSegPtr[i + 1]; seg < end;
+                    seg++) {
+                if (segDelay[seg] == 0) {
+                    fire(seg);
+                } else {
+                    schedule(seg, (int) ((time + segDelay[seg])
+                            % pending.length));
+                }
+            }
+        }
+        for (Channel ch : channels) {
+            addTo(ch.exAcc, exOut);
+            addTo(ch.inAcc, inOut);
+        }
+        for (int j = 0, n = exBaseline.length; j < n; j++) {
+            exOut[j] += exBaseline[j];
+            inOut[j] += inBaseline[j];
+        }
+    }
+
+    /**
+     * @param acc an accumulator, or null
+     * @param decay the factor to multiply it by
+     */
+    private static void decay(final double[] acc, final double decay) {
+        if (acc == null) {
+            return;
+        }
+        for (int j = 0, n = acc.length; j < n; j++) {
+            acc[j] *= decay;
+        }
+    }
+
+    /**
+     * @param acc an accumulator, or null
+     * @param out the array to add it to
+     */
+    private static void addTo(final double[] acc, final double[] out) {
+        if (acc == null) {
+            return;
+        }
+        for (int j = 0, n = acc.length; j < n; j++) {
+            out[j] += acc[j];
+        }
+    }
+
+    /**
+     * Applies an event (a spike arriving) to the synapses of a segment on the
+     * current time step. Each synapse's psr is brought up to the previous step
+     * and then jumps as its responder would, and its target's accumulator,
+     * which has already decayed the synapse for this step, is corrected. A
+     * synapse whose strength has changed sign since its last event is moved,
+     * with its baseline, to the accumulator of its new polarity.
+     *
+     * @param seg the segment
+     */
+    private void fire(final int seg) {
+        Channel ch = channels[segChannel[seg]];
+        double f = Math.pow(ch.decay, time - 1 - segTime[seg]);
+        double base = ch.baseLine;
+        int numTargets = exBaseline.length;
+        for (int k = segPtr[seg], end = segPtr[seg + 1]; k < end; k++) {
+            int t = targets[k];
+            double strength = synapses[k].getStrength();
+            double cur = (psrs[k] - base) * f;
+            double jump = ch.jumpHeight * strength;
+            double next = ch.convolved ? cur + jump : jump - base;
+            boolean ex = strength >= 0;
+            if (ex == excitatory[k]) {
+                ch.accumulator(ex, numTargets)[t] += next - ch.decay * cur;
+            } else {
+                ch.accumulator(!ex, numTargets)[t] -= ch.decay * cur;
+                ch.accumulator(ex, numTargets)[t] += next;
+                if (ex) {
+                    inBaseline[t] -= base;
+                    exBaseline[t] += base;
+                } else {
+                    exBaseline[t] -= base;
+                    inBaseline[t] += base;
+                }
+                excitatory[k] = ex;
+            }
+            psrs[k] = next + base;
+        }
+        segTime[seg] = time;
+    }
+
+    /**
+     * Adds an event to a slot of the ring buffer.
+     *
+     * @param seg the segment the event is for
+     * @param slot the slot of the time step on which it arrives
+     */
+    private void schedule(final int seg, final int slot) {
+        int n = numPending[slot];
+        if (n == pending[slot].length) {
+            pending[slot] = Arrays.copyOf(pending[slot], n * 2);
+        }
+        pending[slot][n] = seg;
+        numPending[slot] = n + 1;
+    }
+
+    /**
+     * Brings the stored psrs of a channel's synapses up to the previous time
+     * step, so that a new decay factor (after a change of time step) applies
+     * only from now on.
+     *
+     * @param c the channel
+     * @param decay the new decay factor
+     */
+    private void rebase(final int c, final double decay) {
+        Channel ch = channels[c];
+        for (int seg = 0, n = segTime.length; seg < n; seg++) {
+            if (segChannel[seg] != c) {
+                continue;
+            }
+            double f = Math.pow(ch.decay, time - 1 - segTime[seg]);
+            for (int k = segPtr[seg], end = segPtr[seg + 1]; k < end; k++) {
+                psrs[k] = ch.baseLine + (psrs[k] - ch.baseLine) * f;
+            }
+            segTime[seg] = time - 1;
+        }
+        ch.decay = decay;
+    }
+
+    /**
+     * Writes each synapse's current psr back to the synapse and its spike
+     * responder, so that the synapses can resume updating individually.
+     * Events still pending are dropped: the synapses see those spikes arrive
+     * through their sources' delay lines, which are kept recorded.
+     */
+    void writeBack() {
+        for (int seg = 0, n = segTime.length; seg < n; seg++) {
+            Channel ch = channels[segChannel[seg]];
+            double f = Math.pow(ch.decay, time - segTime[seg]);
+            for (int k = segPtr[seg], end = segPtr[seg + 1]; k < end; k++) {
+                double psr = ch.baseLine + (psrs[k] - ch.baseLine) * f;
+                synapses[k].setPsr(psr);
+                synapses[k].getSpikeResponder().setValue(psr);
+            }
+        }
+    }
+
+    /**
+     * @return the number of channels (distinct responder parameter sets).
+     */
+    public int getNumChannels() {
+        return channels.length;
+    }
+
+    /**
+     * Returns whether an update through this engine costs no more than
+     * updating the synapses one by one. Every update decays an accumulator
+     * per channel, polarity and target, where updating synapses costs one
+     * responder update per synapse, so groups with many distinct responder
+     * parameters (e.g. randomized time constants) and few synapses per target
+     * are better served by updating synapses individually.
+     *
+     * @return true if the engine is worth using
+     */
+    public boolean isCheaperThanSynapses() {
+        int numAccs = 0;
+        for (Channel ch : channels) {
+            numAccs += (ch.exAcc != null ? 1 : 0) + (ch.inAcc != null ? 1 : 0);
+        }
+        return (long) numAccs * exBaseline.length <= synapses.length;
+    }
+
+    /**
+     * @return the number of synapses propagated through.
+     */
+    public int getNumSynapses() {
+        return synapses.length;
+    }
+
+    /**
+     * Finds the channel of a synapse, adding a new one if no existing channel
+     * matches.
+     *
+     * @param s the synapse
+     * @param channelList the channels so far
+     * @param channelIndex the index of each channel in the list
+     * @return the index of the synapse's channel
+     */
+    private static int channelOf(final Synapse s,
+            final List<Channel> channelList,
+            final Map<Channel, Integer> channelIndex) {
+        Channel c = new Channel(s.getSpikeResponder());
+        Integer i = channelIndex.get(c);
+        if (i != null) {
+            return i;
+        }
+        channelList.add(c);
+        channelIndex.put(c, channelList.size() - 1);
+        return channelList.size() - 1;
+    }
+
+    /**
+     * @param neurons a list of neurons
+     * @return a map from each neuron to its index in the list
+     */
+    private static Map<Neuron, Integer> indexMap(final List<Neuron> neurons) {
+        Map<Neuron, Integer> map = new HashMap<Neuron, Integer>(
+                (int) (neurons.size() / 0.75) + 1);
+        for (int i = 0, n = neurons.size(); i < n; i++) {
+            map.put(neurons.get(i), i);
+        }
+        return map;
+    }
+
+    /**
+     * Synapses sharing spike responder parameters, which decay together.
+     */
+    private static final class Channel {
+
+        /**
+         * True for {@link ConvolvedJumpAndDecay} (spikes add to the psr),
+         * false for {@link JumpAndDecay} (spikes reset it).
+         */
+        private final boolean convolved;
+
+        /** Jump height of the responders. */
+        private final double jumpHeight;
+
+        /** Baseline of the responders. */
+        private final double baseLine;
+
+        /** Time constant of the responders. */
+        private final double timeConstant;
+
+        /**
+         * Decay factor per time step of (psr - baseline). NaN until the
+         * first step.
+         */
+        private double decay = Double.NaN;
+
+        /**
+         * Sum of (psr - baseline) over the channel's excitatory synapses, per
+         * target. Null until the channel has an excitatory synapse.
+         */
+        private double[] exAcc;
+
+        /**
+         * Sum of (psr - baseline) over the channel's inhibitory synapses, per
+         * target. Null until the channel has an inhibitory synapse.
+         */
+        private double[] inAcc;
+
+        /**
+         * @param responder a supported spike responder
+         */
+        Channel(final SpikeResponder responder) {
+            if (responder instanceof ConvolvedJumpAndDecay) {
+                ConvolvedJumpAndDecay cjd = (ConvolvedJumpAndDecay) responder;
+                convolved = true;
+                jumpHeight = cjd.getJumpHeight();
+                baseLine = cjd.getBaseLine();
+                timeConstant = cjd.getTimeConstant();
+            } else {
+                JumpAndDecay jd = (JumpAndDecay) responder;
+                convolved = false;
+                jumpHeight = jd.getJumpHeight();
+                baseLine = jd.getBaseLine();
+                timeConstant = jd.getTimeConstant();
+            }
+        }
+
+        /**
+         * Returns the accumulator for synapses of one polarity, creating it if
+         * the channel has had none of that polarity.
+         *
+         * @param excitatory the polarity
+         * @param numTargets the number of target neurons
+         * @return the accumulator
+         */
+        double[] accumulator(final boolean excitatory, final int numTargets) {
+            if (excitatory) {
+                if (exAcc == null) {
+                    exAcc = new double[numTargets];
+                }
+                return exAcc;
+            }
+            if (inAcc == null) {
+                inAcc = new double[numTargets];
+            }
+            return inAcc;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (!(o instanceof Channel)) {
+                return false;
+            }
+            Channel c = (Channel) o;
+            return convolved == c.convolved && jumpHeight == c.jumpHeight
+                    && baseLine == c.baseLine
+                    && timeConstant == c.timeConstant;
+        }
+
+        @Override
+        public int hashCode() {
+            return Arrays.hashCode(new double[] {convolved ? 1 : 0,
+                jumpHeight, baseLine, timeConstant });
+        }
+
+    }
+
+}
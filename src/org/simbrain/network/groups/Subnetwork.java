@@ -425,6 +425,21 @@ public abstract class Subnetwork extends Group {
         return Collections.unmodifiableList(ret);
     }
 
+    /**
+     * Return a read-only "flat" list of every synapse in every synapse group in
+     * this subnetwork, leaving groups in sparse mode (see
+     * {@link SynapseGroup#getSynapseView()}).
+     *
+     * @return the flat synapse list.
+     */
+    public List<Synapse> getFlatSynapseView() {
+        List<Synapse> ret = new ArrayList<Synapse>();
+        for (SynapseGroup group : synapseGroupList) {
+            ret.addAll(group.getSynapseView());
+        }
+        return Collections.unmodifiableList(ret);
+    }
+
     @Override
     public String toString() {
         String ret = new String();
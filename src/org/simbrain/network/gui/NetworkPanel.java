@@ -24,6 +24,8 @@ import java.awt.Cursor;
 import java.awt.Dialog;
 import java.awt.EventQueue;
 import java.awt.FlowLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
 import java.awt.geom.Point2D;
@@ -54,6 +56,7 @@ import javax.swing.JSplitPane;
 import javax.swing.JToggleButton;
 import javax.swing.JToolBar;
 import javax.swing.JToolTip;
+import javax.swing.Timer;
 import javax.swing.ToolTipManager;
 import javax.swing.event.InternalFrameAdapter;
 import javax.swing.event.InternalFrameEvent;
@@ -67,9 +70,12 @@ import org.piccolo2d.util.PBounds;
 import org.piccolo2d.util.PPaintContext;
 import org.simbrain.network.connections.QuickConnectionManager;
 import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkSnapshot;
+import org.simbrain.network.core.NetworkSnapshot.Watch;
 import org.simbrain.network.core.NetworkTextObject;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.SnapshotBuffer;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.core.SynapseUpdateRule;
 import org.simbrain.network.groups.Group;
@@ -212,6 +218,9 @@ public class NetworkPanel extends JPanel {
     /** Offset for time label. */
     private static final int TIME_LABEL_H_OFFSET = 10;
 
+    /** Milliseconds between frames drawn from snapshots of the network. */
+    private static final int FRAME_DELAY = 1000 / 30;
+
     /** Build mode. */
     private EditMode editMode;
 
@@ -339,7 +348,55 @@ public class NetworkPanel extends JPanel {
 
     /** Map associating network model objects with Piccolo Pnodes. */
     private final Map<Object, PNode> objectNodeMap = Collections
-            .synchronizedMap(new HashMap<Object, PNode>());
+            .synchronizedMap(new HashMap<Object, PNode>() {
+
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public PNode put(Object key, PNode value) {
+                    nodesChanged = true;
+                    return super.put(key, value);
+                }
+
+                @Override
+                public PNode remove(Object key) {
+                    nodesChanged = true;
+                    return super.remove(key);
+                }
+
+                @Override
+                public void clear() {
+                    nodesChanged = true;
+                    super.clear();
+                }
+            });
+
+    /**
+     * Snapshots of the neurons and synapses shown, published by the network
+     * after every update and drawn at most every {@link #FRAME_DELAY} ms, so
+     * that the network is not slowed down to the speed of drawing it.
+     */
+    private final SnapshotBuffer snapshots = new SnapshotBuffer();
+
+    /** Draws the latest snapshot of the network. */
+    private final Timer frameTimer = new Timer(FRAME_DELAY,
+            new ActionListener() {
+                public void actionPerformed(ActionEvent e) {
+                    drawSnapshot();
+                }
+            });
+
+    /** Whether nodes have been added or removed since the last frame. */
+    private volatile boolean nodesChanged = true;
+
+    /** The neurons and synapses whose nodes are drawn from snapshots. */
+    private Watch watch = Watch.EMPTY;
+
+    /** Nodes of the neurons watched, in the order of the watch. */
+    private NeuronNode[] watchedNeuronNodes = new NeuronNode[0];
+
+    /** Nodes of the synapses watched, in the order of the watch. */
+    private SynapseNode[] watchedSynapseNodes = new SynapseNode[0];
 
     /**
      * Point where new neurons, neurongroups, and subnetworks should be added.
@@ -434,6 +491,8 @@ public class NetworkPanel extends JPanel {
         canvas.addInputEventListener(textHandle);
 
         addNetworkListeners();
+        network.setSnapshotBuffer(snapshots);
+        frameTimer.start();
 
         // Don't show text when the canvas is sufficiently zoomed in
         PropertyChangeListener zoomListener = new PropertyChangeListener() {
@@ -2700,6 +2759,69 @@ public class NetworkPanel extends JPanel {
      * Close model Network.
      */
     public void closeNetwork() {
+        frameTimer.stop();
+        if (network.getSnapshotBuffer() == snapshots) {
+            network.setSnapshotBuffer(null);
+        }
+    }
+
+    /**
+     * Update the nodes of the neurons and synapses shown from the latest
+     * snapshot of the network, if there is a new one. Called on the event
+     * dispatch thread.
+     */
+    private void drawSnapshot() {
+        if (!guiOn) {
+            return;
+        }
+        if (nodesChanged) {
+            watchNodes();
+        }
+        NetworkSnapshot snapshot = snapshots.sample();
+        // Snapshots taken before the last nodes were added or removed are
+        // skipped
+        if (snapshot == null || snapshot.getWatch() != watch) {
+            return;
+        }
+        for (int i = 0; i < watchedNeuronNodes.length; i++) {
+            watchedNeuronNodes[i].update(snapshot.getActivation(i),
+                    snapshot.isSpike(i));
+        }
+        for (int i = 0; i < watchedSynapseNodes.length; i++) {
+            if (watchedSynapseNodes[i].getVisible()) {
+                watchedSynapseNodes[i].update(snapshot.getStrength(i),
+                        snapshot.isSourceSpike(i));
+            }
+        }
+        timeLabel.update();
+    }
+
+    /**
+     * Watch the neurons and synapses which currently have nodes.
+     */
+    private void watchNodes() {
+        nodesChanged = false;
+        List<Neuron> neurons = new ArrayList<Neuron>();
+        List<NeuronNode> neuronNodes = new ArrayList<NeuronNode>();
+        List<Synapse> synapses = new ArrayList<Synapse>();
+        List<SynapseNode> synapseNodes = new ArrayList<SynapseNode>();
+        synchronized (objectNodeMap) {
+            for (Map.Entry<Object, PNode> entry : objectNodeMap.entrySet()) {
+                if (entry.getValue() instanceof NeuronNode) {
+                    neurons.add((Neuron) entry.getKey());
+                    neuronNodes.add((NeuronNode) entry.getValue());
+                } else if (entry.getValue() instanceof SynapseNode) {
+                    synapses.add((Synapse) entry.getKey());
+                    synapseNodes.add((SynapseNode) entry.getValue());
+                }
+            }
+        }
+        watchedNeuronNodes = neuronNodes.toArray(new NeuronNode[neuronNodes
+                .size()]);
+        watchedSynapseNodes = synapseNodes
+                .toArray(new SynapseNode[synapseNodes.size()]);
+        watch = new Watch(neurons, synapses);
+        snapshots.setWatch(watch);
     }
 
     /**
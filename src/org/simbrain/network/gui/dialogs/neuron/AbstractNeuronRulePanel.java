@@ -33,6 +33,7 @@ import javax.swing.JPanel;
 
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.gui.NetworkUtils;
 import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
 import org.simbrain.util.ParameterGetter;
@@ -339,6 +340,11 @@ public abstract class AbstractNeuronRulePanel extends JPanel {
         if (isNoisePanel()) {
             noisePanel.commitRandom(neurons);
         }
+
+        // Packed neuron groups hold copies of rule parameters
+        neurons.stream().map(Neuron::getParentGroup)
+                .filter(g -> g instanceof NeuronGroup).distinct()
+                .forEach(g -> ((NeuronGroup) g).invalidatePackedState());
     }
 
     /**
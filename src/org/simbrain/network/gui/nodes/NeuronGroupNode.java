@@ -48,6 +48,7 @@ import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.groups.Subnetwork;
 import org.simbrain.network.gui.NetworkPanel;
 import org.simbrain.network.gui.dialogs.TestInputPanel;
+import org.simbrain.network.recording.ActivationRecorder;
 import org.simbrain.resource.ResourceManager;
 import org.simbrain.util.SFileChooser;
 import org.simbrain.util.StandardDialog;
@@ -399,9 +400,14 @@ public class NeuronGroupNode extends PNode implements GroupNode, PropertyChangeL
                     neuronGroup.stopRecording();
                 } else {
                     SFileChooser chooser = new SFileChooser(".",
-                            "comma-separated-values (csv)", "csv");
+                            "Recordings");
+                    chooser.addExtension("binary recording (sbr)",
+                            ActivationRecorder.FILE_EXTENSION);
+                    chooser.addExtension("comma-separated-values (csv)",
+                            "csv");
                     File theFile = chooser.showSaveDialog("Recording_"
-                            + Utils.getTimeString() + ".csv");
+                            + Utils.getTimeString() + "."
+                            + ActivationRecorder.FILE_EXTENSION);
                     if (theFile != null) {
                         neuronGroup.startRecording(theFile);
                     }
@@ -181,8 +181,19 @@ public class NeuronNode extends ScreenElement implements PropertyChangeListener
      * the neuron is changed.  
      */
     public void update() {
-        updateColor();
-        updateText();
+        update(neuron.getActivation(), neuron.isSpike());
+    }
+
+    /**
+     * Update the neuron view based on an activation and spike of the model
+     * neuron, e.g. from a {@link org.simbrain.network.core.NetworkSnapshot}.
+     *
+     * @param activation the activation to show
+     * @param spike whether to show the neuron as spiking
+     */
+    public void update(final double activation, final boolean spike) {
+        updateColor(activation, spike);
+        updateText(activation);
         updateClampStatus();
     }
     
@@ -202,11 +213,19 @@ public class NeuronNode extends ScreenElement implements PropertyChangeListener
      * TODO: Redo by scaling the text object.
      */
     private void updateText() {
+        updateText(neuron.getActivation());
+    }
+
+    /**
+     * Determine what font to use for this neuron based on an activation level.
+     *
+     * @param act the activation to show
+     */
+    private void updateText(final double act) {
         if (!currentTextVisibility) {
             return;
         }
         
-        double act = neuron.getActivation();
         activationText.setScale(1);
         setActivationTextPosition();
 
@@ -215,11 +234,11 @@ public class NeuronNode extends ScreenElement implements PropertyChangeListener
         priorityText.setText("" + neuron.getUpdatePriority()); // todo: respond
         // to listener
 
-        if (java.lang.Double.isNaN(neuron.getActivation())) {
+        if (java.lang.Double.isNaN(act)) {
             activationText.setText("NaN");
             activationText.scale(.7);
             activationText.translate(-4, 3);
-        } else if ((act > 0) && (neuron.getActivation() < 1)) { // Between 0 and 1
+        } else if ((act > 0) && (act < 1)) { // Between 0 and 1
             activationText.setFont(NEURON_FONT_BOLD);
             String text = Utils.round(act, 1);
             if (text.startsWith("0.")) {
@@ -295,10 +314,12 @@ public class NeuronNode extends ScreenElement implements PropertyChangeListener
     }
 
     /**
-     * Sets the color of this neuron based on its activation level.
+     * Sets the color of this neuron based on an activation level.
+     *
+     * @param activation the activation to show
+     * @param spike whether to show the neuron as spiking
      */
-    private void updateColor() {
-        double activation = neuron.getActivation();
+    private void updateColor(final double activation, final boolean spike) {
         // Force to blank if 0 (or close to it)
         if ((activation > -.1) && (activation < .1)) {
             mainShape.setPaint(Color.white);
@@ -312,7 +333,7 @@ public class NeuronNode extends ScreenElement implements PropertyChangeListener
             mainShape.setPaint(Color.getHSBColor(coolColor, saturation, 1));
         }
 
-        if (neuron.isSpike()) {
+        if (spike) {
             mainShape.setStrokePaint(spikingColor);
             mainShape.setPaint(spikingColor);
         } else {
@@ -603,7 +624,7 @@ public class NeuronNode extends ScreenElement implements PropertyChangeListener
         mainShape.setStrokePaint(SynapseNode.getLineColor());
         // TODO: Check if change only?
         labelBackground.setPaint(NetworkPanel.getBackgroundColor());
-        updateColor();
+        updateColor(neuron.getActivation(), neuron.isSpike());
     }
 
     // /**
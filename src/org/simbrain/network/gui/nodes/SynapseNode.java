@@ -205,14 +205,37 @@ public final class SynapseNode extends ScreenElement {
      * Positive values are (for example) red, negative values blue.
      */
     public void updateColor() {
-        if (synapse.getStrength() < 0) {
+        updateColor(synapse.getStrength(), source.getNeuron().isSpike());
+    }
+
+    /**
+     * Update the color and diameter of the weight based on a strength and
+     * spike of the model synapse, e.g. from a
+     * {@link org.simbrain.network.core.NetworkSnapshot}.
+     *
+     * @param strength the strength to show
+     * @param sourceSpike whether to show the source neuron as spiking
+     */
+    public void update(final double strength, final boolean sourceSpike) {
+        updateColor(strength, sourceSpike);
+        updateDiameter(strength);
+    }
+
+    /**
+     * Calculates the color for a weight, based on a strength.
+     *
+     * @param strength the strength to show
+     * @param sourceSpike whether to show the source neuron as spiking
+     */
+    private void updateColor(final double strength, final boolean sourceSpike) {
+        if (strength < 0) {
             circle.setPaint(inhibitoryColor);
-        } else if (synapse.getStrength() == 0) {
+        } else if (strength == 0) {
             circle.setPaint(zeroWeightColor);
         } else {
             circle.setPaint(excitatoryColor);
         }
-        if (source.getNeuron().isSpike()) {
+        if (sourceSpike) {
             line.setStrokePaint(NeuronNode.getSpikingColor());
         } else {
             line.setStrokePaint(lineColor);
@@ -226,11 +249,20 @@ public final class SynapseNode extends ScreenElement {
      * strength.
      */
     public void updateDiameter() {
+        updateDiameter(synapse.getStrength());
+    }
+
+    /**
+     * Update the diameter of the drawn weight based on a strength.
+     *
+     * @param value the strength to show
+     */
+    private void updateDiameter(final double value) {
         double diameter;
 
         double upperBound = synapse.getUpperBound();
         double lowerBound = synapse.getLowerBound();
-        double strength = synapse.getStrength();
+        double strength = value;
 
         // If upper or lower bound are set to zero use a proxy to prevent
         // division errors
@@ -251,9 +283,9 @@ public final class SynapseNode extends ScreenElement {
             strength = upperBound;
         }
 
-        if (synapse.getStrength() == 0) {
+        if (value == 0) {
             diameter = minDiameter;
-        } else if (synapse.getStrength() > 0) {
+        } else if (value > 0) {
             diameter = ((maxDiameter - minDiameter) * (strength / upperBound)
                     + minDiameter);
         } else {
@@ -0,0 +1,55 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.inputs;
+
+import java.io.Closeable;
+
+/**
+ * A source of rows of input values, one row per update, for a neuron group in
+ * input mode (see
+ * {@link org.simbrain.network.groups.NeuronGroup#setInputSource(InputSource)}
+ * ). Unlike a group's test data, a source need not hold its rows in memory.
+ */
+public interface InputSource extends Closeable {
+
+    /**
+     * @return the number of values in each row.
+     */
+    int getNumColumns();
+
+    /**
+     * @return the number of rows in one pass over the source.
+     */
+    long getNumRows();
+
+    /**
+     * Reads the next row.
+     *
+     * @param row the array to fill, of at least {@link #getNumColumns()}
+     *            values
+     * @return false, leaving the array unchanged, if the source is exhausted
+     */
+    boolean nextRow(double[] row);
+
+    /**
+     * Starts again from the first row.
+     */
+    void reset();
+
+}
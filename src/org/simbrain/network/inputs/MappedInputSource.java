@@ -0,0 +1,650 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.inputs;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+/**
+ * <b>MappedInputSource</b> streams rows from a binary input table through
+ * memory-mapped windows of the file, so tables far larger than the heap can
+ * drive a network. While one window is read the next is mapped and paged in
+ * on a background thread.
+ *
+ * Tables hold float32 or float64 values, row after row, after a little-endian
+ * header:
+ *
+ * <pre>
+ * int magic "SBIN", int version, int bytes per value (4 or 8),
+ * int columns, long rows
+ * </pre>
+ *
+ * Tables are written with {@link #write(File, double[][], boolean)} or
+ * converted from comma or white space separated text with
+ * {@link #convert(File, File, boolean)}, which streams the text and so also
+ * works for text files larger than memory.
+ *
+ * When looping, the source starts over after the last row; otherwise it is
+ * exhausted. When shuffling, each pass visits the windows in a new random
+ * order and the rows of each window in a new random order. Shuffling by
+ * window keeps reads sequential enough for read-ahead to work, at the cost
+ * of rows far apart in the file never being adjacent.
+ *
+ * A source must be read from one thread at a time.
+ */
+public class MappedInputSource implements InputSource {
+
+    /** The conventional extension of binary input tables. */
+    public static final String FILE_EXTENSION = "sbin";
+
+    /** The first four bytes of a table: "SBIN". */
+    private static final int MAGIC = 0x4e494253;
+
+    /** The version of the file layout. */
+    private static final int VERSION = 1;
+
+    /** Bytes in the file header. */
+    static final int HEADER_BYTES = 24;
+
+    /** Separates the values of a text table. */
+    private static final Pattern SEPARATOR = Pattern.compile("[,\\s]+");
+
+    /** The default size of a mapped window, in bytes. */
+    public static final int DEFAULT_WINDOW_BYTES = 1 << 25;
+
+    /** The file read. */
+    private final FileChannel channel;
+
+    /** Bytes per value: 4 or 8. */
+    private final int width;
+
+    /** Values per row. */
+    private final int numColumns;
+
+    /** Rows in the table. */
+    private final long numRows;
+
+    /** Rows per window; the last window may hold fewer. */
+    private final int windowRows;
+
+    /** The number of windows. */
+    private final int numWindows;
+
+    /** Maps windows ahead of time. */
+    private final ExecutorService readAhead;
+
+    /** Whether to start over after the last row. */
+    private boolean loop = true;
+
+    /** Whether to visit windows, and rows within them, in random order. */
+    private boolean shuffle;
+
+    /** Randomizes the order of windows and rows when shuffling. */
+    private Random random = new Random();
+
+    /** The order in which windows are visited in this pass. */
+    private int[] windowOrder;
+
+    /** The position of the current window in {@link #windowOrder}. */
+    private int windowPosition;
+
+    /**
+     * The current window, little-endian, or null if none has been mapped.
+     * Rows are read from it with absolute gets, so it needs no views.
+     */
+    private ByteBuffer window;
+
+    /** The index of {@link #window}, or -1. */
+    private int windowIndex = -1;
+
+    /** Whether a window of the current pass has been reached. */
+    private boolean inPass;
+
+    /** The number of rows in the current window. */
+    private int rowsInWindow;
+
+    /** The order of rows within the current window, when shuffling. */
+    private int[] rowOrder;
+
+    /** The next row to read from the current window. */
+    private int rowPosition;
+
+    /** The window being mapped ahead of time, if any. */
+    private Future<MappedByteBuffer> nextWindow;
+
+    /** The position in {@link #windowOrder} of {@link #nextWindow}. */
+    private int nextWindowPosition = -1;
+
+    /**
+     * Opens a table, with windows of the default size.
+     *
+     * @param file the table
+     * @throws IOException if the file cannot be read or is not a table
+     */
+    public MappedInputSource(final File file) throws IOException {
+        this(file, DEFAULT_WINDOW_BYTES);
+    }
+
+    /**
+     * Opens a table.
+     *
+     * @param file the table
+     * @param windowBytes the size of each mapped window, in bytes. Windows
+     *            hold at least one row.
+     * @throws IOException if the file cannot be read or is not a table
+     */
+    public MappedInputSource(final File file, final int windowBytes)
+            throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = readHeader(channel, file);
+            width = header.getInt();
+            numColumns = header.getInt();
+            numRows = header.getLong();
+            if ((width != 4 && width != 8) || numColumns <= 0 || numRows < 0
+                    || HEADER_BYTES + numRows * numColumns * width
+                        > channel.size()) {
+                throw new IOException(file + " is truncated or corrupt.");
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        int rowBytes = numColumns * width;
+        windowRows = (int) Math.max(1, Math.min(numRows,
+                windowBytes / rowBytes));
+        numWindows = (int) ((numRows + windowRows - 1) / windowRows);
+        readAhead = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable r) {
+                Thread t = new Thread(r, "Read ahead " + file.getName());
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        startPass();
+    }
+
+    /**
+     * Reads the header of a table and checks its magic number and version.
+     *
+     * @param channel the open table
+     * @param file the table, for error messages
+     * @return the header, positioned at the bytes per value
+     * @throws IOException if the file is not a table of a supported version
+     */
+    static ByteBuffer readHeader(final FileChannel channel, final File file)
+            throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(
+                ByteOrder.LITTLE_ENDIAN);
+        while (header.hasRemaining()) {
+            if (channel.read(header, header.position()) < 0) {
+                throw new IOException(file + " is not an input table.");
+            }
+        }
+        header.flip();
+        if (header.getInt() != MAGIC) {
+            throw new IOException(file + " is not an input table.");
+        }
+        int version = header.getInt();
+        if (version != VERSION) {
+            throw new IOException("Unsupported input table version "
+                    + version + ".");
+        }
+        return header;
+    }
+
+    @Override
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    @Override
+    public long getNumRows() {
+        return numRows;
+    }
+
+    @Override
+    public boolean nextRow(final double[] row) {
+        if (!inPass || rowPosition == rowsInWindow) {
+            if (!nextWindow()) {
+                return false;
+            }
+        }
+        int r = shuffle ? rowOrder[rowPosition] : rowPosition;
+        rowPosition++;
+        int offset = r * numColumns * width;
+        if (width == 4) {
+            for (int i = 0; i < numColumns; i++, offset += 4) {
+                row[i] = window.getFloat(offset);
+            }
+        } else {
+            for (int i = 0; i < numColumns; i++, offset += 8) {
+                row[i] = window.getDouble(offset);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void reset() {
+        startPass();
+    }
+
+    @Override
+    public void close() throws IOException {
+        readAhead.shutdownNow();
+        window = null;
+        windowIndex = -1;
+        nextWindow = null;
+        channel.close();
+    }
+
+    /**
+     * Moves to the next window, starting a new pass if looping.
+     *
+     * @return false if the source is exhausted
+     */
+    private boolean nextWindow() {
+        if (inPass) {
+            windowPosition++;
+        }
+        if (windowPosition == numWindows) {
+            if (!loop || numRows == 0) {
+                inPass = false;
+                return false;
+            }
+            startPass();
+        }
+        int w = windowOrder[windowPosition];
+        if (w == windowIndex) {
+            // Only one window, or the last of a pass is the first of the
+            // next: keep it.
+            if (nextWindow != null) {
+                nextWindow.cancel(false);
+            }
+        } else if (nextWindowPosition == windowPosition
+                && nextWindow != null) {
+            try {
+                window = nextWindow.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while reading"
+                        + " inputs.", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Could not read inputs.",
+                        e.getCause());
+            }
+        } else {
+            try {
+                window = map(w);
+            } catch (IOException e) {
+                throw new IllegalStateException("Could not read inputs.", e);
+            }
+        }
+        windowIndex = w;
+        nextWindow = null;
+        inPass = true;
+        rowsInWindow = (int) Math.min(windowRows, numRows - (long) w
+                * windowRows);
+        rowPosition = 0;
+        if (shuffle) {
+            shuffleRows();
+        }
+        if (windowPosition + 1 < numWindows) {
+            prefetch(windowPosition + 1);
+        }
+        return true;
+    }
+
+    /**
+     * Starts mapping and paging in a window in the background.
+     *
+     * @param position the position in {@link #windowOrder} of the window
+     */
+    private void prefetch(final int position) {
+        final int w = windowOrder[position];
+        nextWindowPosition = position;
+        nextWindow = readAhead.submit(new Callable<MappedByteBuffer>() {
+            @Override
+            public MappedByteBuffer call() throws IOException {
+                MappedByteBuffer buffer = map(w);
+                buffer.load();
+                return buffer;
+            }
+        });
+    }
+
+    /**
+     * @param w a window
+     * @return the window, mapped, in little-endian order
+     * @throws IOException if mapping fails
+     */
+    private MappedByteBuffer map(final int w) throws IOException {
+        long rowBytes = (long) numColumns * width;
+        long start = (long) w * windowRows;
+        long rows = Math.min(windowRows, numRows - start);
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                HEADER_BYTES + start * rowBytes, rows * rowBytes);
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+        return buffer;
+    }
+
+    /**
+     * Starts a pass over the table, choosing a new window order when
+     * shuffling.
+     */
+    private void startPass() {
+        if (windowOrder == null || windowOrder.length != numWindows) {
+            windowOrder = new int[numWindows];
+        }
+        for (int i = 0; i < numWindows; i++) {
+            windowOrder[i] = i;
+        }
+        if (shuffle) {
+            shuffle(windowOrder, numWindows);
+        }
+        inPass = false;
+        windowPosition = 0;
+        rowPosition = 0;
+        rowsInWindow = 0;
+        if (nextWindow != null) {
+            nextWindow.cancel(false);
+            nextWindow = null;
+        }
+        nextWindowPosition = -1;
+    }
+
+    /**
+     * Chooses a random order for the rows of the current window.
+     */
+    private void shuffleRows() {
+        if (rowOrder == null || rowOrder.length < rowsInWindow) {
+            rowOrder = new int[windowRows];
+        }
+        for (int i = 0; i < rowsInWindow; i++) {
+            rowOrder[i] = i;
+        }
+        shuffle(rowOrder, rowsInWindow);
+    }
+
+    /**
+     * Shuffles the first entries of an array in place (Fisher-Yates).
+     *
+     * @param values the array
+     * @param n the number of entries to shuffle
+     */
+    private void shuffle(final int[] values, final int n) {
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = values[i];
+            values[i] = values[j];
+            values[j] = tmp;
+        }
+    }
+
+    /**
+     * @return whether the source starts over after the last row.
+     */
+    public boolean isLoop() {
+        return loop;
+    }
+
+    /**
+     * @param loop whether the source should start over after the last row,
+     *            rather than be exhausted
+     */
+    public void setLoop(final boolean loop) {
+        this.loop = loop;
+    }
+
+    /**
+     * @return whether rows are read in random order.
+     */
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    /**
+     * Sets whether rows are read in random order. Takes effect from the next
+     * pass (see {@link #reset()}).
+     *
+     * @param shuffle whether to shuffle
+     */
+    public void setShuffle(final boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    /**
+     * @param seed the seed of the random order of shuffled rows
+     */
+    public void setSeed(final long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * @return whether values are stored as 32 bit floats.
+     */
+    public boolean isSinglePrecision() {
+        return width == 4;
+    }
+
+    /**
+     * Writes rows to a binary input table.
+     *
+     * @param file the table to write
+     * @param rows the rows, all of the same length
+     * @param singlePrecision whether to store values as 32 bit floats rather
+     *            than 64 bit doubles
+     * @throws IOException if writing fails
+     */
+    public static void write(final File file, final double[][] rows,
+            final boolean singlePrecision) throws IOException {
+        if (rows.length == 0) {
+            throw new IllegalArgumentException("No rows.");
+        }
+        TableWriter out = new TableWriter(file, rows[0].length,
+                singlePrecision);
+        try {
+            for (double[] row : rows) {
+                if (row.length != rows[0].length) {
+                    throw new IllegalArgumentException("Rows are not of equal"
+                            + " length.");
+                }
+                out.write(row);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Converts a text table, with values separated by commas or white space
+     * and one row per line, to a binary input table. Blank lines are
+     * skipped. The text is read a line at a time, so it need not fit in
+     * memory.
+     *
+     * @param text the text table
+     * @param file the binary table to write
+     * @param singlePrecision whether to store values as 32 bit floats rather
+     *            than 64 bit doubles
+     * @throws IOException if reading or writing fails, or the text is not a
+     *             table of numbers
+     */
+    public static void convert(final File text, final File file,
+            final boolean singlePrecision) throws IOException {
+        BufferedReader in = new BufferedReader(new FileReader(text));
+        TableWriter out = null;
+        try {
+            double[] row = null;
+            String line;
+            int lineNumber = 0;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] fields = SEPARATOR.split(line);
+                if (out == null) {
+                    row = new double[fields.length];
+                    out = new TableWriter(file, fields.length,
+                            singlePrecision);
+                }
+                if (fields.length != row.length) {
+                    throw new IOException("Line " + lineNumber + " of " + text
+                            + " has " + fields.length + " values, not "
+                            + row.length + ".");
+                }
+                try {
+                    for (int i = 0; i < fields.length; i++) {
+                        row[i] = Double.parseDouble(fields[i]);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + " of " + text
+                            + " is not all numbers.", e);
+                }
+                out.write(row);
+            }
+            if (out == null) {
+                throw new IOException(text + " holds no rows.");
+            }
+        } finally {
+            in.close();
+            if (out != null) {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Writes a binary input table a row at a time.
+     */
+    private static final class TableWriter {
+
+        /** The file written. */
+        private final FileChannel channel;
+
+        /** Buffers rows on their way to the file. */
+        private final ByteBuffer buffer;
+
+        /** Values per row. */
+        private final int numColumns;
+
+        /** Whether values are written as floats. */
+        private final boolean singlePrecision;
+
+        /** Rows written so far. */
+        private long rows;
+
+        /**
+         * @param file the file to write
+         * @param numColumns values per row
+         * @param singlePrecision whether values are written as floats
+         * @throws IOException if the file cannot be opened
+         */
+        private TableWriter(final File file, final int numColumns,
+                final boolean singlePrecision) throws IOException {
+            this.numColumns = numColumns;
+            this.singlePrecision = singlePrecision;
+            int rowBytes = numColumns * (singlePrecision ? 4 : 8);
+            buffer = ByteBuffer.allocateDirect(Math.max(rowBytes, 1 << 16))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            channel = FileChannel.open(file.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            // The row count is filled in on closing.
+            putHeader();
+        }
+
+        /**
+         * Writes the header to the buffer.
+         */
+        private void putHeader() {
+            buffer.putInt(MAGIC).putInt(VERSION)
+                    .putInt(singlePrecision ? 4 : 8).putInt(numColumns)
+                    .putLong(rows);
+        }
+
+        /**
+         * @param row a row to append
+         * @throws IOException if writing fails
+         */
+        private void write(final double[] row) throws IOException {
+            if (buffer.remaining() < numColumns * (singlePrecision ? 4 : 8)) {
+                flush();
+            }
+            for (int i = 0; i < numColumns; i++) {
+                if (singlePrecision) {
+                    buffer.putFloat((float) row[i]);
+                } else {
+                    buffer.putDouble(row[i]);
+                }
+            }
+            rows++;
+        }
+
+        /**
+         * @throws IOException if writing fails
+         */
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        /**
+         * Writes the remaining rows and the row count, and closes the file.
+         *
+         * @throws IOException if writing fails
+         */
+        private void close() throws IOException {
+            try {
+                flush();
+                putHeader();
+                buffer.flip();
+                long position = 0;
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,181 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.inputs;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <b>MappedTable</b> gives random access to the rows of a binary input table
+ * (see {@link MappedInputSource} for the file layout). The whole table is
+ * mapped into memory, in segments of whole rows, so only the rows actually
+ * read are paged in and the operating system, not the heap, holds them.
+ *
+ * Rows can be read from any number of threads at once.
+ */
+public class MappedTable implements Closeable {
+
+    /** Largest mapped segment, in bytes. */
+    private static final int MAX_SEGMENT_BYTES = 1 << 30;
+
+    /** The file read. */
+    private final FileChannel channel;
+
+    /** Bytes per value: 4 or 8. */
+    private final int width;
+
+    /** Values per row. */
+    private final int numColumns;
+
+    /** Rows in the table. */
+    private final int numRows;
+
+    /** Rows per segment; the last segment may hold fewer. */
+    private final int segmentRows;
+
+    /** The mapped segments. */
+    private final ByteBuffer[] segments;
+
+    /**
+     * Opens and maps a table.
+     *
+     * @param file the table
+     * @throws IOException if the file cannot be read or is not a table, or
+     *             has more rows than can be indexed by an int
+     */
+    public MappedTable(final File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = MappedInputSource.readHeader(channel, file);
+            width = header.getInt();
+            numColumns = header.getInt();
+            long rows = header.getLong();
+            if ((width != 4 && width != 8) || numColumns <= 0 || rows < 0
+                    || MappedInputSource.HEADER_BYTES
+                            + rows * numColumns * width > channel.size()) {
+                throw new IOException(file + " is truncated or corrupt.");
+            }
+            if (rows > Integer.MAX_VALUE) {
+                throw new IOException(file + " has too many rows.");
+            }
+            numRows = (int) rows;
+            int rowBytes = numColumns * width;
+            segmentRows = Math.max(1, MAX_SEGMENT_BYTES / rowBytes);
+            int numSegments = (int) ((rows + segmentRows - 1) / segmentRows);
+            segments = new ByteBuffer[numSegments];
+            for (int s = 0; s < numSegments; s++) {
+                long first = (long) s * segmentRows;
+                long count = Math.min(segmentRows, rows - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        MappedInputSource.HEADER_BYTES + first * rowBytes,
+                        count * rowBytes).order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the number of values in each row
+     */
+    public int getNumColumns() {
+        return numColumns;
+    }
+
+    /**
+     * @return the number of rows
+     */
+    public int getNumRows() {
+        return numRows;
+    }
+
+    /**
+     * @return whether values are stored as 32 bit floats
+     */
+    public boolean isSinglePrecision() {
+        return width == 4;
+    }
+
+    /**
+     * Reads a row.
+     *
+     * @param row the row to read
+     * @param dest the array to fill
+     * @param offset where in the array to put the first value
+     */
+    public void readRow(final int row, final double[] dest, final int offset) {
+        readRow(row, dest, offset, numColumns);
+    }
+
+    /**
+     * Reads the first values of a row.
+     *
+     * @param row the row to read
+     * @param dest the array to fill
+     * @param offset where in the array to put the first value
+     * @param count number of values to read
+     */
+    public void readRow(final int row, final double[] dest, final int offset,
+            final int count) {
+        if (row < 0 || row >= numRows) {
+            throw new IndexOutOfBoundsException("Row " + row + " of "
+                    + numRows);
+        }
+        if (count > numColumns) {
+            throw new IndexOutOfBoundsException(count + " values requested"
+                    + " from rows of " + numColumns);
+        }
+        ByteBuffer segment = segments[row / segmentRows];
+        int position = (row % segmentRows) * numColumns * width;
+        if (width == 4) {
+            for (int i = 0; i < count; i++) {
+                dest[offset + i] = segment.getFloat(position + 4 * i);
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                dest[offset + i] = segment.getDouble(position + 8 * i);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole table into memory.
+     *
+     * @return the rows
+     */
+    public double[][] readAll() {
+        double[][] rows = new double[numRows][numColumns];
+        for (int r = 0; r < numRows; r++) {
+            readRow(r, rows[r], 0);
+        }
+        return rows;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+}
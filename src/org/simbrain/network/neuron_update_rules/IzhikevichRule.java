@@ -235,6 +235,20 @@ public class IzhikevichRule extends SpikingNeuronUpdateRule implements
         this.threshold = threshold;
     }
 
+    /**
+     * @return the current value of the recovery variable.
+     */
+    public double getRecovery() {
+        return recovery;
+    }
+
+    /**
+     * @param recovery the value of the recovery variable to set
+     */
+    public void setRecovery(double recovery) {
+        this.recovery = recovery;
+    }
+
     public double getRefractoryPeriod() {
         return refractoryPeriod;
     }
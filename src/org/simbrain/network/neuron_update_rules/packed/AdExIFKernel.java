@@ -0,0 +1,212 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.packed;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.AdExIFRule;
+
+/**
+ * Packed kernel for {@link AdExIFRule}. The adaptation variable and last spike
+ * times are held here while packed. Excitatory input is gathered into the
+ * state's input array and inhibitory input into a separate array, mirroring
+ * the rule's use of separated inputs.
+ */
+class AdExIFKernel extends PackedUpdateKernel {
+
+    /** Inhibitory inputs for the current update. */
+    private double[] inhibInputs;
+
+    /** Scratch array for background currents plus noise. */
+    private double[] bgCurrents;
+
+    /** Adaptation variables. */
+    private double[] w;
+
+    /** Times of the last (non-refractory) spikes. */
+    private double[] lastSpikeTime;
+
+    /** Reset potentials. */
+    private double[] vReset;
+
+    /** Threshold potentials. */
+    private double[] vTh;
+
+    /** Peak potentials, at which spikes are registered. */
+    private double[] vPeak;
+
+    /** Leak conductances. */
+    private double[] gL;
+
+    /** Max excitatory conductances. */
+    private double[] geBar;
+
+    /** Max inhibitory conductances. */
+    private double[] giBar;
+
+    /** Leak reversal potentials. */
+    private double[] leakReversal;
+
+    /** Excitatory reversal potentials. */
+    private double[] exReversal;
+
+    /** Inhibitory reversal potentials. */
+    private double[] inReversal;
+
+    /** Spike triggered adaptation amounts. */
+    private double[] b;
+
+    /** Adaptation time constants. */
+    private double[] tauW;
+
+    /** Slope factors. */
+    private double[] slopeFactor;
+
+    /** Sub-threshold adaptation coupling. */
+    private double[] a;
+
+    /** Membrane capacitances. */
+    private double[] memCapacitance;
+
+    /** Background currents. */
+    private double[] iBg;
+
+    /** Absolute refractory periods. */
+    private double[] refractoryPeriod;
+
+    @Override
+    void pack(final List<Neuron> neurons) {
+        super.pack(neurons);
+        int size = neurons.size();
+        inhibInputs = new double[size];
+        bgCurrents = new double[size];
+        w = new double[size];
+        lastSpikeTime = new double[size];
+        vReset = new double[size];
+        vTh = new double[size];
+        vPeak = new double[size];
+        gL = new double[size];
+        geBar = new double[size];
+        giBar = new double[size];
+        leakReversal = new double[size];
+        exReversal = new double[size];
+        inReversal = new double[size];
+        b = new double[size];
+        tauW = new double[size];
+        slopeFactor = new double[size];
+        a = new double[size];
+        memCapacitance = new double[size];
+        iBg = new double[size];
+        refractoryPeriod = new double[size];
+        for (int i = 0; i < size; i++) {
+            AdExIFRule rule = (AdExIFRule) neurons.get(i).getUpdateRule();
+            w[i] = rule.getW();
+            lastSpikeTime[i] = rule.getLastSpikeTime();
+            vReset[i] = rule.getV_Reset();
+            vTh[i] = rule.getV_Th();
+            vPeak[i] = rule.getV_Peak();
+            gL[i] = rule.getG_L();
+            geBar[i] = rule.getG_e_bar();
+            giBar[i] = rule.getG_i_bar();
+            leakReversal[i] = rule.getLeakReversal();
+            exReversal[i] = rule.getExReversal();
+            inReversal[i] = rule.getInReversal();
+            b[i] = rule.getB();
+            tauW[i] = rule.getTauW();
+            slopeFactor[i] = rule.getSlopeFactor();
+            a[i] = rule.getA();
+            memCapacitance[i] = rule.getMemCapacitance();
+            iBg[i] = rule.getI_bg();
+            refractoryPeriod[i] = rule.getRefractoryPeriod();
+        }
+    }
+
+    @Override
+    void unpack(final List<Neuron> neurons) {
+        for (int i = 0, n = neurons.size(); i < n; i++) {
+            // Skip neurons whose rule has been replaced since packing
+            if (neurons.get(i).getUpdateRule() instanceof AdExIFRule) {
+                AdExIFRule rule = (AdExIFRule) neurons.get(i)
+                        .getUpdateRule();
+                rule.setW(w[i]);
+                rule.setV_mem(neurons.get(i).getActivation());
+            }
+        }
+    }
+
+    @Override
+    void gatherInputs(final List<Neuron> neurons,
+            final PackedNeuronState state) {
+        final double[] exInputs = state.inputs;
+        for (int i = 0, n = exInputs.length; i < n; i++) {
+            Neuron neuron = neurons.get(i);
+            double[] ei = neuron.getUpdateRule().getInputType()
+                    .getSeparatedInput(neuron);
+            exInputs[i] = ei[0];
+            inhibInputs[i] = ei[1];
+        }
+    }
+
+    @Override
+    void update(final PackedNeuronState state, final double timeStep,
+            final double time) {
+        final double[] exInputs = state.inputs;
+        final double[] acts = state.activations;
+        final double[] buffers = state.buffers;
+        System.arraycopy(iBg, 0, bgCurrents, 0, iBg.length);
+        addNoise(state, bgCurrents);
+        for (int i = 0, n = exInputs.length; i < n; i++) {
+            if (state.isClamped(i)) {
+                continue;
+            }
+            final boolean refractory = lastSpikeTime[i]
+                    + refractoryPeriod[i] >= time;
+            double vMem = acts[i];
+            double iSynEx = geBar[i] * exInputs[i] * (exReversal[i] - vMem);
+            double iSynIn = -giBar[i] * inhibInputs[i]
+                    * (inReversal[i] - vMem);
+            double iLeak = gL[i] * (leakReversal[i] - vMem);
+            double dVdt = (gL[i] * slopeFactor[i]
+                    * Math.exp((vMem - vTh[i]) / slopeFactor[i]))
+                    + iLeak + iSynEx + iSynIn + bgCurrents[i] - w[i];
+            dVdt /= memCapacitance[i];
+            double dwdt = (a[i] * (vMem - leakReversal[i]) - w[i]) / tauW[i];
+            vMem += (dVdt * timeStep);
+            w[i] += (dwdt * timeStep);
+            boolean spk = false;
+            if (vMem >= vPeak[i]) {
+                vMem = vReset[i];
+                w[i] = w[i] + (b[i] * AdExIFRule.CURRENT_CONVERTER);
+                if (!refractory) {
+                    spk = true;
+                    lastSpikeTime[i] = time;
+                }
+            }
+            state.setSpkBuffer(i, spk);
+            buffers[i] = vMem;
+        }
+    }
+
+    @Override
+    boolean isSpiking() {
+        return true;
+    }
+
+}
@@ -0,0 +1,101 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.packed;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
+
+/**
+ * Packed kernel for {@link IntegrateAndFireRule}.
+ */
+class IntegrateAndFireKernel extends PackedUpdateKernel {
+
+    /** Membrane resistances. */
+    private double[] resistance;
+
+    /** Membrane time constants. */
+    private double[] timeConstant;
+
+    /** Spike thresholds. */
+    private double[] threshold;
+
+    /** Post-spike reset potentials. */
+    private double[] resetPotential;
+
+    /** Resting potentials. */
+    private double[] restingPotential;
+
+    /** Background currents. */
+    private double[] backgroundCurrent;
+
+    @Override
+    void pack(final List<Neuron> neurons) {
+        super.pack(neurons);
+        int size = neurons.size();
+        resistance = new double[size];
+        timeConstant = new double[size];
+        threshold = new double[size];
+        resetPotential = new double[size];
+        restingPotential = new double[size];
+        backgroundCurrent = new double[size];
+        for (int i = 0; i < size; i++) {
+            IntegrateAndFireRule rule = (IntegrateAndFireRule) neurons.get(i)
+                    .getUpdateRule();
+            resistance[i] = rule.getResistance();
+            timeConstant[i] = rule.getTimeConstant();
+            threshold[i] = rule.getThreshold();
+            resetPotential[i] = rule.getResetPotential();
+            restingPotential[i] = rule.getRestingPotential();
+            backgroundCurrent[i] = rule.getBackgroundCurrent();
+        }
+    }
+
+    @Override
+    void update(final PackedNeuronState state, final double timeStep,
+            final double time) {
+        final double[] inputs = state.inputs;
+        final double[] acts = state.activations;
+        final double[] buffers = state.buffers;
+        addNoise(state, inputs);
+        for (int i = 0, n = inputs.length; i < n; i++) {
+            if (state.isClamped(i)) {
+                continue;
+            }
+            double memPotential = acts[i];
+            memPotential += timeStep
+                    * (-(memPotential - restingPotential[i]) + resistance[i]
+                            * (inputs[i] + backgroundCurrent[i]))
+                    / timeConstant[i];
+            boolean spk = memPotential >= threshold[i];
+            if (spk) {
+                memPotential = resetPotential[i];
+            }
+            state.setSpkBuffer(i, spk);
+            buffers[i] = memPotential;
+        }
+    }
+
+    @Override
+    boolean isSpiking() {
+        return true;
+    }
+
+}
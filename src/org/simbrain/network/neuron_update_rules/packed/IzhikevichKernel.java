@@ -0,0 +1,122 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.packed;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+
+/**
+ * Packed kernel for {@link IzhikevichRule}. The recovery variable is held here
+ * while packed and written back to the rules when unpacked.
+ */
+class IzhikevichKernel extends PackedUpdateKernel {
+
+    /** Recovery variables. */
+    private double[] recovery;
+
+    /** Recovery time scales. */
+    private double[] a;
+
+    /** Recovery sensitivities. */
+    private double[] b;
+
+    /** Post-spike reset values. */
+    private double[] c;
+
+    /** Post-spike recovery increments. */
+    private double[] d;
+
+    /** Background currents. */
+    private double[] iBg;
+
+    /** Spike thresholds. */
+    private double[] threshold;
+
+    @Override
+    void pack(final List<Neuron> neurons) {
+        super.pack(neurons);
+        int size = neurons.size();
+        recovery = new double[size];
+        a = new double[size];
+        b = new double[size];
+        c = new double[size];
+        d = new double[size];
+        iBg = new double[size];
+        threshold = new double[size];
+        for (int i = 0; i < size; i++) {
+            IzhikevichRule rule = (IzhikevichRule) neurons.get(i)
+                    .getUpdateRule();
+            recovery[i] = rule.getRecovery();
+            a[i] = rule.getA();
+            b[i] = rule.getB();
+            c[i] = rule.getC();
+            d[i] = rule.getD();
+            iBg[i] = rule.getiBg();
+            threshold[i] = rule.getThreshold();
+        }
+    }
+
+    @Override
+    void unpack(final List<Neuron> neurons) {
+        for (int i = 0, n = neurons.size(); i < n; i++) {
+            // Skip neurons whose rule has been replaced since packing
+            if (neurons.get(i).getUpdateRule() instanceof IzhikevichRule) {
+                ((IzhikevichRule) neurons.get(i).getUpdateRule())
+                        .setRecovery(recovery[i]);
+            }
+        }
+    }
+
+    @Override
+    void update(final PackedNeuronState state, final double timeStep,
+            final double time) {
+        final double[] inputs = state.inputs;
+        final double[] acts = state.activations;
+        final double[] buffers = state.buffers;
+        addNoise(state, inputs);
+        for (int i = 0, n = inputs.length; i < n; i++) {
+            if (state.isClamped(i)) {
+                continue;
+            }
+            final double activation = acts[i];
+            final double input = inputs[i] + iBg[i];
+            recovery[i] += (timeStep * (a[i] * ((b[i] * activation)
+                    - recovery[i])));
+            double val = activation
+                    + (timeStep * (((.04 * (activation * activation))
+                            + (5 * activation) + 140)
+                            - recovery[i] + input));
+            boolean spk = val >= threshold[i];
+            if (spk) {
+                val = c[i];
+                recovery[i] += d[i];
+            }
+            state.setSpkBuffer(i, spk);
+            buffers[i] = val;
+        }
+    }
+
+    @Override
+    boolean isSpiking() {
+        return true;
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.packed;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+
+/**
+ * Packed kernel for {@link LinearRule}.
+ */
+class LinearKernel extends PackedUpdateKernel {
+
+    /** Slopes. */
+    private double[] slope;
+
+    /** Biases. */
+    private double[] bias;
+
+    /** Upper bounds. */
+    private double[] upperBound;
+
+    /** Lower bounds. */
+    private double[] lowerBound;
+
+    /** Whether each neuron clips its activation. */
+    private boolean[] clipping;
+
+    @Override
+    void pack(final List<Neuron> neurons) {
+        super.pack(neurons);
+        int size = neurons.size();
+        slope = new double[size];
+        bias = new double[size];
+        upperBound = new double[size];
+        lowerBound = new double[size];
+        clipping = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            LinearRule rule = (LinearRule) neurons.get(i).getUpdateRule();
+            slope[i] = rule.getSlope();
+            bias[i] = rule.getBias();
+            upperBound[i] = rule.getUpperBound();
+            lowerBound[i] = rule.getLowerBound();
+            clipping[i] = rule.isClipped();
+        }
+    }
+
+    @Override
+    void update(final PackedNeuronState state, final double timeStep,
+            final double time) {
+        final double[] inputs = state.inputs;
+        final double[] buffers = state.buffers;
+        // Inputs are gathered afresh each update, so reuse them for the
+        // unclipped values.
+        final double[] vals = inputs;
+        for (int i = 0, n = inputs.length; i < n; i++) {
+            vals[i] = (slope[i] * inputs[i]) + bias[i];
+        }
+        addNoise(state, vals);
+        for (int i = 0, n = inputs.length; i < n; i++) {
+            if (state.isClamped(i)) {
+                continue;
+            }
+            double val = vals[i];
+            if (clipping[i]) {
+                if (val > upperBound[i]) {
+                    val = upperBound[i];
+                } else if (val < lowerBound[i]) {
+                    val = lowerBound[i];
+                }
+            }
+            buffers[i] = val;
+        }
+    }
+
+    @Override
+    boolean isSpiking() {
+        return false;
+    }
+
+}
@@ -0,0 +1,345 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.packed;
+
+import java.util.List;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
+
+/**
+ * <b>PackedNeuronState</b> holds the state of a homogeneous list of neurons
+ * (activations, buffers, inputs and spike bits) in contiguous primitive
+ * arrays, and updates them with a {@link PackedUpdateKernel} that operates on
+ * those arrays in bulk rather than neuron by neuron.
+ *
+ * While packed the arrays hold the neurons' state between updates: the
+ * {@link Neuron} objects remain its public face, but their accessors read and
+ * write the arrays (see {@link Neuron#setPackedState(PackedNeuronState, int)}),
+ * so edits made by the GUI, couplings or scripts land directly in the arrays
+ * and an update only has to gather the neurons' inputs. Activations, buffers
+ * and spikes are copied back into the neurons, and rule state variables (e.g.
+ * Izhikevich recovery), which live only in the kernel while packed, are
+ * written back to the neurons' update rules, by {@link #unpack()}.
+ */
+public class PackedNeuronState {
+
+    /** The neurons whose state is packed here, in index order. */
+    private final List<Neuron> neurons;
+
+    /** The number of neurons packed. */
+    private final int size;
+
+    /** Activations of the neurons. */
+    final double[] activations;
+
+    /** Activation buffers of the neurons. */
+    final double[] buffers;
+
+    /** Activations of the neurons before they were last set. */
+    private final double[] lastActivations;
+
+    /**
+     * Net input to each neuron for the current update. Filled in by
+     * {@link PackedUpdateKernel#gatherInputs(List, PackedNeuronState)}.
+     */
+    final double[] inputs;
+
+    /** Spike bits, one per neuron, 64 neurons per word. */
+    final long[] spikes;
+
+    /** Spike buffer bits, one per neuron, 64 neurons per word. */
+    final long[] spkBuffers;
+
+    /** Clamped bits, one per neuron, 64 neurons per word. */
+    final long[] clamped;
+
+    /** The kernel which performs the bulk update. */
+    private final PackedUpdateKernel kernel;
+
+    /**
+     * Packs the state of a list of neurons. Use
+     * {@link #pack(List)}, which checks that the list can be packed.
+     *
+     * @param neurons the neurons to pack
+     * @param kernel the kernel matching their update rule
+     */
+    private PackedNeuronState(final List<Neuron> neurons,
+            final PackedUpdateKernel kernel) {
+        this.neurons = neurons;
+        this.size = neurons.size();
+        this.kernel = kernel;
+        activations = new double[size];
+        buffers = new double[size];
+        lastActivations = new double[size];
+        inputs = new double[size];
+        int words = (size + 63) >>> 6;
+        spikes = new long[words];
+        spkBuffers = new long[words];
+        clamped = new long[words];
+        for (int i = 0; i < size; i++) {
+            Neuron n = neurons.get(i);
+            activations[i] = n.getActivation();
+            buffers[i] = n.getBuffer();
+            lastActivations[i] = n.getLastActivation();
+            setBit(spikes, i, n.isSpike());
+            setBit(spkBuffers, i, n.getSpkBuffer());
+            setBit(clamped, i, n.isClamped());
+        }
+        kernel.pack(neurons);
+        for (int i = 0; i < size; i++) {
+            neurons.get(i).setPackedState(this, i);
+        }
+    }
+
+    /**
+     * Packs the state of a list of neurons which all use the same update rule
+     * class, provided a packed kernel exists for that rule.
+     *
+     * @param neurons the neurons to pack
+     * @return the packed state or null if the neurons are empty, use mixed
+     *         update rules, or use a rule for which no packed kernel exists.
+     */
+    public static PackedNeuronState pack(final List<Neuron> neurons) {
+        if (neurons.isEmpty()) {
+            return null;
+        }
+        Class<?> ruleClass = neurons.get(0).getUpdateRule().getClass();
+        for (int i = 1, n = neurons.size(); i < n; i++) {
+            if (neurons.get(i).getUpdateRule().getClass() != ruleClass) {
+                return null;
+            }
+        }
+        PackedUpdateKernel kernel = PackedUpdateKernel.forRuleClass(ruleClass);
+        if (kernel == null) {
+            return null;
+        }
+        return new PackedNeuronState(neurons, kernel);
+    }
+
+    /**
+     * Performs a buffered update of all the packed neurons: gathers inputs
+     * from the neurons, runs the kernel over the arrays, and moves buffers
+     * into activations (respecting clamping).
+     *
+     * @param network the network the neurons belong to (supplies time and
+     *            time step)
+     */
+    public void update(final Network network) {
+        kernel.gatherInputs(neurons, this);
+        kernel.update(this, network.getTimeStep(), network.getTime());
+        commit(network.getTime());
+    }
+
+    /**
+     * Moves buffers to activations, respecting clamping, as
+     * {@link Neuron#setToBufferVals()} does for each neuron.
+     *
+     * @param time the current network time, recorded as the last spike time
+     *            of neurons which spiked.
+     */
+    private void commit(final double time) {
+        System.arraycopy(activations, 0, lastActivations, 0, size);
+        System.arraycopy(spkBuffers, 0, spikes, 0, spikes.length);
+        for (int i = 0; i < size; i++) {
+            if (!getBit(clamped, i)) {
+                activations[i] = buffers[i];
+            }
+        }
+        if (kernel.isSpiking()) {
+            for (int w = 0, n = spikes.length; w < n; w++) {
+                long fired = spikes[w] & ~clamped[w];
+                while (fired != 0) {
+                    int i = (w << 6) + Long.numberOfTrailingZeros(fired);
+                    ((SpikingNeuronUpdateRule) neurons.get(i).getUpdateRule())
+                            .setLastSpikeTime(time);
+                    fired &= fired - 1;
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies activations, buffers and spikes back into the neurons and writes
+     * rule state variables held by the kernel back to the neurons' update
+     * rules. Must be called before the packed state is discarded.
+     */
+    public void unpack() {
+        for (int i = 0; i < size; i++) {
+            neurons.get(i).setPackedState(null, 0);
+        }
+        kernel.unpack(neurons);
+    }
+
+    /**
+     * @return the number of neurons packed.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the neurons whose state is packed.
+     */
+    public List<Neuron> getNeurons() {
+        return neurons;
+    }
+
+    /**
+     * @return the net input array, which other bulk operations (e.g. sparse
+     *         synapse groups) may write into directly.
+     */
+    public double[] getInputs() {
+        return inputs;
+    }
+
+    /**
+     * @return the activation array.
+     */
+    public double[] getActivations() {
+        return activations;
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return its activation
+     */
+    public double getActivation(final int i) {
+        return activations[i];
+    }
+
+    /**
+     * @param i index of a neuron
+     * @param act its new activation
+     */
+    public void setActivation(final int i, final double act) {
+        activations[i] = act;
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return its activation before it was last set
+     */
+    public double getLastActivation(final int i) {
+        return lastActivations[i];
+    }
+
+    /**
+     * @param i index of a neuron
+     * @param act its activation before it was last set
+     */
+    public void setLastActivation(final int i, final double act) {
+        lastActivations[i] = act;
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return its activation buffer
+     */
+    public double getBuffer(final int i) {
+        return buffers[i];
+    }
+
+    /**
+     * @param i index of a neuron
+     * @param buffer its new activation buffer
+     */
+    public void setBuffer(final int i, final double buffer) {
+        buffers[i] = buffer;
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return whether that neuron spiked on the last update
+     */
+    public boolean isSpike(final int i) {
+        return getBit(spikes, i);
+    }
+
+    /**
+     * @param i index of a neuron
+     * @param spk whether it spiked
+     */
+    public void setSpike(final int i, final boolean spk) {
+        setBit(spikes, i, spk);
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return the value of its spike buffer
+     */
+    public boolean getSpkBuffer(final int i) {
+        return getBit(spkBuffers, i);
+    }
+
+    /**
+     * Set the spike buffer bit of a neuron.
+     *
+     * @param i index of the neuron
+     * @param spk the value of its spike buffer
+     */
+    public void setSpkBuffer(final int i, final boolean spk) {
+        setBit(spkBuffers, i, spk);
+    }
+
+    /**
+     * @param i index of a neuron
+     * @return whether that neuron is clamped
+     */
+    public boolean isClamped(final int i) {
+        return getBit(clamped, i);
+    }
+
+    /**
+     * @param i index of a neuron
+     * @param clmp whether it is clamped
+     */
+    public void setClamped(final int i, final boolean clmp) {
+        setBit(clamped, i, clmp);
+    }
+
+    /**
+     * Read a bit.
+     *
+     * @param bits the bit array
+     * @param i the bit index
+     * @return the value of the bit
+     */
+    private static boolean getBit(final long[] bits, final int i) {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Write a bit.
+     *
+     * @param bits the bit array
+     * @param i the bit index
+     * @param val the value to write
+     */
+    private static void setBit(final long[] bits, final int i,
+            final boolean val) {
+        if (val) {
+            bits[i >>> 6] |= (1L << i);
+        } else {
+            bits[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+}
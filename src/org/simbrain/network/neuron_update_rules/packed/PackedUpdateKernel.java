@@ -0,0 +1,155 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.packed;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.AdExIFRule;
+import org.simbrain.network.neuron_update_rules.IntegrateAndFireRule;
+import org.simbrain.network.neuron_update_rules.IzhikevichRule;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.neuron_update_rules.interfaces.NoisyUpdateRule;
+import org.simbrain.util.randomizer.Randomizer;
+
+/**
+ * A bulk version of a neuron update rule, which updates all the neurons of a
+ * {@link PackedNeuronState} at once. Rule parameters and rule state variables
+ * are copied out of each neuron's update rule into per-neuron primitive arrays
+ * when packed, so neurons with heterogeneous parameters (common in spiking
+ * models) are supported as long as they share a rule class.
+ *
+ * Kernels must skip clamped neurons, must write their results to the state's
+ * buffers (never its activations), and must behave exactly as the
+ * corresponding rule's update method does.
+ */
+public abstract class PackedUpdateKernel {
+
+    /**
+     * Per-neuron noise generators, null for neurons which do not add noise.
+     */
+    private Randomizer[] noise;
+
+    /** Whether any neuron adds noise. */
+    private boolean anyNoise;
+
+    /**
+     * Returns a new kernel for the given update rule class, or null if there is
+     * no packed kernel for that class.
+     *
+     * @param ruleClass the class of the neurons' update rule
+     * @return the kernel or null
+     */
+    public static PackedUpdateKernel forRuleClass(final Class<?> ruleClass) {
+        if (ruleClass == LinearRule.class) {
+            return new LinearKernel();
+        } else if (ruleClass == SigmoidalRule.class) {
+            return new SigmoidalKernel();
+        } else if (ruleClass == IzhikevichRule.class) {
+            return new IzhikevichKernel();
+        } else if (ruleClass == IntegrateAndFireRule.class) {
+            return new IntegrateAndFireKernel();
+        } else if (ruleClass == AdExIFRule.class) {
+            return new AdExIFKernel();
+        } else {
+            return null;
+        }
+    }
+
+    /**
+     * Copy rule parameters and rule state out of the neurons' update rules.
+     * Subclasses must call this implementation to pack noise generators.
+     *
+     * @param neurons the neurons being packed
+     */
+    void pack(final List<Neuron> neurons) {
+        noise = new Randomizer[neurons.size()];
+        anyNoise = false;
+        for (int i = 0, n = neurons.size(); i < n; i++) {
+            NoisyUpdateRule rule = (NoisyUpdateRule) neurons.get(i)
+                    .getUpdateRule();
+            if (rule.getAddNoise()) {
+                noise[i] = rule.getNoiseGenerator();
+                anyNoise = true;
+            }
+        }
+    }
+
+    /**
+     * Write rule state held by this kernel back into the neurons' update
+     * rules. Does nothing by default, for kernels without rule state.
+     *
+     * @param neurons the neurons which were packed
+     */
+    void unpack(final List<Neuron> neurons) {
+    }
+
+    /**
+     * Fill in the state's input array with each neuron's net input. By default
+     * uses each neuron's rule input type, as the rule's update would.
+     *
+     * @param neurons the packed neurons
+     * @param state the packed state
+     */
+    void gatherInputs(final List<Neuron> neurons,
+            final PackedNeuronState state) {
+        final double[] inputs = state.inputs;
+        for (int i = 0, n = inputs.length; i < n; i++) {
+            Neuron neuron = neurons.get(i);
+            inputs[i] = neuron.getUpdateRule().getInputType()
+                    .getInput(neuron);
+        }
+    }
+
+    /**
+     * Update the buffers of all (unclamped) neurons in the state.
+     *
+     * @param state the packed state
+     * @param timeStep the network time step
+     * @param time the current network time
+     */
+    abstract void update(PackedNeuronState state, double timeStep,
+            double time);
+
+    /**
+     * @return true if this kernel implements a spiking neuron update rule.
+     */
+    abstract boolean isSpiking();
+
+    /**
+     * Adds noise to the entries of an array, for the unclamped neurons which
+     * use noise. Clamped neurons are not updated, so no noise is drawn for
+     * them, as with the per-neuron update.
+     *
+     * @param state the packed state
+     * @param vals the values to add noise to
+     */
+    final void addNoise(final PackedNeuronState state, final double[] vals) {
+        if (!anyNoise) {
+            return;
+        }
+        for (int i = 0, n = vals.length; i < n; i++) {
+            if (noise[i] != null && !state.isClamped(i)) {
+                vals[i] += noise[i].getRandom();
+            }
+        }
+    }
+
+}
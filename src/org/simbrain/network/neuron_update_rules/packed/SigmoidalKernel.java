@@ -0,0 +1,87 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.neuron_update_rules.packed;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.util.math.SquashingFunction;
+
+/**
+ * Packed kernel for {@link SigmoidalRule}.
+ */
+class SigmoidalKernel extends PackedUpdateKernel {
+
+    /** Squashing functions. */
+    private SquashingFunction[] sFunction;
+
+    /** Biases. */
+    private double[] bias;
+
+    /** Slopes. */
+    private double[] slope;
+
+    /** Upper bounds. */
+    private double[] upperBound;
+
+    /** Lower bounds. */
+    private double[] lowerBound;
+
+    @Override
+    void pack(final List<Neuron> neurons) {
+        super.pack(neurons);
+        int size = neurons.size();
+        sFunction = new SquashingFunction[size];
+        bias = new double[size];
+        slope = new double[size];
+        upperBound = new double[size];
+        lowerBound = new double[size];
+        for (int i = 0; i < size; i++) {
+            SigmoidalRule rule = (SigmoidalRule) neurons.get(i)
+                    .getUpdateRule();
+            sFunction[i] = rule.getSquashFunctionType();
+            bias[i] = rule.getBias();
+            slope[i] = rule.getSlope();
+            upperBound[i] = rule.getUpperBound();
+            lowerBound[i] = rule.getLowerBound();
+        }
+    }
+
+    @Override
+    void update(final PackedNeuronState state, final double timeStep,
+            final double time) {
+        final double[] inputs = state.inputs;
+        final double[] buffers = state.buffers;
+        addNoise(state, inputs);
+        for (int i = 0, n = inputs.length; i < n; i++) {
+            if (state.isClamped(i)) {
+                continue;
+            }
+            buffers[i] = sFunction[i].valueOf(inputs[i] + bias[i],
+                    upperBound[i], lowerBound[i], slope[i]);
+        }
+    }
+
+    @Override
+    boolean isSpiking() {
+        return false;
+    }
+
+}
@@ -0,0 +1,530 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.recording;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.simbrain.network.core.Neuron;
+
+/**
+ * <b>ActivationRecorder</b> writes the activations or spikes of a fixed set
+ * of neurons, once per recorded update, to a binary file. Recording only
+ * copies the values into a preallocated frame taken from a bounded ring of
+ * frames; a writer thread encodes the frames and writes them to a file
+ * channel, so the update thread does no formatting or I/O. If the writer
+ * falls a whole ring behind, recording blocks until it catches up.
+ *
+ * The file is little-endian and laid out in chunks of consecutive updates,
+ * so that one neuron's history can be read without reading everyone else's:
+ *
+ * <pre>
+ * header: int magic "SBRC", int version, int format, int neurons
+ * chunk:  int frames, int payload bytes, double[frames] times, payload
+ * </pre>
+ *
+ * For {@link RecordingFormat#FLOAT} and {@link RecordingFormat#DOUBLE} the
+ * payload is column-major: each neuron's activations over the chunk's frames,
+ * neuron after neuron. For {@link RecordingFormat#SPIKES} it holds, for each
+ * frame, the number of spikes and then the ascending indices of the neurons
+ * which spiked as differences from the previous index, all as unsigned
+ * variable-length integers (7 bits per byte, low bits first). A chunk cut
+ * short by a crash is ignored on reading. Use {@link ActivationRecording} to
+ * read a recording.
+ *
+ * A recorder must be fed from one thread at a time, and must be closed to
+ * write out the last chunk.
+ */
+public class ActivationRecorder implements Closeable {
+
+    /** The conventional extension of binary recordings. */
+    public static final String FILE_EXTENSION = "sbr";
+
+    /** The first four bytes of a recording: "SBRC". */
+    static final int MAGIC = 0x43524253;
+
+    /** The version of the file layout. */
+    static final int VERSION = 1;
+
+    /** Bytes in the file header. */
+    static final int HEADER_BYTES = 16;
+
+    /** Bytes in a chunk header. */
+    static final int CHUNK_HEADER_BYTES = 8;
+
+    /** The default number of frames in the ring between the threads. */
+    public static final int DEFAULT_RING_SIZE = 256;
+
+    /** The most updates held in a chunk. */
+    private static final int MAX_CHUNK_FRAMES = 1024;
+
+    /** The payload size at which a chunk is written out. */
+    private static final int CHUNK_BYTES = 1 << 22;
+
+    /** Marks the end of recording in the queue of filled frames. */
+    private static final Frame END = new Frame(0);
+
+    /** What is recorded. */
+    private final RecordingFormat format;
+
+    /** The number of neurons recorded. */
+    private final int numNeurons;
+
+    /** The file written. */
+    private final FileChannel channel;
+
+    /** Empty frames, ready to be filled by the recording thread. */
+    private final BlockingQueue<Frame> free;
+
+    /** Filled frames, waiting for the writer thread. */
+    private final BlockingQueue<Frame> filled;
+
+    /** The thread which encodes and writes frames. */
+    private final Thread writer;
+
+    /** The first error of the writer thread, if any. */
+    private volatile Throwable failure;
+
+    /** Whether {@link #close()} has been called. */
+    private boolean closed;
+
+    /** The most frames in a chunk. */
+    private final int chunkFrames;
+
+    /** Times of the frames in the current chunk. Writer thread only. */
+    private final double[] chunkTimes;
+
+    /** Payload of the current chunk. Writer thread only. */
+    private ByteBuffer chunkData;
+
+    /** Number of frames in the current chunk. Writer thread only. */
+    private int chunkCount;
+
+    /**
+     * Creates a recorder writing to a new file (or replacing an existing
+     * one), with the default ring size.
+     *
+     * @param file the file to write
+     * @param format what to record
+     * @param numNeurons the number of neurons recorded
+     * @throws IOException if the file cannot be opened
+     */
+    public ActivationRecorder(final File file, final RecordingFormat format,
+            final int numNeurons) throws IOException {
+        this(file, format, numNeurons, DEFAULT_RING_SIZE);
+    }
+
+    /**
+     * Creates a recorder writing to a new file (or replacing an existing
+     * one).
+     *
+     * @param file the file to write
+     * @param format what to record
+     * @param numNeurons the number of neurons recorded
+     * @param ringSize the number of frames the recording thread may get
+     *            ahead of the writer thread
+     * @throws IOException if the file cannot be opened
+     */
+    public ActivationRecorder(final File file, final RecordingFormat format,
+            final int numNeurons, final int ringSize) throws IOException {
+        if (numNeurons <= 0 || ringSize <= 0) {
+            throw new IllegalArgumentException("Neurons and ring size must"
+                    + " be positive.");
+        }
+        this.format = format;
+        this.numNeurons = numNeurons;
+        if (format.isSpikes()) {
+            chunkFrames = MAX_CHUNK_FRAMES;
+            chunkData = ByteBuffer.allocate(Math.max(1024, numNeurons / 4));
+        } else {
+            long frameBytes = (long) numNeurons * format.getWidth();
+            chunkFrames = (int) Math.max(1,
+                    Math.min(MAX_CHUNK_FRAMES, CHUNK_BYTES / frameBytes));
+            if (frameBytes * chunkFrames > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Too many neurons.");
+            }
+            chunkData = ByteBuffer.allocateDirect(
+                    (int) (frameBytes * chunkFrames));
+        }
+        chunkData.order(ByteOrder.LITTLE_ENDIAN);
+        chunkTimes = new double[chunkFrames];
+        free = new ArrayBlockingQueue<Frame>(ringSize);
+        filled = new ArrayBlockingQueue<Frame>(ringSize + 1);
+        for (int i = 0; i < ringSize; i++) {
+            free.add(new Frame(format.isSpikes() ? 0 : numNeurons));
+        }
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(
+                ByteOrder.LITTLE_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(format.ordinal())
+                .putInt(numNeurons).flip();
+        try {
+            writeFully(header);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                writeFrames();
+            }
+        }, "Recorder " + file.getName());
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Records the current activations, or the current spikes, of the
+     * recorded neurons.
+     *
+     * @param time the network time of the update
+     * @param neurons the recorded neurons, in the same order every time
+     */
+    public void record(final double time, final List<Neuron> neurons) {
+        Frame frame = acquire(time);
+        if (format.isSpikes()) {
+            int count = 0;
+            for (int i = 0, n = neurons.size(); i < n; i++) {
+                if (neurons.get(i).isSpike()) {
+                    count = frame.addSpike(count, i);
+                }
+            }
+            frame.count = count;
+        } else {
+            double[] values = frame.values;
+            for (int i = 0; i < numNeurons; i++) {
+                values[i] = neurons.get(i).getActivation();
+            }
+        }
+        submit(frame);
+    }
+
+    /**
+     * Records activations. For spike recordings, positive values count as
+     * spikes.
+     *
+     * @param time the network time of the update
+     * @param activations the activations of the recorded neurons
+     */
+    public void record(final double time, final double[] activations) {
+        Frame frame = acquire(time);
+        if (format.isSpikes()) {
+            int count = 0;
+            for (int i = 0; i < numNeurons; i++) {
+                if (activations[i] > 0) {
+                    count = frame.addSpike(count, i);
+                }
+            }
+            frame.count = count;
+        } else {
+            System.arraycopy(activations, 0, frame.values, 0, numNeurons);
+        }
+        submit(frame);
+    }
+
+    /**
+     * Takes an empty frame from the ring, waiting for one if necessary.
+     *
+     * @param time the time of the frame
+     * @return the frame
+     */
+    private Frame acquire(final double time) {
+        if (closed) {
+            throw new IllegalStateException("Recorder is closed.");
+        }
+        checkFailure();
+        try {
+            Frame frame = free.take();
+            frame.time = time;
+            return frame;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while recording.", e);
+        }
+    }
+
+    /**
+     * Hands a filled frame to the writer thread.
+     *
+     * @param frame the frame
+     */
+    private void submit(final Frame frame) {
+        // Never blocks: there are fewer frames than places in the queue.
+        filled.add(frame);
+    }
+
+    /**
+     * Throws if the writer thread has failed.
+     */
+    private void checkFailure() {
+        if (failure != null) {
+            throw new IllegalStateException("Recording failed.", failure);
+        }
+    }
+
+    /**
+     * Waits for all recorded frames to be written, writes out the last chunk
+     * and closes the file.
+     *
+     * @throws IOException if writing failed at any point
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        filled.add(END);
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        channel.close();
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        if (failure != null) {
+            throw new IOException("Recording failed.", failure);
+        }
+    }
+
+    /**
+     * @return what is recorded.
+     */
+    public RecordingFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of neurons recorded.
+     */
+    public int getNumNeurons() {
+        return numNeurons;
+    }
+
+    /**
+     * The writer thread: appends filled frames to the current chunk until
+     * the end of the recording. After a failure frames are only recycled, so
+     * that the recording thread never blocks for good.
+     */
+    private void writeFrames() {
+        try {
+            while (true) {
+                Frame frame = filled.take();
+                if (frame == END) {
+                    break;
+                }
+                if (failure == null) {
+                    try {
+                        append(frame);
+                    } catch (Throwable t) {
+                        failure = t;
+                    }
+                }
+                free.add(frame);
+            }
+            if (failure == null) {
+                writeChunk();
+            }
+        } catch (Throwable t) {
+            if (failure == null) {
+                failure = t;
+            }
+        }
+    }
+
+    /**
+     * Adds a frame to the current chunk, writing the chunk out if full.
+     *
+     * @param frame the frame
+     * @throws IOException if writing fails
+     */
+    private void append(final Frame frame) throws IOException {
+        chunkTimes[chunkCount] = frame.time;
+        if (format.isSpikes()) {
+            putVarint(frame.count);
+            int previous = 0;
+            for (int i = 0; i < frame.count; i++) {
+                putVarint(frame.spikes[i] - previous);
+                previous = frame.spikes[i];
+            }
+        } else {
+            double[] values = frame.values;
+            int width = format.getWidth();
+            int stride = chunkFrames * width;
+            int index = chunkCount * width;
+            if (format == RecordingFormat.FLOAT) {
+                for (int i = 0; i < numNeurons; i++, index += stride) {
+                    chunkData.putFloat(index, (float) values[i]);
+                }
+            } else {
+                for (int i = 0; i < numNeurons; i++, index += stride) {
+                    chunkData.putDouble(index, values[i]);
+                }
+            }
+        }
+        chunkCount++;
+        if (chunkCount == chunkFrames
+                || (format.isSpikes() && chunkData.position() >= CHUNK_BYTES)) {
+            writeChunk();
+        }
+    }
+
+    /**
+     * Writes out the current chunk, if it holds any frames, and starts a new
+     * one.
+     *
+     * @throws IOException if writing fails
+     */
+    private void writeChunk() throws IOException {
+        if (chunkCount == 0) {
+            return;
+        }
+        ByteBuffer[] payload;
+        int payloadBytes;
+        if (format.isSpikes()) {
+            chunkData.flip();
+            payloadBytes = chunkData.remaining();
+            payload = new ByteBuffer[] {chunkData};
+        } else {
+            int columnBytes = chunkCount * format.getWidth();
+            payloadBytes = columnBytes * numNeurons;
+            if (chunkCount == chunkFrames) {
+                chunkData.clear();
+                payload = new ByteBuffer[] {chunkData};
+            } else {
+                // A short last chunk: gather the used part of each column.
+                int stride = chunkFrames * format.getWidth();
+                payload = new ByteBuffer[numNeurons];
+                for (int i = 0; i < numNeurons; i++) {
+                    ByteBuffer column = chunkData.duplicate();
+                    column.limit(i * stride + columnBytes);
+                    column.position(i * stride);
+                    payload[i] = column;
+                }
+            }
+        }
+        ByteBuffer head = ByteBuffer.allocate(CHUNK_HEADER_BYTES + chunkCount
+                * 8).order(ByteOrder.LITTLE_ENDIAN);
+        head.putInt(chunkCount).putInt(payloadBytes);
+        for (int i = 0; i < chunkCount; i++) {
+            head.putDouble(chunkTimes[i]);
+        }
+        head.flip();
+        writeFully(head);
+        for (ByteBuffer buffer : payload) {
+            writeFully(buffer);
+        }
+        chunkData.clear();
+        chunkCount = 0;
+    }
+
+    /**
+     * Writes all of a buffer to the file.
+     *
+     * @param buffer the buffer
+     * @throws IOException if writing fails
+     */
+    private void writeFully(final ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Appends an unsigned variable-length integer to the spike payload,
+     * growing it as needed.
+     *
+     * @param value a non-negative value
+     */
+    private void putVarint(int value) {
+        if (chunkData.remaining() < 5) {
+            ByteBuffer larger = ByteBuffer.allocate(chunkData.capacity() * 2)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            chunkData.flip();
+            larger.put(chunkData);
+            chunkData = larger;
+        }
+        while ((value & ~0x7F) != 0) {
+            chunkData.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        chunkData.put((byte) value);
+    }
+
+    /**
+     * One recorded update, passed from the recording thread to the writer
+     * thread.
+     */
+    private static final class Frame {
+
+        /** The network time of the update. */
+        private double time;
+
+        /** The activations, for activation recordings. */
+        private final double[] values;
+
+        /** The indices of the neurons which spiked, for spike recordings. */
+        private int[] spikes = new int[16];
+
+        /** The number of entries of {@link #spikes} used. */
+        private int count;
+
+        /**
+         * @param numValues the number of activations held
+         */
+        private Frame(final int numValues) {
+            values = new double[numValues];
+        }
+
+        /**
+         * Appends a spike, growing the spike array as needed.
+         *
+         * @param index where to put the spike
+         * @param neuron the index of the neuron which spiked
+         * @return the number of spikes held now
+         */
+        private int addSpike(final int index, final int neuron) {
+            if (index == spikes.length) {
+                int[] larger = new int[spikes.length * 2];
+                System.arraycopy(spikes, 0, larger, 0, index);
+                spikes = larger;
+            }
+            spikes[index] = neuron;
+            return index + 1;
+        }
+
+    }
+
+}
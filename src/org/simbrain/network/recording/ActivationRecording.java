@@ -0,0 +1,520 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.recording;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * <b>ActivationRecording</b> reads a recording written by
+ * {@link ActivationRecorder}. Updates are numbered from zero in the order they
+ * were recorded and are called frames here. Chunks are memory-mapped one at a
+ * time as they are needed, so recordings larger than memory can be read, and
+ * reading a neuron's activations over time touches only that neuron's column
+ * in each chunk.
+ *
+ * A recording is not safe for use by several threads at once.
+ */
+public class ActivationRecording implements Closeable {
+
+    /** The file read. */
+    private final FileChannel channel;
+
+    /** What the recording holds. */
+    private final RecordingFormat format;
+
+    /** The number of neurons recorded. */
+    private final int numNeurons;
+
+    /** The number of frames recorded. */
+    private final int numFrames;
+
+    /** The file position of each chunk, and of the end of the last. */
+    private final long[] chunkOffsets;
+
+    /** The number of chunks. */
+    private final int numChunks;
+
+    /** The first frame of each chunk, and the number of frames at the end. */
+    private final int[] chunkStarts;
+
+    /** The index of the chunk currently mapped, or -1. */
+    private int mappedChunk = -1;
+
+    /** The chunk currently mapped. */
+    private ByteBuffer mapped;
+
+    /**
+     * Offsets into {@link #chunkSpikes} of each frame of the mapped chunk, for
+     * spike recordings.
+     */
+    private int[] chunkSpikeStarts;
+
+    /** The decoded spikes of the mapped chunk, for spike recordings. */
+    private int[] chunkSpikes;
+
+    /**
+     * Opens a recording.
+     *
+     * @param file the recording
+     * @throws IOException if the file cannot be read or is not a recording
+     */
+    public ActivationRecording(final File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            ByteBuffer header = read(0, ActivationRecorder.HEADER_BYTES);
+            if (header == null
+                    || header.getInt() != ActivationRecorder.MAGIC) {
+                throw new IOException(file + " is not a recording.");
+            }
+            int version = header.getInt();
+            if (version != ActivationRecorder.VERSION) {
+                throw new IOException("Unsupported recording version "
+                        + version + ".");
+            }
+            format = RecordingFormat.forCode(header.getInt());
+            numNeurons = header.getInt();
+
+            // Index the chunks, stopping at a chunk cut short.
+            long[] offsets = new long[17];
+            int[] starts = new int[17];
+            int chunks = 0;
+            int frames = 0;
+            long size = channel.size();
+            long position = ActivationRecorder.HEADER_BYTES;
+            while (true) {
+                ByteBuffer chunkHeader = read(position,
+                        ActivationRecorder.CHUNK_HEADER_BYTES);
+                if (chunkHeader == null) {
+                    break;
+                }
+                int chunkFrames = chunkHeader.getInt();
+                long end = position + ActivationRecorder.CHUNK_HEADER_BYTES
+                        + chunkFrames * 8L + chunkHeader.getInt();
+                if (chunkFrames <= 0 || end > size) {
+                    break;
+                }
+                if (chunks + 1 == offsets.length) {
+                    offsets = Arrays.copyOf(offsets, chunks * 2 + 1);
+                    starts = Arrays.copyOf(starts, chunks * 2 + 1);
+                }
+                offsets[chunks] = position;
+                starts[chunks] = frames;
+                chunks++;
+                frames += chunkFrames;
+                position = end;
+            }
+            offsets[chunks] = position;
+            starts[chunks] = frames;
+            numChunks = chunks;
+            chunkOffsets = Arrays.copyOf(offsets, chunks + 1);
+            chunkStarts = Arrays.copyOf(starts, chunks + 1);
+            numFrames = frames;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reads bytes from the file.
+     *
+     * @param position where to read from
+     * @param length how many bytes to read
+     * @return the bytes, or null if the file ends first
+     * @throws IOException if reading fails
+     */
+    private ByteBuffer read(final long position, final int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(
+                ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return null;
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * @return what the recording holds.
+     */
+    public RecordingFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * @return the number of neurons recorded.
+     */
+    public int getNumNeurons() {
+        return numNeurons;
+    }
+
+    /**
+     * @return the number of frames (recorded updates).
+     */
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    /**
+     * @param frame a frame
+     * @return the network time of the frame.
+     */
+    public double getTime(final int frame) {
+        int chunk = map(frame);
+        return mapped.getDouble(ActivationRecorder.CHUNK_HEADER_BYTES
+                + (frame - chunkStarts[chunk]) * 8);
+    }
+
+    /**
+     * @return the network times of all frames.
+     */
+    public double[] getTimes() {
+        double[] times = new double[numFrames];
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            mapChunk(chunk);
+            int start = chunkStarts[chunk];
+            for (int f = start; f < chunkStarts[chunk + 1]; f++) {
+                times[f] = mapped.getDouble(
+                        ActivationRecorder.CHUNK_HEADER_BYTES + (f - start)
+                        * 8);
+            }
+        }
+        return times;
+    }
+
+    /**
+     * @param frame a frame
+     * @param neuron a neuron index
+     * @return the activation of the neuron in the frame.
+     */
+    public double getActivation(final int frame, final int neuron) {
+        checkActivations();
+        checkNeuron(neuron);
+        int chunk = map(frame);
+        int frames = chunkStarts[chunk + 1] - chunkStarts[chunk];
+        return value(chunk, frames * neuron + frame - chunkStarts[chunk]);
+    }
+
+    /**
+     * @param frame a frame
+     * @return the activations of all neurons in the frame.
+     */
+    public double[] getActivations(final int frame) {
+        checkActivations();
+        int chunk = map(frame);
+        int frames = chunkStarts[chunk + 1] - chunkStarts[chunk];
+        int local = frame - chunkStarts[chunk];
+        double[] activations = new double[numNeurons];
+        for (int i = 0; i < numNeurons; i++) {
+            activations[i] = value(chunk, frames * i + local);
+        }
+        return activations;
+    }
+
+    /**
+     * @param neuron a neuron index
+     * @return the activations of the neuron over all frames.
+     */
+    public double[] getActivationHistory(final int neuron) {
+        return getActivationHistory(neuron, 0, numFrames);
+    }
+
+    /**
+     * @param neuron a neuron index
+     * @param from the first frame
+     * @param to the frame after the last
+     * @return the activations of the neuron over a range of frames.
+     */
+    public double[] getActivationHistory(final int neuron, final int from,
+            final int to) {
+        checkActivations();
+        checkNeuron(neuron);
+        if (from < 0 || to > numFrames || from > to) {
+            throw new IndexOutOfBoundsException("Frames " + from + " to "
+                    + to + " of " + numFrames + ".");
+        }
+        double[] history = new double[to - from];
+        int f = from;
+        while (f < to) {
+            int chunk = map(f);
+            int start = chunkStarts[chunk];
+            int end = Math.min(to, chunkStarts[chunk + 1]);
+            int frames = chunkStarts[chunk + 1] - start;
+            int column = frames * neuron;
+            for (; f < end; f++) {
+                history[f - from] = value(chunk, column + f - start);
+            }
+        }
+        return history;
+    }
+
+    /**
+     * @param frame a frame
+     * @return the ascending indices of the neurons which spiked in the frame.
+     */
+    public int[] getSpikes(final int frame) {
+        checkSpikes();
+        int chunk = map(frame);
+        int local = frame - chunkStarts[chunk];
+        return Arrays.copyOfRange(chunkSpikes, chunkSpikeStarts[local],
+                chunkSpikeStarts[local + 1]);
+    }
+
+    /**
+     * @param frame a frame
+     * @return the number of neurons which spiked in the frame.
+     */
+    public int getSpikeCount(final int frame) {
+        checkSpikes();
+        int chunk = map(frame);
+        int local = frame - chunkStarts[chunk];
+        return chunkSpikeStarts[local + 1] - chunkSpikeStarts[local];
+    }
+
+    /**
+     * @param neuron a neuron index
+     * @return the times at which the neuron spiked.
+     */
+    public double[] getSpikeTimes(final int neuron) {
+        checkSpikes();
+        checkNeuron(neuron);
+        double[] times = new double[16];
+        int count = 0;
+        for (int chunk = 0; chunk < numChunks; chunk++) {
+            mapChunk(chunk);
+            int frames = chunkStarts[chunk + 1] - chunkStarts[chunk];
+            for (int f = 0; f < frames; f++) {
+                if (Arrays.binarySearch(chunkSpikes, chunkSpikeStarts[f],
+                        chunkSpikeStarts[f + 1], neuron) >= 0) {
+                    if (count == times.length) {
+                        times = Arrays.copyOf(times, count * 2);
+                    }
+                    times[count++] = mapped.getDouble(
+                            ActivationRecorder.CHUNK_HEADER_BYTES + f * 8);
+                }
+            }
+        }
+        return Arrays.copyOf(times, count);
+    }
+
+    /**
+     * Writes the recording as text in the format of
+     * {@link org.simbrain.network.groups.NeuronGroup#writeActsToFile()}: for
+     * activations one comma-separated line per frame, for spikes one line
+     * per frame with spikes, holding the time and then the indices of the
+     * neurons which spiked.
+     *
+     * @param file the file to write
+     * @throws IOException if writing fails
+     */
+    public void exportText(final File file) throws IOException {
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(
+                file)));
+        try {
+            for (int f = 0; f < numFrames; f++) {
+                if (format.isSpikes()) {
+                    int[] spikes = getSpikes(f);
+                    if (spikes.length == 0) {
+                        continue;
+                    }
+                    out.print(getTime(f));
+                    out.print(" ");
+                    for (int index : spikes) {
+                        out.print(index);
+                        out.print(" ");
+                    }
+                } else {
+                    double[] activations = getActivations(f);
+                    for (int i = 0; i < numNeurons; i++) {
+                        if (i > 0) {
+                            out.print(", ");
+                        }
+                        out.print(activations[i]);
+                    }
+                }
+                out.println();
+            }
+        } finally {
+            out.close();
+        }
+        if (out.checkError()) {
+            throw new IOException("Could not write " + file + ".");
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        mapped = null;
+        channel.close();
+    }
+
+    /**
+     * @param chunk a chunk
+     * @param index the index of a value in the chunk's payload
+     * @return the value as a double
+     */
+    private double value(final int chunk, final int index) {
+        int frames = chunkStarts[chunk + 1] - chunkStarts[chunk];
+        int payload = ActivationRecorder.CHUNK_HEADER_BYTES + frames * 8;
+        if (format == RecordingFormat.FLOAT) {
+            return mapped.getFloat(payload + index * 4);
+        } else {
+            return mapped.getDouble(payload + index * 8);
+        }
+    }
+
+    /**
+     * Maps the chunk holding a frame.
+     *
+     * @param frame a frame
+     * @return the index of the chunk
+     */
+    private int map(final int frame) {
+        if (frame < 0 || frame >= numFrames) {
+            throw new IndexOutOfBoundsException("Frame " + frame + " of "
+                    + numFrames + ".");
+        }
+        int chunk = mappedChunk;
+        if (chunk < 0 || frame < chunkStarts[chunk]
+                || frame >= chunkStarts[chunk + 1]) {
+            chunk = Arrays.binarySearch(chunkStarts, 0, numChunks,
+                    frame);
+            if (chunk < 0) {
+                chunk = -chunk - 2;
+            }
+            mapChunk(chunk);
+        }
+        return chunk;
+    }
+
+    /**
+     * Maps a chunk, unless it is already mapped, decoding its spikes for
+     * spike recordings.
+     *
+     * @param chunk the chunk
+     */
+    private void mapChunk(final int chunk) {
+        if (chunk == mappedChunk) {
+            return;
+        }
+        long offset = chunkOffsets[chunk];
+        try {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, offset,
+                    chunkOffsets[chunk + 1] - offset).order(
+                    ByteOrder.LITTLE_ENDIAN);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read recording.", e);
+        }
+        mappedChunk = chunk;
+        if (format.isSpikes()) {
+            decodeSpikes(chunk);
+        }
+    }
+
+    /**
+     * Decodes the spikes of the mapped chunk.
+     *
+     * @param chunk the chunk
+     */
+    private void decodeSpikes(final int chunk) {
+        int frames = chunkStarts[chunk + 1] - chunkStarts[chunk];
+        ByteBuffer in = mapped.duplicate();
+        in.position(ActivationRecorder.CHUNK_HEADER_BYTES + frames * 8);
+        if (chunkSpikeStarts == null || chunkSpikeStarts.length < frames + 1) {
+            chunkSpikeStarts = new int[frames + 1];
+        }
+        if (chunkSpikes == null) {
+            chunkSpikes = new int[1024];
+        }
+        int total = 0;
+        for (int f = 0; f < frames; f++) {
+            chunkSpikeStarts[f] = total;
+            int count = getVarint(in);
+            if (total + count > chunkSpikes.length) {
+                chunkSpikes = Arrays.copyOf(chunkSpikes, Math.max(total
+                        + count, chunkSpikes.length * 2));
+            }
+            int index = 0;
+            for (int i = 0; i < count; i++) {
+                index += getVarint(in);
+                chunkSpikes[total++] = index;
+            }
+        }
+        chunkSpikeStarts[frames] = total;
+    }
+
+    /**
+     * @param in a buffer positioned at an unsigned variable-length integer
+     * @return the integer
+     */
+    private static int getVarint(final ByteBuffer in) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = in.get();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    /**
+     * Throws unless this is an activation recording.
+     */
+    private void checkActivations() {
+        if (format.isSpikes()) {
+            throw new IllegalStateException("Recording holds spikes, not"
+                    + " activations.");
+        }
+    }
+
+    /**
+     * Throws unless this is a spike recording.
+     */
+    private void checkSpikes() {
+        if (!format.isSpikes()) {
+            throw new IllegalStateException("Recording holds activations,"
+                    + " not spikes.");
+        }
+    }
+
+    /**
+     * @param neuron a neuron index to check
+     */
+    private void checkNeuron(final int neuron) {
+        if (neuron < 0 || neuron >= numNeurons) {
+            throw new IndexOutOfBoundsException("Neuron " + neuron + " of "
+                    + numNeurons + ".");
+        }
+    }
+
+}
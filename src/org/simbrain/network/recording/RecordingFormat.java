@@ -0,0 +1,74 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.recording;
+
+/**
+ * What a binary recording holds for each recorded update. See
+ * {@link ActivationRecorder} for the file layout.
+ */
+public enum RecordingFormat {
+
+    /** Activations as 32 bit floats. */
+    FLOAT(4),
+
+    /** Activations as 64 bit doubles. */
+    DOUBLE(8),
+
+    /** The indices of the neurons which spiked. */
+    SPIKES(0);
+
+    /** Bytes per activation, or 0 for spike rasters. */
+    private final int width;
+
+    /**
+     * @param width bytes per activation, or 0 for spike rasters
+     */
+    private RecordingFormat(final int width) {
+        this.width = width;
+    }
+
+    /**
+     * @return the number of bytes per recorded activation, or 0 for spike
+     *         rasters.
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * @return whether this format records spikes rather than activations.
+     */
+    public boolean isSpikes() {
+        return this == SPIKES;
+    }
+
+    /**
+     * @param code the code of a format as stored in a file header
+     * @return the format with that code
+     */
+    static RecordingFormat forCode(final int code) {
+        RecordingFormat[] formats = values();
+        if (code < 0 || code >= formats.length) {
+            throw new IllegalArgumentException("Unknown recording format "
+                    + code + ".");
+        }
+        return formats[code];
+    }
+
+}
@@ -189,6 +189,35 @@ public class CompetitiveGroup extends NeuronGroup {
         // normalizeIncomingWeights();
     }
 
+    /**
+     * Show the result of an update whose weight changes were computed
+     * elsewhere, e.g. by a compiled trainer: each neuron is set to its
+     * activation, the winner is found as in {@link #update()}, and the
+     * winning and losing values are applied. No learning takes place.
+     *
+     * @param acts activation of each neuron before the competition
+     */
+    public void showResult(final double[] acts) {
+        max = 0;
+        winner = 0;
+        for (int i = 0; i < getNeuronList().size(); i++) {
+            Neuron n = getNeuronList().get(i);
+            if (!n.isClamped()) {
+                n.setBuffer(acts[i]);
+                n.setToBufferVals();
+            }
+            if (n.getActivation() > max) {
+                max = n.getActivation();
+                winner = i;
+            }
+        }
+        for (int i = 0; i < getNeuronList().size(); i++) {
+            Neuron neuron = getNeuronList().get(i);
+            neuron.setActivation(i == winner ? winValue : loseValue);
+            neuron.setSpkBuffer(neuron.isSpike());
+        }
+    }
+
     /**
      * Update winning neuron's weights in accordance with Alvarez and Squire
      * 1994, eq 2. TODO: rate is unused... in fact everything before
@@ -34,13 +34,13 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.neuron_update_rules.LinearRule;
 import org.simbrain.network.neuron_update_rules.SigmoidalRule;
 import org.simbrain.network.trainers.LMSOffline;
+import org.simbrain.network.trainers.RidgeRegression;
 import org.simbrain.network.trainers.Trainable;
 import org.simbrain.network.trainers.Trainer;
 import org.simbrain.network.trainers.TrainerListener;
 import org.simbrain.network.trainers.TrainingSet;
 import org.simbrain.network.util.NetworkLayoutManager;
 import org.simbrain.network.util.NetworkLayoutManager.Direction;
-import org.simbrain.network.util.SimnetUtils;
 import org.simbrain.util.math.NumericMatrix;
 import org.simbrain.util.math.SquashingFunction;
 import org.simbrain.util.randomizer.Randomizer;
@@ -214,8 +214,7 @@ public class EchoStateNetwork extends Subnetwork {
         addNeuronGroup(neuronGroup);
         addSynapseGroup(synapseGroup);
         // Scale the reservoir's weights to have the desired spectral radius
-        SimnetUtils.scaleEigenvalue(reservoirLayer.getNeuronList(),
-            reservoirLayer.getNeuronList(), spectralRadius);
+        synapseGroup.scaleToSpectralRadius(spectralRadius);
     }
 
     /**
@@ -278,8 +277,9 @@ public class EchoStateNetwork extends Subnetwork {
         Sparse outToRes) {
 
         addSynapseGroup(connectNeuronGroups(inputLayer, reservoirLayer, inToRes));
-        addSynapseGroup(connectNeuronGroups(reservoirLayer, reservoirLayer,
-            resRecurrent));
+        SynapseGroup recurrent = connectNeuronGroups(reservoirLayer,
+            reservoirLayer, resRecurrent);
+        addSynapseGroup(recurrent);
 
         if (backWeights) {
             addSynapseGroup(connectNeuronGroups(outputLayer, reservoirLayer,
@@ -303,8 +303,7 @@ public class EchoStateNetwork extends Subnetwork {
         }
 
         // Scale the reservoir's weights to have the desired spectral radius
-        SimnetUtils.scaleEigenvalue(reservoirLayer.getNeuronList(),
-            reservoirLayer.getNeuronList(), spectralRadius);
+        recurrent.scaleToSpectralRadius(spectralRadius);
 
     }
 
@@ -333,7 +332,9 @@ public class EchoStateNetwork extends Subnetwork {
 
     /**
      * Return a trainer object that can be used to train this ESN. The trainer
-     * has harvested state data as "inputs" and the desired outputs as outputs.
+     * harvests state data as "inputs" each time it is applied, with the
+     * desired outputs as outputs. The state matrix is only stored if the
+     * input data of the trainer's training set is read.
      *
      * @return the trainer.
      */
@@ -376,16 +377,30 @@ public class EchoStateNetwork extends Subnetwork {
             }
         }
 
-        // Make the training set by harvesting reservoir states
-        final double[][] harvestedData = harvestData();
-        if (harvestedData[0].length != full.size()) {
-            throw new IllegalArgumentException("Input data length does not "
-                + "match training node set");
+        // The trainer transforms the targets of its training set, which
+        // are this network's, in place before it harvests. Teacher forcing
+        // uses the targets as they are now.
+        final double[][] teacherData = new double[targetData.length][];
+        for (int i = 0; i < targetData.length; i++) {
+            teacherData[i] = targetData[i].clone();
         }
-        // System.out.println("-------");
-        // System.out.println(Utils.doubleMatrixToString(mainInputData));
-        final TrainingSet trainingSet = new TrainingSet();
-        trainingSet.setInputData(harvestedData);
+
+        // The reservoir states are harvested when the trainer is applied,
+        // streamed into the regression rather than stored. Callers which
+        // read the training set's input data get the state matrix, which is
+        // harvested on first request.
+        final TrainingSet trainingSet = new TrainingSet() {
+            @Override
+            public double[][] getInputData() {
+                if (super.getInputData() == null) {
+                    double[][] states = new double[inputData.length][full
+                        .size()];
+                    harvestData(teacherData, states, null);
+                    setInputData(states);
+                }
+                return super.getInputData();
+            }
+        };
         trainingSet.setTargetData(targetData);
 
         // Make Trainable object
@@ -418,6 +433,21 @@ public class EchoStateNetwork extends Subnetwork {
         };
         // Create the offline trainer.
         LMSOffline trainer = new LMSOffline(trainable);
+        trainer.setStateHarvester(new LMSOffline.StateHarvester() {
+
+            @Override
+            public void harvest(RidgeRegression regression) {
+                harvestData(teacherData, null, regression);
+            }
+
+            @Override
+            public double[][] harvest() {
+                double[][] states = new double[inputData.length][full.size()];
+                harvestData(teacherData, states, null);
+                return states;
+            }
+
+        });
         return trainer;
 
     }
@@ -429,10 +459,17 @@ public class EchoStateNetwork extends Subnetwork {
      * and updates the reservoir. Depending on the ESN's un-frozen connectivity
      * the resulting return matrix will have rows consisting of concatenated
      * input, reservoir, and (teacher-forced) output states in that order.
+     * Each row is stored in the state matrix and/or added to the regression,
+     * with the row of target data as its target, as it is harvested.
      *
-     * @return a matrix of data to be used for training
+     * @param teacherData the desired outputs clamped to the output layer and
+     *            stored as output states when teacher forcing
+     * @param stateMatrix the matrix to fill with the states, or null
+     * @param regression the regression to add the states and targets to, or
+     *            null
      */
-    private double[][] harvestData() {
+    private void harvestData(final double[][] teacherData,
+        final double[][] stateMatrix, final RidgeRegression regression) {
 
         // The minimum number of state matrix columns
         int columnNumber = numResNodes;
@@ -446,8 +483,8 @@ public class EchoStateNetwork extends Subnetwork {
             columnNumber += numOutputs;
         }
 
-        // State matrix
-        double[][] returnMatrix = new double[inputData.length][columnNumber];
+        // Current row of the state matrix
+        double[] state = new double[columnNumber];
 
         boolean harvest = false;
 
@@ -467,7 +504,7 @@ public class EchoStateNetwork extends Subnetwork {
                     if (directInOutWeights && harvest) {
                         // Add input states to state matrix if direct in to out
                         // connections are desired
-                        returnMatrix[row][col] = neuron.getActivation();
+                        state[col] = neuron.getActivation();
                         col++;
                     }
 
@@ -479,7 +516,7 @@ public class EchoStateNetwork extends Subnetwork {
                     for (Neuron neuron : getOutputLayer().getNeuronList()) {
                         // Teacher forcing
                         if (row > 0) {
-                            clampValue = targetData[row - 1][count];
+                            clampValue = teacherData[row - 1][count];
                         }
                         neuron.setActivation(clampValue);
                         count++;
@@ -500,7 +537,7 @@ public class EchoStateNetwork extends Subnetwork {
                     }
 
                     if (harvest) {
-                        returnMatrix[row][col] = n.getActivation();
+                        state[col] = n.getActivation();
                     }
                     col++;
                 }
@@ -508,17 +545,25 @@ public class EchoStateNetwork extends Subnetwork {
                 // Add output states to state matrix if there are recurrent
                 // outputs
                 if (recurrentOutWeights && harvest) {
-                    for (int i = 0; i < targetData[0].length; i++) {
+                    for (int i = 0; i < teacherData[0].length; i++) {
                         // Teacher-forcing
-                        returnMatrix[row][col] = targetData[row][i];
+                        state[col] = teacherData[row][i];
                         col++;
                     }
                 }
+
+                if (harvest) {
+                    if (stateMatrix != null) {
+                        System.arraycopy(state, 0, stateMatrix[row], 0,
+                            columnNumber);
+                    }
+                    if (regression != null) {
+                        regression.addRow(state, targetData[row]);
+                    }
+                }
             }
             harvest = true;
         }
-
-        return returnMatrix;
     }
 
     /**
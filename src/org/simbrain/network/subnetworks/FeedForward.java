@@ -27,6 +27,7 @@ import org.simbrain.network.groups.SynapseGroup;
 import org.simbrain.network.neuron_update_rules.LinearRule;
 import org.simbrain.network.neuron_update_rules.SigmoidalRule;
 import org.simbrain.network.synapse_update_rules.StaticSynapseRule;
+import org.simbrain.network.trainers.DenseLayerEngine;
 import org.simbrain.network.util.NetworkLayoutManager;
 import org.simbrain.network.util.NetworkLayoutManager.Direction;
 
@@ -41,6 +42,18 @@ public class FeedForward extends Subnetwork {
     /** Space to put between layers. */
     private int betweenLayerInterval = 200;
 
+    /**
+     * Whether updates are computed one dense matrix product per layer when
+     * the layers allow it. See {@link #setDense(boolean)}.
+     */
+    private boolean dense = false;
+
+    /**
+     * The compiled layers when in dense mode. Built lazily on update; null
+     * when not in dense mode or when the layers cannot be compiled.
+     */
+    private DenseLayerEngine denseEngine;
+
     /**
      * Construct a feed-forward network.
      *
@@ -229,6 +242,100 @@ public class FeedForward extends Subnetwork {
         return getOutputLayer().getNeuronList();
     }
 
+    /**
+     * Update the layers in order. In dense mode, and when the layers can be
+     * compiled, every layer after the input layer is updated with one dense
+     * matrix-vector product; otherwise neuron by neuron.
+     */
+    @Override
+    public void update() {
+        if (dense && prepareDenseEngine()) {
+            getInputLayer().update();
+            denseEngine.update();
+        } else {
+            super.update();
+        }
+    }
+
+    /**
+     * Compute the outputs of the network for a batch of inputs. In dense mode,
+     * and when the layers can be compiled, each layer is computed with one
+     * dense matrix-matrix product and the neurons are not changed; otherwise
+     * the inputs are applied one at a time and the network is updated, which
+     * leaves it showing the last input.
+     *
+     * @param inputs one row of input activations per input
+     * @return one row of output activations per input
+     */
+    public double[][] computeOutputs(double[][] inputs) {
+        if (dense && prepareDenseEngine()) {
+            return denseEngine.forward(inputs);
+        }
+        List<Neuron> inputNeurons = getInputNeurons();
+        double[][] outputs = new double[inputs.length][];
+        for (int r = 0; r < inputs.length; r++) {
+            for (int i = 0, n = inputNeurons.size(); i < n; i++) {
+                inputNeurons.get(i).forceSetActivation(inputs[r][i]);
+            }
+            for (int l = 1, n = getNeuronGroupCount(); l < n; l++) {
+                getNeuronGroup(l).update();
+            }
+            outputs[r] = Network.getActivationVector(getOutputNeurons());
+        }
+        return outputs;
+    }
+
+    /**
+     * Compile the layers if needed and read the current weights into the
+     * compiled layers, unless the layers cannot be compiled.
+     *
+     * @return true if the dense engine is ready to use
+     */
+    private boolean prepareDenseEngine() {
+        List<NeuronGroup> layers = getNeuronGroupList();
+        for (int l = 1, n = layers.size(); l < n; l++) {
+            if (layers.get(l).isInputMode() || layers.get(l).isRecording()) {
+                denseEngine = null;
+                return false;
+            }
+        }
+        if (denseEngine != null && !denseEngine.pull()) {
+            denseEngine = null;
+        }
+        if (denseEngine == null) {
+            denseEngine = DenseLayerEngine.compile(layers);
+        }
+        return denseEngine != null;
+    }
+
+    /**
+     * @return true if this network is in dense mode.
+     */
+    public boolean isDense() {
+        return dense;
+    }
+
+    /**
+     * Sets whether this network is updated in dense mode. In dense mode each
+     * layer after the input layer is computed with one dense matrix product
+     * from the layer below, as long as every such layer is connected all to
+     * all from the layer below and only from it (other than through sparse
+     * or event-driven synapse groups), its synapses have no delay, and its
+     * neurons use linear or sigmoidal rules with weighted input and no noise
+     * and are not clamped, recording or in input mode. The weights are read
+     * from the synapses on every update, so edits, including those made by
+     * learning rules, are seen immediately. Whenever these conditions do not
+     * hold the network is updated neuron by neuron.
+     *
+     * @param dense whether to use dense mode
+     */
+    public void setDense(boolean dense) {
+        this.dense = dense;
+        if (!dense) {
+            denseEngine = null;
+        }
+    }
+
     @Override
     public String getUpdateMethodDesecription() {
         return "Layered update";
@@ -21,10 +21,12 @@ package org.simbrain.network.subnetworks;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import org.simbrain.network.connections.AllToAll;
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
 import org.simbrain.network.core.Synapse;
 import org.simbrain.network.groups.Group;
 import org.simbrain.network.groups.NeuronGroup;
@@ -68,6 +70,22 @@ public class Hopfield extends Subnetwork implements Trainable {
      */
     private final TrainingSet trainingSet = new TrainingSet();
 
+    /**
+     * Packed copy of the network used to store patterns and, when the
+     * neurons allow it, to relax the network. Rebuilt when the neurons
+     * change.
+     */
+    private HopfieldEngine engine;
+
+    /** The neurons the engine was built from. */
+    private Neuron[] engineNeurons;
+
+    /** Synapses from the lower to the higher numbered neuron of each pair. */
+    private Synapse[] upperSynapses;
+
+    /** Synapses from the higher to the lower numbered neuron of each pair. */
+    private Synapse[] lowerSynapses;
+
     /**
      * Creates a new Hopfield network.
      *
@@ -144,6 +162,230 @@ public class Hopfield extends Subnetwork implements Trainable {
         updateFunc.update(this);
     }
 
+    /**
+     * Update the network repeatedly with the current update function until
+     * no neuron changes state, or for at most a given number of updates.
+     * When every neuron is an unclamped binary neuron with the same floor and
+     * ceiling, whose only synapses are the network's own symmetric, undelayed
+     * weights, the updates run on a packed copy of the network (see
+     * {@link HopfieldEngine}) which reads the weights once; otherwise the
+     * neurons are updated one update at a time.
+     *
+     * @param maxUpdates maximum number of updates
+     * @return the number of updates run
+     */
+    public int relax(int maxUpdates) {
+        if (!(updateFunc == HopfieldUpdate.SEQ && byPriority)
+            && loadEngineState()) {
+            int updates = 0;
+            int changed = 1;
+            while (changed > 0 && updates < maxUpdates) {
+                if (updateFunc == HopfieldUpdate.SYNC) {
+                    changed = engine.updateSynchronous();
+                } else if (updateFunc == HopfieldUpdate.RAND) {
+                    changed = engine.updateRandom(ThreadLocalRandom.current());
+                } else {
+                    changed = engine.updateSequential(sequentialOrder());
+                }
+                updates++;
+            }
+            for (int i = 0; i < engineNeurons.length; i++) {
+                double act = engine.getActivation(i);
+                engineNeurons[i].setBuffer(act);
+                engineNeurons[i].setActivation(act);
+            }
+            return updates;
+        }
+        List<Neuron> neurons = getFlatNeuronList();
+        double[] last = new double[neurons.size()];
+        int updates = 0;
+        boolean changed = true;
+        while (changed && updates < maxUpdates) {
+            for (int i = 0; i < last.length; i++) {
+                last[i] = neurons.get(i).getActivation();
+            }
+            update();
+            updates++;
+            changed = false;
+            for (int i = 0; i < last.length && !changed; i++) {
+                changed = neurons.get(i).getActivation() != last[i];
+            }
+        }
+        return updates;
+    }
+
+    /**
+     * @return the units of the engine in the order of the neuron list
+     */
+    private int[] sequentialOrder() {
+        int[] order = new int[engineNeurons.length];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        return order;
+    }
+
+    /**
+     * Copy the weights, states and thresholds of the neurons into the
+     * engine.
+     *
+     * @return false if the neurons cannot be represented in the engine
+     */
+    private boolean loadEngineState() {
+        if (!pullWeights()) {
+            return false;
+        }
+        int n = engineNeurons.length;
+        double floor = 0;
+        double ceiling = 0;
+        for (int i = 0; i < n; i++) {
+            Neuron neuron = engineNeurons[i];
+            if (neuron.isClamped()
+                || neuron.getUpdateRule().getClass() != BinaryRule.class
+                || neuron.getUpdateRule().getInputType() != InputType.WEIGHTED
+                || neuron.getFanIn().size() != n - 1) {
+                return false;
+            }
+            BinaryRule rule = (BinaryRule) neuron.getUpdateRule();
+            if (i == 0) {
+                floor = rule.getLowerBound();
+                ceiling = rule.getUpperBound();
+            } else if (rule.getLowerBound() != floor
+                || rule.getUpperBound() != ceiling) {
+                return false;
+            }
+            double act = neuron.getActivation();
+            if (act != floor && act != ceiling) {
+                return false;
+            }
+        }
+        engine.setActivationLevels(floor, ceiling);
+        for (int i = 0; i < n; i++) {
+            Neuron neuron = engineNeurons[i];
+            BinaryRule rule = (BinaryRule) neuron.getUpdateRule();
+            engine.setThreshold(i, rule.getThreshold() - rule.getBias()
+                - neuron.getInputValue() - neuron.getGroupExcitatoryInput()
+                - neuron.getGroupInhibitoryInput());
+            engine.setOn(i, neuron.getActivation() == ceiling);
+        }
+        return true;
+    }
+
+    /**
+     * Build the engine from the current neurons, unless it was already built
+     * from them.
+     *
+     * @return false if some pair of neurons is not connected both ways
+     */
+    private boolean compileEngine() {
+        List<Neuron> neurons = getNeuronGroup().getNeuronList();
+        int n = neurons.size();
+        if (engine != null && engineNeurons.length == n) {
+            boolean same = true;
+            for (int i = 0; i < n && same; i++) {
+                same = engineNeurons[i] == neurons.get(i);
+            }
+            if (same) {
+                return true;
+            }
+        }
+        engine = null;
+        if (n < 2) {
+            return false;
+        }
+        Neuron[] newNeurons = neurons.toArray(new Neuron[n]);
+        int size = n * (n - 1) / 2;
+        Synapse[] upper = new Synapse[size];
+        Synapse[] lower = new Synapse[size];
+        int k = 0;
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++, k++) {
+                upper[k] = newNeurons[i].getFanOut().get(newNeurons[j]);
+                lower[k] = newNeurons[j].getFanOut().get(newNeurons[i]);
+                if (upper[k] == null || lower[k] == null) {
+                    return false;
+                }
+            }
+        }
+        engine = new HopfieldEngine(n);
+        engineNeurons = newNeurons;
+        upperSynapses = upper;
+        lowerSynapses = lower;
+        return true;
+    }
+
+    /**
+     * Copy the weights into the engine.
+     *
+     * @return false if the weights cannot be represented in the engine:
+     *         some pair of neurons is not connected both ways, with equal,
+     *         enabled, undelayed synapses whose strengths are floats
+     */
+    private boolean pullWeights() {
+        if (!compileEngine()) {
+            return false;
+        }
+        float[] weights = engine.getPackedWeights();
+        for (int k = 0; k < weights.length; k++) {
+            Synapse upper = upperSynapses[k];
+            Synapse lower = lowerSynapses[k];
+            double strength = upper.getStrength();
+            if (upper.getTarget() != lower.getSource()
+                || lower.getTarget() != upper.getSource()
+                || lower.getStrength() != strength
+                || (float) strength != strength || !upper.isEnabled()
+                || !lower.isEnabled() || upper.getDelay() != 0
+                || lower.getDelay() != 0) {
+                return false;
+            }
+            weights[k] = (float) strength;
+        }
+        return true;
+    }
+
+    /**
+     * Copy the weights from the engine to the synapses.
+     */
+    private void pushWeights() {
+        float[] weights = engine.getPackedWeights();
+        for (int k = 0; k < weights.length; k++) {
+            upperSynapses[k].setStrength(weights[k]);
+            lowerSynapses[k].setStrength(weights[k]);
+        }
+    }
+
+    /**
+     * Set the weights to store a set of patterns with the Hebbian rule, all
+     * at once: each weight is set to the sum over the patterns of the
+     * product of the bipolar values of the neurons it connects. Falls back
+     * to storing one pattern at a time through the synapses if some pair of
+     * neurons is not connected both ways.
+     *
+     * @param patterns the patterns, one row per pattern
+     */
+    public void storePatterns(double[][] patterns) {
+        getSynapseGroup().setStrength(0, Polarity.BOTH);
+        if (compileEngine()) {
+            engine.clearWeights();
+            engine.storePatterns(patterns);
+            pushWeights();
+        } else {
+            List<Neuron> neurons = getNeuronGroup().getNeuronList();
+            for (double[] pattern : patterns) {
+                for (int i = 0; i < pattern.length; i++) {
+                    for (int j = 0; j < pattern.length; j++) {
+                        Synapse s = neurons.get(i).getFanOut()
+                            .get(neurons.get(j));
+                        if (i != j && s != null) {
+                            s.setStrength(s.getStrength() + bipolar(pattern[i])
+                                * bipolar(pattern[j]));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
     /**
      * @return The number of neurons.
      */
@@ -181,6 +423,16 @@ public class Hopfield extends Subnetwork implements Trainable {
      * main training algorithm, which directly makes use of the input data.
      */
     public void trainOnCurrentPattern() {
+        if (pullWeights()) {
+            double[] pattern = new double[engineNeurons.length];
+            for (int i = 0; i < pattern.length; i++) {
+                pattern[i] = engineNeurons[i].getActivation();
+            }
+            engine.storePatterns(new double[][] {pattern});
+            pushWeights();
+            getParentNetwork().fireGroupUpdated(getSynapseGroup());
+            return;
+        }
         for (Synapse w : this.getSynapseGroup().getAllSynapses()) {
             Neuron src = w.getSource();
             Neuron tar = w.getTarget();
@@ -0,0 +1,417 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.subnetworks;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * A discrete Hopfield network in primitive form, independent of any neuron or
+ * synapse objects. States are bits (on or off) packed 64 to a long, and the
+ * symmetric weight matrix, which has no self connections, is kept as its
+ * packed upper triangle of floats. Used by {@link Hopfield} for training and
+ * updating, and usable on its own for networks too large to build out of
+ * neurons and synapses.
+ * <p>
+ * A unit's activation is the ceiling when it is on and the floor when it is
+ * off, and it is on after an update if its weighted input is greater than its
+ * threshold. Patterns are stored with the Hebbian rule on bipolar values
+ * (see {@link Hopfield#bipolar(double)}); patterns whose bipolar values are all
+ * 1 or -1 are stored many at a time by counting agreements between the bit
+ * columns of the patterns.
+ */
+public final class HopfieldEngine {
+
+    /** Number of units. */
+    private final int numUnits;
+
+    /** Number of longs per state. */
+    private final int numWords;
+
+    /** Packed upper triangle of the weights, row by row. */
+    private final float[] weights;
+
+    /** States, one bit per unit. */
+    private final long[] state;
+
+    /** Threshold of each unit. */
+    private final double[] thresholds;
+
+    /**
+     * Sum of the weights from the units which are on, for each unit. Scratch
+     * space for the updates.
+     */
+    private final double[] onInput;
+
+    /** Sum of the weights onto each unit. Scratch space for the updates. */
+    private final double[] totalInput;
+
+    /** Activation of units which are off. */
+    private double floor;
+
+    /** Activation of units which are on. */
+    private double ceiling = 1;
+
+    /**
+     * Construct an engine with zero weights, thresholds and states.
+     *
+     * @param numUnits number of units
+     */
+    public HopfieldEngine(final int numUnits) {
+        long size = (long) numUnits * (numUnits - 1) / 2;
+        if (numUnits < 1 || size > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("Unsupported number of units: "
+                    + numUnits);
+        }
+        this.numUnits = numUnits;
+        numWords = (numUnits + 63) >>> 6;
+        weights = new float[(int) size];
+        state = new long[numWords];
+        thresholds = new double[numUnits];
+        onInput = new double[numUnits];
+        totalInput = new double[numUnits];
+    }
+
+    /**
+     * Index in {@link #weights} of the weight between unit i and the unit
+     * after it.
+     *
+     * @param i the unit
+     * @return the start of row i
+     */
+    private int rowStart(final int i) {
+        return (int) ((long) i * (2L * numUnits - i - 1) / 2);
+    }
+
+    /**
+     * Index of the weight between two different units.
+     *
+     * @param i first unit
+     * @param j second unit
+     * @return the index in {@link #weights}
+     */
+    private int index(final int i, final int j) {
+        return i < j ? rowStart(i) + j - i - 1 : rowStart(j) + i - j - 1;
+    }
+
+    /**
+     * @return the number of units
+     */
+    public int getNumUnits() {
+        return numUnits;
+    }
+
+    /**
+     * Get the weight between two different units.
+     *
+     * @param i first unit
+     * @param j second unit
+     * @return the weight
+     */
+    public float getWeight(final int i, final int j) {
+        return weights[index(i, j)];
+    }
+
+    /**
+     * Set the weight between two different units.
+     *
+     * @param i first unit
+     * @param j second unit
+     * @param weight the weight
+     */
+    public void setWeight(final int i, final int j, final float weight) {
+        weights[index(i, j)] = weight;
+    }
+
+    /**
+     * @return the packed upper triangle of the weights, row by row
+     */
+    float[] getPackedWeights() {
+        return weights;
+    }
+
+    /**
+     * Set every weight to zero.
+     */
+    public void clearWeights() {
+        Arrays.fill(weights, 0);
+    }
+
+    /**
+     * Add patterns to the weights with the Hebbian rule: w_ij += b_i * b_j
+     * for every pattern, where b is the bipolar form of the pattern.
+     *
+     * @param patterns the patterns, one row per pattern
+     */
+    public void storePatterns(final double[][] patterns) {
+        int numPatterns = patterns.length;
+        if (numPatterns == 0) {
+            return;
+        }
+        boolean bipolar = true;
+        for (double[] pattern : patterns) {
+            if (pattern.length != numUnits) {
+                throw new IllegalArgumentException("Pattern length does not "
+                        + "match the number of units");
+            }
+            for (int i = 0; i < numUnits && bipolar; i++) {
+                double b = Hopfield.bipolar(pattern[i]);
+                bipolar = b == 1 || b == -1;
+            }
+        }
+        if (!bipolar) {
+            for (double[] pattern : patterns) {
+                for (int i = 0; i < numUnits; i++) {
+                    double bi = Hopfield.bipolar(pattern[i]);
+                    int row = rowStart(i) - i - 1;
+                    for (int j = i + 1; j < numUnits; j++) {
+                        weights[row + j] += bi * Hopfield.bipolar(pattern[j]);
+                    }
+                }
+            }
+            return;
+        }
+
+        // Transpose the patterns into one bit vector per unit, so that
+        // w_ij += (agreements - disagreements) over all the patterns at once
+        int patternWords = (numPatterns + 63) >>> 6;
+        long[] columns = new long[numUnits * patternWords];
+        for (int p = 0; p < numPatterns; p++) {
+            long bit = 1L << (p & 63);
+            int word = p >>> 6;
+            for (int i = 0; i < numUnits; i++) {
+                if (Hopfield.bipolar(patterns[p][i]) > 0) {
+                    columns[i * patternWords + word] |= bit;
+                }
+            }
+        }
+        for (int i = 0; i < numUnits; i++) {
+            int row = rowStart(i) - i - 1;
+            int ci = i * patternWords;
+            for (int j = i + 1; j < numUnits; j++) {
+                int cj = j * patternWords;
+                int disagreements = 0;
+                for (int w = 0; w < patternWords; w++) {
+                    disagreements += Long.bitCount(columns[ci + w]
+                            ^ columns[cj + w]);
+                }
+                weights[row + j] += numPatterns - 2 * disagreements;
+            }
+        }
+    }
+
+    /**
+     * @param i a unit
+     * @return true if the unit is on
+     */
+    public boolean isOn(final int i) {
+        return (state[i >>> 6] & (1L << i)) != 0;
+    }
+
+    /**
+     * Turn a unit on or off.
+     *
+     * @param i the unit
+     * @param on true to turn it on
+     */
+    public void setOn(final int i, final boolean on) {
+        if (on) {
+            state[i >>> 6] |= 1L << i;
+        } else {
+            state[i >>> 6] &= ~(1L << i);
+        }
+    }
+
+    /**
+     * @return the number of units which are on
+     */
+    public int countOn() {
+        int count = 0;
+        for (long word : state) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Get the activation of a unit.
+     *
+     * @param i the unit
+     * @return the ceiling if the unit is on, otherwise the floor
+     */
+    public double getActivation(final int i) {
+        return isOn(i) ? ceiling : floor;
+    }
+
+    /**
+     * Set the threshold of a unit.
+     *
+     * @param i the unit
+     * @param threshold the threshold
+     */
+    public void setThreshold(final int i, final double threshold) {
+        thresholds[i] = threshold;
+    }
+
+    /**
+     * @param i a unit
+     * @return the threshold of the unit
+     */
+    public double getThreshold(final int i) {
+        return thresholds[i];
+    }
+
+    /**
+     * Set the activations of units which are off and on.
+     *
+     * @param floor activation of units which are off
+     * @param ceiling activation of units which are on
+     */
+    public void setActivationLevels(final double floor, final double ceiling) {
+        this.floor = floor;
+        this.ceiling = ceiling;
+    }
+
+    /**
+     * Compute {@link #onInput} (and {@link #totalInput} if the floor is not
+     * zero) for every unit in one pass over the weights.
+     */
+    private void computeInputs() {
+        Arrays.fill(onInput, 0);
+        boolean totals = floor != 0;
+        if (totals) {
+            Arrays.fill(totalInput, 0);
+        }
+        for (int i = 0; i < numUnits; i++) {
+            int row = rowStart(i) - i - 1;
+            if (isOn(i)) {
+                for (int j = i + 1; j < numUnits; j++) {
+                    onInput[j] += weights[row + j];
+                }
+            }
+            if (totals) {
+                double sum = 0;
+                for (int j = i + 1; j < numUnits; j++) {
+                    double w = weights[row + j];
+                    sum += w;
+                    totalInput[j] += w;
+                }
+                totalInput[i] += sum;
+            }
+
+            // Sum the weights from the units after i which are on
+            double sum = 0;
+            int first = i + 1;
+            for (int word = first >>> 6; word < numWords; word++) {
+                long bits = state[word];
+                if (word == first >>> 6) {
+                    bits &= -1L << (first & 63);
+                }
+                while (bits != 0) {
+                    int j = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    sum += weights[row + j];
+                    bits &= bits - 1;
+                }
+            }
+            onInput[i] += sum;
+        }
+    }
+
+    /**
+     * @param i a unit
+     * @return the weighted input to the unit
+     */
+    private double input(final int i) {
+        double input = (ceiling - floor) * onInput[i];
+        if (floor != 0) {
+            input += floor * totalInput[i];
+        }
+        return input;
+    }
+
+    /**
+     * Update every unit at once from the current states.
+     *
+     * @return the number of units which changed state
+     */
+    public int updateSynchronous() {
+        computeInputs();
+        int changed = 0;
+        for (int i = 0; i < numUnits; i++) {
+            boolean on = input(i) > thresholds[i];
+            if (on != isOn(i)) {
+                setOn(i, on);
+                changed++;
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Update the units one at a time, each seeing the new states of the units
+     * updated before it.
+     *
+     * @param order the units in the order they are to be updated
+     * @return the number of units which changed state
+     */
+    public int updateSequential(final int[] order) {
+        computeInputs();
+        int changed = 0;
+        for (int k : order) {
+            boolean on = input(k) > thresholds[k];
+            if (on == isOn(k)) {
+                continue;
+            }
+            setOn(k, on);
+            changed++;
+
+            // Move the weights from k between the on and off inputs
+            float sign = on ? 1 : -1;
+            for (int i = 0; i < k; i++) {
+                onInput[i] += sign * weights[rowStart(i) + k - i - 1];
+            }
+            int row = rowStart(k) - k - 1;
+            for (int j = k + 1; j < numUnits; j++) {
+                onInput[j] += sign * weights[row + j];
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Update the units one at a time in a random order.
+     *
+     * @param random source of the order
+     * @return the number of units which changed state
+     */
+    public int updateRandom(final Random random) {
+        int[] order = new int[numUnits];
+        for (int i = 0; i < numUnits; i++) {
+            order[i] = i;
+        }
+        for (int i = numUnits - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = order[i];
+            order[i] = order[j];
+            order[j] = tmp;
+        }
+        return updateSequential(order);
+    }
+
+}
@@ -18,12 +18,14 @@
  */
 package org.simbrain.network.subnetworks;
 
-import java.util.Comparator;
+import java.util.List;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
 import org.simbrain.network.groups.NeuronGroup;
 import org.simbrain.network.neuron_update_rules.PointNeuronRule;
+import org.simbrain.util.math.SimbrainMath;
 
 /**
  * <b>KwtaNetwork</b> implements a k Winner Take All network. The k neurons
@@ -33,9 +35,9 @@ import org.simbrain.network.neuron_update_rules.PointNeuronRule;
  * Computational Explorations in Cognitive Neuroscience, p. 110. All page
  * references below are are to this book.
  *
- * TODO: This has been temporarilty disabled. When re-enabled, it's name should
- * reflect its' connection to the Leabra framework, since generic kwta is
- * possible and is slated to be implemented in a regular WTA network.
+ * TODO: When fully re-enabled, it's name should reflect its' connection to
+ * the Leabra framework, since generic kwta is possible and is slated to be
+ * implemented in a regular WTA network.
  */
 public class KWTA extends NeuronGroup {
 
@@ -57,6 +59,15 @@ public class KWTA extends NeuronGroup {
      */
     private double inhibitoryConductance;
 
+    /** Threshold conductance of each neuron. Scratch space for selection. */
+    private double[] thresholds;
+
+    /**
+     * Whether the inhibitory conductance is set on every update. Off by
+     * default, in which case the group updates as a plain neuron group.
+     */
+    private boolean applyInhibition;
+
     /**
      * Default constructor.
      *
@@ -73,54 +84,70 @@ public class KWTA extends NeuronGroup {
 
     @Override
     public void update() {
-        sortNeurons();
+        if (applyInhibition) {
+            setCurrentThresholdCurrent();
+        }
         super.update();
     }
 
     /**
-     * See p. 101, equation 3.3. TODO: Unused, use or delete
+     * Set the inhibitory conductance of every neuron to a value between the
+     * threshold conductances of the k-th and k+1-th most excited neurons. See
+     * p. 101, equation 3.3. The two are found by selection rather than by
+     * sorting the neurons, so this is linear in the size of the group. Does
+     * nothing unless every neuron is a point neuron and there are more than
+     * k of them.
      */
     private void setCurrentThresholdCurrent() {
+        List<Neuron> neurons = getNeuronList();
+        int size = neurons.size();
+        if (size <= k) {
+            return;
+        }
+        if (thresholds == null || thresholds.length != size) {
+            thresholds = new double[size];
+        }
+        for (int i = 0; i < size; i++) {
+            NeuronUpdateRule rule = neurons.get(i).getUpdateRule();
+            if (!(rule instanceof PointNeuronRule)) {
+                return;
+            }
+            thresholds[i] = ((PointNeuronRule) rule)
+                    .getInhibitoryThresholdConductance();
+        }
 
-        double highest = ((PointNeuronRule) getNeuronList().get(k)
-                .getUpdateRule()).getInhibitoryThresholdConductance();
-        double secondHighest = ((PointNeuronRule) getNeuronList().get(k - 1)
-                .getUpdateRule()).getInhibitoryThresholdConductance();
-
-        inhibitoryConductance = secondHighest + q * (highest - secondHighest);
+        // After selecting the k+1-th largest the k largest precede it, so
+        // the k-th largest is the least of those
+        double kPlusOne = SimbrainMath.selectLargest(thresholds, size, k);
+        double kth = thresholds[0];
+        for (int i = 1; i < k; i++) {
+            kth = Math.min(kth, thresholds[i]);
+        }
 
-        // System.out.println("highest " + highest + "  secondHighest "
-        // + secondHighest + " inhibitoryCondctance" + inhibitoryConductance);
+        inhibitoryConductance = kPlusOne + q * (kth - kPlusOne);
 
         // Set inhibitory conductances in the layer
-        for (Neuron neuron : getNeuronList()) {
+        for (Neuron neuron : neurons) {
             ((PointNeuronRule) neuron.getUpdateRule())
                     .setInhibitoryConductance(inhibitoryConductance);
         }
     }
 
     /**
-     * Sort neurons by their excitatory conductance. See p. 101.
+     * @return whether the inhibitory conductance is set on every update
      */
-    private void sortNeurons() {
-        // REDO
-        // Collections.sort(this.getNeuronList(), new PointNeuronComparator());
+    public boolean isApplyInhibition() {
+        return applyInhibition;
     }
 
     /**
-     * Used to sort PointNeurons by excitatory conductance.
+     * Sets whether the inhibitory conductance of the neurons is set on every
+     * update, so that about k of them stay above threshold.
+     *
+     * @param applyInhibition whether to apply the inhibition
      */
-    class PointNeuronComparator implements Comparator<Neuron> {
-
-        /**
-         * {@inheritDoc}
-         */
-        public int compare(Neuron neuron1, Neuron neuron2) {
-            return (int) ((PointNeuronRule) neuron1.getUpdateRule())
-                    .getExcitatoryConductance()
-                    - (int) ((PointNeuronRule) neuron1.getUpdateRule())
-                            .getExcitatoryConductance();
-        }
+    public void setApplyInhibition(final boolean applyInhibition) {
+        this.applyInhibition = applyInhibition;
     }
 
     /**
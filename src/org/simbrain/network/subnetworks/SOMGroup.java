@@ -233,11 +233,24 @@ public class SOMGroup extends NeuronGroup {
         }
 
         // Update alpha and neighborhood size
-        alpha = (alpha - alphaDecayRate * alpha);
-        if (neighborhoodSize - neighborhoodDecayAmount > 0) {
-            neighborhoodSize -= neighborhoodDecayAmount;
-        } else {
-            neighborhoodSize = 0;
+        decay(1);
+    }
+
+    /**
+     * Decay alpha and the neighborhood size as if a number of input vectors
+     * had been presented. Used by batch training, which updates the weights
+     * once for a whole epoch.
+     *
+     * @param steps number of input vectors
+     */
+    public void decay(final int steps) {
+        for (int i = 0; i < steps; i++) {
+            alpha = (alpha - alphaDecayRate * alpha);
+            if (neighborhoodSize - neighborhoodDecayAmount > 0) {
+                neighborhoodSize -= neighborhoodDecayAmount;
+            } else {
+                neighborhoodSize = 0;
+            }
         }
     }
 
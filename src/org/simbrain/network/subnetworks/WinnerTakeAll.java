@@ -20,7 +20,6 @@ package org.simbrain.network.subnetworks;
 
 import java.util.List;
 import java.util.Random;
-import java.util.ArrayList;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
@@ -150,27 +149,48 @@ public class WinnerTakeAll extends NeuronGroup {
             return null;
         }
 
-        List<Neuron> winners = new ArrayList<Neuron>();
-        Neuron winner = neuronList.get(0);
-        winners.add(winner);
-        for (Neuron n : neuronList) {
-            double winnerVal = useActivations ? winner.getActivation()
-                    : winner.getWeightedInputs();
-            double val = useActivations ? n.getActivation()
+        // Each neuron's input is computed once and kept for breaking ties,
+        // which are counted rather than collected. The first neuron enters a
+        // tie twice (once as the initial winner and once when compared with
+        // itself).
+        int size = neuronList.size();
+        double[] vals = new double[size];
+        for (int i = 0; i < size; i++) {
+            Neuron n = neuronList.get(i);
+            vals[i] = useActivations ? n.getActivation()
                     : n.getWeightedInputs();
+        }
+        int winner = 0;
+        double winnerVal = vals[0];
+        int ties = 2;
+        for (int i = 1; i < size; i++) {
+            double val = vals[i];
             if (val == winnerVal) {
-                winners.add(n);
+                ties++;
             } else if (val > winnerVal) {
-                winners.clear();
-                winner = n;
-                winners.add(n);
+                winner = i;
+                winnerVal = val;
+                ties = 1;
+            }
+        }
+        if (ties == 1) {
+            return neuronList.get(winner);
+        }
+
+        // Choose uniformly among the tied entries, in list order
+        int pick = rand.nextInt(ties);
+        if (winner == 0) {
+            if (pick < 2) {
+                return neuronList.get(0);
             }
+            pick -= 2;
         }
-        if (winners.size() == 1) {
-            return winner;
-        } else {
-            return winners.get(rand.nextInt(winners.size()));
+        for (int i = winner + (winner == 0 ? 1 : 0); i < size; i++) {
+            if (vals[i] == winnerVal && pick-- == 0) {
+                return neuronList.get(i);
+            }
         }
+        return neuronList.get(winner);
 
     }
 
@@ -35,7 +35,7 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
      */
     public void update(final Synapse s) {
         value = s.getPsr();
-        if (s.getSource().isSpike()) {
+        if (s.isSpikeArriving()) {
             value += jumpHeight * s.getStrength();
         } else {
             double timeStep = s.getParentNetwork().getTimeStep();
@@ -46,7 +46,7 @@ public class ConvolvedJumpAndDecay extends SpikeResponder {
 
     public void update(final Synapse s, double jump) {
         value = s.getPsr();
-        if (s.getSource().isSpike()) {
+        if (s.isSpikeArriving()) {
             value += jump;
         } else {
             double timeStep = s.getParentNetwork().getTimeStep();
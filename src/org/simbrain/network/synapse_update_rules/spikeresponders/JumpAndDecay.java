@@ -51,7 +51,7 @@ public class JumpAndDecay extends SpikeResponder {
      */
     public void update(final Synapse s) {
         value = s.getPsr();
-        if (s.getSource().isSpike()) {
+        if (s.isSpikeArriving()) {
             value = jumpHeight * s.getStrength();
         } else {
             double timeStep = s.getParentNetwork().getTimeStep();
@@ -51,7 +51,7 @@ public class ProbabilisticResponder extends SpikeResponder {
      * {@inheritDoc}
      */
     public void update(Synapse s) {
-        if (s.getSource().isSpike()) {
+        if (s.isSpikeArriving()) {
             if (Math.random() > (1 - activationProbability)) {
                 value = responseValue * s.getStrength();
             } else {
@@ -50,7 +50,7 @@ public class RiseAndDecay extends SpikeResponder {
      */
     public void update(Synapse s) {
         double timeStep = s.getParentNetwork().getTimeStep();
-        if (s.getSource().isSpike()) {
+        if (s.isSpikeArriving()) {
             recovery = 1;
         }
 
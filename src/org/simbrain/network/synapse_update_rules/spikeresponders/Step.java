@@ -41,7 +41,7 @@ public class Step extends SpikeResponder {
      * {@inheritDoc}
      */
     public void update(Synapse s) {
-        if (s.getSource().isSpike()) {
+        if (s.isSpikeArriving()) {
             timer = responseDuration;
             value = responseHeight * s.getStrength();
         } else {
@@ -87,7 +87,7 @@ public class UDF extends JumpAndDecay {
             firstTime = false;
         }
         final double A;
-        if (s.getSource().isSpike()) {
+        if (s.isSpikeArriving()) {
         	final double ISI = lastSpikeTime - s.getNetwork().getTime();
             u = U + (u * (1 - U) * Math.exp(ISI / F));
             R = 1 + ((R - (u * R) - 1) * Math.exp(ISI / D));
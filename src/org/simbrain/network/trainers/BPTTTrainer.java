@@ -62,6 +62,24 @@ public class BPTTTrainer extends IterableTrainer {
     /** For storing bias deltas. */
     private HashMap<Neuron, Double> biasDeltaMap;
 
+    /**
+     * Whether to train with a compiled representation of the network when it
+     * supports it.
+     */
+    private boolean compiled = true;
+
+    /**
+     * Number of steps the error is propagated back through before the
+     * weights are updated. 0 propagates through whole sequences.
+     */
+    private int truncation;
+
+    /** Number of sequences trained side by side. */
+    private int batchSize = 1;
+
+    /** Compiled representation of the network. */
+    private RecurrentBackpropEngine engine;
+
     /**
      * Construct the SRN trainer.
      *
@@ -91,6 +109,10 @@ public class BPTTTrainer extends IterableTrainer {
             return;
         }
 
+        if (compiled && applyCompiled(numRows)) {
+            return;
+        }
+
         for (int row = 0; row < numRows; row++) {
             if (firstPatternInSet()) {
                 // System.out.println("First in set:" + iteration);
@@ -142,6 +164,45 @@ public class BPTTTrainer extends IterableTrainer {
 
     }
 
+    /**
+     * Train one epoch with truncated backprop through time, in which the
+     * error on each output is also propagated back through the next steps of
+     * the sequence, which it was the input to.
+     *
+     * @param numRows number of training rows
+     * @return false if the network cannot be compiled, in which case nothing
+     *         is trained
+     */
+    private boolean applyCompiled(int numRows) {
+        if (engine != null && !engine.isValid()) {
+            engine = null;
+        }
+        if (engine == null) {
+            engine = RecurrentBackpropEngine.compile(bptt.getInputLayer()
+                    .getNeuronList(), bptt.getHiddenLayer().getNeuronList(),
+                    null, bptt.getOutputLayer().getNeuronList());
+            if (engine == null) {
+                return false;
+            }
+        }
+        engine.setSequenceLength(bptt.getStepsPerSequences());
+        engine.setTruncation(truncation);
+        engine.setBatchSize(batchSize);
+        bptt.initNetwork();
+        double sse = engine.epoch(network.getTrainingSet().getInputData(),
+                network.getTrainingSet().getTargetData(), numRows,
+                learningRate, momentum);
+        if (Double.isNaN(sse)) {
+            return false;
+        }
+        mse = sse;
+        revalidateSynapseGroups();
+        setIteration(getIteration() + numRows);
+        mse = mse / (numRows * network.getOutputNeurons().size());
+        fireErrorUpdated();
+        return true;
+    }
+
     /**
      * True if this is the iteration that begans a training series.
      *
@@ -298,4 +359,64 @@ public class BPTTTrainer extends IterableTrainer {
         this.momentum = momentum;
     }
 
+    /**
+     * @return whether compiled training is used when possible
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Set whether to train with a compiled representation of the network,
+     * which unrolls each sequence into preallocated per-step buffers. Only
+     * used if the hidden and output layers consist of linear and sigmoidal
+     * neurons and there are as many inputs as outputs.
+     *
+     * @param compiled whether to use compiled training when possible
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+    }
+
+    /**
+     * @return the number of steps the error is propagated back through
+     */
+    public int getTruncation() {
+        return truncation;
+    }
+
+    /**
+     * Set the number of steps the error is propagated back through before
+     * the weights are updated. Only used by compiled training.
+     *
+     * @param truncation steps per update, or 0 for whole sequences
+     */
+    public void setTruncation(int truncation) {
+        if (truncation < 0) {
+            throw new IllegalArgumentException(
+                    "Truncation must not be negative");
+        }
+        this.truncation = truncation;
+    }
+
+    /**
+     * @return the number of sequences trained side by side
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the number of sequences trained side by side. Only used by
+     * compiled training.
+     *
+     * @param batchSize sequences per batch, at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+    }
+
 }
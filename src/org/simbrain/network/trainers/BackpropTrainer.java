@@ -20,6 +20,7 @@ package org.simbrain.network.trainers;
 
 import java.util.HashMap;
 import java.util.List;
+import java.util.Random;
 
 import org.simbrain.network.core.Network;
 import org.simbrain.network.core.Neuron;
@@ -63,6 +64,72 @@ public class BackpropTrainer extends IterableTrainer {
     /** Internal representation of network. */
     private List<List<Neuron>> layers;
 
+    /**
+     * Whether to train with a compiled matrix representation of the layers
+     * when the network supports it.
+     */
+    private boolean compiled = true;
+
+    /**
+     * Number of training rows per weight update when training with the
+     * compiled representation. The row by row fallback always uses 1.
+     */
+    private int batchSize = 1;
+
+    /** Number of threads used by the compiled representation. */
+    private int numThreads = 1;
+
+    /** How compiled training uses its threads. */
+    private DataParallelMode dataParallelMode = DataParallelMode.NONE;
+
+    /** Whether to visit the training rows in a new random order each epoch. */
+    private boolean shuffle;
+
+    /** Source of the row order when shuffling. */
+    private Random random = new Random();
+
+    /**
+     * Whether rows are held out of training for validation. Off unless
+     * turned on with {@link #setHoldOutValidationRows(boolean)}.
+     */
+    private boolean holdOutValidationRows;
+
+    /** Input row read from the training set. */
+    private double[] inputRow = new double[0];
+
+    /** Target row read from the training set. */
+    private double[] targetRow = new double[0];
+
+    /**
+     * How compiled training spreads its work over more than one thread.
+     */
+    public enum DataParallelMode {
+        NONE {
+            public String toString() {
+                return "None (split each matrix operation)";
+            }
+        },
+        SYNCHRONOUS {
+            public String toString() {
+                return "Synchronous (split each batch, sum gradients)";
+            }
+        },
+        HOGWILD {
+            public String toString() {
+                return "Hogwild (split the data, lock-free updates)";
+            }
+        }
+    };
+
+    /**
+     * Compiled representation of the layers. Null if not yet compiled or if
+     * the network cannot be compiled.
+     */
+    private LayeredBackpropEngine engine;
+
+    /** Whether compiling the current layers failed. */
+    private boolean compileFailed;
+
     /**
      * Construct the backprop trainer.
      *
@@ -103,7 +170,16 @@ public class BackpropTrainer extends IterableTrainer {
     public void apply() {
         mse = 0;
 
-        int numRows = getMinimumNumRows(network);
+        int[] mainRows = null;
+        if (holdsOutValidationRows()) {
+            TrainingSet data = network.getTrainingSet();
+            if (data.getMainRows() == null) {
+                data.setIndexSets(random);
+            }
+            mainRows = data.getMainRows();
+        }
+        int numRows = mainRows == null ? getMinimumNumRows(network)
+                : mainRows.length;
         int numInputs = network.getInputNeurons().size();
         // System.out.println("Data:" + numInputs + "/" + numRows);
 
@@ -113,21 +189,180 @@ public class BackpropTrainer extends IterableTrainer {
         }
 
         network.initNetwork();
-        for (int row = 0; row < numRows; row++) {
+        int[] order;
+        if (mainRows != null) {
+            order = shuffle ? shuffle(mainRows.clone()) : mainRows;
+        } else {
+            order = shuffle ? network.getTrainingSet().shuffledRows(random)
+                    : null;
+        }
+        double sse = compiled ? applyCompiled(numRows, order) : Double.NaN;
+        if (Double.isNaN(sse)) {
+            applyRowByRow(numRows, numInputs, order);
+        } else {
+            mse = sse;
+            revalidateSynapseGroups();
+        }
+
+        // Update MSE
+        mse = mse / (numRows * network.getOutputNeurons().size());
+        incrementIteration();
+        fireErrorUpdated();
+    }
+
+    /**
+     * Shuffle rows in place.
+     *
+     * @param rows the rows
+     * @return the rows
+     */
+    private int[] shuffle(int[] rows) {
+        for (int i = rows.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = rows[i];
+            rows[i] = rows[j];
+            rows[j] = tmp;
+        }
+        return rows;
+    }
+
+    /**
+     * Whether rows chosen for validation by
+     * {@link TrainingSet#setIndexSets()} are left out of training and used by
+     * {@link #getValidationError()}.
+     *
+     * @return true if validation rows are held out
+     */
+    @Override
+    protected boolean holdsOutValidationRows() {
+        return holdOutValidationRows;
+    }
+
+    /**
+     * Set whether to hold rows of the training set out of training and use
+     * them to compute {@link #getValidationError()}. The rows are those chosen
+     * by {@link TrainingSet#setIndexSets()}, which is called on the next
+     * epoch if it has not been.
+     *
+     * @param holdOutValidationRows true to hold out validation rows
+     */
+    public void setHoldOutValidationRows(boolean holdOutValidationRows) {
+        this.holdOutValidationRows = holdOutValidationRows;
+    }
+
+    /**
+     * Returns the mean squared error of the network on the rows of the
+     * training set held out for validation (see
+     * {@link TrainingSet#setIndexSets()}), without changing any weights. The
+     * activations of the network are left as they are after the last
+     * validation row.
+     *
+     * @return the validation error, or 0 if no rows are held out
+     */
+    @Override
+    public double getValidationError() {
+        TrainingSet data = network.getTrainingSet();
+        int[] rows = holdsOutValidationRows() ? data.getValidationRows()
+                : null;
+        int numInputs = network.getInputNeurons().size();
+        int numOutputs = network.getOutputNeurons().size();
+        if (rows == null || rows.length == 0 || numOutputs == 0) {
+            return 0;
+        }
+        double[] input = new double[numInputs];
+        double[] target = new double[numOutputs];
+        double sse = 0;
+        network.initNetwork();
+        for (int row : rows) {
+            data.readInputRow(row, input, 0, numInputs);
+            data.readTargetRow(row, target, 0, numOutputs);
+            for (int i = 0; i < numInputs; i++) {
+                network.getInputNeurons().get(i).forceSetActivation(input[i]);
+            }
+            updateNetwork();
+            for (int j = 0; j < numOutputs; j++) {
+                double error = target[j]
+                        - network.getOutputNeurons().get(j).getActivation();
+                sse += error * error;
+            }
+        }
+        return sse / (rows.length * numOutputs);
+    }
+
+    /**
+     * Train one epoch with a compiled representation of the network. Called
+     * after the network has been initialized, when compiled training is on.
+     *
+     * @param numRows number of training rows
+     * @param order the rows in the order they are to be visited, or null
+     * @return the sum of squared errors over the epoch, or NaN if the network
+     *         cannot be compiled, in which case it is trained row by row
+     */
+    protected double applyCompiled(int numRows, int[] order) {
+        LayeredBackpropEngine compiledEngine = getEngine();
+        if (compiledEngine == null) {
+            return Double.NaN;
+        }
+        return compiledEngine.epoch(network.getTrainingSet(), order, numRows,
+                learningRate, momentum);
+    }
+
+    /**
+     * Returns the compiled representation of the layers, compiling it if
+     * needed.
+     *
+     * @return the engine, or null if the network cannot be compiled
+     */
+    private LayeredBackpropEngine getEngine() {
+        if (engine != null && !engine.isValid()) {
+            engine = null;
+            compileFailed = false;
+        }
+        if (engine == null && !compileFailed) {
+            engine = LayeredBackpropEngine.compile(network, layers);
+            if (engine == null) {
+                compileFailed = true;
+            } else {
+                engine.setBatchSize(batchSize);
+                engine.setNumThreads(numThreads);
+                engine.setDataParallelMode(dataParallelMode);
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * Train one epoch by updating the network itself one row at a time.
+     *
+     * @param numRows number of training rows
+     * @param numInputs number of inputs
+     * @param order the rows in the order they are to be visited, or null
+     */
+    private void applyRowByRow(int numRows, int numInputs, int[] order) {
+        TrainingSet data = network.getTrainingSet();
+        int numOutputs = network.getOutputNeurons().size();
+        if (inputRow.length != numInputs) {
+            inputRow = new double[numInputs];
+        }
+        if (targetRow.length != numOutputs) {
+            targetRow = new double[numOutputs];
+        }
+        for (int r = 0; r < numRows; r++) {
+            int row = order == null ? r : order[r];
+            data.readInputRow(row, inputRow, 0, numInputs);
+            data.readTargetRow(row, targetRow, 0, numOutputs);
 
             // Set activations on input layer
             for (int i = 0; i < numInputs; i++) {
-                network.getInputNeurons()
-                        .get(i)
-                        .forceSetActivation(
-                                network.getTrainingSet().getInputData()[row][i]);
+                network.getInputNeurons().get(i)
+                        .forceSetActivation(inputRow[i]);
             }
 
             // Update network
             updateNetwork();
 
             // Set weight and bias deltas by backpropagating error
-            backpropagateError(network, row);
+            backpropagateError(network);
 
             // Update weights
             for (Synapse synapse : weightDeltaMap.keySet()) {
@@ -147,20 +382,15 @@ public class BackpropTrainer extends IterableTrainer {
             }
 
         }
-
-        // Update MSE
-        mse = mse / (numRows * network.getOutputNeurons().size());
-        incrementIteration();
-        fireErrorUpdated();
     }
 
     /**
-     * Compute error contribution for all nodes using backprop algorithm.
+     * Compute error contribution for all nodes using backprop algorithm, with
+     * the current row of target data in {@link #targetRow}.
      *
-     * @param row
-     *            current row of training data
+     * @param network the network trained
      */
-    private void backpropagateError(Trainable network, int row) {
+    private void backpropagateError(Trainable network) {
         int numOutputs = network.getOutputNeurons().size();
 
         // Iterate through layers from the output to the input layer.
@@ -173,8 +403,7 @@ public class BackpropTrainer extends IterableTrainer {
             if (i == layers.size() - 1) {
                 for (int j = 0; j < numOutputs; j++) {
                     Neuron outputNeuron = network.getOutputNeurons().get(j);
-                    double targetValue = network.getTrainingSet()
-                            .getTargetData()[row][j];
+                    double targetValue = targetRow[j];
                     double outputError = targetValue
                             - outputNeuron.getActivation();
                     storeErrorAndDeltas(outputNeuron, outputError);
@@ -245,11 +474,9 @@ public class BackpropTrainer extends IterableTrainer {
      * Randomize the network.
      */
     public void randomize() {
-        for (List<Neuron> layer : layers) {
-            // Don't update input layer
-            if (layers.indexOf(layer) > 0) {
-                randomize(layer);
-            }
+        // Don't update input layer
+        for (int i = 1, n = layers.size(); i < n; i++) {
+            randomize(layers.get(i));
         }
     }
 
@@ -284,10 +511,8 @@ public class BackpropTrainer extends IterableTrainer {
      * Update internally constructed network.
      */
     protected void updateNetwork() {
-        for (List<Neuron> layer : layers) {
-            if (layers.indexOf(layer) != 0) {
-                Network.updateNeurons(layer);
-            }
+        for (int i = 1, n = layers.size(); i < n; i++) {
+            Network.updateNeurons(layers.get(i));
         }
     }
 
@@ -431,4 +656,128 @@ public class BackpropTrainer extends IterableTrainer {
         this.momentum = momentum;
     }
 
+    /**
+     * @return whether compiled training is used when possible
+     */
+    public boolean isCompiled() {
+        return compiled;
+    }
+
+    /**
+     * Set whether to train with a compiled matrix representation of the
+     * layers. Compiled training is only used for strictly layered networks of
+     * linear and sigmoidal neurons; other networks are always trained row by
+     * row. Subclasses which override {@link #updateNetwork()} should override
+     * {@link #applyCompiled(int, int[])} as well or turn this off.
+     *
+     * @param compiled whether to use compiled training when possible
+     */
+    public void setCompiled(boolean compiled) {
+        this.compiled = compiled;
+        if (!compiled) {
+            engine = null;
+        }
+        compileFailed = false;
+    }
+
+    /**
+     * @return the number of rows per weight update
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * Set the number of training rows whose gradients are averaged into each
+     * weight update. Only used by compiled training.
+     *
+     * @param batchSize the batch size, at least 1
+     */
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        this.batchSize = batchSize;
+        if (engine != null) {
+            engine.setBatchSize(batchSize);
+        }
+    }
+
+    /**
+     * @return the number of threads used by compiled training
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads used for the matrix operations of compiled
+     * training.
+     *
+     * @param numThreads the number of threads, at least 1
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive");
+        }
+        this.numThreads = numThreads;
+        if (engine != null) {
+            engine.setNumThreads(numThreads);
+        }
+    }
+
+    /**
+     * @return true if the rows are visited in a new random order each epoch
+     */
+    public boolean isShuffle() {
+        return shuffle;
+    }
+
+    /**
+     * Set whether to visit the training rows in a new random order each
+     * epoch. The rows are read from the training set in that order rather
+     * than copied into it.
+     *
+     * @param shuffle true to shuffle
+     */
+    public void setShuffle(boolean shuffle) {
+        this.shuffle = shuffle;
+    }
+
+    /**
+     * Set the seed of the row order used when shuffling.
+     *
+     * @param seed the seed
+     */
+    public void setSeed(long seed) {
+        random = new Random(seed);
+    }
+
+    /**
+     * @return how compiled training uses its threads
+     */
+    public DataParallelMode getDataParallelMode() {
+        return dataParallelMode;
+    }
+
+    /**
+     * Set how compiled training uses its threads. With
+     * {@link DataParallelMode#NONE} the threads split up each matrix operation.
+     * With {@link DataParallelMode#SYNCHRONOUS} each batch is split into one
+     * shard per thread, the gradients of the shards are summed and applied
+     * once, which gives the same result as single threaded training; this
+     * needs a batch size of at least the number of threads to be worthwhile.
+     * With {@link DataParallelMode#HOGWILD} each thread trains on its own part
+     * of the training set and updates the shared weights without locking.
+     *
+     * @param dataParallelMode the mode
+     */
+    public void setDataParallelMode(DataParallelMode dataParallelMode) {
+        this.dataParallelMode = dataParallelMode;
+        if (engine != null) {
+            engine.setDataParallelMode(dataParallelMode);
+        }
+    }
+
 }
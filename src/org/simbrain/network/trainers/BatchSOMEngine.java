@@ -0,0 +1,267 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.subnetworks.SOMGroup;
+import org.simbrain.network.trainers.ParallelLoop.Range;
+
+/**
+ * Batch self-organizing map training over a dense copy of the codebook (the
+ * weights onto the SOM neurons, one row per neuron). Each epoch the best
+ * matching unit of every input row is found, split across threads, and then
+ * every unit's weight vector is replaced by the mean of the rows whose best
+ * matching unit lies within the current neighborhood of it. The codebook is
+ * written back to the synapses at the end of the epoch.
+ * <p>
+ * The neighborhood is the same hard radius, in screen distance between
+ * neurons, used by {@link SOMGroup#update()}. The best matching unit search
+ * uses partial distances: the distance to a unit stops being summed once it
+ * exceeds the best distance found so far.
+ */
+final class BatchSOMEngine {
+
+    /** Number of components summed between checks against the best distance. */
+    private static final int PARTIAL_DISTANCE_STRIDE = 64;
+
+    /** The SOM. */
+    private final SOMGroup som;
+
+    /** The codebook. */
+    private final CompiledWeights codebook;
+
+    /** Input dimension. */
+    private final int dim;
+
+    /** Number of units. */
+    private final int numUnits;
+
+    /** X coordinates of the units. */
+    private final double[] xs;
+
+    /** Y coordinates of the units. */
+    private final double[] ys;
+
+    /** Sum of the rows won by each unit. */
+    private final double[] winnerSums;
+
+    /** Number of rows won by each unit. */
+    private final int[] winnerCounts;
+
+    /** Best matching unit of each row. */
+    private int[] winners = new int[0];
+
+    /** Number of threads, run by {@link ParallelLoop}. */
+    private int numThreads = 1;
+
+    /**
+     * Construct the engine.
+     *
+     * @param som the SOM
+     * @param codebook the weights onto the SOM
+     */
+    private BatchSOMEngine(final SOMGroup som, final CompiledWeights codebook) {
+        this.som = som;
+        this.codebook = codebook;
+        dim = codebook.numSources;
+        numUnits = codebook.numTargets;
+        xs = new double[numUnits];
+        ys = new double[numUnits];
+        winnerSums = new double[numUnits * dim];
+        winnerCounts = new int[numUnits];
+    }
+
+    /**
+     * Compile the weights from a list of input neurons to a SOM.
+     *
+     * @param inputs the input neurons
+     * @param som the SOM
+     * @return the engine, or null if the SOM's only inputs are not all of
+     *         the input neurons
+     */
+    static BatchSOMEngine compile(final List<Neuron> inputs, final SOMGroup som) {
+        CompiledWeights codebook = CompiledWeights.compile(inputs,
+                som.getNeuronList());
+        if (codebook == null || inputs.isEmpty() || som.size() == 0
+                || codebook.getCount() != codebook.values.length
+                || fanInCount(som.getNeuronList()) != codebook.getCount()) {
+            return null;
+        }
+        return new BatchSOMEngine(som, codebook);
+    }
+
+    /**
+     * Count the synapses onto a list of neurons.
+     *
+     * @param neurons the neurons
+     * @return the number of synapses
+     */
+    private static int fanInCount(final List<Neuron> neurons) {
+        int count = 0;
+        for (Neuron neuron : neurons) {
+            count += neuron.getFanIn().size();
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the SOM's synapses are still the ones compiled
+     */
+    boolean isValid() {
+        List<Neuron> units = som.getNeuronList();
+        return fanInCount(units) == codebook.getCount()
+                && codebook.isValid(units);
+    }
+
+    /**
+     * Run one epoch of batch training.
+     *
+     * @param inputData input rows
+     * @param numRows number of rows to use
+     * @return the best matching unit of the last row
+     */
+    int epoch(final double[][] inputData, final int numRows) {
+        codebook.pull();
+        List<Neuron> units = som.getNeuronList();
+        for (int j = 0; j < numUnits; j++) {
+            xs[j] = units.get(j).getX();
+            ys[j] = units.get(j).getY();
+        }
+        if (winners.length < numRows) {
+            winners = new int[numRows];
+        }
+
+        // Best matching units
+        ParallelLoop.split(numRows, numThreads, new Range() {
+            @Override
+            void run(final int from, final int to) {
+                for (int r = from; r < to; r++) {
+                    winners[r] = findWinner(inputData[r]);
+                }
+            }
+        });
+
+        // Sum the rows by winner
+        Arrays.fill(winnerSums, 0);
+        Arrays.fill(winnerCounts, 0);
+        for (int r = 0; r < numRows; r++) {
+            int offset = winners[r] * dim;
+            double[] row = inputData[r];
+            for (int i = 0; i < dim; i++) {
+                winnerSums[offset + i] += row[i];
+            }
+            winnerCounts[winners[r]]++;
+        }
+
+        // Replace each unit by the mean of the rows won in its neighborhood
+        final double radius = som.getNeighborhoodSize();
+        ParallelLoop.split(numUnits, numThreads, new Range() {
+            @Override
+            void run(final int from, final int to) {
+                double[] values = codebook.values;
+                for (int j = from; j < to; j++) {
+                    int total = 0;
+                    int offset = j * dim;
+                    for (int b = 0; b < numUnits; b++) {
+                        if (winnerCounts[b] == 0
+                                || distance(j, b) > radius) {
+                            continue;
+                        }
+                        if (total == 0) {
+                            Arrays.fill(values, offset, offset + dim, 0);
+                        }
+                        total += winnerCounts[b];
+                        int sums = b * dim;
+                        for (int i = 0; i < dim; i++) {
+                            values[offset + i] += winnerSums[sums + i];
+                        }
+                    }
+                    if (total > 0) {
+                        double scale = 1.0 / total;
+                        for (int i = 0; i < dim; i++) {
+                            values[offset + i] *= scale;
+                        }
+                    }
+                }
+            }
+        });
+        codebook.push();
+        som.decay(numRows);
+        return winners[numRows - 1];
+    }
+
+    /**
+     * Find the unit whose weight vector is closest to a row.
+     *
+     * @param row the row
+     * @return the index of the winning unit
+     */
+    private int findWinner(final double[] row) {
+        double[] values = codebook.values;
+        double best = Double.POSITIVE_INFINITY;
+        int winner = 0;
+        for (int j = 0; j < numUnits; j++) {
+            int offset = j * dim;
+            double dist = 0;
+            for (int start = 0; start < dim && dist < best;
+                    start += PARTIAL_DISTANCE_STRIDE) {
+                int end = Math.min(dim, start + PARTIAL_DISTANCE_STRIDE);
+                for (int i = start; i < end; i++) {
+                    double diff = values[offset + i] - row[i];
+                    dist += diff * diff;
+                }
+            }
+            if (dist < best) {
+                best = dist;
+                winner = j;
+            }
+        }
+        return winner;
+    }
+
+    /**
+     * Distance between two units.
+     *
+     * @param a first unit
+     * @param b second unit
+     * @return the distance
+     */
+    private double distance(final int a, final int b) {
+        double dx = xs[b] - xs[a];
+        double dy = ys[b] - ys[a];
+        return Math.sqrt(dx * dx + dy * dy);
+    }
+
+    /**
+     * Set the number of threads.
+     *
+     * @param numThreads number of threads, at least 1
+     */
+    void setNumThreads(final int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive");
+        }
+        this.numThreads = numThreads;
+    }
+
+}
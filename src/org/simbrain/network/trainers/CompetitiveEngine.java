@@ -0,0 +1,379 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.subnetworks.CompetitiveGroup;
+import org.simbrain.network.subnetworks.CompetitiveGroup.UpdateMethod;
+import org.simbrain.network.trainers.ParallelLoop.Range;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * Competitive learning over a dense copy of the weights from an input layer to
+ * a {@link CompetitiveGroup}, one row per competitive neuron. An epoch runs
+ * every input row through the same steps as {@link CompetitiveGroup#update()}
+ * (linear activation, winner selection, Rummelhart-Zipser or Alvarez-Squire
+ * learning on the winner and leaky learning on the losers) with the weights
+ * held in the array, and writes them back to the synapses at the end.
+ * <p>
+ * Only groups fed solely by synapses from the input layer are compiled: every
+ * input must be connected to every competitive neuron, and the neurons must
+ * be unclamped linear neurons without noise. The synapses must be enabled,
+ * undelayed, unfrozen and from neurons without polarity.
+ */
+final class CompetitiveEngine {
+
+    /**
+     * Number of weights below which the activations of a row are computed on
+     * one thread, since handing them out costs more than it saves.
+     */
+    private static final int PARALLEL_THRESHOLD = 1 << 15;
+
+    /** The competitive group. */
+    private final CompetitiveGroup group;
+
+    /** The weights onto the group. */
+    private final CompiledWeights weights;
+
+    /** Upper bound of each weight. */
+    private final double[] upperBounds;
+
+    /** Lower bound of each weight. */
+    private final double[] lowerBounds;
+
+    /** Input dimension. */
+    private final int dim;
+
+    /** Number of competitive neurons. */
+    private final int numUnits;
+
+    /** Slope of each neuron. */
+    private final double[] slopes;
+
+    /** Bias of each neuron. */
+    private final double[] biases;
+
+    /** Whether each neuron clips its activation. */
+    private final boolean[] clipped;
+
+    /** Upper activation bound of each neuron. */
+    private final double[] actUpperBounds;
+
+    /** Lower activation bound of each neuron. */
+    private final double[] actLowerBounds;
+
+    /** External input to each neuron, held over the epoch. */
+    private final double[] externalInputs;
+
+    /** Activations computed for the current row. */
+    private final double[] acts;
+
+    /** Number of threads, run by {@link ParallelLoop}. */
+    private int numThreads = 1;
+
+    /**
+     * Construct the engine.
+     *
+     * @param group the competitive group
+     * @param weights the weights onto the group
+     */
+    private CompetitiveEngine(final CompetitiveGroup group,
+            final CompiledWeights weights) {
+        this.group = group;
+        this.weights = weights;
+        dim = weights.numSources;
+        numUnits = weights.numTargets;
+        upperBounds = new double[weights.values.length];
+        lowerBounds = new double[weights.values.length];
+        slopes = new double[numUnits];
+        biases = new double[numUnits];
+        clipped = new boolean[numUnits];
+        actUpperBounds = new double[numUnits];
+        actLowerBounds = new double[numUnits];
+        externalInputs = new double[numUnits];
+        acts = new double[numUnits];
+    }
+
+    /**
+     * Compile the weights from a list of input neurons to a competitive group.
+     *
+     * @param inputs the input neurons
+     * @param group the competitive group
+     * @return the engine, or null if the group is not supported
+     */
+    static CompetitiveEngine compile(final List<Neuron> inputs,
+            final CompetitiveGroup group) {
+        List<Neuron> units = group.getNeuronList();
+        if (inputs.isEmpty() || units.isEmpty() || group.isInputMode()) {
+            return null;
+        }
+        for (SynapseGroup sg : group.getIncomingSgs()) {
+            if (sg.isUsingSparseMatrix() || sg.isEventDriven()) {
+                return null;
+            }
+        }
+        CompiledWeights weights = CompiledWeights.compile(inputs, units);
+        if (weights == null
+                || weights.getCount() != weights.values.length
+                || fanInCount(units) != weights.getCount()) {
+            return null;
+        }
+        CompetitiveEngine engine = new CompetitiveEngine(group, weights);
+        return engine.pullRules() && engine.pullWeights() ? engine : null;
+    }
+
+    /**
+     * Count the synapses onto a list of neurons.
+     *
+     * @param neurons the neurons
+     * @return the number of synapses
+     */
+    private static int fanInCount(final List<Neuron> neurons) {
+        int count = 0;
+        for (Neuron neuron : neurons) {
+            count += neuron.getFanIn().size();
+        }
+        return count;
+    }
+
+    /**
+     * @return true if the group's synapses are still the ones compiled
+     */
+    boolean isValid() {
+        List<Neuron> units = group.getNeuronList();
+        return fanInCount(units) == weights.getCount()
+                && weights.isValid(units);
+    }
+
+    /**
+     * Read the current activation function of every neuron.
+     *
+     * @return false if a neuron can no longer be compiled
+     */
+    private boolean pullRules() {
+        List<Neuron> units = group.getNeuronList();
+        for (int j = 0; j < numUnits; j++) {
+            Neuron unit = units.get(j);
+            if (unit.isClamped()
+                    || unit.getUpdateRule().getClass() != LinearRule.class) {
+                return false;
+            }
+            LinearRule rule = (LinearRule) unit.getUpdateRule();
+            if (rule.getAddNoise()
+                    || rule.getInputType() != InputType.WEIGHTED) {
+                return false;
+            }
+            slopes[j] = rule.getSlope();
+            biases[j] = rule.getBias();
+            clipped[j] = rule.isClipped();
+            actUpperBounds[j] = rule.getUpperBound();
+            actLowerBounds[j] = rule.getLowerBound();
+            externalInputs[j] = unit.getInputValue();
+        }
+        return true;
+    }
+
+    /**
+     * Read the current weights and their bounds.
+     *
+     * @return false if a synapse can no longer be compiled
+     */
+    private boolean pullWeights() {
+        List<Neuron> units = group.getNeuronList();
+        for (int j = 0; j < numUnits; j++) {
+            List<Synapse> fanIn = units.get(j).getFanIn();
+            for (int s = 0, n = fanIn.size(); s < n; s++) {
+                Synapse synapse = fanIn.get(s);
+                if (!synapse.isEnabled() || synapse.getDelay() != 0
+                        || synapse.isFrozen()
+                        || synapse.getSource().getPolarity() != Polarity.BOTH) {
+                    return false;
+                }
+            }
+        }
+        weights.pull();
+        weights.readBounds(lowerBounds, upperBounds);
+        return true;
+    }
+
+    /**
+     * Run one epoch of competitive learning.
+     *
+     * @param inputData input rows
+     * @param numRows number of rows to use
+     * @return the activations computed for the last row, before the win and
+     *         lose values were applied, or null if the group has been changed
+     *         so that it can no longer be compiled (nothing is trained)
+     */
+    double[] epoch(final double[][] inputData, final int numRows) {
+        if (!pullRules() || !pullWeights()) {
+            return null;
+        }
+        double[] values = weights.values;
+        UpdateMethod method = group.getUpdateMethod();
+        double learningRate = group.getLearningRate();
+        double leakyRate = group.getLeakyLearningRate();
+        double winValue = group.getWinValue();
+        double decayPercent = group.getSynpaseDecayPercent();
+        boolean normalize = group.getNormalizeInputs();
+        boolean leaky = group.getUseLeakyLearning();
+        for (int r = 0; r < numRows; r++) {
+            final double[] row = inputData[r];
+            if (values.length < PARALLEL_THRESHOLD) {
+                activate(row, 0, numUnits);
+            } else {
+                ParallelLoop.split(numUnits, numThreads, new Range() {
+                    @Override
+                    void run(final int from, final int to) {
+                        activate(row, from, to);
+                    }
+                });
+            }
+
+            // Winner is the first neuron with the greatest positive
+            // activation, or the first neuron if none is positive
+            double max = 0;
+            int winner = 0;
+            for (int j = 0; j < numUnits; j++) {
+                if (acts[j] > max) {
+                    max = acts[j];
+                    winner = j;
+                }
+            }
+
+            double sumOfInputs = 0;
+            for (int i = 0; i < dim; i++) {
+                sumOfInputs += row[i];
+            }
+            double divisor = normalize && sumOfInputs != 0 ? sumOfInputs : 1;
+
+            // Neurons are visited in order, so losers before the winner learn
+            // before the Alvarez-Squire decay and losers after it learn after
+            if (leaky) {
+                for (int j = 0; j < winner; j++) {
+                    learn(j, row, divisor, leakyRate);
+                }
+            }
+            if (method == UpdateMethod.RUMM_ZIPSER) {
+                learn(winner, row, divisor, learningRate);
+            } else if (method == UpdateMethod.ALVAREZ_SQUIRE) {
+                double averageInput = sumOfInputs / dim;
+                int offset = winner * dim;
+                for (int i = 0; i < dim; i++) {
+                    int k = offset + i;
+                    values[k] = clip(k, values[k] + learningRate * winValue
+                            * (row[i] - averageInput));
+                }
+                for (int k = 0; k < values.length; k++) {
+                    values[k] = clip(k, values[k]
+                            - decayPercent * values[k]);
+                }
+            }
+            if (leaky) {
+                for (int j = winner + 1; j < numUnits; j++) {
+                    learn(j, row, divisor, leakyRate);
+                }
+            }
+        }
+        weights.push();
+        return acts;
+    }
+
+    /**
+     * Compute the activations of a range of neurons for a row.
+     *
+     * @param row source activations
+     * @param from first neuron
+     * @param to one past the last neuron
+     */
+    private void activate(final double[] row, final int from, final int to) {
+        double[] values = weights.values;
+        for (int j = from; j < to; j++) {
+            double sum = externalInputs[j];
+            int offset = j * dim;
+            for (int i = 0; i < dim; i++) {
+                sum += values[offset + i] * row[i];
+            }
+            double act = slopes[j] * sum + biases[j];
+            if (clipped[j]) {
+                if (act > actUpperBounds[j]) {
+                    act = actUpperBounds[j];
+                } else if (act < actLowerBounds[j]) {
+                    act = actLowerBounds[j];
+                }
+            }
+            acts[j] = act;
+        }
+    }
+
+    /**
+     * Move a neuron's weights toward the (normalized) input row, in place.
+     *
+     * @param j the neuron
+     * @param row source activations
+     * @param divisor the row is divided by this to normalize it
+     * @param rate learning rate
+     */
+    private void learn(final int j, final double[] row, final double divisor,
+            final double rate) {
+        double[] values = weights.values;
+        int offset = j * dim;
+        for (int i = 0; i < dim; i++) {
+            int k = offset + i;
+            double activation = row[i] / divisor;
+            values[k] = clip(k, values[k] + rate * (activation - values[k]));
+        }
+    }
+
+    /**
+     * Clip a weight to the bounds of its synapse.
+     *
+     * @param k index of the weight
+     * @param value the value
+     * @return the clipped value
+     */
+    private double clip(final int k, final double value) {
+        if (value > upperBounds[k]) {
+            return upperBounds[k];
+        } else if (value < lowerBounds[k]) {
+            return lowerBounds[k];
+        }
+        return value;
+    }
+
+    /**
+     * Set the number of threads.
+     *
+     * @param numThreads number of threads, at least 1
+     */
+    void setNumThreads(final int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive");
+        }
+        this.numThreads = numThreads;
+    }
+
+}
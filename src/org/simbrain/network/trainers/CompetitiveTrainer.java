@@ -40,6 +40,15 @@ public class CompetitiveTrainer extends Trainer {
     /** Iteration number. An epoch. */
     private int iteration = 0;
 
+    /** Number of threads used to compute activations in compiled epochs. */
+    private int numThreads = 1;
+
+    /**
+     * Compiled training engine, used whenever the competitive group is fed
+     * only by the input layer. Compiled lazily.
+     */
+    private CompetitiveEngine engine;
+
     /**
      * Construct the competitive network trainer. //TODO: Fix javadoc in SOM
      *
@@ -60,6 +69,11 @@ public class CompetitiveTrainer extends Trainer {
         }
 
         int numRows = network.getTrainingSet().getInputData().length;
+        if (numRows > 0 && applyCompiled(numRows)) {
+            incrementIteration();
+            revalidateSynapseGroups();
+            return;
+        }
         for (int row = 0; row < numRows; row++) {
             double[] inputs = network.getTrainingSet().getInputData()[row];
             network.getInputLayer().forceSetActivations(inputs);
@@ -72,6 +86,33 @@ public class CompetitiveTrainer extends Trainer {
 
     }
 
+    /**
+     * Run one epoch on the compiled engine, and show the last row and its
+     * result.
+     *
+     * @param numRows number of rows
+     * @return false if the competitive group cannot be compiled, in which
+     *         case it must be trained row by row
+     */
+    private boolean applyCompiled(int numRows) {
+        if (engine == null || !engine.isValid()) {
+            engine = CompetitiveEngine.compile(network.getInputNeurons(),
+                    network.getCompetitive());
+            if (engine == null) {
+                return false;
+            }
+        }
+        engine.setNumThreads(numThreads);
+        double[][] inputData = network.getTrainingSet().getInputData();
+        double[] acts = engine.epoch(inputData, numRows);
+        if (acts == null) {
+            return false;
+        }
+        network.getInputLayer().forceSetActivations(inputData[numRows - 1]);
+        network.getCompetitive().showResult(acts);
+        return true;
+    }
+
     /**
      * @return boolean updated completed.
      */
@@ -111,4 +152,25 @@ public class CompetitiveTrainer extends Trainer {
         return iteration;
     }
 
+    /**
+     * @return the number of threads used to compute activations
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * Set the number of threads used to compute the activations of the
+     * competitive group, when it is large enough for this to pay off.
+     *
+     * @param numThreads the number of threads
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive");
+        }
+        this.numThreads = numThreads;
+    }
+
 }
@@ -0,0 +1,269 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.NeuronUpdateRule.InputType;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.neuron_update_rules.interfaces.DifferentiableUpdateRule;
+import org.simbrain.util.math.SquashingFunction;
+
+/**
+ * The activation functions and biases of a layer of neurons, copied into
+ * primitive arrays for the compiled trainers. Supports neurons using a
+ * {@link LinearRule} or {@link SigmoidalRule} with weighted input and no noise
+ * which are not clamped.
+ */
+final class CompiledLayer {
+
+    /** The neurons. */
+    private final List<Neuron> neurons;
+
+    /** Update rule of each neuron. */
+    private final NeuronUpdateRule[] rules;
+
+    /** Slope of each neuron. */
+    private final double[] slopes;
+
+    /** Upper bound of each neuron (clipping or squashing bound). */
+    private final double[] upperBounds;
+
+    /** Lower bound of each neuron (clipping or squashing bound). */
+    private final double[] lowerBounds;
+
+    /** Whether each linear neuron clips its output. */
+    private final boolean[] clipped;
+
+    /** Squashing function of each sigmoidal neuron, null for linear ones. */
+    private final SquashingFunction[] squashing;
+
+    /**
+     * Bias of each distinct update rule. Neurons can share a rule instance,
+     * in which case they also share its bias.
+     */
+    private final double[] biases;
+
+    /** Index into {@link #biases} of each neuron. */
+    private final int[] biasSlots;
+
+    /** The first neuron using each distinct rule. */
+    private final int[] slotOwners;
+
+    /**
+     * Allocate arrays for the given neurons.
+     *
+     * @param neurons the neurons
+     */
+    private CompiledLayer(final List<Neuron> neurons) {
+        int size = neurons.size();
+        this.neurons = neurons;
+        rules = new NeuronUpdateRule[size];
+        slopes = new double[size];
+        upperBounds = new double[size];
+        lowerBounds = new double[size];
+        clipped = new boolean[size];
+        squashing = new SquashingFunction[size];
+        biasSlots = new int[size];
+        IdentityHashMap<NeuronUpdateRule, Integer> slots =
+                new IdentityHashMap<NeuronUpdateRule, Integer>();
+        int[] owners = new int[size];
+        for (int j = 0; j < size; j++) {
+            NeuronUpdateRule rule = neurons.get(j).getUpdateRule();
+            rules[j] = rule;
+            Integer slot = slots.get(rule);
+            if (slot == null) {
+                slot = slots.size();
+                slots.put(rule, slot);
+                owners[slot] = j;
+            }
+            biasSlots[j] = slot;
+        }
+        biases = new double[slots.size()];
+        slotOwners = new int[slots.size()];
+        System.arraycopy(owners, 0, slotOwners, 0, slotOwners.length);
+    }
+
+    /**
+     * Compile a layer.
+     *
+     * @param neurons the neurons of the layer
+     * @return the compiled layer, or null if any neuron is not supported
+     */
+    static CompiledLayer compile(final List<Neuron> neurons) {
+        CompiledLayer layer = new CompiledLayer(neurons);
+        for (Neuron neuron : neurons) {
+            if (neuron.isClamped()) {
+                return null;
+            }
+        }
+        return layer.pull() ? layer : null;
+    }
+
+    /**
+     * @return the number of neurons
+     */
+    int size() {
+        return rules.length;
+    }
+
+    /**
+     * Check that the neurons still use the rules this layer was compiled
+     * from.
+     *
+     * @return true if the layer is still valid
+     */
+    boolean isValid() {
+        if (neurons.size() != rules.length) {
+            return false;
+        }
+        for (int j = 0; j < rules.length; j++) {
+            if (neurons.get(j).getUpdateRule() != rules[j]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the current rule parameters and biases.
+     *
+     * @return false if a rule has been changed to something unsupported
+     */
+    boolean pull() {
+        for (int j = 0; j < rules.length; j++) {
+            NeuronUpdateRule rule = rules[j];
+            if (rule.getInputType() != InputType.WEIGHTED) {
+                return false;
+            }
+            if (rule.getClass() == LinearRule.class) {
+                LinearRule linear = (LinearRule) rule;
+                if (linear.getAddNoise()) {
+                    return false;
+                }
+                squashing[j] = null;
+                slopes[j] = linear.getSlope();
+                clipped[j] = linear.isClipped();
+                upperBounds[j] = linear.getUpperBound();
+                lowerBounds[j] = linear.getLowerBound();
+            } else if (rule.getClass() == SigmoidalRule.class) {
+                SigmoidalRule sigmoidal = (SigmoidalRule) rule;
+                if (sigmoidal.getAddNoise()) {
+                    return false;
+                }
+                squashing[j] = sigmoidal.getSquashFunctionType();
+                slopes[j] = sigmoidal.getSlope();
+                upperBounds[j] = sigmoidal.getUpperBound();
+                lowerBounds[j] = sigmoidal.getLowerBound();
+            } else {
+                return false;
+            }
+        }
+        for (int k = 0; k < biases.length; k++) {
+            biases[k] = ((BiasedUpdateRule) rules[slotOwners[k]]).getBias();
+        }
+        return true;
+    }
+
+    /**
+     * Write the biases back to the neurons.
+     */
+    void push() {
+        for (int k = 0; k < biases.length; k++) {
+            ((BiasedUpdateRule) rules[slotOwners[k]]).setBias(biases[k]);
+        }
+    }
+
+    /**
+     * Activation function of one neuron, mirroring the neuron's update rule.
+     *
+     * @param j neuron index
+     * @param wtdInput weighted input
+     * @return the activation
+     */
+    double activation(final int j, final double wtdInput) {
+        SquashingFunction sFunction = squashing[j];
+        if (sFunction != null) {
+            return sFunction.valueOf(wtdInput + biases[biasSlots[j]],
+                    upperBounds[j], lowerBounds[j], slopes[j]);
+        }
+        double act = slopes[j] * wtdInput + biases[biasSlots[j]];
+        if (clipped[j]) {
+            if (act > upperBounds[j]) {
+                act = upperBounds[j];
+            } else if (act < lowerBounds[j]) {
+                act = lowerBounds[j];
+            }
+        }
+        return act;
+    }
+
+    /**
+     * Multiply the errors of a batch of rows by the derivatives of the
+     * neurons, evaluated (as in the row by row trainers) at their weighted
+     * inputs.
+     *
+     * @param errors errors, batch-major
+     * @param inputs weighted inputs, batch-major
+     * @param offset offset of the first row in both arrays
+     * @param rows number of rows
+     */
+    void applyDerivative(final double[] errors, final double[] inputs,
+            final int offset, final int rows) {
+        int size = rules.length;
+        for (int r = 0; r < rows; r++) {
+            int rowOffset = offset + r * size;
+            for (int j = 0; j < size; j++) {
+                errors[rowOffset + j] *= ((DifferentiableUpdateRule) rules[j])
+                        .getDerivative(inputs[rowOffset + j]);
+            }
+        }
+    }
+
+    /**
+     * Apply a bias gradient.
+     *
+     * @param rate learning rate, divided by the number of rows summed into
+     *            the gradient
+     * @param gradient summed error signals of each neuron
+     */
+    void update(final double rate, final double[] gradient) {
+        for (int j = 0; j < biasSlots.length; j++) {
+            biases[biasSlots[j]] += rate * gradient[j];
+        }
+    }
+
+    /**
+     * Set the activations of the neurons.
+     *
+     * @param acts activations, batch-major
+     * @param offset offset of the row to show
+     */
+    void showActivations(final double[] acts, final int offset) {
+        for (int j = 0; j < rules.length; j++) {
+            neurons.get(j).forceSetActivation(acts[offset + j]);
+        }
+    }
+
+}
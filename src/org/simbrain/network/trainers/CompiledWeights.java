@@ -0,0 +1,354 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.HashMap;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.util.SimbrainConstants.Polarity;
+
+/**
+ * The synapses from one layer of neurons to another, copied into a dense
+ * row-major matrix (one row per target neuron) for the compiled trainers.
+ * Entries for which there is no synapse are held at zero.
+ */
+final class CompiledWeights {
+
+    /** Number of source neurons (columns). */
+    final int numSources;
+
+    /** Number of target neurons (rows). */
+    final int numTargets;
+
+    /** The weights. */
+    final double[] values;
+
+    /** Last weight deltas, for momentum. */
+    private final double[] deltas;
+
+    /** Lower bounds of the synapses, parallel to {@link #values}. */
+    private final double[] lowerBounds;
+
+    /** Upper bounds of the synapses, parallel to {@link #values}. */
+    private final double[] upperBounds;
+
+    /** Synapses parallel to {@link #values}, null where none exists. */
+    private final Synapse[] synapses;
+
+    /** Number of synapses. */
+    private final int count;
+
+    /**
+     * Allocate the matrix.
+     *
+     * @param numSources number of source neurons
+     * @param numTargets number of target neurons
+     * @param synapses the synapses, null where none exists
+     * @param count number of synapses
+     */
+    private CompiledWeights(final int numSources, final int numTargets,
+            final Synapse[] synapses, final int count) {
+        this.numSources = numSources;
+        this.numTargets = numTargets;
+        this.synapses = synapses;
+        this.count = count;
+        values = new double[synapses.length];
+        deltas = new double[synapses.length];
+        lowerBounds = new double[synapses.length];
+        upperBounds = new double[synapses.length];
+        pull();
+        readBounds(lowerBounds, upperBounds);
+    }
+
+    /**
+     * Compile the synapses from one list of neurons to another. Synapses onto
+     * the targets from other neurons are ignored; see {@link #getCount()}.
+     *
+     * @param sources source neurons
+     * @param targets target neurons
+     * @return the compiled weights, or null if a pair of neurons is connected
+     *         by more than one synapse
+     */
+    static CompiledWeights compile(final List<Neuron> sources,
+            final List<Neuron> targets) {
+        HashMap<Neuron, Integer> sourceIndex = new HashMap<Neuron, Integer>();
+        for (int i = 0; i < sources.size(); i++) {
+            sourceIndex.put(sources.get(i), i);
+        }
+        int numSources = sources.size();
+        Synapse[] synapses = new Synapse[numSources * targets.size()];
+        int count = 0;
+        for (int j = 0; j < targets.size(); j++) {
+            for (Synapse synapse : targets.get(j).getFanIn()) {
+                Integer i = sourceIndex.get(synapse.getSource());
+                if (i != null) {
+                    if (synapses[j * numSources + i] != null) {
+                        return null;
+                    }
+                    synapses[j * numSources + i] = synapse;
+                    count++;
+                }
+            }
+        }
+        return new CompiledWeights(numSources, targets.size(), synapses,
+                count);
+    }
+
+    /**
+     * @return the number of synapses
+     */
+    int getCount() {
+        return count;
+    }
+
+    /**
+     * Check that the synapses have not been moved to other neurons.
+     *
+     * @param targets the target neurons
+     * @return true if every synapse still ends on the neuron it was compiled
+     *         for
+     */
+    boolean isValid(final List<Neuron> targets) {
+        if (targets.size() != numTargets) {
+            return false;
+        }
+        for (int k = 0; k < synapses.length; k++) {
+            if (synapses[k] != null
+                    && synapses[k].getTarget() != targets.get(k / numSources)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the current strengths from the synapses.
+     */
+    void pull() {
+        for (int k = 0; k < values.length; k++) {
+            values[k] = synapses[k] == null ? 0 : synapses[k].getStrength();
+        }
+    }
+
+    /**
+     * Read the current weights as the synapses apply them to weighted inputs:
+     * the strengths of enabled synapses, zero for disabled ones. Also checks
+     * that each synapse still ends on the neuron it was compiled for and has
+     * no delay; the checks only read fields of the synapses themselves, so
+     * they cost little on top of reading the strengths.
+     *
+     * @param targets the target neurons
+     * @return false if a synapse has moved or is delayed, in which case the
+     *         weights read are incomplete
+     */
+    boolean pullWeighted(final List<Neuron> targets) {
+        if (targets.size() != numTargets) {
+            return false;
+        }
+        for (int j = 0; j < numTargets; j++) {
+            Neuron target = targets.get(j);
+            for (int k = j * numSources, end = k + numSources; k < end; k++) {
+                Synapse synapse = synapses[k];
+                if (synapse == null) {
+                    values[k] = 0;
+                } else if (synapse.getTarget() != target
+                        || synapse.getDelay() != 0) {
+                    return false;
+                } else {
+                    values[k] = synapse.isEnabled() ? synapse.getStrength()
+                            : 0;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read the current strengths and bounds of synapses which are to be
+     * trained, checking that each can be trained as a plain matrix entry: it
+     * still ends on the neuron it was compiled for, and it is enabled,
+     * undelayed and not frozen, and its source has no polarity. The row by
+     * row trainers treat other synapses in ways the matrix operations do not
+     * reproduce.
+     *
+     * @param targets the target neurons
+     * @return false if a synapse cannot be trained as a matrix entry, in
+     *         which case the weights read are incomplete
+     */
+    boolean pullTrainable(final List<Neuron> targets) {
+        if (!pullWeighted(targets)) {
+            return false;
+        }
+        for (int k = 0; k < synapses.length; k++) {
+            Synapse synapse = synapses[k];
+            if (synapse != null && (!synapse.isEnabled()
+                    || synapse.isFrozen()
+                    || synapse.getSource().getPolarity() != Polarity.BOTH)) {
+                return false;
+            }
+        }
+        readBounds(lowerBounds, upperBounds);
+        return true;
+    }
+
+    /**
+     * Read the bounds of the synapses. Entries with no synapse get infinite
+     * bounds.
+     *
+     * @param lower lower bounds, parallel to {@link #values}
+     * @param upper upper bounds, parallel to {@link #values}
+     */
+    void readBounds(final double[] lower, final double[] upper) {
+        for (int k = 0; k < values.length; k++) {
+            if (synapses[k] == null) {
+                lower[k] = Double.NEGATIVE_INFINITY;
+                upper[k] = Double.POSITIVE_INFINITY;
+            } else {
+                lower[k] = synapses[k].getLowerBound();
+                upper[k] = synapses[k].getUpperBound();
+            }
+        }
+    }
+
+    /**
+     * Write the strengths back to the synapses.
+     */
+    void push() {
+        for (int k = 0; k < values.length; k++) {
+            if (synapses[k] != null) {
+                synapses[k].setStrength(values[k]);
+            }
+        }
+    }
+
+    /**
+     * Apply a weight gradient with momentum, clipping each weight to the
+     * bounds of its synapse as {@link Synapse#setStrength(double)} does. The
+     * deltas kept for momentum are the unclipped ones.
+     *
+     * @param rate learning rate, divided by the number of rows summed into
+     *            the gradient
+     * @param momentum momentum
+     * @param gradient summed gradient, parallel to {@link #values}
+     */
+    void update(final double rate, final double momentum,
+            final double[] gradient) {
+        boolean dense = count == values.length;
+        for (int k = 0; k < values.length; k++) {
+            if (dense || synapses[k] != null) {
+                double delta = rate * gradient[k] + momentum * deltas[k];
+                deltas[k] = delta;
+                values[k] = Math.max(lowerBounds[k], Math.min(upperBounds[k],
+                        values[k] + delta));
+            }
+        }
+    }
+
+    /**
+     * Add the weighted inputs for a range of rows of a batch: out[r][j] +=
+     * sum_i W[j][i] * in[r][i].
+     *
+     * @param in source activations, batch-major
+     * @param inOffset offset of row 0 in in
+     * @param out weighted inputs, batch-major
+     * @param outOffset offset of row 0 in out
+     * @param from first row
+     * @param to one past the last row
+     */
+    void multiply(final double[] in, final int inOffset, final double[] out,
+            final int outOffset, final int from, final int to) {
+        for (int r = from; r < to; r++) {
+            int src = inOffset + r * numSources;
+            int dst = outOffset + r * numTargets;
+            for (int j = 0; j < numTargets; j++) {
+                double sum = 0;
+                int w = j * numSources;
+                for (int i = 0; i < numSources; i++) {
+                    sum += values[w + i] * in[src + i];
+                }
+                out[dst + j] += sum;
+            }
+        }
+    }
+
+    /**
+     * Add the errors propagated back through the weights for a range of rows
+     * of a batch: out[r][i] += sum_j err[r][j] * W[j][i].
+     *
+     * @param err target errors, batch-major
+     * @param errOffset offset of row 0 in err
+     * @param out source errors, batch-major
+     * @param outOffset offset of row 0 in out
+     * @param from first row
+     * @param to one past the last row
+     */
+    void multiplyTransposed(final double[] err, final int errOffset,
+            final double[] out, final int outOffset, final int from,
+            final int to) {
+        for (int r = from; r < to; r++) {
+            int src = errOffset + r * numTargets;
+            int dst = outOffset + r * numSources;
+            for (int j = 0; j < numTargets; j++) {
+                double e = err[src + j];
+                if (e == 0) {
+                    continue;
+                }
+                int w = j * numSources;
+                for (int i = 0; i < numSources; i++) {
+                    out[dst + i] += e * values[w + i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Add the outer products of errors and source activations over a batch to
+     * a gradient, for a range of target neurons: g[j][i] += sum_r err[r][j] *
+     * in[r][i].
+     *
+     * @param err target errors, batch-major
+     * @param errOffset offset of row 0 in err
+     * @param in source activations, batch-major
+     * @param inOffset offset of row 0 in in
+     * @param rows number of rows in the batch
+     * @param gradient the gradient, parallel to {@link #values}
+     * @param from first target neuron
+     * @param to one past the last target neuron
+     */
+    void accumulateGradient(final double[] err, final int errOffset,
+            final double[] in, final int inOffset, final int rows,
+            final double[] gradient, final int from, final int to) {
+        for (int j = from; j < to; j++) {
+            int g = j * numSources;
+            for (int r = 0; r < rows; r++) {
+                double e = err[errOffset + r * numTargets + j];
+                if (e == 0) {
+                    continue;
+                }
+                int src = inOffset + r * numSources;
+                for (int i = 0; i < numSources; i++) {
+                    gradient[g + i] += e * in[src + i];
+                }
+            }
+        }
+    }
+
+}
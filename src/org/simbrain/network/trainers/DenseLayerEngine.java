@@ -0,0 +1,227 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.NeuronGroup;
+
+/**
+ * Forward passes through a stack of neuron groups, each connected all to all
+ * from the one before it, computed as one dense matrix-vector product per
+ * layer (or matrix-matrix product for a batch of inputs) instead of neuron by
+ * neuron through {@link Neuron#getWeightedInputs()}. Used by
+ * {@link org.simbrain.network.subnetworks.FeedForward} for inference.
+ * <p>
+ * Every layer after the first must use the rules supported by the compiled
+ * trainers (see {@link CompiledLayer}), and its neurons may have no incoming
+ * synapses other than those from the layer before, none of them delayed.
+ * The weights and rule parameters are read from the network before every
+ * update, so edits made to the network, including those made by synapse
+ * learning rules, are always seen; {@link #pull()} returns false once the
+ * network no longer meets these conditions, after which the engine should be
+ * discarded.
+ */
+public final class DenseLayerEngine {
+
+    /** Rows of a batch multiplied against each row of weights at a time. */
+    private static final int BATCH_TILE = 64;
+
+    /** The layers, input layer first. */
+    private final List<NeuronGroup> groups;
+
+    /** Weights into each layer; index 0 unused. */
+    private final CompiledWeights[] weights;
+
+    /** Compiled neurons of each layer; index 0 unused. */
+    private final CompiledLayer[] layers;
+
+    /** Activations of each layer during an update. */
+    private final double[][] acts;
+
+    /**
+     * Construct an engine.
+     *
+     * @param groups the layers
+     * @param weights weights into each layer
+     * @param layers compiled neurons of each layer
+     */
+    private DenseLayerEngine(final List<NeuronGroup> groups,
+            final CompiledWeights[] weights, final CompiledLayer[] layers) {
+        this.groups = groups;
+        this.weights = weights;
+        this.layers = layers;
+        acts = new double[groups.size()][];
+        for (int l = 0; l < acts.length; l++) {
+            acts[l] = new double[groups.get(l).size()];
+        }
+    }
+
+    /**
+     * Compile a stack of layers.
+     *
+     * @param groups the layers, input layer first
+     * @return the engine, or null if the layers cannot be compiled
+     */
+    public static DenseLayerEngine compile(final List<NeuronGroup> groups) {
+        int numLayers = groups.size();
+        if (numLayers < 2) {
+            return null;
+        }
+        CompiledWeights[] weights = new CompiledWeights[numLayers];
+        CompiledLayer[] layers = new CompiledLayer[numLayers];
+        for (int l = 1; l < numLayers; l++) {
+            List<Neuron> sources = groups.get(l - 1).getNeuronListUnsafe();
+            List<Neuron> targets = groups.get(l).getNeuronListUnsafe();
+            layers[l] = CompiledLayer.compile(targets);
+            weights[l] = CompiledWeights.compile(sources, targets);
+            if (layers[l] == null || weights[l] == null
+                    || weights[l].getCount() != weights[l].values.length) {
+                return null;
+            }
+        }
+        DenseLayerEngine engine = new DenseLayerEngine(groups, weights,
+                layers);
+        return engine.pull() ? engine : null;
+    }
+
+    /**
+     * Read the weights and rule parameters from the network, checking that
+     * the layers can still be compiled as they were.
+     *
+     * @return false if the network has changed so that this engine can no
+     *         longer be used
+     */
+    public boolean pull() {
+        for (int l = 1; l < layers.length; l++) {
+            List<Neuron> targets = groups.get(l).getNeuronListUnsafe();
+            int fanIn = 0;
+            for (int j = 0, n = targets.size(); j < n; j++) {
+                fanIn += targets.get(j).getFanIn().size();
+            }
+            if (fanIn != weights[l].getCount()
+                    || groups.get(l - 1).size() != weights[l].numSources
+                    || !layers[l].isValid() || !layers[l].pull()
+                    || !weights[l].pullWeighted(targets)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Update every layer after the input layer, in order, from the current
+     * activations of the input layer. Each neuron's weighted input includes
+     * its external input and any input delivered in bulk by other synapse
+     * groups (see {@link NeuronGroup#updateGroupInputs()}), as it does when
+     * neurons are updated one by one. Call {@link #pull()} first.
+     */
+    public void update() {
+        List<Neuron> inputs = groups.get(0).getNeuronListUnsafe();
+        double[] in = acts[0];
+        for (int i = 0; i < in.length; i++) {
+            in[i] = inputs.get(i).getActivation();
+        }
+        for (int l = 1; l < layers.length; l++) {
+            NeuronGroup group = groups.get(l);
+            group.updateGroupInputs();
+            List<Neuron> neurons = group.getNeuronListUnsafe();
+            double[] src = acts[l - 1];
+            double[] out = acts[l];
+            double[] w = weights[l].values;
+            int numSources = src.length;
+            for (int j = 0; j < out.length; j++) {
+                Neuron neuron = neurons.get(j);
+                double sum = neuron.getInputValue()
+                        + neuron.getGroupExcitatoryInput()
+                        + neuron.getGroupInhibitoryInput();
+                int row = j * numSources;
+                for (int i = 0; i < numSources; i++) {
+                    sum += w[row + i] * src[i];
+                }
+                out[j] = layers[l].activation(j, sum);
+                neuron.setBuffer(out[j]);
+            }
+            for (int j = 0; j < out.length; j++) {
+                neurons.get(j).setToBufferVals();
+            }
+        }
+    }
+
+    /**
+     * Compute the activations of the last layer for a batch of inputs,
+     * without external or group inputs and without changing the neurons.
+     * Weights are used as of the last {@link #pull()}.
+     *
+     * @param inputs one row of input layer activations per input
+     * @return one row of last layer activations per input
+     */
+    public double[][] forward(final double[][] inputs) {
+        double[][] current = inputs;
+        for (int l = 1; l < layers.length; l++) {
+            CompiledWeights w = weights[l];
+            double[][] next = new double[current.length][w.numTargets];
+            multiply(w, current, next);
+            for (double[] row : next) {
+                for (int j = 0; j < row.length; j++) {
+                    row[j] = layers[l].activation(j, row[j]);
+                }
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * Set out[r][j] = sum_i W[j][i] * in[r][i] for every row of a batch,
+     * working through the batch a tile of rows at a time so that each row of
+     * weights is read from memory once per tile rather than once per row.
+     *
+     * @param w the weights
+     * @param in the source activations, one row per input
+     * @param out the weighted inputs, one row per input
+     */
+    private static void multiply(final CompiledWeights w, final double[][] in,
+            final double[][] out) {
+        int numSources = w.numSources;
+        double[] values = w.values;
+        for (int r = 0; r < in.length; r++) {
+            if (in[r].length < numSources) {
+                throw new IllegalArgumentException("Input row " + r
+                        + " has fewer than " + numSources + " values");
+            }
+        }
+        for (int from = 0; from < in.length; from += BATCH_TILE) {
+            int to = Math.min(in.length, from + BATCH_TILE);
+            for (int j = 0; j < w.numTargets; j++) {
+                int row = j * numSources;
+                for (int r = from; r < to; r++) {
+                    double[] src = in[r];
+                    double sum = 0;
+                    for (int i = 0; i < numSources; i++) {
+                        sum += values[row + i] * src[i];
+                    }
+                    out[r][j] = sum;
+                }
+            }
+        }
+    }
+
+}
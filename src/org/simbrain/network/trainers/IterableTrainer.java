@@ -78,6 +78,18 @@ public abstract class IterableTrainer extends Trainer {
         }
     };
 
+    /**
+     * Minimum time in milliseconds between error updates sent to listeners.
+     * Zero sends an update after every iteration.
+     */
+    private long errorUpdateInterval;
+
+    /** Time the last error update was sent to listeners. */
+    private long lastErrorUpdate;
+
+    /** Whether an error update was held back by the update interval. */
+    private boolean errorUpdatePending;
+
     /** Current stopping condition. */
     private StoppingCondition stoppingCondition = StoppingCondition.NONE;
 
@@ -105,14 +117,25 @@ public abstract class IterableTrainer extends Trainer {
     public abstract void randomize();
 
     /**
-     * Get the current MSE error.
+     * Get the current MSE error on data held out for validation. Trainers
+     * which do not hold out validation data return 0.
      *
-     * @return the current MSE error
+     * @return the current validation error
      */
     public double getValidationError() {
         return 0;
     }
 
+    /**
+     * Whether rows of the training set are held out of training, so that
+     * {@link #getValidationError()} reports the error on them.
+     *
+     * @return true if validation rows are held out
+     */
+    protected boolean holdsOutValidationRows() {
+        return false;
+    }
+
     /**
      * Iterate the training algorithm and stop iteration based on the selected
      * stopping condition.
@@ -121,10 +144,10 @@ public abstract class IterableTrainer extends Trainer {
      */
     public void iterate() throws DataNotInitializedException {
 
-        if (getTrainableNetwork().getTrainingSet().getInputData() == null) {
+        if (!getTrainableNetwork().getTrainingSet().hasInputData()) {
             throw new DataNotInitializedException("Input data not initalized");
         }
-        if (getTrainableNetwork().getTrainingSet().getTargetData() == null) {
+        if (!getTrainableNetwork().getTrainingSet().hasTargetData()) {
             throw new DataNotInitializedException("Target data not initalized");
         }
 
@@ -149,10 +172,18 @@ public abstract class IterableTrainer extends Trainer {
             setUpdateCompleted(true);
             break;
         case THRESHOLD_VALIDATION_ERROR:
+            do {
+                apply();
+            } while ((getValidationError() > errorThreshold)
+                    && (!updateCompleted));
+            setUpdateCompleted(true);
             break;
         default:
             break;
         }
+        if (errorUpdatePending) {
+            fireErrorUpdatedNow();
+        }
         fireTrainingEnd();
 
     }
@@ -162,11 +193,51 @@ public abstract class IterableTrainer extends Trainer {
      * for iterable methods.
      */
     public void fireErrorUpdated() {
+        if (errorUpdateInterval > 0
+                && System.currentTimeMillis() - lastErrorUpdate
+                < errorUpdateInterval) {
+            errorUpdatePending = true;
+            return;
+        }
+        fireErrorUpdatedNow();
+    }
+
+    /**
+     * Notify listeners that the error value has been updated regardless of
+     * the error update interval.
+     */
+    private void fireErrorUpdatedNow() {
+        errorUpdatePending = false;
+        lastErrorUpdate = System.currentTimeMillis();
         for (ErrorListener listener : getErrorListeners()) {
             listener.errorUpdated();
         }
     }
 
+    /**
+     * @return the minimum time in milliseconds between error updates
+     */
+    public long getErrorUpdateInterval() {
+        return errorUpdateInterval;
+    }
+
+    /**
+     * Set the minimum time in milliseconds between error updates sent to
+     * listeners, so that fast trainers do not flood the gui with updates. An
+     * update held back by the interval is sent when {@link #iterate()}
+     * finishes.
+     *
+     * @param errorUpdateInterval the interval in milliseconds, 0 to send an
+     *            update after every iteration
+     */
+    public void setErrorUpdateInterval(long errorUpdateInterval) {
+        if (errorUpdateInterval < 0) {
+            throw new IllegalArgumentException(
+                    "Error update interval must not be negative");
+        }
+        this.errorUpdateInterval = errorUpdateInterval;
+    }
+
     /**
      * @return boolean updated completed.
      */
@@ -243,17 +314,12 @@ public abstract class IterableTrainer extends Trainer {
      * @return least number of rows
      */
     protected int getMinimumNumRows(Trainable network) {
-        if ((network.getTrainingSet().getInputData() == null)
-                || (network.getTrainingSet() == null)) {
+        if ((network.getTrainingSet() == null)
+                || !network.getTrainingSet().hasInputData()
+                || !network.getTrainingSet().hasTargetData()) {
             return 0;
         }
-        int inputRows = network.getTrainingSet().getInputData().length;
-        int targetRows = network.getTrainingSet().getTargetData().length;
-        if (inputRows < targetRows) {
-            return inputRows;
-        } else {
-            return targetRows;
-        }
+        return network.getTrainingSet().getNumRows();
     }
 
     /**
@@ -27,10 +27,6 @@ package org.simbrain.network.trainers;
 import javax.swing.JFrame;
 import javax.swing.JOptionPane;
 
-import org.ojalgo.access.Access2D.Builder;
-import org.ojalgo.matrix.BasicMatrix;
-import org.ojalgo.matrix.BasicMatrix.Factory;
-import org.ojalgo.matrix.PrimitiveMatrix;
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.groups.Subnetwork;
 import org.simbrain.network.groups.SynapseGroup;
@@ -68,6 +64,15 @@ public class LMSOffline extends Trainer {
      */
     private Randomizer noiseGen = new Randomizer();
 
+    /** Number of threads used to correlate the states. */
+    private int numThreads = 1;
+
+    /**
+     * Source of the state matrix, or null to take it from the input data of
+     * the training set.
+     */
+    private StateHarvester harvester;
+
     {
         // Distribution defaults to uniform
         noiseGen.setParam1(-0.001); // Floor
@@ -111,10 +116,36 @@ public class LMSOffline extends Trainer {
 
     };
 
+    /**
+     * Produces the state matrix as it is needed, rather than storing it in
+     * the training set. Used by networks such as echo-state networks whose
+     * states are harvested by running the network and would not fit in
+     * memory for long input series.
+     */
+    public interface StateHarvester {
+
+        /**
+         * Harvest the states and add them, with their targets, to a
+         * regression one row at a time.
+         *
+         * @param regression the regression
+         */
+        void harvest(RidgeRegression regression);
+
+        /**
+         * Harvest the full state matrix. Needed by the Moore-Penrose
+         * solution.
+         *
+         * @return the state matrix
+         */
+        double[][] harvest();
+    }
+
     @Override
     public void apply() throws DataNotInitializedException {
 
-        if (getTrainableNetwork().getTrainingSet().getInputData() == null) {
+        if (harvester == null
+            && getTrainableNetwork().getTrainingSet().getInputData() == null) {
             throw new DataNotInitializedException(
                 "Input data not initalized");
         }
@@ -144,17 +175,6 @@ public class LMSOffline extends Trainer {
             index++;
         }
 
-        // Add noise to the input state matrix.
-        if (noiseAdded) {
-            double[][] stateMat = network.getTrainingSet().getInputData();
-            for (int i = 0, n = stateMat.length; i < n; i++) {
-                for (int j = 0, m = stateMat[i].length; j < m; j++) {
-                    network.getTrainingSet().getInputData()[i][j] =
-                        stateMat[i][j] + noiseGen.getRandom();
-                }
-            }
-        }
-
         if (solutionType == SolutionType.WIENER_HOPF) {
             weinerHopfSolution(network);
         } else if (solutionType == SolutionType.MOORE_PENROSE) {
@@ -184,84 +204,38 @@ public class LMSOffline extends Trainer {
     }
 
     /**
-     * Implements the Wiener-Hopf solution to LMS linear regression.
-     * TODO: Fix progress updates to reflect actual training times &#38; %s
+     * Implements the Wiener-Hopf solution to LMS linear regression. The
+     * state and target rows are streamed into X'X and X'Y (see
+     * {@link RidgeRegression}), which is then solved by Cholesky
+     * decomposition.
+     *
      * @param network the trainable network being trained
      */
     public void weinerHopfSolution(Trainable network) {
-        long start = System.nanoTime();
-        double[][] inputMatrix = network.getTrainingSet().getInputData();
-        double[][] trainingMatrix = network.getTrainingSet()
-            .getTargetData();
+        RidgeRegression regression = new RidgeRegression(network
+            .getInputNeurons().size(), network.getOutputNeurons().size(),
+            RidgeRegression.DEFAULT_BLOCK_SIZE, numThreads);
+        if (noiseAdded) {
+            regression.setNoise(noiseGen);
+        }
         try {
-
-            Factory<?> mf = PrimitiveMatrix.FACTORY;
-
-            Builder<?> tmpBuilder = mf.getBuilder(inputMatrix.length,
-                inputMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, inputMatrix[i][j]);
-                }
-            }
-
-            BasicMatrix stateMat = (BasicMatrix) tmpBuilder.build();
-
-            tmpBuilder = mf.getBuilder(trainingMatrix.length,
-                trainingMatrix[0].length);
-            for (int i = 0; i < tmpBuilder.countRows(); i++) {
-                for (int j = 0; j < tmpBuilder.countColumns(); j++) {
-                    tmpBuilder.set(i, j, trainingMatrix[i][j]);
-                    if (Double.isInfinite(trainingMatrix[i][j])
-                        || Double.isNaN(trainingMatrix[i][j])) {
-                        throw new NumberFormatException("Invalid target"
-                            + " values.");
-                    }
-                }
+            fireProgressUpdate("Correlating States (R = S'S, P = S'D)...", 0);
+            if (harvester != null) {
+                harvester.harvest(regression);
+            } else {
+                regression.addRows(network.getTrainingSet().getInputData(),
+                    network.getTrainingSet().getTargetData());
             }
 
-            BasicMatrix teachMat = (BasicMatrix) tmpBuilder.build();
-
-            fireProgressUpdate("Correlating State Matrix (R = S'S)...", 0);
-            teachMat = stateMat.transpose().multiplyRight(teachMat);
-
-            fireProgressUpdate(
-                "Cross-Correlating States with Teacher data (P = S'D)...",
-                15);
-            stateMat = stateMat.transpose().multiplyRight(stateMat);
-
-            fireProgressUpdate("Computing Inverse Correlation Matrix...", 30);
+            fireProgressUpdate("Solving R W = P...", 60);
+            double[][] wOut = regression.solve(ridgeRegression ? alpha
+                * alpha : 0);
 
-            if (ridgeRegression) {
-                tmpBuilder = mf.getBuilder((int) stateMat.countRows(),
-                    (int) stateMat.countColumns());
-                for (int i = 0, n = (int) stateMat.countColumns(); i < n; i++) {
-                    tmpBuilder.set(i, i, alpha * alpha);
-                }
-                BasicMatrix scaleMat = (BasicMatrix) tmpBuilder.build();
-                stateMat = stateMat.add(scaleMat);
-            }
-
-            stateMat = stateMat.invert();
-
-            fireProgressUpdate("Computing Weights...", 80);
-            tmpBuilder =
-                stateMat.multiplyRight(teachMat).copyToBuilder();
-            BasicMatrix finalMat = (BasicMatrix) tmpBuilder.build();
-            double[][] wOut = new double[(int) tmpBuilder.countRows()]
-                [(int) tmpBuilder.countColumns()];
-            for (int i = 0, n = (int) tmpBuilder.countRows(); i < n; i++) {
-                for (int j = 0, m = (int) tmpBuilder.countColumns(); j < m; j++)
-                {
-                    wOut[i][j] = finalMat.doubleValue(i, j);
-                }
-            }
             fireProgressUpdate("Setting Weights...", 95);
             SimnetUtils.setWeights(network.getInputNeurons(),
                 network.getOutputNeurons(), wOut);
             fireProgressUpdate("Done!", 100);
 
-            // TODO: What error does JAMA actually throw for singular Matrices?
         } catch (RuntimeException e) {
             JOptionPane.showMessageDialog(new JFrame(), ""
                 + "State Correlation Matrix is Singular."
@@ -270,12 +244,6 @@ public class LMSOffline extends Trainer {
                 "Training Failed", JOptionPane.ERROR_MESSAGE);
             fireProgressUpdate("Training Failed", 0);
         }
-
-        trainingMatrix = null;
-        inputMatrix = null;
-
-        long end = System.nanoTime();
-        System.out.println("Time: " + (end - start) / Math.pow(10, 9));
     }
 
     /**
@@ -283,8 +251,16 @@ public class LMSOffline extends Trainer {
      * @param network the trainable network being trained
      */
     public void moorePenroseSolution(Trainable network) {
-        Matrix inputMatrix =
-            new Matrix(network.getTrainingSet().getInputData());
+        double[][] stateMat = harvester != null ? harvester.harvest()
+            : network.getTrainingSet().getInputData();
+        if (noiseAdded) {
+            for (int i = 0, n = stateMat.length; i < n; i++) {
+                for (int j = 0, m = stateMat[i].length; j < m; j++) {
+                    stateMat[i][j] += noiseGen.getRandom();
+                }
+            }
+        }
+        Matrix inputMatrix = new Matrix(stateMat);
         Matrix trainingMatrix =
             new Matrix(network.getTrainingSet().getTargetData());
 
@@ -369,6 +345,40 @@ public class LMSOffline extends Trainer {
     public Randomizer getNoiseGen() {
         return noiseGen;
     }
+
+    /**
+     * @return the number of threads used to correlate the states
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads used to correlate the states
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                "Number of threads must be positive");
+        }
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return the state harvester, or null if the states are taken from the
+     *         training set
+     */
+    public StateHarvester getStateHarvester() {
+        return harvester;
+    }
+
+    /**
+     * @param harvester the state harvester, or null to take the states from
+     *            the training set
+     */
+    public void setStateHarvester(StateHarvester harvester) {
+        this.harvester = harvester;
+    }
     //
     //    /**
     //     *
@@ -0,0 +1,618 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.neuron_update_rules.LinearRule;
+import org.simbrain.network.neuron_update_rules.SigmoidalRule;
+import org.simbrain.network.trainers.BackpropTrainer.DataParallelMode;
+import org.simbrain.network.trainers.ParallelLoop.Range;
+
+/**
+ * A compiled form of a strictly layered network used by
+ * {@link BackpropTrainer}. Each pair of adjacent layers is snapshotted into a
+ * dense row-major weight matrix (one row per target neuron) plus a bias
+ * vector, and an epoch of training is run as batched matrix operations over
+ * mini-batches of the training set, with no boxing and no per-synapse object
+ * traffic. Weights, biases and the activations of the last training row are
+ * only written back to the network at the end of an epoch, so the network
+ * seen by the gui is always consistent between epochs.
+ * <p>
+ * Only networks whose layers are fully determined by their fan-in from the
+ * previous layer are supported: every non-input neuron must use a
+ * {@link LinearRule} or {@link SigmoidalRule} with weighted input and no
+ * noise, must not be clamped, and must receive synapses only from the
+ * preceding layer. Every synapse must be enabled, undelayed and not frozen,
+ * and its source must have no polarity (see
+ * {@link CompiledWeights#pullTrainable(List)}).
+ * {@link #compile(Trainable, List)} returns null for any other network, in
+ * which case the trainer falls back to updating the network row by row.
+ * <p>
+ * With a batch size of one the engine follows the row by row algorithm,
+ * including evaluating the derivative of each neuron at its weighted input
+ * and clipping each weight to its synapse's bounds after every update, up to
+ * rounding. Larger batches average the gradient over the batch before
+ * applying it.
+ * <p>
+ * With more than one thread, the threads either split up the individual
+ * matrix operations or, depending on the {@link DataParallelMode}, each take a
+ * shard of the training data and compute gradients in private buffers.
+ */
+final class LayeredBackpropEngine {
+
+    /**
+     * Below this many multiply-adds a matrix operation is run on the calling
+     * thread even if worker threads are available.
+     */
+    private static final int MIN_PARALLEL_WORK = 1 << 15;
+
+    /** The network layers, input layer first. */
+    private final List<List<Neuron>> layers;
+
+    /** Number of neurons in each layer. */
+    private final int[] sizes;
+
+    /** Weights into each layer (index 0 unused). */
+    private final CompiledWeights[] weights;
+
+    /** Activation functions and biases of each layer (index 0 unused). */
+    private final CompiledLayer[] compiledLayers;
+
+    /** Batch size. */
+    private int batchSize = 1;
+
+    /**
+     * Per-thread buffers. Only the first is used unless training data
+     * parallel.
+     */
+    private Shard[] shards;
+
+    /** How work is spread over the threads. */
+    private DataParallelMode mode = DataParallelMode.NONE;
+
+    /** Number of threads, run by {@link ParallelLoop}. */
+    private int numThreads = 1;
+
+    /**
+     * Construct an engine for the given layers. Use
+     * {@link #compile(Trainable, List)}.
+     *
+     * @param layers the layers
+     */
+    private LayeredBackpropEngine(final List<List<Neuron>> layers) {
+        int numLayers = layers.size();
+        this.layers = layers;
+        sizes = new int[numLayers];
+        for (int l = 0; l < numLayers; l++) {
+            sizes[l] = layers.get(l).size();
+        }
+        weights = new CompiledWeights[numLayers];
+        compiledLayers = new CompiledLayer[numLayers];
+    }
+
+    /**
+     * Compile the given layers of a trainable network.
+     *
+     * @param network the network being trained. Its input and output neurons
+     *            must be the first and last layers.
+     * @param layers the layers, input layer first
+     * @return the compiled engine, or null if the network cannot be compiled
+     */
+    static LayeredBackpropEngine compile(final Trainable network,
+            final List<List<Neuron>> layers) {
+        if (layers.size() < 2
+                || !layers.get(0).equals(network.getInputNeurons())
+                || !layers.get(layers.size() - 1).equals(
+                        network.getOutputNeurons())) {
+            return null;
+        }
+        LayeredBackpropEngine engine = new LayeredBackpropEngine(layers);
+        for (int l = 1; l < layers.size(); l++) {
+            engine.compiledLayers[l] = CompiledLayer.compile(layers.get(l));
+            engine.weights[l] = CompiledWeights.compile(layers.get(l - 1),
+                    layers.get(l));
+            if (engine.compiledLayers[l] == null || engine.weights[l] == null
+                    || engine.weights[l].getCount() != fanInSize(layers
+                            .get(l))
+                    || !engine.weights[l].pullTrainable(layers.get(l))) {
+                return null;
+            }
+        }
+        engine.allocate();
+        return engine;
+    }
+
+    /**
+     * Returns the total number of synapses onto a list of neurons.
+     *
+     * @param neurons the neurons
+     * @return the number of synapses
+     */
+    static int fanInSize(final List<Neuron> neurons) {
+        int count = 0;
+        for (Neuron neuron : neurons) {
+            count += neuron.getFanIn().size();
+        }
+        return count;
+    }
+
+    /**
+     * Check that the network still has the structure this engine was compiled
+     * from (the same layer sizes, update rules and fan-in to every neuron) and
+     * that every synapse can still be trained compiled, and read the current
+     * update rule parameters, biases, weights and weight bounds.
+     *
+     * @return true if the engine is still valid
+     */
+    boolean isValid() {
+        for (int l = 1; l < sizes.length; l++) {
+            List<Neuron> layer = layers.get(l);
+            if (!compiledLayers[l].isValid()
+                    || weights[l].getCount() != fanInSize(layer)
+                    || !weights[l].pullTrainable(layer)
+                    || !compiledLayers[l].pull()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Write weights, biases and the activations of one training row back to
+     * the network.
+     *
+     * @param shard the buffers holding the row
+     * @param row the row within the shard's last batch
+     */
+    private void push(final Shard shard, final int row) {
+        for (int l = 1; l < sizes.length; l++) {
+            weights[l].push();
+            compiledLayers[l].push();
+        }
+        for (int l = 0; l < sizes.length; l++) {
+            List<Neuron> layer = layers.get(l);
+            int offset = row * sizes[l];
+            for (int j = 0; j < sizes[l]; j++) {
+                layer.get(j).forceSetActivation(shard.acts[l][offset + j]);
+            }
+        }
+    }
+
+    /**
+     * Run one epoch of training over the given data. The weights are read from
+     * the network before the epoch and written back after it. Rows are read
+     * from the training set a batch at a time, so it need not be held in
+     * memory.
+     *
+     * @param data the training set
+     * @param order the rows in the order they are to be visited, or null to
+     *            visit rows 0 to numRows - 1 in order
+     * @param numRows number of rows to use
+     * @param learningRate learning rate
+     * @param momentum momentum
+     * @return the sum of squared output errors over the epoch, or NaN if a
+     *         synapse can no longer be trained compiled (nothing is trained)
+     */
+    double epoch(final TrainingSet data, final int[] order,
+            final int numRows, final double learningRate,
+            final double momentum) {
+        if (numRows == 0) {
+            return 0;
+        }
+        for (int l = 1; l < sizes.length; l++) {
+            if (!weights[l].pullTrainable(layers.get(l))) {
+                return Double.NaN;
+            }
+            compiledLayers[l].pull();
+        }
+        for (Shard shard : shards) {
+            shard.sse = 0;
+            shard.rows = 0;
+        }
+        if (numThreads == 1 || mode == DataParallelMode.NONE) {
+            Shard shard = shards[0];
+            for (int start = 0; start < numRows; start += batchSize) {
+                int batch = Math.min(batchSize, numRows - start);
+                process(shard, data, order, start, batch);
+                update(shard, learningRate / batch, momentum);
+            }
+        } else if (mode == DataParallelMode.SYNCHRONOUS) {
+            synchronousEpoch(data, order, numRows, learningRate, momentum);
+        } else {
+            hogwildEpoch(data, order, numRows, learningRate, momentum);
+        }
+        double sse = 0;
+        Shard last = shards[0];
+        for (Shard shard : shards) {
+            sse += shard.sse;
+            if (shard.rows > 0) {
+                last = shard;
+            }
+        }
+        push(last, last.rows - 1);
+        return sse;
+    }
+
+    /**
+     * Train one epoch by splitting every batch across the shards, summing
+     * their gradients and applying the sum once per batch. Equivalent to
+     * single threaded training with the same batch size, up to rounding.
+     *
+     * @param data the training set
+     * @param order the rows in the order they are to be visited, or null
+     * @param numRows number of rows to use
+     * @param learningRate learning rate
+     * @param momentum momentum
+     */
+    private void synchronousEpoch(final TrainingSet data,
+            final int[] order, final int numRows,
+            final double learningRate, final double momentum) {
+        final int numShards = shards.length;
+        final Shard first = shards[0];
+        for (int start = 0; start < numRows; start += batchSize) {
+            final int batchStart = start;
+            final int batch = Math.min(batchSize, numRows - start);
+            ParallelLoop.split(numShards, numThreads, new Range() {
+                @Override
+                void run(final int from, final int to) {
+                    for (int s = from; s < to; s++) {
+                        int lo = batchStart + batch * s / numShards;
+                        int hi = batchStart + batch * (s + 1) / numShards;
+                        process(shards[s], data, order, lo, hi - lo);
+                    }
+                }
+            });
+            for (int l = 1; l < sizes.length; l++) {
+                final double[] g = first.weightGrads[l];
+                final int layer = l;
+                Range reduce = new Range() {
+                    @Override
+                    void run(final int from, final int to) {
+                        for (int s = 1; s < numShards; s++) {
+                            double[] other = shards[s].weightGrads[layer];
+                            for (int k = from; k < to; k++) {
+                                g[k] += other[k];
+                            }
+                        }
+                    }
+                };
+                if (g.length * numShards < MIN_PARALLEL_WORK) {
+                    reduce.run(0, g.length);
+                } else {
+                    ParallelLoop.split(g.length, numThreads, reduce);
+                }
+                double[] gb = first.biasGrads[l];
+                for (int s = 1; s < numShards; s++) {
+                    double[] other = shards[s].biasGrads[l];
+                    for (int j = 0; j < gb.length; j++) {
+                        gb[j] += other[j];
+                    }
+                }
+            }
+            update(first, learningRate / batch, momentum);
+        }
+    }
+
+    /**
+     * Train one epoch by giving each shard a contiguous part of the data,
+     * which it trains on batch by batch, applying its updates directly to the
+     * shared weights without any locking ("Hogwild!"). Updates from different
+     * threads may interleave or occasionally be lost; this trades exact
+     * reproducibility for not having to synchronize at all.
+     *
+     * @param data the training set
+     * @param order the rows in the order they are to be visited, or null
+     * @param numRows number of rows to use
+     * @param learningRate learning rate
+     * @param momentum momentum
+     */
+    private void hogwildEpoch(final TrainingSet data,
+            final int[] order, final int numRows,
+            final double learningRate, final double momentum) {
+        final int numShards = shards.length;
+        ParallelLoop.split(numShards, numThreads, new Range() {
+            @Override
+            void run(final int from, final int to) {
+                for (int s = from; s < to; s++) {
+                    Shard shard = shards[s];
+                    int lo = numRows * s / numShards;
+                    int hi = numRows * (s + 1) / numShards;
+                    for (int start = lo; start < hi; start += batchSize) {
+                        int batch = Math.min(batchSize, hi - start);
+                        process(shard, data, order, start, batch);
+                        update(shard, learningRate / batch, momentum);
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Run the forward and backward pass for a batch of rows and compute the
+     * gradients, without changing the weights.
+     *
+     * @param shard buffers to use
+     * @param data the training set
+     * @param order the rows in the order they are to be visited, or null
+     * @param start first row
+     * @param batch number of rows, at most the batch size
+     */
+    private void process(final Shard shard, final TrainingSet data,
+            final int[] order, final int start, final int batch) {
+        int numLayers = sizes.length;
+        int out = numLayers - 1;
+        int numOut = sizes[out];
+        double[] outErrors = shard.errors[out];
+        shard.rows = batch;
+        for (int r = 0; r < batch; r++) {
+            int row = order == null ? start + r : order[start + r];
+            data.readInputRow(row, shard.acts[0], r * sizes[0], sizes[0]);
+            data.readTargetRow(row, outErrors, r * numOut, numOut);
+        }
+        for (int l = 1; l < numLayers; l++) {
+            forward(shard, l, batch);
+        }
+
+        // Output error; the targets were read into the error buffer
+        double[] outActs = shard.acts[out];
+        double sse = 0;
+        for (int r = 0; r < batch; r++) {
+            int offset = r * numOut;
+            for (int j = 0; j < numOut; j++) {
+                double error = outErrors[offset + j] - outActs[offset + j];
+                sse += error * error;
+                outErrors[offset + j] = error;
+            }
+        }
+        shard.sse += sse;
+        compiledLayers[out].applyDerivative(shard.errors[out],
+                shard.inputs[out], 0, batch);
+
+        // Backpropagate with the weights used in the forward pass
+        for (int l = out; l > 1; l--) {
+            backward(shard, l, batch);
+            compiledLayers[l - 1].applyDerivative(shard.errors[l - 1],
+                    shard.inputs[l - 1], 0, batch);
+        }
+        for (int l = 1; l < numLayers; l++) {
+            gradient(shard, l, batch);
+        }
+    }
+
+    /**
+     * Compute weighted inputs and activations of layer l.
+     *
+     * @param shard buffers to use
+     * @param l the layer
+     * @param batch number of rows in the batch
+     */
+    private void forward(final Shard shard, final int l, final int batch) {
+        final CompiledWeights w = weights[l];
+        final CompiledLayer layer = compiledLayers[l];
+        final double[] src = shard.acts[l - 1];
+        final double[] z = shard.inputs[l];
+        final double[] a = shard.acts[l];
+        final int numOut = sizes[l];
+        parallelFor(batch, batch * w.values.length, new Range() {
+            @Override
+            void run(final int from, final int to) {
+                Arrays.fill(z, from * numOut, to * numOut, 0);
+                w.multiply(src, 0, z, 0, from, to);
+                for (int k = from * numOut; k < to * numOut; k++) {
+                    a[k] = layer.activation(k % numOut, z[k]);
+                }
+            }
+        });
+    }
+
+    /**
+     * Propagate the error signals of layer l back to layer l - 1 (before
+     * multiplying by the derivative).
+     *
+     * @param shard buffers to use
+     * @param l the layer
+     * @param batch number of rows in the batch
+     */
+    private void backward(final Shard shard, final int l, final int batch) {
+        final CompiledWeights w = weights[l];
+        final double[] e = shard.errors[l];
+        final double[] prev = shard.errors[l - 1];
+        final int numIn = sizes[l - 1];
+        parallelFor(batch, batch * w.values.length, new Range() {
+            @Override
+            void run(final int from, final int to) {
+                Arrays.fill(prev, from * numIn, to * numIn, 0);
+                w.multiplyTransposed(e, 0, prev, 0, from, to);
+            }
+        });
+    }
+
+    /**
+     * Compute the weight and bias gradients of layer l, summed over the batch.
+     *
+     * @param shard buffers to use
+     * @param l the layer
+     * @param batch number of rows in the batch
+     */
+    private void gradient(final Shard shard, final int l, final int batch) {
+        final CompiledWeights w = weights[l];
+        final double[] g = shard.weightGrads[l];
+        final double[] gb = shard.biasGrads[l];
+        final double[] e = shard.errors[l];
+        final double[] src = shard.acts[l - 1];
+        final int numIn = sizes[l - 1];
+        final int numOut = sizes[l];
+        parallelFor(numOut, batch * w.values.length, new Range() {
+            @Override
+            void run(final int from, final int to) {
+                Arrays.fill(g, from * numIn, to * numIn, 0);
+                w.accumulateGradient(e, 0, src, 0, batch, g, from, to);
+                for (int j = from; j < to; j++) {
+                    double biasSum = 0;
+                    for (int r = 0; r < batch; r++) {
+                        biasSum += e[r * numOut + j];
+                    }
+                    gb[j] = biasSum;
+                }
+            }
+        });
+    }
+
+    /**
+     * Apply the gradients held by a shard to all layers.
+     *
+     * @param shard the shard holding the gradients
+     * @param rate learning rate divided by the batch size
+     * @param momentum momentum
+     */
+    private void update(final Shard shard, final double rate,
+            final double momentum) {
+        for (int l = 1; l < sizes.length; l++) {
+            weights[l].update(rate, momentum, shard.weightGrads[l]);
+            compiledLayers[l].update(rate, shard.biasGrads[l]);
+        }
+    }
+
+    /**
+     * Activations, weighted inputs, errors and gradients for one thread's
+     * share of a batch.
+     */
+    private final class Shard {
+
+        /** Activations of each layer, batch-major. */
+        private final double[][] acts;
+
+        /** Weighted inputs of each layer, batch-major. */
+        private final double[][] inputs;
+
+        /** Error signals of each layer, batch-major. */
+        private final double[][] errors;
+
+        /** Weight gradients of each layer (index 0 unused). */
+        private final double[][] weightGrads;
+
+        /** Bias gradients of each layer (index 0 unused). */
+        private final double[][] biasGrads;
+
+        /** Number of rows in the last batch processed. */
+        private int rows;
+
+        /** Sum of squared errors accumulated this epoch. */
+        private double sse;
+
+        /**
+         * Allocate buffers.
+         *
+         * @param capacity maximum number of rows per batch
+         */
+        private Shard(final int capacity) {
+            int numLayers = sizes.length;
+            acts = new double[numLayers][];
+            inputs = new double[numLayers][];
+            errors = new double[numLayers][];
+            weightGrads = new double[numLayers][];
+            biasGrads = new double[numLayers][];
+            for (int l = 0; l < numLayers; l++) {
+                acts[l] = new double[capacity * sizes[l]];
+                inputs[l] = new double[capacity * sizes[l]];
+                errors[l] = new double[capacity * sizes[l]];
+                if (l > 0) {
+                    weightGrads[l] = new double[weights[l].values.length];
+                    biasGrads[l] = new double[sizes[l]];
+                }
+            }
+        }
+    }
+
+    /**
+     * Run a loop over [0, n) inside a single matrix operation, split across
+     * the threads if the work is large enough to be worth it and the threads
+     * are not already being used to train data parallel.
+     *
+     * @param n number of loop indices
+     * @param work approximate number of multiply-adds
+     * @param range the loop body
+     */
+    private void parallelFor(final int n, final int work, final Range range) {
+        if (mode != DataParallelMode.NONE || work < MIN_PARALLEL_WORK) {
+            range.run(0, n);
+        } else {
+            ParallelLoop.split(n, numThreads, range);
+        }
+    }
+
+    /**
+     * (Re)allocate the per-thread buffers for the current batch size, thread
+     * count and mode.
+     */
+    private void allocate() {
+        int numShards = mode == DataParallelMode.NONE ? 1 : numThreads;
+        shards = new Shard[numShards];
+        for (int s = 0; s < numShards; s++) {
+            shards[s] = new Shard(batchSize);
+        }
+    }
+
+    /**
+     * Set the number of rows per mini-batch.
+     *
+     * @param batchSize the batch size, at least 1
+     */
+    void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (batchSize != this.batchSize) {
+            this.batchSize = batchSize;
+            allocate();
+        }
+    }
+
+    /**
+     * Set how the threads are used.
+     *
+     * @param mode the data parallel mode
+     */
+    void setDataParallelMode(final DataParallelMode mode) {
+        if (mode != this.mode) {
+            this.mode = mode;
+            allocate();
+        }
+    }
+
+    /**
+     * Set the number of threads.
+     *
+     * @param numThreads number of threads, at least 1
+     */
+    void setNumThreads(final int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive");
+        }
+        if (numThreads != this.numThreads) {
+            this.numThreads = numThreads;
+            allocate();
+        }
+    }
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.simbrain.network.inputs.MappedInputSource;
+import org.simbrain.network.inputs.MappedTable;
+
+/**
+ * A training set whose input and target data are binary tables (see
+ * {@link MappedInputSource}) mapped into memory rather than held on the heap,
+ * so it can be larger than the heap. Trainers which read rows with
+ * {@link #readInputRow(int, double[], int, int)} and
+ * {@link #readTargetRow(int, double[], int, int)} only page in the rows they
+ * use; {@link #getInputData()} and {@link #getTargetData()} still work but
+ * read a whole table into memory the first time they are called.
+ *
+ * The data is read only. Only the file names are saved with the network; the
+ * tables are mapped again when first used after loading.
+ */
+public class MappedTrainingSet extends TrainingSet {
+
+    /** The input table. */
+    private final File inputFile;
+
+    /** The target table, or null for none. */
+    private final File targetFile;
+
+    /** The mapped input table, or null if not yet mapped. */
+    private volatile MappedTable inputTable;
+
+    /** The mapped target table, or null if not yet mapped. */
+    private volatile MappedTable targetTable;
+
+    /** The input table read into memory by {@link #getInputData()}. */
+    private double[][] inputCache;
+
+    /** The target table read into memory by {@link #getTargetData()}. */
+    private double[][] targetCache;
+
+    /**
+     * Open a training set from binary tables.
+     *
+     * @param inputFile the input table
+     * @param targetFile the target table, or null for unsupervised training
+     * @throws IOException if a table cannot be mapped
+     */
+    public MappedTrainingSet(File inputFile, File targetFile)
+            throws IOException {
+        this.inputFile = inputFile;
+        this.targetFile = targetFile;
+        inputTable = new MappedTable(inputFile);
+        if (targetFile != null) {
+            try {
+                targetTable = new MappedTable(targetFile);
+            } catch (IOException e) {
+                inputTable.close();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Open a training set from text tables (values separated by commas or
+     * white space, one row per line), converting each to a binary table next
+     * to it the first time. The binary table is converted again if the text
+     * is newer than it.
+     *
+     * @param inputText the input text table
+     * @param targetText the target text table, or null for none
+     * @param singlePrecision whether to store values as 32 bit floats
+     * @return the training set
+     * @throws IOException if a table cannot be converted or mapped
+     */
+    public static MappedTrainingSet fromText(File inputText, File targetText,
+            boolean singlePrecision) throws IOException {
+        File inputFile = toBinary(inputText, singlePrecision);
+        File targetFile = targetText == null ? null : toBinary(targetText,
+                singlePrecision);
+        return new MappedTrainingSet(inputFile, targetFile);
+    }
+
+    /**
+     * Convert a text table to a binary table next to it, unless an up to
+     * date one exists.
+     *
+     * @param text the text table
+     * @param singlePrecision whether to store values as 32 bit floats
+     * @return the binary table
+     * @throws IOException if the table cannot be converted
+     */
+    private static File toBinary(File text, boolean singlePrecision)
+            throws IOException {
+        String name = text.getName();
+        int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            name = name.substring(0, dot);
+        }
+        File binary = new File(text.getParentFile(), name + "."
+                + MappedInputSource.FILE_EXTENSION);
+        if (!binary.exists() || binary.lastModified() < text.lastModified()) {
+            MappedInputSource.convert(text, binary, singlePrecision);
+        }
+        return binary;
+    }
+
+    /**
+     * @return the mapped input table
+     */
+    private MappedTable getInputTable() {
+        MappedTable table = inputTable;
+        if (table == null) {
+            synchronized (this) {
+                if (inputTable == null) {
+                    inputTable = map(inputFile);
+                }
+                table = inputTable;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * @return the mapped target table, or null if there is none
+     */
+    private MappedTable getTargetTable() {
+        MappedTable table = targetTable;
+        if (table == null && targetFile != null) {
+            synchronized (this) {
+                if (targetTable == null) {
+                    targetTable = map(targetFile);
+                }
+                table = targetTable;
+            }
+        }
+        return table;
+    }
+
+    /**
+     * Map a table after loading.
+     *
+     * @param file the table
+     * @return the mapped table
+     */
+    private static MappedTable map(File file) {
+        try {
+            return new MappedTable(file);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not map training data "
+                    + file, e);
+        }
+    }
+
+    /**
+     * Unmap the tables. They are mapped again if the training set is used
+     * afterwards.
+     *
+     * @throws IOException if a table cannot be closed
+     */
+    public synchronized void close() throws IOException {
+        try {
+            if (inputTable != null) {
+                inputTable.close();
+            }
+        } finally {
+            inputTable = null;
+            if (targetTable != null) {
+                targetTable.close();
+            }
+            targetTable = null;
+        }
+    }
+
+    /**
+     * @return the input table
+     */
+    public File getInputFile() {
+        return inputFile;
+    }
+
+    /**
+     * @return the target table, or null if there is none
+     */
+    public File getTargetFile() {
+        return targetFile;
+    }
+
+    /**
+     * Read the whole input table into memory, the first time this is
+     * called.
+     *
+     * @return the input data
+     */
+    @Override
+    public double[][] getInputData() {
+        if (inputCache == null) {
+            inputCache = getInputTable().readAll();
+        }
+        return inputCache;
+    }
+
+    /**
+     * Read the whole target table into memory, the first time this is
+     * called.
+     *
+     * @return the target data, or null if there is no target table
+     */
+    @Override
+    public double[][] getTargetData() {
+        if (targetCache == null && getTargetTable() != null) {
+            targetCache = getTargetTable().readAll();
+        }
+        return targetCache;
+    }
+
+    @Override
+    public void setInputData(double[][] inputData) {
+        throw new UnsupportedOperationException(
+                "Mapped training data is read only");
+    }
+
+    @Override
+    public void setTargetData(double[][] targetData) {
+        throw new UnsupportedOperationException(
+                "Mapped training data is read only");
+    }
+
+    @Override
+    public void addRow(double[] newRow) {
+        throw new UnsupportedOperationException(
+                "Mapped training data is read only");
+    }
+
+    @Override
+    public boolean hasInputData() {
+        return true;
+    }
+
+    @Override
+    public boolean hasTargetData() {
+        return targetFile != null;
+    }
+
+    @Override
+    public int getNumInputRows() {
+        return getInputTable().getNumRows();
+    }
+
+    @Override
+    public int getNumTargetRows() {
+        return targetFile == null ? 0 : getTargetTable().getNumRows();
+    }
+
+    @Override
+    public void readInputRow(int row, double[] dest, int offset, int count) {
+        getInputTable().readRow(row, dest, offset, count);
+    }
+
+    @Override
+    public void readTargetRow(int row, double[] dest, int offset, int count) {
+        getTargetTable().readRow(row, dest, offset, count);
+    }
+
+}
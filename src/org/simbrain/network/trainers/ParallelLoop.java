@@ -0,0 +1,137 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Runs the loops of the compiled trainers split across threads. The threads
+ * belong to fork/join pools shared by every trainer, one per number of
+ * threads, as in
+ * {@link org.simbrain.network.update_actions.ParallelBufferedUpdate}. A
+ * trainer therefore owns no threads and has nothing to release, and pool
+ * threads which sit idle exit by themselves.
+ */
+final class ParallelLoop {
+
+    /**
+     * The pools shared by all trainers, keyed by number of worker threads.
+     * Each is created on first use.
+     */
+    private static final Map<Integer, ForkJoinPool> pools =
+            new HashMap<Integer, ForkJoinPool>();
+
+    /** Not instantiated. */
+    private ParallelLoop() {
+    }
+
+    /**
+     * A range of loop indices run by one thread.
+     */
+    abstract static class Range {
+
+        /**
+         * Run the loop over [from, to).
+         *
+         * @param from first index
+         * @param to one past the last index
+         */
+        abstract void run(int from, int to);
+    }
+
+    /**
+     * Run a loop over [0, n) split into one contiguous chunk per thread, the
+     * first of which is run on the calling thread. If n equals the number of
+     * threads each chunk is a single index.
+     *
+     * @param n number of loop indices
+     * @param numThreads number of threads, counting the calling thread
+     * @param range the loop body
+     */
+    static void split(final int n, final int numThreads, final Range range) {
+        if (numThreads < 2 || n < 2) {
+            range.run(0, n);
+            return;
+        }
+        int chunks = Math.min(numThreads, n);
+        int[] bounds = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) {
+            bounds[c] = (int) ((long) n * c / chunks);
+        }
+        run(bounds, range);
+    }
+
+    /**
+     * Run a loop split into the given chunks, one per thread, the first of
+     * which is run on the calling thread. Chunk c covers [bounds[c],
+     * bounds[c + 1]).
+     *
+     * @param bounds the first index of each chunk, followed by one past the
+     *            last index of the last chunk
+     * @param range the loop body
+     */
+    static void run(final int[] bounds, final Range range) {
+        int chunks = bounds.length - 1;
+        if (chunks < 2) {
+            if (chunks == 1) {
+                range.run(bounds[0], bounds[1]);
+            }
+            return;
+        }
+        ForkJoinPool pool = getPool(chunks - 1);
+        List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>(
+                chunks - 1);
+        for (int c = 1; c < chunks; c++) {
+            final int from = bounds[c];
+            final int to = bounds[c + 1];
+            tasks.add(pool.submit(new Runnable() {
+                @Override
+                public void run() {
+                    range.run(from, to);
+                }
+            }));
+        }
+        range.run(bounds[0], bounds[1]);
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+    }
+
+    /**
+     * @param parallelism number of worker threads
+     * @return the pool shared by all trainers with this many worker threads,
+     *         creating it if needed.
+     */
+    private static ForkJoinPool getPool(final int parallelism) {
+        synchronized (pools) {
+            ForkJoinPool pool = pools.get(parallelism);
+            if (pool == null) {
+                pool = new ForkJoinPool(parallelism);
+                pools.put(parallelism, pool);
+            }
+            return pool;
+        }
+    }
+
+}
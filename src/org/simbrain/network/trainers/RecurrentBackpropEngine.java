@@ -0,0 +1,566 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+
+/**
+ * Truncated backprop through time for three layer recurrent networks, used by
+ * {@link SRNTrainer} and {@link BPTTTrainer}. The network is an input layer,
+ * a hidden layer and an output layer, with recurrence either through a
+ * context layer holding the previous hidden activations (a simple recurrent
+ * network) or by feeding the outputs of one step back in as the inputs of the
+ * next ("closed loop", as in {@link org.simbrain.network.subnetworks.BPTTNetwork}).
+ * <p>
+ * The rows of the training set are cut into sequences of a fixed length, and
+ * the recurrent state is reset at the start of each sequence. Several
+ * sequences can be run side by side as a batch. Each sequence is unrolled in
+ * windows of a fixed number of steps into preallocated per-step tapes of
+ * weighted inputs and activations; the error is then propagated back through
+ * the steps of the window, and the gradients accumulated over the window and
+ * the batch are applied once. The recurrent state, but not the error, is
+ * carried over from one window to the next. A window of one step gives
+ * Elman's original training procedure, in which the context layer is treated
+ * as just another input.
+ * <p>
+ * Weights and biases are read from the network before an epoch and written
+ * back after it, as in {@link LayeredBackpropEngine}, and as there every
+ * synapse must be enabled, undelayed and not frozen, with a source that has
+ * no polarity (see {@link CompiledWeights#pullTrainable(List)}).
+ */
+final class RecurrentBackpropEngine {
+
+    /** Input neurons. */
+    private final List<Neuron> inputNeurons;
+
+    /** Hidden neurons. */
+    private final List<Neuron> hiddenNeurons;
+
+    /** Context neurons, or null for closed loop networks. */
+    private final List<Neuron> contextNeurons;
+
+    /** Output neurons. */
+    private final List<Neuron> outputNeurons;
+
+    /** Input to hidden weights. */
+    private final CompiledWeights inToHid;
+
+    /** Context to hidden weights, or null for closed loop networks. */
+    private final CompiledWeights contextToHid;
+
+    /** Hidden to output weights. */
+    private final CompiledWeights hidToOut;
+
+    /** Hidden layer activation functions and biases. */
+    private final CompiledLayer hidden;
+
+    /** Output layer activation functions and biases. */
+    private final CompiledLayer output;
+
+    /** Number of input neurons. */
+    private final int numIn;
+
+    /** Number of hidden neurons. */
+    private final int numHid;
+
+    /** Number of output neurons. */
+    private final int numOut;
+
+    /** Rows per sequence. Zero means the whole training set. */
+    private int sequenceLength;
+
+    /** Steps per window. Zero means whole sequences. */
+    private int truncation;
+
+    /** Number of sequences run side by side. */
+    private int batchSize = 1;
+
+    /** Steps the tapes have room for. */
+    private int tapeLength;
+
+    /** Input tape, step-major then batch-major. */
+    private double[] x;
+
+    /** Hidden weighted input tape. */
+    private double[] zh;
+
+    /** Hidden activation tape. */
+    private double[] h;
+
+    /** Output weighted input tape. */
+    private double[] zo;
+
+    /** Output activation tape. */
+    private double[] y;
+
+    /** Hidden error tape. */
+    private double[] dh;
+
+    /** Output error tape. */
+    private double[] dy;
+
+    /** Input errors of the step after the current one (closed loop). */
+    private double[] dx;
+
+    /** Hidden state before the first step of the window, batch-major. */
+    private double[] h0;
+
+    /** Outputs before the first step of the window (closed loop). */
+    private double[] y0;
+
+    /** Context of the first sequence at the start of the last window. */
+    private double[] windowContext;
+
+    /** Hidden state at the start of every sequence. */
+    private final double[] initialHidden;
+
+    /** Gradients of {@link #inToHid}. */
+    private final double[] gInToHid;
+
+    /** Gradients of {@link #contextToHid}. */
+    private final double[] gContextToHid;
+
+    /** Gradients of {@link #hidToOut}. */
+    private final double[] gHidToOut;
+
+    /** Hidden bias gradients. */
+    private final double[] gHidBias;
+
+    /** Output bias gradients. */
+    private final double[] gOutBias;
+
+    /**
+     * Construct an engine. Use {@link #compile(List, List, List, List)}.
+     *
+     * @param inputs input neurons
+     * @param hiddens hidden neurons
+     * @param context context neurons or null
+     * @param outputs output neurons
+     * @param inToHid input to hidden weights
+     * @param contextToHid context to hidden weights or null
+     * @param hidToOut hidden to output weights
+     * @param hidden hidden layer
+     * @param output output layer
+     */
+    private RecurrentBackpropEngine(final List<Neuron> inputs,
+            final List<Neuron> hiddens, final List<Neuron> context,
+            final List<Neuron> outputs, final CompiledWeights inToHid,
+            final CompiledWeights contextToHid,
+            final CompiledWeights hidToOut, final CompiledLayer hidden,
+            final CompiledLayer output) {
+        this.inputNeurons = inputs;
+        this.hiddenNeurons = hiddens;
+        this.contextNeurons = context;
+        this.outputNeurons = outputs;
+        this.inToHid = inToHid;
+        this.contextToHid = contextToHid;
+        this.hidToOut = hidToOut;
+        this.hidden = hidden;
+        this.output = output;
+        numIn = inputs.size();
+        numHid = hiddens.size();
+        numOut = outputs.size();
+        initialHidden = new double[numHid];
+        gInToHid = new double[inToHid.values.length];
+        gContextToHid = contextToHid == null ? null
+                : new double[contextToHid.values.length];
+        gHidToOut = new double[hidToOut.values.length];
+        gHidBias = new double[numHid];
+        gOutBias = new double[numOut];
+        allocate(1);
+    }
+
+    /**
+     * Compile a recurrent network.
+     *
+     * @param inputs input neurons
+     * @param hiddens hidden neurons
+     * @param context context neurons, whose activations are the hidden
+     *            activations of the previous step, or null if the network
+     *            is closed loop, i.e. the outputs of each step are the inputs
+     *            of the next. In that case there must be as many inputs as
+     *            outputs.
+     * @param outputs output neurons
+     * @return the engine, or null if the network cannot be compiled
+     */
+    static RecurrentBackpropEngine compile(final List<Neuron> inputs,
+            final List<Neuron> hiddens, final List<Neuron> context,
+            final List<Neuron> outputs) {
+        if (context == null ? inputs.size() != outputs.size()
+                : context.size() != hiddens.size()) {
+            return null;
+        }
+        CompiledLayer hidden = CompiledLayer.compile(hiddens);
+        CompiledLayer output = CompiledLayer.compile(outputs);
+        CompiledWeights inToHid = CompiledWeights.compile(inputs, hiddens);
+        CompiledWeights contextToHid = context == null ? null
+                : CompiledWeights.compile(context, hiddens);
+        CompiledWeights hidToOut = CompiledWeights.compile(hiddens, outputs);
+        if (hidden == null || output == null || inToHid == null
+                || (context != null && contextToHid == null)
+                || hidToOut == null) {
+            return null;
+        }
+        RecurrentBackpropEngine engine = new RecurrentBackpropEngine(inputs,
+                hiddens, context, outputs, inToHid, contextToHid, hidToOut,
+                hidden, output);
+        return engine.isValid() ? engine : null;
+    }
+
+    /**
+     * Check that the network still has the structure this engine was compiled
+     * from and that every synapse can still be trained compiled, and read the
+     * current update rule parameters, weights and weight bounds.
+     *
+     * @return true if the engine is still valid
+     */
+    boolean isValid() {
+        int hiddenCount = inToHid.getCount()
+                + (contextToHid == null ? 0 : contextToHid.getCount());
+        return hidden.isValid() && output.isValid()
+                && inToHid.pullTrainable(hiddenNeurons)
+                && (contextToHid == null || contextToHid
+                        .pullTrainable(hiddenNeurons))
+                && hidToOut.pullTrainable(outputNeurons)
+                && hiddenCount == LayeredBackpropEngine.fanInSize(hiddenNeurons)
+                && hidToOut.getCount() == LayeredBackpropEngine
+                        .fanInSize(outputNeurons) && hidden.pull()
+                && output.pull();
+    }
+
+    /**
+     * Allocate tapes and state.
+     *
+     * @param steps number of steps per window
+     */
+    private void allocate(final int steps) {
+        tapeLength = steps;
+        int b = batchSize;
+        x = new double[steps * b * numIn];
+        zh = new double[steps * b * numHid];
+        h = new double[steps * b * numHid];
+        zo = new double[steps * b * numOut];
+        y = new double[steps * b * numOut];
+        dh = new double[steps * b * numHid];
+        dy = new double[steps * b * numOut];
+        dx = new double[b * numIn];
+        h0 = new double[b * numHid];
+        y0 = new double[b * numOut];
+        windowContext = new double[numHid];
+    }
+
+    /**
+     * Run one epoch of training. The hidden activations of the network when
+     * this is called are used as the initial state of every sequence.
+     *
+     * @param inputData input rows
+     * @param targetData target rows
+     * @param numRows number of rows to use
+     * @param learningRate learning rate
+     * @param momentum momentum
+     * @return the sum of squared output errors over the epoch, or NaN if a
+     *         synapse can no longer be trained compiled (nothing is trained)
+     */
+    double epoch(final double[][] inputData, final double[][] targetData,
+            final int numRows, final double learningRate,
+            final double momentum) {
+        if (numRows == 0) {
+            return 0;
+        }
+        if (!inToHid.pullTrainable(hiddenNeurons)
+                || !hidToOut.pullTrainable(outputNeurons)
+                || (contextToHid != null && !contextToHid
+                        .pullTrainable(hiddenNeurons))) {
+            return Double.NaN;
+        }
+        for (int j = 0; j < numHid; j++) {
+            initialHidden[j] = hiddenNeurons.get(j).getActivation();
+        }
+        int seqLength = sequenceLength == 0 ? numRows : Math.min(
+                sequenceLength, numRows);
+        int window = truncation == 0 ? seqLength : Math.min(truncation,
+                seqLength);
+        if (window > tapeLength) {
+            allocate(window);
+        }
+        int numSequences = (numRows + seqLength - 1) / seqLength;
+        double sse = 0;
+        int lastSteps = 0;
+        for (int first = 0; first < numSequences; first += batchSize) {
+            int lanes = Math.min(batchSize, numSequences - first);
+            int firstRow = first * seqLength;
+            int longest = Math.min(seqLength, numRows - firstRow);
+            for (int b = 0; b < lanes; b++) {
+                System.arraycopy(initialHidden, 0, h0, b * numHid, numHid);
+            }
+            for (int start = 0; start < longest; start += window) {
+                int steps = Math.min(window, longest - start);
+                sse += window(inputData, targetData, numRows, firstRow,
+                        seqLength, lanes, start, steps, learningRate,
+                        momentum);
+                lastSteps = steps;
+            }
+        }
+        inToHid.push();
+        hidToOut.push();
+        if (contextToHid != null) {
+            contextToHid.push();
+        }
+        hidden.push();
+        output.push();
+        show(lastSteps - 1);
+        return sse;
+    }
+
+    /**
+     * Run the forward and backward pass over one window of a batch of
+     * sequences and apply the accumulated gradients.
+     *
+     * @param inputData input rows
+     * @param targetData target rows
+     * @param numRows number of rows
+     * @param firstRow row of the first step of the first sequence
+     * @param seqLength rows per sequence
+     * @param lanes number of sequences in the batch
+     * @param start step within the sequences of the first step of the window
+     * @param steps number of steps in the window
+     * @param learningRate learning rate
+     * @param momentum momentum
+     * @return the sum of squared output errors over the window
+     */
+    private double window(final double[][] inputData,
+            final double[][] targetData, final int numRows,
+            final int firstRow, final int seqLength, final int lanes,
+            final int start, final int steps, final double learningRate,
+            final double momentum) {
+        int b = batchSize;
+        double sse = 0;
+        int activeRows = 0;
+        System.arraycopy(h0, 0, windowContext, 0, numHid);
+
+        // Forward
+        for (int t = 0; t < steps; t++) {
+            int xt = t * b * numIn;
+            int ht = t * b * numHid;
+            int ot = t * b * numOut;
+            for (int lane = 0; lane < lanes; lane++) {
+                int row = firstRow + lane * seqLength + start + t;
+                int xOffset = xt + lane * numIn;
+                if (!isActive(lane, start + t, firstRow, seqLength, numRows)) {
+                    Arrays.fill(x, xOffset, xOffset + numIn, 0);
+                } else if (contextNeurons == null && start + t > 0) {
+                    double[] prevOut = t == 0 ? y0 : y;
+                    int prevOffset = t == 0 ? lane * numOut : (t - 1) * b
+                            * numOut + lane * numOut;
+                    System.arraycopy(prevOut, prevOffset, x, xOffset, numIn);
+                } else {
+                    System.arraycopy(inputData[row], 0, x, xOffset, numIn);
+                }
+            }
+            Arrays.fill(zh, ht, ht + lanes * numHid, 0);
+            inToHid.multiply(x, xt, zh, ht, 0, lanes);
+            if (contextToHid != null) {
+                if (t == 0) {
+                    contextToHid.multiply(h0, 0, zh, ht, 0, lanes);
+                } else {
+                    contextToHid.multiply(h, ht - b * numHid, zh, ht, 0,
+                            lanes);
+                }
+            }
+            for (int k = 0; k < lanes * numHid; k++) {
+                h[ht + k] = hidden.activation(k % numHid, zh[ht + k]);
+            }
+            Arrays.fill(zo, ot, ot + lanes * numOut, 0);
+            hidToOut.multiply(h, ht, zo, ot, 0, lanes);
+            for (int k = 0; k < lanes * numOut; k++) {
+                y[ot + k] = output.activation(k % numOut, zo[ot + k]);
+            }
+        }
+
+        // Backward through the window
+        Arrays.fill(gInToHid, 0);
+        Arrays.fill(gHidToOut, 0);
+        Arrays.fill(gHidBias, 0);
+        Arrays.fill(gOutBias, 0);
+        if (gContextToHid != null) {
+            Arrays.fill(gContextToHid, 0);
+        }
+        for (int t = steps - 1; t >= 0; t--) {
+            int xt = t * b * numIn;
+            int ht = t * b * numHid;
+            int ot = t * b * numOut;
+            boolean last = t == steps - 1;
+            for (int lane = 0; lane < lanes; lane++) {
+                int eOffset = ot + lane * numOut;
+                if (!isActive(lane, start + t, firstRow, seqLength, numRows)) {
+                    Arrays.fill(dy, eOffset, eOffset + numOut, 0);
+                    continue;
+                }
+                activeRows++;
+                double[] target = targetData[firstRow + lane * seqLength
+                        + start + t];
+                for (int j = 0; j < numOut; j++) {
+                    double error = target[j] - y[eOffset + j];
+                    sse += error * error;
+                    dy[eOffset + j] = error;
+                }
+                if (contextNeurons == null && !last) {
+                    // This output was the next step's input
+                    for (int j = 0; j < numOut; j++) {
+                        dy[eOffset + j] += dx[lane * numIn + j];
+                    }
+                }
+            }
+            output.applyDerivative(dy, zo, ot, lanes);
+            Arrays.fill(dh, ht, ht + lanes * numHid, 0);
+            hidToOut.multiplyTransposed(dy, ot, dh, ht, 0, lanes);
+            if (contextToHid != null && !last) {
+                contextToHid.multiplyTransposed(dh, ht + b * numHid, dh, ht,
+                        0, lanes);
+            }
+            hidden.applyDerivative(dh, zh, ht, lanes);
+            if (contextNeurons == null && start + t > 0) {
+                Arrays.fill(dx, 0, lanes * numIn, 0);
+                inToHid.multiplyTransposed(dh, ht, dx, 0, 0, lanes);
+            }
+
+            hidToOut.accumulateGradient(dy, ot, h, ht, lanes, gHidToOut, 0,
+                    numOut);
+            inToHid.accumulateGradient(dh, ht, x, xt, lanes, gInToHid, 0,
+                    numHid);
+            if (contextToHid != null) {
+                if (t == 0) {
+                    contextToHid.accumulateGradient(dh, ht, h0, 0, lanes,
+                            gContextToHid, 0, numHid);
+                } else {
+                    contextToHid.accumulateGradient(dh, ht, h, ht - b
+                            * numHid, lanes, gContextToHid, 0, numHid);
+                }
+            }
+            for (int k = 0; k < lanes * numOut; k++) {
+                gOutBias[k % numOut] += dy[ot + k];
+            }
+            for (int k = 0; k < lanes * numHid; k++) {
+                gHidBias[k % numHid] += dh[ht + k];
+            }
+        }
+
+        // Carry the state over to the next window
+        System.arraycopy(h, (steps - 1) * b * numHid, h0, 0, lanes * numHid);
+        System.arraycopy(y, (steps - 1) * b * numOut, y0, 0, lanes * numOut);
+
+        if (activeRows > 0) {
+            double rate = learningRate / activeRows;
+            inToHid.update(rate, momentum, gInToHid);
+            if (contextToHid != null) {
+                contextToHid.update(rate, momentum, gContextToHid);
+            }
+            hidToOut.update(rate, momentum, gHidToOut);
+            hidden.update(rate, gHidBias);
+            output.update(rate, gOutBias);
+        }
+        return sse;
+    }
+
+    /**
+     * Whether a step of one of the sequences in a batch is part of the
+     * training set. Only the last sequence can be shorter than the others.
+     *
+     * @param lane the sequence within the batch
+     * @param step the step within the sequence
+     * @param firstRow row of the first step of the first sequence
+     * @param seqLength rows per sequence
+     * @param numRows number of rows
+     * @return true if the step is in the training set
+     */
+    private static boolean isActive(final int lane, final int step,
+            final int firstRow, final int seqLength, final int numRows) {
+        return step < seqLength && firstRow + lane * seqLength + step < numRows;
+    }
+
+    /**
+     * Show the activations of the first sequence of the batch at one step of
+     * the last window in the network.
+     *
+     * @param t the step within the window
+     */
+    private void show(final int t) {
+        int b = batchSize;
+        for (int j = 0; j < numIn; j++) {
+            inputNeurons.get(j).forceSetActivation(x[t * b * numIn + j]);
+        }
+        hidden.showActivations(h, t * b * numHid);
+        output.showActivations(y, t * b * numOut);
+        if (contextNeurons != null) {
+            double[] context = t == 0 ? windowContext : h;
+            int offset = t == 0 ? 0 : (t - 1) * b * numHid;
+            for (int j = 0; j < numHid; j++) {
+                contextNeurons.get(j).forceSetActivation(context[offset + j]);
+            }
+        }
+    }
+
+    /**
+     * Set the number of rows per sequence. The recurrent state is reset at
+     * the start of each sequence.
+     *
+     * @param sequenceLength rows per sequence, 0 to treat the whole training
+     *            set as one sequence
+     */
+    void setSequenceLength(final int sequenceLength) {
+        if (sequenceLength < 0) {
+            throw new IllegalArgumentException(
+                    "Sequence length must not be negative");
+        }
+        this.sequenceLength = sequenceLength;
+    }
+
+    /**
+     * Set the number of steps the error is propagated back through before
+     * the weights are updated.
+     *
+     * @param truncation steps per window, 0 for whole sequences
+     */
+    void setTruncation(final int truncation) {
+        if (truncation < 0) {
+            throw new IllegalArgumentException(
+                    "Truncation must not be negative");
+        }
+        this.truncation = truncation;
+    }
+
+    /**
+     * Set the number of sequences run side by side.
+     *
+     * @param batchSize sequences per batch, at least 1
+     */
+    void setBatchSize(final int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive");
+        }
+        if (batchSize != this.batchSize) {
+            this.batchSize = batchSize;
+            allocate(tapeLength);
+        }
+    }
+
+}
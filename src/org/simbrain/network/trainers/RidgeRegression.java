@@ -0,0 +1,306 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import org.simbrain.network.trainers.ParallelLoop.Range;
+import org.simbrain.util.randomizer.Randomizer;
+
+/**
+ * Streaming least squares with Tikhonov (ridge) regularization. Rows of the
+ * state matrix X and the target matrix Y are added one at a time and folded
+ * into X'X and X'Y a block of rows at a time, so X itself is never stored:
+ * memory is quadratic in the number of inputs and independent of the number
+ * of rows. The weights W = (X'X + lambda I)^-1 X'Y are then found by
+ * Cholesky decomposition.
+ */
+public class RidgeRegression {
+
+    /** Default number of rows folded in at a time. */
+    public static final int DEFAULT_BLOCK_SIZE = 64;
+
+    /** Number of inputs (columns of X). */
+    private final int numInputs;
+
+    /** Number of outputs (columns of Y). */
+    private final int numOutputs;
+
+    /** Upper triangle of X'X, row-major. */
+    private final double[] xtx;
+
+    /** X'Y, row-major. */
+    private final double[] xty;
+
+    /** Rows of X waiting to be folded in. */
+    private final double[] inputBlock;
+
+    /** Rows of Y waiting to be folded in. */
+    private final double[] targetBlock;
+
+    /** Number of rows in the block. */
+    private final int blockSize;
+
+    /** Number of rows currently in the block. */
+    private int blockRows;
+
+    /** Total number of rows added. */
+    private long rowCount;
+
+    /** Noise added to every input, or null for none. */
+    private Randomizer noise;
+
+    /**
+     * First row of X'X handled by each thread, chosen so each thread gets
+     * about the same share of the upper triangle. The threads are run by
+     * {@link ParallelLoop}.
+     */
+    private final int[] chunkStarts;
+
+    /** Folds the buffered rows into a range of rows of X'X and X'Y. */
+    private final Range folder = new Range() {
+        @Override
+        void run(final int from, final int to) {
+            fold(from, to);
+        }
+    };
+
+    /**
+     * Construct a single threaded regression.
+     *
+     * @param numInputs number of inputs
+     * @param numOutputs number of outputs
+     */
+    public RidgeRegression(final int numInputs, final int numOutputs) {
+        this(numInputs, numOutputs, DEFAULT_BLOCK_SIZE, 1);
+    }
+
+    /**
+     * Construct a regression.
+     *
+     * @param numInputs number of inputs
+     * @param numOutputs number of outputs
+     * @param blockSize number of rows folded in at a time
+     * @param numThreads number of threads used to fold in the rows
+     */
+    public RidgeRegression(final int numInputs, final int numOutputs,
+            final int blockSize, final int numThreads) {
+        if (numInputs < 1 || numOutputs < 1) {
+            throw new IllegalArgumentException(
+                    "Regression must have inputs and outputs");
+        }
+        if (blockSize < 1) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive");
+        }
+        this.numInputs = numInputs;
+        this.numOutputs = numOutputs;
+        this.blockSize = blockSize;
+        int chunks = Math.min(numThreads, numInputs);
+        xtx = new double[numInputs * numInputs];
+        xty = new double[numInputs * numOutputs];
+        inputBlock = new double[blockSize * numInputs];
+        targetBlock = new double[blockSize * numOutputs];
+        chunkStarts = new int[chunks + 1];
+        for (int c = 0; c <= chunks; c++) {
+            chunkStarts[c] = (int) Math.round(numInputs
+                    * (1 - Math.sqrt(1 - (double) c / chunks)));
+        }
+    }
+
+    /**
+     * Add a row.
+     *
+     * @param inputs row of X, of length at least the number of inputs
+     * @param targets row of Y, of length at least the number of outputs
+     */
+    public void addRow(final double[] inputs, final double[] targets) {
+        int in = blockRows * numInputs;
+        if (noise == null) {
+            System.arraycopy(inputs, 0, inputBlock, in, numInputs);
+        } else {
+            for (int i = 0; i < numInputs; i++) {
+                inputBlock[in + i] = inputs[i] + noise.getRandom();
+            }
+        }
+        for (int k = 0; k < numOutputs; k++) {
+            double target = targets[k];
+            if (Double.isInfinite(target) || Double.isNaN(target)) {
+                throw new NumberFormatException("Invalid target values.");
+            }
+            targetBlock[blockRows * numOutputs + k] = target;
+        }
+        rowCount++;
+        if (++blockRows == blockSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Add every row of a pair of matrices.
+     *
+     * @param inputs X
+     * @param targets Y
+     */
+    public void addRows(final double[][] inputs, final double[][] targets) {
+        if (inputs.length != targets.length) {
+            throw new IllegalArgumentException("Input and target data must "
+                    + "have the same number of rows");
+        }
+        for (int r = 0; r < inputs.length; r++) {
+            addRow(inputs[r], targets[r]);
+        }
+    }
+
+    /**
+     * Fold the buffered rows into X'X and X'Y.
+     */
+    private void flush() {
+        if (blockRows == 0) {
+            return;
+        }
+        ParallelLoop.run(chunkStarts, folder);
+        blockRows = 0;
+    }
+
+    /**
+     * Fold the buffered rows into rows [from, to) of X'X and X'Y.
+     *
+     * @param from first row
+     * @param to one past the last row
+     */
+    private void fold(final int from, final int to) {
+        for (int r = 0; r < blockRows; r++) {
+            int in = r * numInputs;
+            int out = r * numOutputs;
+            for (int i = from; i < to; i++) {
+                double xi = inputBlock[in + i];
+                if (xi == 0) {
+                    continue;
+                }
+                int row = i * numInputs;
+                for (int j = i; j < numInputs; j++) {
+                    xtx[row + j] += xi * inputBlock[in + j];
+                }
+                row = i * numOutputs;
+                for (int k = 0; k < numOutputs; k++) {
+                    xty[row + k] += xi * targetBlock[out + k];
+                }
+            }
+        }
+    }
+
+    /**
+     * Solve for the weights. Rows can still be added afterwards and the
+     * regression solved again.
+     *
+     * @param lambda the ridge parameter added to the diagonal of X'X
+     * @return the weights, one row per input and one column per output
+     * @throws IllegalStateException if X'X + lambda I is not positive
+     *             definite, e.g. because X is rank deficient and lambda is 0
+     */
+    public double[][] solve(final double lambda) {
+        flush();
+        int n = numInputs;
+        double[] u = xtx.clone();
+        for (int i = 0; i < n; i++) {
+            u[i * n + i] += lambda;
+        }
+
+        // Cholesky decomposition in place: X'X + lambda I = U'U
+        for (int i = 0; i < n; i++) {
+            int row = i * n;
+            double pivot = u[row + i];
+            if (!(pivot > 0)) {
+                throw new IllegalStateException(
+                        "State correlation matrix is singular");
+            }
+            pivot = Math.sqrt(pivot);
+            u[row + i] = pivot;
+            for (int j = i + 1; j < n; j++) {
+                u[row + j] /= pivot;
+            }
+            for (int k = i + 1; k < n; k++) {
+                double uik = u[row + k];
+                if (uik == 0) {
+                    continue;
+                }
+                int rowK = k * n;
+                for (int j = k; j < n; j++) {
+                    u[rowK + j] -= uik * u[row + j];
+                }
+            }
+        }
+
+        // Solve U'z = X'Y, then UW = z, one output at a time
+        double[][] weights = new double[n][numOutputs];
+        double[] z = new double[n];
+        for (int k = 0; k < numOutputs; k++) {
+            for (int i = 0; i < n; i++) {
+                double sum = xty[i * numOutputs + k];
+                for (int p = 0; p < i; p++) {
+                    sum -= u[p * n + i] * z[p];
+                }
+                z[i] = sum / u[i * n + i];
+            }
+            for (int i = n - 1; i >= 0; i--) {
+                double sum = z[i];
+                int row = i * n;
+                for (int j = i + 1; j < n; j++) {
+                    sum -= u[row + j] * weights[j][k];
+                }
+                weights[i][k] = sum / u[row + i];
+            }
+        }
+        return weights;
+    }
+
+    /**
+     * Set a noise generator whose values are added to every input as it is
+     * added, or null for no noise.
+     *
+     * @param noise the noise generator
+     */
+    public void setNoise(final Randomizer noise) {
+        this.noise = noise;
+    }
+
+    /**
+     * @return the total number of rows added
+     */
+    public long getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * @return the number of inputs
+     */
+    public int getNumInputs() {
+        return numInputs;
+    }
+
+    /**
+     * @return the number of outputs
+     */
+    public int getNumOutputs() {
+        return numOutputs;
+    }
+
+}
@@ -18,6 +18,9 @@
  */
 package org.simbrain.network.trainers;
 
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
 import org.simbrain.network.subnetworks.SOMNetwork;
 
 /**
@@ -40,6 +43,19 @@ public class SOMTrainer extends Trainer {
     /** Iteration number. An epoch. */
     private int iteration = 0;
 
+    /**
+     * Whether to train in batch mode, updating the weights once per epoch
+     * from the best matching units of every row, rather than after each
+     * row.
+     */
+    private boolean batch;
+
+    /** Number of threads used in batch mode. */
+    private int numThreads = 1;
+
+    /** Batch training engine, compiled lazily. */
+    private BatchSOMEngine engine;
+
     /**
      * Construct the UnsupervisedNeuronGroupTrainer trainer.
      *
@@ -60,6 +76,11 @@ public class SOMTrainer extends Trainer {
         }
 
         int numRows = network.getTrainingSet().getInputData().length;
+        if (batch && numRows > 0 && applyBatch(numRows)) {
+            incrementIteration();
+            revalidateSynapseGroups();
+            return;
+        }
         for (int row = 0; row < numRows; row++) {
             double[] inputs = network.getTrainingSet().getInputData()[row];
             network.getInputLayer().forceSetActivations(inputs);
@@ -72,6 +93,32 @@ public class SOMTrainer extends Trainer {
 
     }
 
+    /**
+     * Run one epoch of batch training, and show the last row and its winner.
+     *
+     * @param numRows number of rows
+     * @return false if the SOM is not fully connected to the input layer, in
+     *         which case it must be trained row by row
+     */
+    private boolean applyBatch(int numRows) {
+        if (engine == null || !engine.isValid()) {
+            engine = BatchSOMEngine.compile(network.getInputNeurons(),
+                    network.getSom());
+            if (engine == null) {
+                return false;
+            }
+        }
+        engine.setNumThreads(numThreads);
+        double[][] inputData = network.getTrainingSet().getInputData();
+        int winner = engine.epoch(inputData, numRows);
+        network.getInputLayer().forceSetActivations(inputData[numRows - 1]);
+        List<Neuron> units = network.getSom().getNeuronList();
+        for (int i = 0; i < units.size(); i++) {
+            units.get(i).setActivation(i == winner ? 1 : 0);
+        }
+        return true;
+    }
+
     /**
      * @return boolean updated completed.
      */
@@ -111,4 +158,41 @@ public class SOMTrainer extends Trainer {
         return iteration;
     }
 
+    /**
+     * @return true if training in batch mode
+     */
+    public boolean isBatch() {
+        return batch;
+    }
+
+    /**
+     * Set whether to train in batch mode: the best matching unit of every
+     * row is found first, and then each unit is moved to the mean of the rows
+     * won within its neighborhood. Falls back to row by row training if the
+     * SOM is not fully connected to the input layer.
+     *
+     * @param batch true for batch mode
+     */
+    public void setBatch(boolean batch) {
+        this.batch = batch;
+    }
+
+    /**
+     * @return the number of threads used in batch mode
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * @param numThreads the number of threads used in batch mode
+     */
+    public void setNumThreads(int numThreads) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException(
+                    "Number of threads must be positive");
+        }
+        this.numThreads = numThreads;
+    }
+
 }
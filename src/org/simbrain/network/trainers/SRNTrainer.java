@@ -34,6 +34,23 @@ public class SRNTrainer extends BackpropTrainer {
     /** Reference to srn being trained. */
     private final SimpleRecurrentNetwork srn;
 
+    /**
+     * Number of steps the error is propagated back through the context layer
+     * before the weights are updated. 1 is Elman's original procedure, 0
+     * propagates through whole sequences.
+     */
+    private int truncation = 1;
+
+    /**
+     * Rows of the training set per sequence. The context is reset at the
+     * start of each sequence. 0 treats the whole training set as one
+     * sequence.
+     */
+    private int sequenceLength;
+
+    /** Compiled representation of the srn. */
+    private RecurrentBackpropEngine engine;
+
     /**
      * Construct the SRN trainer.
      *
@@ -55,4 +72,114 @@ public class SRNTrainer extends BackpropTrainer {
         srn.update();
     }
 
+    /**
+     * Train one epoch with truncated backprop through time. When compiled
+     * training is on, the batch size is the number of sequences trained side
+     * by side. Rows are always visited in order.
+     */
+    @Override
+    protected double applyCompiled(int numRows, int[] order) {
+        if (engine != null && !engine.isValid()) {
+            engine = null;
+        }
+        if (engine == null) {
+            engine = RecurrentBackpropEngine.compile(srn.getInputNeurons(),
+                    srn.getHiddenLayer().getNeuronList(), srn
+                            .getContextLayer().getNeuronList(), srn
+                            .getOutputNeurons());
+            if (engine == null) {
+                return Double.NaN;
+            }
+        }
+        engine.setTruncation(truncation);
+        engine.setSequenceLength(sequenceLength);
+        engine.setBatchSize(getBatchSize());
+        return engine.epoch(srn.getTrainingSet().getInputData(), srn
+                .getTrainingSet().getTargetData(), numRows, getLearningRate(),
+                getMomentum());
+    }
+
+    /**
+     * Rows are never held out for validation, since the rows of a sequence
+     * must all be trained in order.
+     *
+     * @return false
+     */
+    @Override
+    protected boolean holdsOutValidationRows() {
+        return false;
+    }
+
+    /**
+     * Holding out rows is not supported, since the rows of a sequence must
+     * all be trained in order.
+     *
+     * @param holdOutValidationRows must be false
+     */
+    @Override
+    public void setHoldOutValidationRows(boolean holdOutValidationRows) {
+        if (holdOutValidationRows) {
+            throw new UnsupportedOperationException(
+                    "Sequences cannot hold out validation rows");
+        }
+    }
+
+    /**
+     * Shuffling is not supported, since the rows of a sequence must be
+     * visited in order.
+     *
+     * @param shuffle must be false
+     */
+    @Override
+    public void setShuffle(boolean shuffle) {
+        if (shuffle) {
+            throw new UnsupportedOperationException(
+                    "Sequences cannot be shuffled");
+        }
+    }
+
+    /**
+     * @return the number of steps the error is propagated back through
+     */
+    public int getTruncation() {
+        return truncation;
+    }
+
+    /**
+     * Set the number of steps the error is propagated back through the
+     * context layer before the weights are updated. Only used by compiled
+     * training; the row by row fallback always uses 1.
+     *
+     * @param truncation steps per update, or 0 for whole sequences
+     */
+    public void setTruncation(int truncation) {
+        if (truncation < 0) {
+            throw new IllegalArgumentException(
+                    "Truncation must not be negative");
+        }
+        this.truncation = truncation;
+    }
+
+    /**
+     * @return the number of rows per sequence, 0 for the whole training set
+     */
+    public int getSequenceLength() {
+        return sequenceLength;
+    }
+
+    /**
+     * Set the number of rows of the training set per sequence. Only used by
+     * compiled training.
+     *
+     * @param sequenceLength rows per sequence, or 0 for the whole training
+     *            set
+     */
+    public void setSequenceLength(int sequenceLength) {
+        if (sequenceLength < 0) {
+            throw new IllegalArgumentException(
+                    "Sequence length must not be negative");
+        }
+        this.sequenceLength = sequenceLength;
+    }
+
 }
@@ -0,0 +1,561 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import org.simbrain.network.trainers.Trainer.DataNotInitializedException;
+import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
+
+/**
+ * Runs an {@link IterableTrainer} epoch by epoch, in the background or on the
+ * calling thread, for up to a maximum number of epochs. Every few epochs the
+ * error is checked: the validation error if the trainer holds rows out for
+ * validation (see {@link BackpropTrainer#setHoldOutValidationRows(boolean)}),
+ * otherwise the training error. Whenever it improves a
+ * {@link WeightCheckpoint} is taken, and optionally written to a file so that
+ * a crashed run can be resumed with {@link #resume(File)}. When validating,
+ * training stops early when the error has not improved for a number of checks
+ * in a row. The best checkpoint is restored at the end, so a run which goes
+ * on to overfit keeps its best weights.
+ *
+ * The learning rate of backprop and LMS trainers can follow a
+ * {@link LearningRateSchedule}; it is put back to its starting value when the
+ * run ends.
+ */
+public class TrainingScheduler {
+
+    /** The trainer run. */
+    private final IterableTrainer trainer;
+
+    /** Maximum number of epochs per run. */
+    private int maxEpochs = 1000;
+
+    /** Number of epochs between checks of the error. */
+    private int validationInterval = 1;
+
+    /**
+     * Number of checks in a row without improvement after which training
+     * stops; 0 never stops early.
+     */
+    private int patience = 10;
+
+    /** Smallest decrease in the error which counts as an improvement. */
+    private double minDelta;
+
+    /** How the learning rate changes over a run. */
+    private LearningRateSchedule schedule = LearningRateSchedule.CONSTANT;
+
+    /**
+     * Factor the learning rate is scaled by, in a way that depends on the
+     * schedule.
+     */
+    private double decay = .5;
+
+    /** Epochs per step of the step schedule. */
+    private int stepSize = 100;
+
+    /** Precision at which checkpoint strengths are stored. */
+    private Precision checkpointPrecision = Precision.FLOAT_64;
+
+    /** File the best checkpoint is written to, or null for none. */
+    private File checkpointFile;
+
+    /** Whether the best checkpoint is restored at the end of a run. */
+    private boolean restoreBest = true;
+
+    /** The best checkpoint of the current or last run. */
+    private volatile WeightCheckpoint best;
+
+    /** Set to stop the current run after the current epoch. */
+    private volatile boolean stopRequested;
+
+    /** Runs training in the background; created when first needed. */
+    private ExecutorService executor;
+
+    /** The current background run, or null. */
+    private Future<WeightCheckpoint> future;
+
+    /** How the learning rate changes over a run. */
+    public enum LearningRateSchedule {
+
+        /** The learning rate does not change. */
+        CONSTANT {
+            @Override
+            public double getLearningRate(double initialRate, int epoch,
+                    double decay, int stepSize) {
+                return initialRate;
+            }
+
+            @Override
+            public String toString() {
+                return "Constant";
+            }
+        },
+
+        /** The learning rate is scaled by the decay every step size epochs. */
+        STEP {
+            @Override
+            public double getLearningRate(double initialRate, int epoch,
+                    double decay, int stepSize) {
+                return initialRate * Math.pow(decay, epoch / stepSize);
+            }
+
+            @Override
+            public String toString() {
+                return "Step";
+            }
+        },
+
+        /** The learning rate is scaled by the decay every epoch. */
+        EXPONENTIAL {
+            @Override
+            public double getLearningRate(double initialRate, int epoch,
+                    double decay, int stepSize) {
+                return initialRate * Math.pow(decay, epoch);
+            }
+
+            @Override
+            public String toString() {
+                return "Exponential";
+            }
+        },
+
+        /** The learning rate is initialRate / (1 + decay * epoch). */
+        INVERSE_TIME {
+            @Override
+            public double getLearningRate(double initialRate, int epoch,
+                    double decay, int stepSize) {
+                return initialRate / (1 + decay * epoch);
+            }
+
+            @Override
+            public String toString() {
+                return "Inverse time";
+            }
+        };
+
+        /**
+         * Get the learning rate for an epoch.
+         *
+         * @param initialRate the learning rate at the start of the run
+         * @param epoch the epoch, counted from 0 at the start of the run
+         * @param decay the decay factor
+         * @param stepSize epochs per step
+         * @return the learning rate
+         */
+        public abstract double getLearningRate(double initialRate, int epoch,
+                double decay, int stepSize);
+    }
+
+    /**
+     * Construct a scheduler.
+     *
+     * @param trainer the trainer to run
+     */
+    public TrainingScheduler(IterableTrainer trainer) {
+        this.trainer = trainer;
+    }
+
+    /**
+     * Start a run in the background. The future returns the best checkpoint
+     * of the run (null if no epoch was trained) or throws whatever the run
+     * threw.
+     *
+     * @return the run
+     * @throws IllegalStateException if a run is already going
+     */
+    public synchronized Future<WeightCheckpoint> start() {
+        if (isRunning()) {
+            throw new IllegalStateException("Training is already running");
+        }
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(r, "Training scheduler");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        stopRequested = false;
+        future = executor.submit(new Callable<WeightCheckpoint>() {
+            @Override
+            public WeightCheckpoint call() throws Exception {
+                return run();
+            }
+        });
+        return future;
+    }
+
+    /**
+     * @return true if a background run is going
+     */
+    public synchronized boolean isRunning() {
+        return future != null && !future.isDone();
+    }
+
+    /**
+     * Ask the current run to stop after the current epoch. The best
+     * checkpoint is still restored.
+     */
+    public void stop() {
+        stopRequested = true;
+    }
+
+    /**
+     * Stop the current run and release the background thread. The scheduler
+     * can still be started again.
+     */
+    public synchronized void dispose() {
+        stop();
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    /**
+     * Train on the calling thread until the maximum number of epochs is
+     * reached, the error stops improving, or the run is stopped by
+     * {@link #stop()} or by the trainer being marked as completed.
+     *
+     * @return the best checkpoint, or null if no epoch was trained
+     * @throws DataNotInitializedException if input or target data not set
+     * @throws IOException if a checkpoint cannot be written
+     * @throws IllegalStateException if the learning rate of the trainer
+     *             cannot be scheduled
+     */
+    public WeightCheckpoint run() throws DataNotInitializedException,
+            IOException {
+        Trainable network = trainer.getTrainableNetwork();
+        if (!network.getTrainingSet().hasInputData()) {
+            throw trainer.new DataNotInitializedException(
+                    "Input data not initalized");
+        }
+        if (!network.getTrainingSet().hasTargetData()) {
+            throw trainer.new DataNotInitializedException(
+                    "Target data not initalized");
+        }
+        boolean scheduled = schedule != LearningRateSchedule.CONSTANT;
+        if (scheduled && Double.isNaN(getLearningRate())) {
+            throw new IllegalStateException("The learning rate of "
+                    + trainer.getClass().getSimpleName()
+                    + " cannot be scheduled");
+        }
+        double initialRate = getLearningRate();
+        best = null;
+        int checksSinceImprovement = 0;
+        trainer.setUpdateCompleted(false);
+        trainer.fireTrainingBegin();
+        try {
+            for (int epoch = 0; epoch < maxEpochs && !stopRequested
+                    && !trainer.isUpdateCompleted(); epoch++) {
+                if (scheduled) {
+                    setLearningRate(schedule.getLearningRate(initialRate,
+                            epoch, decay, stepSize));
+                }
+                trainer.apply();
+                if ((epoch + 1) % validationInterval != 0
+                        && epoch + 1 != maxEpochs) {
+                    continue;
+                }
+                // Without held out rows the training error is checked, which
+                // is no reason to stop early
+                boolean validate = reportsValidationError();
+                double error = validate ? trainer.getValidationError()
+                        : trainer.getError();
+                if (best == null || error < best.getError() - minDelta) {
+                    best = WeightCheckpoint.capture(network,
+                            trainer.getIteration(), error,
+                            checkpointPrecision);
+                    if (checkpointFile != null) {
+                        best.write(checkpointFile);
+                    }
+                    checksSinceImprovement = 0;
+                } else if (validate
+                        && ++checksSinceImprovement == patience) {
+                    break;
+                }
+                trainer.fireProgressUpdate("Epoch " + (epoch + 1) + ", error "
+                        + error, (int) (100L * (epoch + 1) / maxEpochs));
+            }
+        } finally {
+            if (scheduled) {
+                setLearningRate(initialRate);
+            }
+            if (restoreBest && best != null) {
+                best.restore(network);
+            }
+            trainer.setUpdateCompleted(true);
+            trainer.fireTrainingEnd();
+        }
+        return best;
+    }
+
+    /**
+     * @return true if the trainer holds rows out for validation and there are
+     *         rows to compute its validation error on
+     */
+    private boolean reportsValidationError() {
+        int[] rows = trainer.getTrainableNetwork().getTrainingSet()
+                .getValidationRows();
+        return trainer.holdsOutValidationRows() && rows != null
+                && rows.length > 0;
+    }
+
+    /**
+     * Restore the weights of the trained network from a checkpoint file, e.g.
+     * one written by a run that did not finish, and set the iteration of the
+     * trainer to the epoch of the checkpoint.
+     *
+     * @param file the checkpoint file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read
+     * @throws IllegalArgumentException if the checkpoint does not match the
+     *             network
+     */
+    public WeightCheckpoint resume(File file) throws IOException {
+        WeightCheckpoint checkpoint = WeightCheckpoint.read(file);
+        checkpoint.restore(trainer.getTrainableNetwork());
+        trainer.setIteration(checkpoint.getEpoch());
+        return checkpoint;
+    }
+
+    /**
+     * @return the learning rate of the trainer, or NaN if it has none that
+     *         can be scheduled
+     */
+    private double getLearningRate() {
+        if (trainer instanceof BackpropTrainer) {
+            return ((BackpropTrainer) trainer).getLearningRate();
+        } else if (trainer instanceof LMSIterative) {
+            return ((LMSIterative) trainer).getLearningRate();
+        } else if (trainer instanceof BPTTTrainer) {
+            return ((BPTTTrainer) trainer).getLearningRate();
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * Set the learning rate of the trainer.
+     *
+     * @param learningRate the learning rate
+     */
+    private void setLearningRate(double learningRate) {
+        if (trainer instanceof BackpropTrainer) {
+            ((BackpropTrainer) trainer).setLearningRate(learningRate);
+        } else if (trainer instanceof LMSIterative) {
+            ((LMSIterative) trainer).setLearningRate(learningRate);
+        } else if (trainer instanceof BPTTTrainer) {
+            ((BPTTTrainer) trainer).setLearningRate(learningRate);
+        }
+    }
+
+    /**
+     * @return the trainer run
+     */
+    public IterableTrainer getTrainer() {
+        return trainer;
+    }
+
+    /**
+     * @return the best checkpoint of the current or last run, or null
+     */
+    public WeightCheckpoint getBestCheckpoint() {
+        return best;
+    }
+
+    /**
+     * @return the maximum number of epochs per run
+     */
+    public int getMaxEpochs() {
+        return maxEpochs;
+    }
+
+    /**
+     * @param maxEpochs the maximum number of epochs per run
+     */
+    public void setMaxEpochs(int maxEpochs) {
+        if (maxEpochs < 1) {
+            throw new IllegalArgumentException(
+                    "Maximum epochs must be positive");
+        }
+        this.maxEpochs = maxEpochs;
+    }
+
+    /**
+     * @return the number of epochs between checks of the error
+     */
+    public int getValidationInterval() {
+        return validationInterval;
+    }
+
+    /**
+     * Set how often the error is checked. Checking the validation error
+     * costs a pass over the validation rows; the error is always checked
+     * after the last epoch.
+     *
+     * @param validationInterval epochs between checks
+     */
+    public void setValidationInterval(int validationInterval) {
+        if (validationInterval < 1) {
+            throw new IllegalArgumentException(
+                    "Validation interval must be positive");
+        }
+        this.validationInterval = validationInterval;
+    }
+
+    /**
+     * @return the number of checks without improvement before training stops
+     */
+    public int getPatience() {
+        return patience;
+    }
+
+    /**
+     * @param patience the number of checks in a row without improvement of
+     *            the validation error after which training stops, or 0 to
+     *            never stop early
+     */
+    public void setPatience(int patience) {
+        if (patience < 0) {
+            throw new IllegalArgumentException(
+                    "Patience must not be negative");
+        }
+        this.patience = patience;
+    }
+
+    /**
+     * @return the smallest decrease in the error counted as an improvement
+     */
+    public double getMinDelta() {
+        return minDelta;
+    }
+
+    /**
+     * @param minDelta the smallest decrease in the error counted as an
+     *            improvement
+     */
+    public void setMinDelta(double minDelta) {
+        if (minDelta < 0) {
+            throw new IllegalArgumentException(
+                    "Minimum improvement must not be negative");
+        }
+        this.minDelta = minDelta;
+    }
+
+    /**
+     * @return the learning rate schedule
+     */
+    public LearningRateSchedule getSchedule() {
+        return schedule;
+    }
+
+    /**
+     * @param schedule the learning rate schedule
+     */
+    public void setSchedule(LearningRateSchedule schedule) {
+        this.schedule = schedule;
+    }
+
+    /**
+     * @return the decay factor of the learning rate schedule
+     */
+    public double getDecay() {
+        return decay;
+    }
+
+    /**
+     * @param decay the decay factor of the learning rate schedule
+     */
+    public void setDecay(double decay) {
+        this.decay = decay;
+    }
+
+    /**
+     * @return the number of epochs per step of the step schedule
+     */
+    public int getStepSize() {
+        return stepSize;
+    }
+
+    /**
+     * @param stepSize the number of epochs per step of the step schedule
+     */
+    public void setStepSize(int stepSize) {
+        if (stepSize < 1) {
+            throw new IllegalArgumentException("Step size must be positive");
+        }
+        this.stepSize = stepSize;
+    }
+
+    /**
+     * @return the precision at which checkpoint strengths are stored
+     */
+    public Precision getCheckpointPrecision() {
+        return checkpointPrecision;
+    }
+
+    /**
+     * @param checkpointPrecision the precision at which checkpoint strengths
+     *            are stored
+     */
+    public void setCheckpointPrecision(Precision checkpointPrecision) {
+        this.checkpointPrecision = checkpointPrecision;
+    }
+
+    /**
+     * @return the file the best checkpoint is written to, or null
+     */
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    /**
+     * @param checkpointFile the file the best checkpoint is written to, or
+     *            null to keep checkpoints in memory only
+     */
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
+
+    /**
+     * @return whether the best checkpoint is restored at the end of a run
+     */
+    public boolean isRestoreBest() {
+        return restoreBest;
+    }
+
+    /**
+     * @param restoreBest whether the best checkpoint is restored at the end
+     *            of a run
+     */
+    public void setRestoreBest(boolean restoreBest) {
+        this.restoreBest = restoreBest;
+    }
+
+}
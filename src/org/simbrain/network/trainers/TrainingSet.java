@@ -18,10 +18,8 @@
  */
 package org.simbrain.network.trainers;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
+import java.util.Random;
 
 import org.simbrain.util.Utils;
 import org.simbrain.util.math.NumericMatrix;
@@ -67,31 +65,181 @@ public class TrainingSet {
         this.targetData = targetData;
     }
 
-    /** Indices for validation subset of training data. */
-    private List<Integer> validationIndices;
+    /** Rows held out for validation, or null if not yet chosen. */
+    private int[] validationRows;
 
-    /** Indices for validation subset of training data. */
-    private List<Integer> mainIndices;
+    /** Rows not held out for validation, or null if not yet chosen. */
+    private int[] mainRows;
 
     /**
-     * Populate the validation and main index sets. TODO: This is a first draft!
+     * Randomly choose the rows held out for validation, a fraction
+     * {@link #getPercentValidation()} of the rows counted by
+     * {@link #getNumRows()}, and the remaining main rows. See
+     * {@link #getValidationSubset()} and {@link #getMainSubset()}.
      */
     public void setIndexSets() {
-        int numRows = (int) (inputData.length * percentValidation);
-        System.out.println("num rows:" + numRows);
-        validationIndices = new ArrayList<Integer>();
-        mainIndices = new ArrayList<Integer>();
-        List<Integer> temp = new ArrayList<Integer>();
-        for (int i = 0; i < inputData.length; i++) {
-            temp.add(new Integer(i));
+        setIndexSets(new Random());
+    }
+
+    /**
+     * Randomly choose the rows held out for validation and the remaining main
+     * rows.
+     *
+     * @param random source of the choice
+     */
+    public void setIndexSets(Random random) {
+        int[] rows = shuffledRows(random);
+        int numValidation = (int) (rows.length * percentValidation);
+        validationRows = Arrays.copyOfRange(rows, 0, numValidation);
+        mainRows = Arrays.copyOfRange(rows, numValidation, rows.length);
+        Arrays.sort(validationRows);
+        Arrays.sort(mainRows);
+    }
+
+    /**
+     * @return the rows held out for validation, in increasing order, or null
+     *         if {@link #setIndexSets()} has not been called
+     */
+    public int[] getValidationRows() {
+        return validationRows;
+    }
+
+    /**
+     * @return the rows not held out for validation, in increasing order, or
+     *         null if {@link #setIndexSets()} has not been called
+     */
+    public int[] getMainRows() {
+        return mainRows;
+    }
+
+    /**
+     * Returns a view of the rows held out for validation. The view reads
+     * through to this training set, so no data is duplicated. No rows are
+     * held out until {@link #setIndexSets()} is called.
+     *
+     * @return the validation rows
+     */
+    public TrainingSet getValidationSubset() {
+        if (validationRows == null) {
+            return new Subset(this, new int[0]);
+        }
+        return new Subset(this, validationRows);
+    }
+
+    /**
+     * Returns a view of the rows not held out for validation. The view reads
+     * through to this training set, so no data is duplicated. Every row is a
+     * main row until {@link #setIndexSets()} is called.
+     *
+     * @return the main rows
+     */
+    public TrainingSet getMainSubset() {
+        if (mainRows == null) {
+            int[] rows = new int[getNumRows()];
+            for (int i = 0; i < rows.length; i++) {
+                rows[i] = i;
+            }
+            return new Subset(this, rows);
+        }
+        return new Subset(this, mainRows);
+    }
+
+    /**
+     * Forget the rows chosen by {@link #setIndexSets()}, which no longer fit
+     * once the data changes.
+     */
+    private void clearIndexSets() {
+        validationRows = null;
+        mainRows = null;
+    }
+
+    /**
+     * Returns the rows of the input data in a random order, e.g. to visit
+     * them in shuffled mini-batches by reading the rows with
+     * {@link #readInputRow(int, double[], int, int)} rather than copying the
+     * data.
+     *
+     * @param random source of the order
+     * @return a random permutation of the indices of the rows counted by
+     *         {@link #getNumRows()}
+     */
+    public int[] shuffledRows(Random random) {
+        int[] rows = new int[getNumRows()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = i;
+        }
+        for (int i = rows.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = rows[i];
+            rows[i] = rows[j];
+            rows[j] = tmp;
         }
-        Collections.shuffle(temp);
-        validationIndices = new ArrayList<Integer>(temp.subList(0, numRows));
-        mainIndices = new ArrayList<Integer>(temp.subList(numRows, temp.size()));
+        return rows;
+    }
 
-        System.out.println(Arrays.asList(temp));
-        System.out.println(Arrays.asList(validationIndices));
-        System.out.println(Arrays.asList(mainIndices));
+    /**
+     * @return true if input data has been set
+     */
+    public boolean hasInputData() {
+        return inputData != null;
+    }
+
+    /**
+     * @return true if target data has been set
+     */
+    public boolean hasTargetData() {
+        return targetData != null;
+    }
+
+    /**
+     * @return the number of rows usable for training: the number of input
+     *         rows or, if there is target data, the number of rows which have
+     *         both inputs and targets
+     */
+    public int getNumRows() {
+        int numRows = getNumInputRows();
+        return hasTargetData() ? Math.min(numRows, getNumTargetRows())
+                : numRows;
+    }
+
+    /**
+     * @return the number of input rows, 0 if there is no input data
+     */
+    public int getNumInputRows() {
+        return inputData == null ? 0 : inputData.length;
+    }
+
+    /**
+     * @return the number of target rows, 0 if there is no target data
+     */
+    public int getNumTargetRows() {
+        return targetData == null ? 0 : targetData.length;
+    }
+
+    /**
+     * Copy the first values of an input row into an array. Trainers which
+     * read rows this way, rather than through {@link #getInputData()}, work
+     * on training sets which are not held in memory.
+     *
+     * @param row the row
+     * @param dest the array to fill
+     * @param offset where in the array to put the first value
+     * @param count number of values to copy
+     */
+    public void readInputRow(int row, double[] dest, int offset, int count) {
+        System.arraycopy(inputData[row], 0, dest, offset, count);
+    }
+
+    /**
+     * Copy the first values of a target row into an array.
+     *
+     * @param row the row
+     * @param dest the array to fill
+     * @param offset where in the array to put the first value
+     * @param count number of values to copy
+     */
+    public void readTargetRow(int row, double[] dest, int offset, int count) {
+        System.arraycopy(targetData[row], 0, dest, offset, count);
     }
 
     /**
@@ -101,6 +249,7 @@ public class TrainingSet {
      */
     public void setInputData(double[][] inputData) {
         this.inputData = inputData;
+        clearIndexSets();
     }
 
     /**
@@ -110,6 +259,7 @@ public class TrainingSet {
      */
     public void setTargetData(double[][] targetData) {
         this.targetData = targetData;
+        clearIndexSets();
     }
 
     /**
@@ -178,6 +328,7 @@ public class TrainingSet {
      */
     public void setPercentValidation(double percentValidation) {
         this.percentValidation = percentValidation;
+        clearIndexSets();
     }
 
     /**
@@ -197,6 +348,135 @@ public class TrainingSet {
                     matActivations);
             inputData = newInputData;
         }
+        clearIndexSets();
+    }
+
+    /**
+     * A view of some of the rows of another training set.
+     */
+    private static class Subset extends TrainingSet {
+
+        /** The training set viewed. */
+        private final TrainingSet parent;
+
+        /** The rows of the parent in this view. */
+        private final int[] rows;
+
+        /** The parent's input data when {@link #inputRows} was built. */
+        private double[][] inputSource;
+
+        /** References to the parent's input rows in this view. */
+        private double[][] inputRows;
+
+        /** The parent's target data when {@link #targetRows} was built. */
+        private double[][] targetSource;
+
+        /** References to the parent's target rows in this view. */
+        private double[][] targetRows;
+
+        /**
+         * Construct a view.
+         *
+         * @param parent the training set viewed
+         * @param rows the rows of the parent in the view
+         */
+        private Subset(TrainingSet parent, int[] rows) {
+            this.parent = parent;
+            this.rows = rows;
+            setPercentValidation(parent.getPercentValidation());
+        }
+
+        /**
+         * Select the rows of this view from an array of the parent's rows.
+         * The rows themselves are shared, not copied.
+         *
+         * @param all the parent's rows
+         * @return the rows in this view
+         */
+        private double[][] select(double[][] all) {
+            double[][] selected = new double[rows.length][];
+            for (int i = 0; i < rows.length; i++) {
+                selected[i] = all[rows[i]];
+            }
+            return selected;
+        }
+
+        @Override
+        public double[][] getInputData() {
+            double[][] all = parent.getInputData();
+            if (all == null) {
+                return null;
+            }
+            if (all != inputSource) {
+                inputRows = select(all);
+                inputSource = all;
+            }
+            return inputRows;
+        }
+
+        @Override
+        public double[][] getTargetData() {
+            double[][] all = parent.getTargetData();
+            if (all == null) {
+                return null;
+            }
+            if (all != targetSource) {
+                targetRows = select(all);
+                targetSource = all;
+            }
+            return targetRows;
+        }
+
+        @Override
+        public void setInputData(double[][] inputData) {
+            throw new UnsupportedOperationException(
+                    "A subset of a training set cannot be replaced");
+        }
+
+        @Override
+        public void setTargetData(double[][] targetData) {
+            throw new UnsupportedOperationException(
+                    "A subset of a training set cannot be replaced");
+        }
+
+        @Override
+        public void addRow(double[] newRow) {
+            throw new UnsupportedOperationException(
+                    "Rows cannot be added to a subset of a training set");
+        }
+
+        @Override
+        public boolean hasInputData() {
+            return parent.hasInputData();
+        }
+
+        @Override
+        public boolean hasTargetData() {
+            return parent.hasTargetData();
+        }
+
+        @Override
+        public int getNumInputRows() {
+            return parent.hasInputData() ? rows.length : 0;
+        }
+
+        @Override
+        public int getNumTargetRows() {
+            return parent.hasTargetData() ? rows.length : 0;
+        }
+
+        @Override
+        public void readInputRow(int row, double[] dest, int offset,
+                int count) {
+            parent.readInputRow(rows[row], dest, offset, count);
+        }
+
+        @Override
+        public void readTargetRow(int row, double[] dest, int offset,
+                int count) {
+            parent.readTargetRow(rows[row], dest, offset, count);
+        }
+
     }
 
 }
@@ -0,0 +1,281 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.trainers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.Subnetwork;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.neuron_update_rules.interfaces.BiasedUpdateRule;
+import org.simbrain.network.util.io_utilities.GroupDeserializer;
+import org.simbrain.network.util.io_utilities.GroupSerializer;
+import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
+
+/**
+ * A snapshot of the trainable weights of a network: the strengths of the
+ * synapse groups of the trained subnetwork (or of the trained synapse group),
+ * each in the compressed row format of
+ * {@link GroupSerializer#rowCompMat2CompByteArray(long[], Precision)}, and
+ * the biases of its neurons. Groups in sparse mode are static and are not
+ * stored.
+ *
+ * A checkpoint can only be restored into the network it was taken from, or
+ * one with the same structure.
+ */
+public class WeightCheckpoint {
+
+    /** First int of a checkpoint file. */
+    private static final int MAGIC = 0x53574350;
+
+    /** The epoch after which the checkpoint was taken. */
+    private final int epoch;
+
+    /** The error of the network when the checkpoint was taken. */
+    private final double error;
+
+    /**
+     * Compressed strengths of each synapse group, empty for groups which are
+     * not stored.
+     */
+    private final byte[][] strengths;
+
+    /** Biases of the neurons with biased update rules, in order. */
+    private final double[] biases;
+
+    /**
+     * Construct a checkpoint.
+     *
+     * @param epoch the epoch after which it was taken
+     * @param error the error of the network
+     * @param strengths compressed strengths of each synapse group
+     * @param biases biases of the biased neurons
+     */
+    private WeightCheckpoint(int epoch, double error, byte[][] strengths,
+            double[] biases) {
+        this.epoch = epoch;
+        this.error = error;
+        this.strengths = strengths;
+        this.biases = biases;
+    }
+
+    /**
+     * Take a checkpoint of a trainable network.
+     *
+     * @param network the network
+     * @param epoch the current epoch
+     * @param error the current error
+     * @param precision the precision at which strengths are stored
+     * @return the checkpoint
+     */
+    public static WeightCheckpoint capture(Trainable network, int epoch,
+            double error, Precision precision) {
+        List<SynapseGroup> groups = getSynapseGroups(network);
+        byte[][] strengths = new byte[groups.size()][];
+        for (int i = 0; i < strengths.length; i++) {
+            SynapseGroup group = groups.get(i);
+            if (group.isUsingSparseMatrix()) {
+                strengths[i] = new byte[0];
+            } else {
+                strengths[i] = GroupSerializer.rowCompMat2CompByteArray(
+                        group.getRowCompressedMatrixRepresentation(),
+                        precision);
+            }
+        }
+        List<BiasedUpdateRule> rules = getBiasedRules(network);
+        double[] biases = new double[rules.size()];
+        for (int i = 0; i < biases.length; i++) {
+            biases[i] = rules.get(i).getBias();
+        }
+        return new WeightCheckpoint(epoch, error, strengths, biases);
+    }
+
+    /**
+     * Set the weights and biases of a network to those of this checkpoint.
+     *
+     * @param network the network the checkpoint was taken from
+     * @throws IllegalArgumentException if the network does not have the
+     *             structure of the network the checkpoint was taken from
+     */
+    public void restore(Trainable network) {
+        List<SynapseGroup> groups = getSynapseGroups(network);
+        List<BiasedUpdateRule> rules = getBiasedRules(network);
+        if (groups.size() != strengths.length
+                || rules.size() != biases.length) {
+            throw new IllegalArgumentException("Checkpoint does not match the"
+                    + " structure of the network");
+        }
+        for (int i = 0; i < strengths.length; i++) {
+            if (strengths[i].length == 0) {
+                continue;
+            }
+            if (!GroupDeserializer.restoreCompressedSynapseStrengths(
+                    strengths[i], groups.get(i))) {
+                throw new IllegalArgumentException("Checkpoint does not match"
+                        + " the synapses of " + groups.get(i).getLabel());
+            }
+        }
+        for (int i = 0; i < biases.length; i++) {
+            rules.get(i).setBias(biases[i]);
+        }
+    }
+
+    /**
+     * @param network a trainable network
+     * @return the synapse groups whose strengths are stored
+     */
+    private static List<SynapseGroup> getSynapseGroups(Trainable network) {
+        Group group = network.getNetwork();
+        if (group instanceof SynapseGroup) {
+            return Collections.singletonList((SynapseGroup) group);
+        }
+        List<SynapseGroup> groups = new ArrayList<SynapseGroup>();
+        if (group instanceof Subnetwork) {
+            for (SynapseGroup synapseGroup : ((Subnetwork) group)
+                    .getSynapseGroupList()) {
+                if (synapseGroup != null) {
+                    groups.add(synapseGroup);
+                }
+            }
+        }
+        return groups;
+    }
+
+    /**
+     * @param network a trainable network
+     * @return the update rules whose biases are stored
+     */
+    private static List<BiasedUpdateRule> getBiasedRules(Trainable network) {
+        Group group = network.getNetwork();
+        List<Neuron> neurons = new ArrayList<Neuron>();
+        if (group instanceof SynapseGroup) {
+            neurons.addAll(((SynapseGroup) group).getTargetNeurons());
+        } else if (group instanceof Subnetwork) {
+            for (NeuronGroup neuronGroup : ((Subnetwork) group)
+                    .getNeuronGroupList()) {
+                neurons.addAll(neuronGroup.getNeuronList());
+            }
+        }
+        List<BiasedUpdateRule> rules = new ArrayList<BiasedUpdateRule>();
+        for (Neuron neuron : neurons) {
+            if (neuron.getUpdateRule() instanceof BiasedUpdateRule) {
+                rules.add((BiasedUpdateRule) neuron.getUpdateRule());
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * Write the checkpoint to a file. The file is written beside the target
+     * and then moved over it, so an interrupted write leaves any previous
+     * checkpoint intact.
+     *
+     * @param file the file
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        File tmp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(epoch);
+            out.writeDouble(error);
+            out.writeInt(strengths.length);
+            for (byte[] group : strengths) {
+                out.writeInt(group.length);
+                out.write(group);
+            }
+            out.writeInt(biases.length);
+            for (double bias : biases) {
+                out.writeDouble(bias);
+            }
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read a checkpoint written by {@link #write(File)}.
+     *
+     * @param file the file
+     * @return the checkpoint
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static WeightCheckpoint read(File file) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a weight checkpoint.");
+            }
+            int epoch = in.readInt();
+            double error = in.readDouble();
+            byte[][] strengths = new byte[in.readInt()][];
+            for (int i = 0; i < strengths.length; i++) {
+                strengths[i] = new byte[in.readInt()];
+                in.readFully(strengths[i]);
+            }
+            double[] biases = new double[in.readInt()];
+            for (int i = 0; i < biases.length; i++) {
+                biases[i] = in.readDouble();
+            }
+            return new WeightCheckpoint(epoch, error, strengths, biases);
+        }
+    }
+
+    /**
+     * @return the epoch after which the checkpoint was taken
+     */
+    public int getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the error of the network when the checkpoint was taken
+     */
+    public double getError() {
+        return error;
+    }
+
+    /**
+     * @return the size of the stored weights and biases in bytes
+     */
+    public long getSize() {
+        long size = 8L * biases.length;
+        for (byte[] group : strengths) {
+            size += group.length;
+        }
+        return size;
+    }
+
+}
@@ -91,6 +91,8 @@ import org.simbrain.util.randomizer.Randomizer;
  *         thread does not set the activation of each neuron to their buffer
  *         values until all tasks have been completed.
  *
+ *         New networks should use {@link ParallelBufferedUpdate}, which
+ *         balances load across threads and commits buffers in parallel.
  */
 public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         NeuronListener, GroupListener {
@@ -231,6 +233,11 @@ public class ConcurrentBufferedUpdate implements NetworkUpdateAction,
         for (int i = 0, n = inputGroups.size(); i < n; i++) {
             inputGroups.get(i).readNextInputs();
         }      
+        // Neurons are updated here rather than by their groups, so the input
+        // from sparse and event-driven synapse groups is delivered first
+        for (NeuronGroup ng : network.getFlatNeuronGroupList()) {
+            ng.updateGroupInputs();
+        }
         try {
         	synchronized(taskSet) {
 	        	//System.out.println(z++);
@@ -0,0 +1,502 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.network.update_actions;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.NetworkUpdateAction;
+import org.simbrain.network.core.NetworkUpdateManager.UpdateManagerListener;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.core.NeuronUpdateRule;
+import org.simbrain.network.core.SpikingNeuronUpdateRule;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.listeners.GroupAdapter;
+import org.simbrain.network.listeners.GroupListener;
+import org.simbrain.network.listeners.NetworkEvent;
+import org.simbrain.network.listeners.NeuronAdapter;
+import org.simbrain.network.listeners.NeuronListener;
+
+/**
+ * A parallel, buffered update of every neuron in a network (and of the
+ * afferent synapses of each neuron), executed on a persistent work-stealing
+ * {@link ForkJoinPool}. Each update runs three parallel stages separated by a
+ * barrier:
+ * <ol>
+ * <li>every neuron computes its buffer from the current activations,</li>
+ * <li>every neuron sets its activation from its buffer,</li>
+ * <li>the afferent synapses of every neuron are updated.</li>
+ * </ol>
+ * which gives the same results as {@link BufferedUpdate} followed by
+ * updating all synapses.
+ *
+ * Neurons are kept in a fixed (network) order and divided into contiguous
+ * chunks of roughly equal estimated cost, where the cost of a neuron grows
+ * with the size of its fan-in and the expense of its update rule. There are
+ * several chunks per thread so that work stealing can even out whatever
+ * imbalance the estimate misses. Since chunks never share a neuron, and
+ * neurons only read other neurons' activations in the first stage, the
+ * result does not depend on which thread updates which chunk.
+ *
+ * The chunks and the task which runs them are built once and reused on every
+ * update; they are rebuilt only after the network's neurons or groups change,
+ * which this class learns of through network listeners. The listeners are
+ * added on the first update and removed when the action is removed from the
+ * network's update manager, or by {@link #dispose()}.
+ *
+ * Neuron groups in input mode read their next inputs instead of being
+ * updated, and recording neuron groups write their activations after each
+ * update. Inputs from synapse groups which compute them in bulk (sparse or
+ * event-driven groups) are computed before the neurons are updated, and the
+ * synapses of event-driven groups, which are not in any neuron's fan-in, are
+ * updated by their groups afterwards. Neuron groups are otherwise updated
+ * neuron by neuron, so packed mode does not apply.
+ */
+public class ParallelBufferedUpdate implements NetworkUpdateAction {
+
+    /**
+     * Number of chunks per thread. More chunks give work stealing more room
+     * to balance load at the price of more task overhead.
+     */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Estimated cost of a non-spiking update rule, in synapse units. */
+    private static final int RULE_COST = 2;
+
+    /** Estimated cost of a spiking update rule, in synapse units. */
+    private static final int SPIKING_RULE_COST = 8;
+
+    /**
+     * Estimated cost per afferent synapse of a neuron using weighted inputs
+     * (computing the input, then updating the synapse).
+     */
+    private static final int WEIGHTED_SYNAPSE_COST = 2;
+
+    /**
+     * Estimated cost per afferent synapse of a neuron using synaptic inputs,
+     * which also run the synapse's spike responder.
+     */
+    private static final int SYNAPTIC_SYNAPSE_COST = 3;
+
+    /**
+     * The pools shared by all parallel updates, keyed by number of threads.
+     * Each is created on first use.
+     */
+    private static final Map<Integer, ForkJoinPool> pools =
+            new HashMap<Integer, ForkJoinPool>();
+
+    /** Reference to network to update. */
+    private final Network network;
+
+    /**
+     * Number of threads to update with, or zero to use one per available
+     * processor.
+     */
+    private final int numThreads;
+
+    /** The neurons to update, in a fixed order. */
+    private Neuron[] neurons;
+
+    /** Contiguous, cost-balanced chunks of {@link #neurons}. */
+    private Chunk[] chunks;
+
+    /** The reusable task which runs the stages of an update. */
+    private UpdateTask updateTask;
+
+    /** Neuron groups in input mode. */
+    private List<NeuronGroup> inputGroups;
+
+    /** Neuron groups whose activations are being recorded. */
+    private List<NeuronGroup> outputGroups;
+
+    /** Neuron groups (not in input mode) whose neurons are updated. */
+    private List<NeuronGroup> updatedGroups;
+
+    /** All synapse groups, whose synapses may be detached from fan-ins. */
+    private List<SynapseGroup> synapseGroups;
+
+    /**
+     * Set when the network's neurons or groups change, so that the chunks are
+     * rebuilt before the next update.
+     */
+    private volatile boolean dirty = true;
+
+    /** Whether this action's listeners have been added to the network. */
+    private boolean listening;
+
+    /** Marks this update dirty when neurons change. */
+    private NeuronListener neuronListener;
+
+    /** Marks this update dirty when groups change. */
+    private GroupListener groupListener;
+
+    /** Disposes of this update when it is removed from the update manager. */
+    private UpdateManagerListener removalListener;
+
+    /**
+     * @param network the network to update
+     */
+    public ParallelBufferedUpdate(Network network) {
+        this(network, 0);
+    }
+
+    /**
+     * @param network the network to update
+     * @param numThreads the number of threads to update with, or zero to use
+     *            one per available processor
+     */
+    public ParallelBufferedUpdate(Network network, int numThreads) {
+        if (numThreads < 0) {
+            throw new IllegalArgumentException("Negative number of threads: "
+                    + numThreads);
+        }
+        this.network = network;
+        this.numThreads = numThreads;
+    }
+
+    @Override
+    public void invoke() {
+        if (!listening) {
+            addListeners();
+        }
+        if (dirty || neurons == null) {
+            dirty = false;
+            rebuild();
+        }
+        for (int i = 0, n = inputGroups.size(); i < n; i++) {
+            inputGroups.get(i).readNextInputs();
+        }
+        for (int i = 0, n = updatedGroups.size(); i < n; i++) {
+            updatedGroups.get(i).updateGroupInputs();
+        }
+        if (chunks.length > 0) {
+            updateTask.reinitialize();
+            getPool().invoke(updateTask);
+        }
+        for (int i = 0, n = synapseGroups.size(); i < n; i++) {
+            SynapseGroup sg = synapseGroups.get(i);
+            if (sg.isPropagatingEvents()) {
+                sg.update();
+            }
+        }
+        for (int i = 0, n = outputGroups.size(); i < n; i++) {
+            outputGroups.get(i).writeActsToFile();
+        }
+    }
+
+    /**
+     * Mark this update for rebuilding whenever neurons or groups are added,
+     * removed, or changed (e.g. put into input mode), or neuron update rules
+     * change.
+     */
+    private void addListeners() {
+        listening = true;
+        neuronListener = new NeuronAdapter() {
+
+            @Override
+            public void neuronAdded(NetworkEvent<Neuron> networkEvent) {
+                dirty = true;
+            }
+
+            @Override
+            public void neuronRemoved(NetworkEvent<Neuron> networkEvent) {
+                dirty = true;
+            }
+
+            @Override
+            public void neuronTypeChanged(
+                    NetworkEvent<NeuronUpdateRule> networkEvent) {
+                dirty = true;
+            }
+
+        };
+        groupListener = new GroupAdapter() {
+
+            @Override
+            public void groupAdded(NetworkEvent<Group> e) {
+                dirty = true;
+            }
+
+            @Override
+            public void groupRemoved(NetworkEvent<Group> e) {
+                dirty = true;
+            }
+
+            @Override
+            public void groupChanged(NetworkEvent<Group> networkEvent,
+                    String changeDescription) {
+                if (networkEvent.getObject() instanceof NeuronGroup) {
+                    dirty = true;
+                }
+            }
+
+        };
+        removalListener = new UpdateManagerListener() {
+
+            @Override
+            public void actionAdded(NetworkUpdateAction action) {
+            }
+
+            @Override
+            public void actionRemoved(NetworkUpdateAction action) {
+                if (action == ParallelBufferedUpdate.this) {
+                    dispose();
+                }
+            }
+
+            @Override
+            public void actionOrderChanged() {
+            }
+
+        };
+        network.addNeuronListener(neuronListener);
+        network.addGroupListener(groupListener);
+        network.getUpdateManager().addListener(removalListener);
+    }
+
+    /**
+     * Removes the listeners this update has added to the network. Called when the update is removed from the
+     * network's update manager; updates used without being added to it (e.g.
+     * invoked directly) must call it when done. The update may be invoked
+     * again afterwards, which adds the listeners again.
+     */
+    public void dispose() {
+        if (!listening) {
+            return;
+        }
+        listening = false;
+        network.removeNeuronListener(neuronListener);
+        network.removeGroupListener(groupListener);
+        network.getUpdateManager().removeListener(removalListener);
+        neuronListener = null;
+        groupListener = null;
+        removalListener = null;
+        // Changes are no longer heard of, so rebuild if invoked again
+        dirty = true;
+    }
+
+    /**
+     * Collects the neurons to update in network order (loose neurons, then
+     * neuron groups) and divides them into chunks of roughly equal cost.
+     */
+    private void rebuild() {
+        List<Neuron> neuronList = new ArrayList<Neuron>(
+                network.getNeuronList());
+        inputGroups = new ArrayList<NeuronGroup>();
+        outputGroups = new ArrayList<NeuronGroup>();
+        updatedGroups = new ArrayList<NeuronGroup>();
+        synapseGroups = new ArrayList<SynapseGroup>();
+        for (Group group : network.getFlatGroupListNoSubnets()) {
+            if (group instanceof SynapseGroup) {
+                synapseGroups.add((SynapseGroup) group);
+                continue;
+            }
+            if (!(group instanceof NeuronGroup)) {
+                continue;
+            }
+            NeuronGroup ng = (NeuronGroup) group;
+            if (ng.isRecording()) {
+                outputGroups.add(ng);
+            }
+            if (ng.isInputMode()) {
+                inputGroups.add(ng);
+            } else {
+                // Rule state held in packed form must be written back, since
+                // neurons are updated individually here.
+                ng.invalidatePackedState();
+                updatedGroups.add(ng);
+                neuronList.addAll(ng.getNeuronList());
+            }
+        }
+        neurons = neuronList.toArray(new Neuron[neuronList.size()]);
+
+        long[] cumulativeCost = new long[neurons.length + 1];
+        for (int i = 0; i < neurons.length; i++) {
+            cumulativeCost[i + 1] = cumulativeCost[i] + getCost(neurons[i]);
+        }
+        int numChunks = Math.min(neurons.length, getPool().getParallelism()
+                * CHUNKS_PER_THREAD);
+        chunks = new Chunk[numChunks];
+        long totalCost = cumulativeCost[neurons.length];
+        int start = 0;
+        for (int c = 0; c < numChunks; c++) {
+            int end;
+            if (c == numChunks - 1) {
+                end = neurons.length;
+            } else {
+                // End the chunk where the cumulative cost first reaches its
+                // share, leaving at least one neuron for each later chunk.
+                long target = totalCost * (c + 1) / numChunks;
+                end = start + 1;
+                int maxEnd = neurons.length - (numChunks - c - 1);
+                while (end < maxEnd && cumulativeCost[end] < target) {
+                    end++;
+                }
+            }
+            chunks[c] = new Chunk(start, end);
+            start = end;
+        }
+        updateTask = new UpdateTask();
+    }
+
+    /**
+     * Estimates the relative cost of updating a neuron and its afferent
+     * synapses.
+     *
+     * @param neuron the neuron
+     * @return its estimated cost
+     */
+    private static long getCost(final Neuron neuron) {
+        NeuronUpdateRule rule = neuron.getUpdateRule();
+        int synapseCost = rule.getInputType()
+                == NeuronUpdateRule.InputType.SYNAPTIC ? SYNAPTIC_SYNAPSE_COST
+                : WEIGHTED_SYNAPSE_COST;
+        int ruleCost = rule instanceof SpikingNeuronUpdateRule
+                ? SPIKING_RULE_COST : RULE_COST;
+        return ruleCost + (long) synapseCost * neuron.getFanIn().size();
+    }
+
+    /**
+     * @return the pool shared by all parallel updates with this update's
+     *         number of threads, creating it if needed.
+     */
+    private ForkJoinPool getPool() {
+        int parallelism = numThreads > 0 ? numThreads : Runtime.getRuntime()
+                .availableProcessors();
+        synchronized (pools) {
+            ForkJoinPool pool = pools.get(parallelism);
+            if (pool == null) {
+                pool = new ForkJoinPool(parallelism);
+                pools.put(parallelism, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * @return the number of threads to update with, or zero if one per
+     *         available processor.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Parallel Buffered Update";
+    }
+
+    @Override
+    public String getLongDescription() {
+        return "Parallel Buffered Update (All Neurons)";
+    }
+
+    /** The stages of an update. */
+    private enum Stage {
+
+        /** Compute neuron buffers. */
+        UPDATE,
+
+        /** Set neuron activations from buffers. */
+        COMMIT,
+
+        /** Update the afferent synapses of each neuron. */
+        SYNAPSES
+    }
+
+    /**
+     * Runs the stages of an update one after another, each as a fork/join of
+     * all the chunks, so that a stage starts only once the previous stage is
+     * complete for every neuron.
+     */
+    private class UpdateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected void compute() {
+            for (Stage stage : Stage.values()) {
+                for (Chunk chunk : chunks) {
+                    chunk.reinitialize();
+                    chunk.stage = stage;
+                }
+                invokeAll(chunks);
+            }
+        }
+
+    }
+
+    /**
+     * A contiguous range of neurons, updated one stage at a time.
+     */
+    private class Chunk extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** Index of the first neuron of the chunk. */
+        private final int start;
+
+        /** One past the index of the last neuron of the chunk. */
+        private final int end;
+
+        /** The stage to perform the next time this chunk is run. */
+        private Stage stage;
+
+        /**
+         * @param start index of the first neuron
+         * @param end one past the index of the last neuron
+         */
+        Chunk(final int start, final int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected void compute() {
+            switch (stage) {
+            case UPDATE:
+                for (int i = start; i < end; i++) {
+                    neurons[i].update();
+                }
+                break;
+            case COMMIT:
+                for (int i = start; i < end; i++) {
+                    neurons[i].setToBufferVals();
+                }
+                break;
+            case SYNAPSES:
+                for (int i = start; i < end; i++) {
+                    neurons[i].updateFanIn();
+                }
+                break;
+            default:
+                break;
+            }
+        }
+
+    }
+
+}
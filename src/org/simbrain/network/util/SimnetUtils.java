@@ -16,8 +16,10 @@ package org.simbrain.network.util;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.ojalgo.access.Access2D.Builder;
@@ -145,6 +147,75 @@ public class SimnetUtils {
         }
     }
 
+    /**
+     * Estimates the spectral radius (largest eigenvalue modulus) of the
+     * weight matrix connecting two equally sized lists of neurons, pairing
+     * source and target neurons by position. The matrix is read from the
+     * targets' fan-ins and never formed densely; see
+     * {@link SpectralRadiusEstimator}.
+     *
+     * @param src list of source neurons
+     * @param tar list of target neurons
+     * @param estimator the estimator, with its tolerance and iteration limits
+     * @return the spectral radius estimate
+     */
+    public static double getSpectralRadius(List<Neuron> src, List<Neuron> tar,
+            SpectralRadiusEstimator estimator) {
+        return estimateSpectralRadius(src, tar, estimator, null);
+    }
+
+    /**
+     * Builds the compressed row form of the weight matrix connecting two
+     * equally sized lists of neurons, one row per target neuron, and
+     * estimates its spectral radius.
+     *
+     * @param src list of source neurons
+     * @param tar list of target neurons
+     * @param estimator the estimator
+     * @param synapses a list to fill with the synapses of the matrix, or null
+     * @return the spectral radius estimate
+     */
+    private static double estimateSpectralRadius(List<Neuron> src,
+            List<Neuron> tar, SpectralRadiusEstimator estimator,
+            List<Synapse> synapses) {
+        int n = src.size();
+        if (n != tar.size()) {
+            throw new IllegalArgumentException("The spectral radius is only"
+                    + " defined for equally sized source and target lists.");
+        }
+        Map<Neuron, Integer> srcMap = new HashMap<Neuron, Integer>(
+                (int) (n / 0.75) + 1);
+        for (int i = 0; i < n; i++) {
+            srcMap.put(src.get(i), i);
+        }
+        int[] rowPtr = new int[n + 1];
+        int nnz = 0;
+        for (int j = 0; j < n; j++) {
+            for (Synapse s : tar.get(j).getFanIn()) {
+                if (srcMap.containsKey(s.getSource())) {
+                    nnz++;
+                }
+            }
+            rowPtr[j + 1] = nnz;
+        }
+        int[] cols = new int[nnz];
+        double[] values = new double[nnz];
+        int k = 0;
+        for (int j = 0; j < n; j++) {
+            for (Synapse s : tar.get(j).getFanIn()) {
+                Integer i = srcMap.get(s.getSource());
+                if (i != null) {
+                    cols[k] = i;
+                    values[k++] = s.getStrength();
+                    if (synapses != null) {
+                        synapses.add(s);
+                    }
+                }
+            }
+        }
+        return estimator.estimate(n, rowPtr, cols, values);
+    }
+
     /**
      * Find the largest eigenvalue for the provided matrix.
      *
@@ -154,9 +225,9 @@ public class SimnetUtils {
      */
     public static double findMaxEig(double[][] weightMatrix) {
 
-        Factory<?> mf = PrimitiveMatrix.FACTORY;
+        Factory<PrimitiveMatrix> mf = PrimitiveMatrix.FACTORY;
 
-        Builder<?> tmpBuilder = mf.getBuilder(weightMatrix.length,
+        Builder<PrimitiveMatrix> tmpBuilder = mf.getBuilder(weightMatrix.length,
                 weightMatrix[0].length);
         for (int i = 0; i < tmpBuilder.countRows(); i++) {
             for (int j = 0; j < tmpBuilder.countColumns(); j++) {
@@ -164,7 +235,7 @@ public class SimnetUtils {
             }
         }
 
-        BasicMatrix mat = (BasicMatrix) tmpBuilder.build();
+        BasicMatrix<Double> mat = tmpBuilder.build();
 
         List<ComplexNumber> eigs = mat.getEigenvalues();
 
@@ -179,6 +250,14 @@ public class SimnetUtils {
     }
 
     /**
+     * The spectral radius is estimated iteratively from the sparse
+     * connectivity (see {@link #getSpectralRadius(List, List,
+     * SpectralRadiusEstimator)}), so large reservoirs can be scaled. Synapse
+     * groups should rather use
+     * {@link org.simbrain.network.groups.SynapseGroup#scaleToSpectralRadius(double)},
+     * which also handles groups whose synapses are not in their targets'
+     * fan-ins (sparse and event-driven groups).
+     *
      * @param src list of source neurons
      * @param tar list of target neurons
      * @param desiredEigen : the new max eig or spectral radius for the weight
@@ -186,8 +265,15 @@ public class SimnetUtils {
      */
     public static void scaleEigenvalue(List<Neuron> src, List<Neuron> tar,
             double desiredEigen) {
-        double maxEigen = findMaxEig(getWeights(src, tar));
-        scaleWeights(src, tar, desiredEigen / maxEigen);
+        List<Synapse> synapses = new ArrayList<Synapse>();
+        double maxEigen = estimateSpectralRadius(src, tar,
+                new SpectralRadiusEstimator(), synapses);
+        if (maxEigen > 0) {
+            double scalar = desiredEigen / maxEigen;
+            for (Synapse s : synapses) {
+                s.forceSetStrength(s.getStrength() * scalar);
+            }
+        }
     }
 
     /**
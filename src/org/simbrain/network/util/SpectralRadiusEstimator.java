@@ -0,0 +1,406 @@
+/*
+ * Part of Simbrain--a java-based neural network kit Copyright (C) 2005,2007 The
+ * Authors. See http://www.simbrain.net/credits This program is free software;
+ * you can redistribute it and/or modify it under the terms of the GNU General
+ * Public License as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version. This program is
+ * distributed in the hope that it will be useful, but WITHOUT ANY WARRANTY;
+ * without even the implied warranty of MERCHANTABILITY or FITNESS FOR A
+ * PARTICULAR PURPOSE. See the GNU General Public License for more details. You
+ * should have received a copy of the GNU General Public License along with this
+ * program; if not, write to the Free Software Foundation, Inc., 59 Temple Place
+ * - Suite 330, Boston, MA 02111-1307, USA.
+ */
+package org.simbrain.network.util;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Random;
+
+import Jama.EigenvalueDecomposition;
+import Jama.Matrix;
+
+/**
+ * <b>SpectralRadiusEstimator</b> estimates the spectral radius (the largest
+ * eigenvalue modulus) of a square sparse matrix held in compressed row form,
+ * using explicitly restarted Arnoldi iteration. Each iteration costs one
+ * sparse matrix-vector product plus orthogonalization against a small Krylov
+ * basis, so time and memory scale with the number of non-zero entries and
+ * the matrix size, not its square. Unlike plain power iteration this
+ * converges when the dominant eigenvalues are a complex conjugate pair, as
+ * they usually are for random recurrent weights.
+ *
+ * The iteration stops when the residual of the dominant Ritz pair falls below
+ * the tolerance relative to the estimate, or when the estimate has changed by
+ * less than the tolerance over the last {@link #STALL_RESTARTS} restarts
+ * (which happens for large random matrices, whose many eigenvalues crowded
+ * near the spectral radius keep individual residuals large). Otherwise it
+ * stops after the maximum number of restarts, in which case
+ * {@link #isConverged()} is false and the last estimate is returned.
+ */
+public class SpectralRadiusEstimator {
+
+    /** The default relative tolerance. */
+    public static final double DEFAULT_TOLERANCE = 1E-4;
+
+    /** The default dimension of the Krylov subspace. */
+    public static final int DEFAULT_KRYLOV_DIMENSION = 30;
+
+    /** The default maximum number of restarts. */
+    public static final int DEFAULT_MAX_RESTARTS = 300;
+
+    /**
+     * The number of restarts over which an estimate which has not changed
+     * counts as converged.
+     */
+    public static final int STALL_RESTARTS = 10;
+
+    /** The relative tolerance of the estimate. */
+    private double tolerance = DEFAULT_TOLERANCE;
+
+    /** The dimension of the Krylov subspace built between restarts. */
+    private int krylovDimension = DEFAULT_KRYLOV_DIMENSION;
+
+    /** The maximum number of restarts. */
+    private int maxRestarts = DEFAULT_MAX_RESTARTS;
+
+    /** The seed of the random starting vector. */
+    private long seed = 1;
+
+    /** Whether the last estimate converged. */
+    private boolean converged;
+
+    /** The number of matrix-vector products of the last estimate. */
+    private int iterations;
+
+    /**
+     * Estimates the spectral radius of a square matrix in compressed row
+     * form. Whether rows hold sources or targets does not matter, since a
+     * matrix and its transpose have the same eigenvalues.
+     *
+     * @param n the number of rows and columns
+     * @param rowPtr the first entry of each row, and the number of entries
+     *            at index n
+     * @param cols the column of each entry
+     * @param values the value of each entry
+     * @return the spectral radius estimate
+     */
+    public double estimate(final int n, final int[] rowPtr, final int[] cols,
+            final double[] values) {
+        converged = false;
+        iterations = 0;
+        if (n == 0 || rowPtr[n] == 0) {
+            converged = true;
+            return 0;
+        }
+        int m = Math.min(krylovDimension, n);
+        double[][] basis = new double[m + 1][n];
+        double[][] hess = new double[m + 1][m];
+        double scale = 0;
+        for (int k = 0, nnz = rowPtr[n]; k < nnz; k++) {
+            scale = Math.max(scale, Math.abs(values[k]));
+        }
+
+        Random rand = new Random(seed);
+        double[] start = basis[0];
+        for (int i = 0; i < n; i++) {
+            start[i] = rand.nextDouble() - 0.5;
+        }
+        normalize(start);
+
+        double estimate = 0;
+        double[] history = new double[STALL_RESTARTS + 1];
+        for (int restart = 0; restart <= maxRestarts; restart++) {
+            for (double[] row : hess) {
+                Arrays.fill(row, 0);
+            }
+            // Build the Arnoldi factorization A V_k = V_k H_k + h v e_k^T
+            int k = m;
+            boolean invariant = false;
+            for (int j = 0; j < m; j++) {
+                double[] w = basis[j + 1];
+                multiply(n, rowPtr, cols, values, basis[j], w);
+                iterations++;
+                // Modified Gram-Schmidt, twice for numerical orthogonality
+                for (int pass = 0; pass < 2; pass++) {
+                    for (int i = 0; i <= j; i++) {
+                        double h = dot(w, basis[i]);
+                        hess[i][j] += h;
+                        axpy(-h, basis[i], w);
+                    }
+                }
+                double norm = Math.sqrt(dot(w, w));
+                hess[j + 1][j] = norm;
+                if (norm <= 1E-12 * scale) {
+                    // The Krylov subspace is invariant: its Ritz values are
+                    // exact eigenvalues.
+                    k = j + 1;
+                    invariant = true;
+                    break;
+                }
+                scaleVector(1 / norm, w);
+            }
+
+            // Ritz values: eigenvalues of the leading k x k block of H
+            Matrix h = new Matrix(k, k);
+            for (int i = 0; i < k; i++) {
+                for (int j = 0; j < k; j++) {
+                    h.set(i, j, hess[i][j]);
+                }
+            }
+            EigenvalueDecomposition eig = h.eig();
+            double[] re = eig.getRealEigenvalues();
+            double[] im = eig.getImagEigenvalues();
+            int best = 0;
+            double bestMod = -1;
+            for (int i = 0; i < k; i++) {
+                double mod = Math.hypot(re[i], im[i]);
+                if (mod > bestMod) {
+                    bestMod = mod;
+                    best = i;
+                }
+            }
+            estimate = bestMod;
+            if (invariant) {
+                converged = true;
+                return estimate;
+            }
+
+            // Ritz vectors y = V_k s, with s = sRe + i sIm (Jama stores a
+            // complex pair's eigenvectors as a real and imaginary column).
+            double[][] v = eig.getV().getArray();
+            double residual = hess[k][k - 1] * lastComponent(v, im, best, k);
+            if (residual <= tolerance * Math.max(estimate, 1E-300)) {
+                converged = true;
+                return estimate;
+            }
+            history[restart % history.length] = estimate;
+            if (restart >= STALL_RESTARTS) {
+                double min = Double.MAX_VALUE;
+                double max = 0;
+                for (double previous : history) {
+                    min = Math.min(min, previous);
+                    max = Math.max(max, previous);
+                }
+                if (max - min <= tolerance * estimate) {
+                    converged = true;
+                    return estimate;
+                }
+            }
+
+            // Restart from a combination of the Ritz vectors of the largest
+            // Ritz values, so that eigenvalues crowded near the spectral
+            // radius are not discarded with the rest of the subspace.
+            Integer[] order = new Integer[k];
+            for (int i = 0; i < k; i++) {
+                order[i] = i;
+            }
+            final double[] mods = new double[k];
+            for (int i = 0; i < k; i++) {
+                mods[i] = Math.hypot(re[i], im[i]);
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                @Override
+                public int compare(final Integer a, final Integer b) {
+                    return Double.compare(mods[b], mods[a]);
+                }
+            });
+            double[] coefficients = new double[k];
+            for (int r = 0, wanted = Math.max(1, k / 3); r < wanted; r++) {
+                int c = order[r];
+                double norm = 0;
+                for (int i = 0; i < k; i++) {
+                    norm += v[i][c] * v[i][c];
+                }
+                norm = Math.sqrt(norm);
+                for (int i = 0; i < k; i++) {
+                    coefficients[i] += v[i][c] / norm;
+                }
+            }
+            double[] next = new double[n];
+            for (int i = 0; i < k; i++) {
+                axpy(coefficients[i], basis[i], next);
+            }
+            if (normalize(next) == 0) {
+                return estimate;
+            }
+            basis[0] = next;
+        }
+        return estimate;
+    }
+
+    /**
+     * @param v the eigenvectors of the Hessenberg matrix, as returned by
+     *            Jama
+     * @param im the imaginary parts of its eigenvalues
+     * @param c the index of an eigenvalue
+     * @param k the size of the Hessenberg matrix
+     * @return the modulus of the last component of the eigenvalue's unit
+     *         eigenvector, which times the last subdiagonal entry is the
+     *         residual of the Ritz pair
+     */
+    private static double lastComponent(final double[][] v,
+            final double[] im, final int c, final int k) {
+        int reCol = im[c] < 0 ? c - 1 : c;
+        int imCol = im[c] > 0 ? c + 1 : (im[c] < 0 ? c : -1);
+        double norm = 0;
+        for (int i = 0; i < k; i++) {
+            norm += v[i][reCol] * v[i][reCol];
+            if (imCol >= 0) {
+                norm += v[i][imCol] * v[i][imCol];
+            }
+        }
+        double last = v[k - 1][reCol] * v[k - 1][reCol];
+        if (imCol >= 0) {
+            last += v[k - 1][imCol] * v[k - 1][imCol];
+        }
+        return Math.sqrt(last / norm);
+    }
+
+    /**
+     * Computes out = A x for a matrix in compressed row form.
+     *
+     * @param n the number of rows
+     * @param rowPtr the first entry of each row
+     * @param cols the column of each entry
+     * @param values the value of each entry
+     * @param x the vector multiplied
+     * @param out the product
+     */
+    private static void multiply(final int n, final int[] rowPtr,
+            final int[] cols, final double[] values, final double[] x,
+            final double[] out) {
+        for (int i = 0; i < n; i++) {
+            double sum = 0;
+            for (int k = rowPtr[i], end = rowPtr[i + 1]; k < end; k++) {
+                sum += values[k] * x[cols[k]];
+            }
+            out[i] = sum;
+        }
+    }
+
+    /**
+     * @param a a vector
+     * @param b a vector of the same length
+     * @return the dot product of the vectors
+     */
+    private static double dot(final double[] a, final double[] b) {
+        double sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Computes y += a x.
+     *
+     * @param a a scalar
+     * @param x a vector
+     * @param y the vector added to
+     */
+    private static void axpy(final double a, final double[] x,
+            final double[] y) {
+        for (int i = 0; i < x.length; i++) {
+            y[i] += a * x[i];
+        }
+    }
+
+    /**
+     * Multiplies a vector by a scalar in place.
+     *
+     * @param a the scalar
+     * @param x the vector
+     */
+    private static void scaleVector(final double a, final double[] x) {
+        for (int i = 0; i < x.length; i++) {
+            x[i] *= a;
+        }
+    }
+
+    /**
+     * Scales a vector to unit length, unless it is zero.
+     *
+     * @param x the vector
+     * @return the vector's length before scaling
+     */
+    private static double normalize(final double[] x) {
+        double norm = Math.sqrt(dot(x, x));
+        if (norm > 0) {
+            scaleVector(1 / norm, x);
+        }
+        return norm;
+    }
+
+    /**
+     * @return whether the last estimate met the tolerance.
+     */
+    public boolean isConverged() {
+        return converged;
+    }
+
+    /**
+     * @return the number of matrix-vector products the last estimate took.
+     */
+    public int getIterations() {
+        return iterations;
+    }
+
+    /**
+     * @return the relative tolerance
+     */
+    public double getTolerance() {
+        return tolerance;
+    }
+
+    /**
+     * @param tolerance the relative tolerance: the estimate stops when the
+     *            residual of the dominant Ritz pair is at most this fraction
+     *            of the estimate
+     */
+    public void setTolerance(final double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * @return the dimension of the Krylov subspace built between restarts
+     */
+    public int getKrylovDimension() {
+        return krylovDimension;
+    }
+
+    /**
+     * @param krylovDimension the dimension of the Krylov subspace built
+     *            between restarts. Larger subspaces converge in fewer
+     *            iterations but hold more vectors.
+     */
+    public void setKrylovDimension(final int krylovDimension) {
+        if (krylovDimension < 1) {
+            throw new IllegalArgumentException("Krylov dimension must be"
+                    + " positive.");
+        }
+        this.krylovDimension = krylovDimension;
+    }
+
+    /**
+     * @return the maximum number of restarts
+     */
+    public int getMaxRestarts() {
+        return maxRestarts;
+    }
+
+    /**
+     * @param maxRestarts the maximum number of restarts
+     */
+    public void setMaxRestarts(final int maxRestarts) {
+        this.maxRestarts = maxRestarts;
+    }
+
+    /**
+     * @param seed the seed of the random starting vector
+     */
+    public void setSeed(final long seed) {
+        this.seed = seed;
+    }
+
+}
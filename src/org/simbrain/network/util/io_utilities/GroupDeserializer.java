@@ -19,13 +19,17 @@
 package org.simbrain.network.util.io_utilities;
 
 import java.io.IOException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.InputMismatchException;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import org.simbrain.network.core.Neuron;
 import org.simbrain.network.core.Synapse;
@@ -53,125 +57,20 @@ public class GroupDeserializer {
             ByteBuffer inStream = ByteBuffer.wrap(rowCompByteArr);
             // First number is always the number of synapses stored as an int
             int numSyns = inStream.getInt();
-            // Assume that the file is using bytes to encode the index values
-            // this assumption can be countered if the byte -> short or
-            // byte -> int end code is read.
-            boolean usingBytes = true;
-            boolean usingShorts = false;
-            boolean usingInts = false;
-            int row = 0;
-            // The column number
-            int index;
-            // Keeps track of end codes to differentiate between
-            // cases of multiple end codes and the new-line code.
-            int newLine;
+            int[] rows = new int[numSyns];
+            int[] cols = new int[numSyns];
+            readIndices(inStream, rows, cols);
             List<Neuron> src = sg.getSourceNeurons();
             List<Neuron> tar = sg.getTargetNeurons();
             // Store synapses before putting them in the group.
             List<Synapse> synapses = new LinkedList<Synapse>();
             for (int i = 0; i < numSyns; i++) {
-                index = 0;
-                newLine = 0;
-                if (usingBytes) {
-                    index = inStream.get() << 24 >>> 24;
-                    if (index == 0xFF) { // Byte -> Short end code
-                        usingShorts = true;
-                        usingBytes = false;
-                        newLine = newLine | index; // keep track of this end
-                                                   // code
-                    }
-                }
-
-                if (usingShorts) {
-                    index = inStream.getShort() << 16 >>> 16;
-                    if (index == 0xFFFF) { // Short -> int end code
-                        usingInts = true;
-                        usingShorts = false;
-                        if (newLine == 0xFF) {
-                            // Keep track of end code
-                            newLine = (newLine << 16) | index;
-                        } else {
-                            // Keep track of end code
-                            newLine = index;
-                        }
-                    }
-                }
-
-                if (usingInts) {
-                    boolean newRow = false;
-                    ByteBuffer b = ByteBuffer.allocate(4);
-                    if (newLine == 0) { // No end codes have been read
-                        index = inStream.getInt();
-                        newRow = index == -1;
-                    } else if (newLine == 0xFFFF) { // Short end code was read
-                        // Check that next two bytes aren't another end code
-                        short sh = inStream.getShort();
-                        b.putShort(sh);
-                        newLine = (newLine << 16) | sh;
-                        newRow = newLine == -1; // Next two bytes WERE another
-                        // end code, which means it was actually a new line code
-                        // not an end code.
-                        // If not, then it was just a transition from short
-                        // coding to int coding
-                        if (!newRow) {
-                            index = (b.getShort() << 16) | inStream.getShort();
-                        }
-                    } else if (newLine == 0xFFFFFF) { // Byte and short end
-                                                      // codes
-                        // were read
-                        // Check that the next byte isn't 0xff
-                        byte by = inStream.get();
-                        b.put(by);
-                        newLine = (newLine << 8) | by;
-                        // If so it was a new line code, if not then it was
-                        // just a transition from byte coding directly to
-                        // int coding.
-                        newRow = newLine == -1;
-                        if (!newRow) {
-                            b.put(inStream.get());
-                            b.putShort(inStream.getShort());
-                            index = b.getInt();
-                        }
-                    }
-
-                    if (newRow) {
-                        row++; // increment the row
-                        i--; // Each new row code takes up a position in the
-                        // index array and does not correspond to an actual
-                        // synapse, thus decrement i because we want to keep
-                        // going until we're sure we've accounted for every
-                        // synapse.
-
-                        // Reset our assumptions about how index is stored until
-                        // we have evidence to the contrary.
-                        usingBytes = true;
-                        usingShorts = false;
-                        usingInts = false;
-                        continue; // don't create a synapse.
-                    }
-                }
-                // Where index is the column or index in the target neuron group
-                Synapse s = new Synapse(src.get(row), tar.get(index));
-                synapses.add(s);
+                synapses.add(new Synapse(src.get(rows[i]), tar.get(cols[i])));
             }
-
-            if (inStream.remaining() == numSyns * 4) { // Float_32 encoding
-                for (Synapse s : synapses) {
-                    s.setStrength(inStream.getFloat());
-                }
-            } else if (inStream.remaining() == numSyns * 8) { // Float_64
-                                                              // encoding
-                for (Synapse s : synapses) {
-                    s.setStrength(inStream.getDouble());
-                }
-            } else {
-                // Only 2 precisions available. If there is a mismatch then
-                // there are too little or to many bytes representing weights
-                // given everything we've determined so far
-                throw new InputMismatchException("Byte inconsistency."
-                        + " Remaining bytes in file are inconsistent with"
-                        + " weight values encoded as either 32-bit or 64-bit"
-                        + " floating point values.");
+            double[] strengths = readStrengths(inStream, numSyns);
+            int i = 0;
+            for (Synapse s : synapses) {
+                s.setStrength(strengths[i++]);
             }
             // Assuming there are no errors, populate the synapse group
             // with the reconstructed synapses.
@@ -192,6 +91,228 @@ public class GroupDeserializer {
         return true;
     }
 
+    /**
+     * Sets the strengths of the existing synapses of a synapse group from a
+     * row compressed byte array (see
+     * {@link GroupSerializer#rowCompMat2CompByteArray(long[],
+     * GroupSerializer.Precision)}) taken from the same group, e.g. to roll
+     * training back to an earlier set of weights. Nothing is changed unless
+     * the array holds exactly one strength for every synapse of the group.
+     *
+     * @param rowCompByteArr the row compressed strengths
+     * @param sg the synapse group to set
+     * @return true if every strength was set, false if the array does not
+     *         match the synapses of the group
+     */
+    public static boolean restoreCompressedSynapseStrengths(
+            byte[] rowCompByteArr, SynapseGroup sg) {
+        int[] rows;
+        int[] cols;
+        double[] strengths;
+        try {
+            ByteBuffer inStream = ByteBuffer.wrap(rowCompByteArr);
+            int numSyns = inStream.getInt();
+            if (numSyns != sg.size()) {
+                return false;
+            }
+            rows = new int[numSyns];
+            cols = new int[numSyns];
+            readIndices(inStream, rows, cols);
+            strengths = readStrengths(inStream, numSyns);
+        } catch (BufferUnderflowException bu) {
+            return false;
+        } catch (InputMismatchException ime) {
+            return false;
+        }
+        List<Neuron> src = sg.getSourceNeurons();
+        List<Neuron> tar = sg.getTargetNeurons();
+        Map<Neuron, Integer> srcMap = new HashMap<Neuron, Integer>();
+        Map<Neuron, Integer> tarMap = new HashMap<Neuron, Integer>();
+        for (int i = 0, n = src.size(); i < n; i++) {
+            srcMap.put(src.get(i), i);
+        }
+        for (int i = 0, n = tar.size(); i < n; i++) {
+            tarMap.put(tar.get(i), i);
+        }
+        // Entries are sorted by row and then column, so each synapse is
+        // found by a binary search within its row
+        int[] rowStarts = new int[src.size() + 1];
+        for (int row : rows) {
+            if (row >= src.size()) {
+                return false;
+            }
+            rowStarts[row + 1]++;
+        }
+        for (int i = 0, n = src.size(); i < n; i++) {
+            rowStarts[i + 1] += rowStarts[i];
+        }
+        List<Synapse> synapses = sg.getAllSynapses();
+        double[] newStrengths = new double[synapses.size()];
+        int m = 0;
+        for (Synapse s : synapses) {
+            Integer row = srcMap.get(s.getSource());
+            Integer col = tarMap.get(s.getTarget());
+            if (row == null || col == null) {
+                return false;
+            }
+            int k = Arrays.binarySearch(cols, rowStarts[row],
+                    rowStarts[row + 1], col);
+            if (k < 0) {
+                return false;
+            }
+            newStrengths[m++] = strengths[k];
+        }
+        m = 0;
+        for (Synapse s : synapses) {
+            s.forceSetStrength(newStrengths[m++]);
+        }
+        sg.revalidateSynapseSets();
+        return true;
+    }
+
+    /**
+     * Reads the row and column of each synapse from a row compressed byte
+     * array, starting just after the number of synapses.
+     *
+     * @param inStream the array, positioned at the first index
+     * @param rows filled with the row (source index) of each synapse
+     * @param cols filled with the column (target index) of each synapse
+     */
+    private static void readIndices(ByteBuffer inStream, int[] rows,
+            int[] cols) {
+        int numSyns = rows.length;
+        // Assume that the file is using bytes to encode the index values
+        // this assumption can be countered if the byte -> short or
+        // byte -> int end code is read.
+        boolean usingBytes = true;
+        boolean usingShorts = false;
+        boolean usingInts = false;
+        int row = 0;
+        // The column number
+        int index;
+        // Keeps track of end codes to differentiate between
+        // cases of multiple end codes and the new-line code.
+        int newLine;
+        for (int i = 0; i < numSyns; i++) {
+            index = 0;
+            newLine = 0;
+            if (usingBytes) {
+                index = inStream.get() << 24 >>> 24;
+                if (index == 0xFF) { // Byte -> Short end code
+                    usingShorts = true;
+                    usingBytes = false;
+                    newLine = newLine | index; // keep track of this end
+                                               // code
+                }
+            }
+
+            if (usingShorts) {
+                index = inStream.getShort() << 16 >>> 16;
+                if (index == 0xFFFF) { // Short -> int end code
+                    usingInts = true;
+                    usingShorts = false;
+                    if (newLine == 0xFF) {
+                        // Keep track of end code
+                        newLine = (newLine << 16) | index;
+                    } else {
+                        // Keep track of end code
+                        newLine = index;
+                    }
+                }
+            }
+
+            if (usingInts) {
+                boolean newRow = false;
+                ByteBuffer b = ByteBuffer.allocate(4);
+                if (newLine == 0) { // No end codes have been read
+                    index = inStream.getInt();
+                    newRow = index == -1;
+                } else if (newLine == 0xFFFF) { // Short end code was read
+                    // Check that next two bytes aren't another end code
+                    short sh = inStream.getShort();
+                    newLine = (newLine << 16) | sh;
+                    newRow = newLine == -1; // Next two bytes WERE another
+                    // end code, which means it was actually a new line code
+                    // not an end code.
+                    // If not, then it was just a transition from short
+                    // coding to int coding
+                    if (!newRow) {
+                        index = (sh << 16) | (inStream.getShort() & 0xFFFF);
+                    }
+                } else if (newLine == 0xFFFFFF) { // Byte and short end
+                                                  // codes
+                    // were read
+                    // Check that the next byte isn't 0xff
+                    byte by = inStream.get();
+                    b.put(by);
+                    newLine = (newLine << 8) | by;
+                    // If so it was a new line code, if not then it was
+                    // just a transition from byte coding directly to
+                    // int coding.
+                    newRow = newLine == -1;
+                    if (!newRow) {
+                        b.put(inStream.get());
+                        b.putShort(inStream.getShort());
+                        index = b.getInt(0);
+                    }
+                }
+
+                if (newRow) {
+                    row++; // increment the row
+                    i--; // Each new row code takes up a position in the
+                    // index array and does not correspond to an actual
+                    // synapse, thus decrement i because we want to keep
+                    // going until we're sure we've accounted for every
+                    // synapse.
+
+                    // Reset our assumptions about how index is stored until
+                    // we have evidence to the contrary.
+                    usingBytes = true;
+                    usingShorts = false;
+                    usingInts = false;
+                    continue; // don't create a synapse.
+                }
+            }
+            // Where index is the column or index in the target neuron group
+            rows[i] = row;
+            cols[i] = index;
+        }
+    }
+
+    /**
+     * Reads the strengths which follow the indices in a row compressed byte
+     * array, stored at whichever precision the number of remaining bytes
+     * shows.
+     *
+     * @param inStream the array, positioned at the first strength
+     * @param numSyns number of synapses
+     * @return the strengths
+     * @throws InputMismatchException if the remaining bytes are not a whole
+     *             number of 32 or 64 bit strengths for every synapse
+     */
+    private static double[] readStrengths(ByteBuffer inStream, int numSyns) {
+        double[] strengths = new double[numSyns];
+        if (inStream.remaining() == numSyns * 4) { // Float_32 encoding
+            for (int i = 0; i < numSyns; i++) {
+                strengths[i] = inStream.getFloat();
+            }
+        } else if (inStream.remaining() == numSyns * 8) { // Float_64
+                                                          // encoding
+            for (int i = 0; i < numSyns; i++) {
+                strengths[i] = inStream.getDouble();
+            }
+        } else {
+            // Only 2 precisions available. If there is a mismatch then
+            // there are too little or to many bytes representing weights
+            // given everything we've determined so far
+            throw new InputMismatchException("Byte inconsistency."
+                    + " Remaining bytes in file are inconsistent with"
+                    + " weight values encoded as either 32-bit or 64-bit"
+                    + " floating point values.");
+        }
+        return strengths;
+    }
+
     /**
      * Reads a file containing the relative position and strengths of synapses,
      * in compressed row format and stored in compressed byte code and recreates
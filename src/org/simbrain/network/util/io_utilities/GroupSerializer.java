@@ -19,11 +19,11 @@
 package org.simbrain.network.util.io_utilities;
 
 import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
-import java.util.ArrayList;
 import java.util.List;
 
 import org.simbrain.network.connections.Sparse;
@@ -139,21 +139,23 @@ public class GroupSerializer {
     public static byte[] rowCompMat2CompByteArray(long[] riCompressedMat,
             Precision precision) {
         final byte maxByte = -1;
-        List<Byte> preByteArray = new ArrayList<Byte>();
+        ByteArrayOutputStream preByteArray = new ByteArrayOutputStream(
+                riCompressedMat.length * 2);
         boolean switchedToShorts = false;
         boolean switchedToInts = false;
         ByteBuffer buff = ByteBuffer.allocate(4);
         buff.putInt((int) riCompressedMat[0]);
-        for (byte b : buff.array()) {
-            preByteArray.add(b);
-        }
+        preByteArray.write(buff.array(), 0, 4);
         int numNonZero = 0;
+        // Weights are the last numSyns values; index slots left unused by
+        // empty trailing rows come before them
+        long firstWeight = riCompressedMat.length - riCompressedMat[0];
         for (int i = 1, n = riCompressedMat.length; i < n; i++) {
             if (numNonZero < riCompressedMat[0]) {
                 if (riCompressedMat[i] == -1) { // Blank row
                     // New Row code
                     for (int k = 0; k < 4; k++) {
-                        preByteArray.add(maxByte);
+                        preByteArray.write(maxByte);
                     }
                     switchedToShorts = false;
                     switchedToInts = false;
@@ -163,7 +165,7 @@ public class GroupSerializer {
                     if (riCompressedMat[i - 1] >= riCompressedMat[i]) {
                         // New row code
                         for (int k = 0; k < 4; k++) {
-                            preByteArray.add(maxByte);
+                            preByteArray.write(maxByte);
                         }
                         switchedToShorts = false;
                         switchedToInts = false;
@@ -173,15 +175,15 @@ public class GroupSerializer {
                 if (!switchedToShorts && !switchedToInts) {
                     if (riCompressedMat[i] > Byte.MAX_VALUE * 2) {
                         switchedToShorts = true;
-                        preByteArray.add(maxByte);
+                        preByteArray.write(maxByte);
                         if (riCompressedMat[i] > Short.MAX_VALUE * 2) {
                             switchedToInts = true;
-                            preByteArray.add(maxByte);
-                            preByteArray.add(maxByte);
+                            preByteArray.write(maxByte);
+                            preByteArray.write(maxByte);
                         }
                     } else {
                         preByteArray
-                                .add((byte) (((int) riCompressedMat[i]) << 24
+                                .write((byte) (((int) riCompressedMat[i]) << 24
                                 >>> 24));
                         numNonZero++;
                     }
@@ -191,15 +193,13 @@ public class GroupSerializer {
                     if (riCompressedMat[i] > Short.MAX_VALUE * 2) {
                         switchedToInts = true;
                         // No longer using shorts end code
-                        preByteArray.add(maxByte);
-                        preByteArray.add(maxByte);
+                        preByteArray.write(maxByte);
+                        preByteArray.write(maxByte);
                     } else {
                         ByteBuffer b = ByteBuffer.allocate(2);
                         b.putShort((short) (((int) riCompressedMat[i]) << 16 >>> 16));
                         numNonZero++;
-                        for (byte sec : b.array()) {
-                            preByteArray.add(sec);
-                        }
+                        preByteArray.write(b.array(), 0, 2);
                     }
                 }
 
@@ -207,23 +207,14 @@ public class GroupSerializer {
                     ByteBuffer b = ByteBuffer.allocate(4);
                     b.putInt((int) riCompressedMat[i]);
                     numNonZero++;
-                    for (byte sec : b.array()) {
-                        preByteArray.add(sec);
-                    }
+                    preByteArray.write(b.array(), 0, 4);
                 }
-            } else {
+            } else if (i >= firstWeight) {
                 byte[] bytes = precision.asByteArray(riCompressedMat[i]);
-                for (byte b : bytes) {
-                    preByteArray.add(b);
-                }
+                preByteArray.write(bytes, 0, bytes.length);
             }
         }
-        byte[] byteArr = new byte[preByteArray.size()];
-        int i = 0;
-        for (Byte b : preByteArray) {
-            byteArr[i++] = b.byteValue();
-        }
-        return byteArr;
+        return preByteArray.toByteArray();
     }
 
     /**
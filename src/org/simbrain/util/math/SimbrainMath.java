@@ -514,6 +514,77 @@ public class SimbrainMath {
         return min;
     }
 
+    /**
+     * Finds the k-th largest of the first n values of an array (k = 0 being
+     * the largest) by quickselect, in expected linear time. The values are
+     * reordered so that the k largest come first, in no particular order,
+     * followed by the k-th largest.
+     *
+     * @param vals the values, partially reordered in place
+     * @param n number of values to select from
+     * @param k rank of the value to find, from 0 to n - 1
+     * @return the k-th largest value
+     */
+    public static double selectLargest(final double[] vals, final int n,
+            final int k) {
+        if (k < 0 || k >= n || n > vals.length) {
+            throw new IllegalArgumentException("Rank " + k
+                    + " out of range for " + n + " values");
+        }
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            // Median of three pivot, moved to hi
+            int mid = (lo + hi) >>> 1;
+            if (vals[mid] > vals[lo]) {
+                swap(vals, mid, lo);
+            }
+            if (vals[hi] > vals[lo]) {
+                swap(vals, hi, lo);
+            }
+            if (vals[mid] > vals[hi]) {
+                swap(vals, mid, hi);
+            }
+            double pivot = vals[hi];
+            // Three way partition, so that runs of equal values (e.g. many
+            // thresholds at rest) are settled in one pass: [lo, gt) greater
+            // than the pivot, [gt, lt] equal to it, (lt, hi] less than it.
+            int gt = lo;
+            int lt = hi;
+            int i = lo;
+            while (i <= lt) {
+                if (vals[i] > pivot) {
+                    swap(vals, i++, gt++);
+                } else if (vals[i] < pivot) {
+                    swap(vals, i, lt--);
+                } else {
+                    i++;
+                }
+            }
+            if (k < gt) {
+                hi = gt - 1;
+            } else if (k > lt) {
+                lo = lt + 1;
+            } else {
+                return vals[k];
+            }
+        }
+        return vals[k];
+    }
+
+    /**
+     * Swap two entries of an array.
+     *
+     * @param vals the array
+     * @param i first index
+     * @param j second index
+     */
+    private static void swap(final double[] vals, final int i, final int j) {
+        double tmp = vals[i];
+        vals[i] = vals[j];
+        vals[j] = tmp;
+    }
+
     /**
      * Add noise to a vector.
      *
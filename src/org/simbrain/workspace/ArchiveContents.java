@@ -28,6 +28,7 @@ import java.util.Map;
 import org.simbrain.workspace.updater.UpdateAction;
 import org.simbrain.workspace.updater.UpdateActionCustom;
 import org.simbrain.workspace.updater.UpdateAllBuffered;
+import org.simbrain.workspace.updater.UpdateAllByDependency;
 import org.simbrain.workspace.updater.UpdateComponent;
 import org.simbrain.workspace.updater.UpdateCoupling;
 import org.simbrain.workspace.updater.WorkspaceUpdater;
@@ -203,7 +204,8 @@ class ArchiveContents {
             } catch (Exception e) {
                 e.printStackTrace();
             }
-        } else if (archivedAction.getUpdateAction() instanceof UpdateAllBuffered) {
+        } else if (archivedAction.getUpdateAction() instanceof UpdateAllBuffered
+                || archivedAction.getUpdateAction() instanceof UpdateAllByDependency) {
             try {
                 retAction = archivedAction.getUpdateAction().getClass()
                         .getConstructor(new Class[] { WorkspaceUpdater.class })
@@ -647,6 +649,10 @@ class ArchiveContents {
         xstream.omitField(UpdateActionCustom.class, "theAction");
         xstream.omitField(UpdateActionCustom.class, "updater");
         xstream.omitField(UpdateAllBuffered.class, "updater");
+        xstream.omitField(UpdateAllByDependency.class, "updater");
+        xstream.omitField(UpdateAllByDependency.class, "criticalPath");
+        xstream.omitField(UpdateAllByDependency.class, "work");
+        xstream.omitField(UpdateAllByDependency.class, "criticalComponent");
 
         xstream.alias("Workspace", ArchiveContents.class);
         xstream.alias("Component", ArchivedComponent.class);
@@ -0,0 +1,438 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaConversionException;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiled accessors for the methods behind producers and consumers, used in
+ * place of {@link Method#invoke(Object, Object...)}. Scalar accessors pass
+ * doubles without boxing them; other values, including double arrays, are
+ * passed by reference.
+ * <p>
+ * Where a method takes no auxiliary arguments the accessor is a class spun by
+ * {@link LambdaMetafactory}, which calls the method directly. One such class
+ * is made for each method and shared by every attribute on that method (for
+ * example, one for all the neurons of a network coupled by activation).
+ * Otherwise the accessor calls a {@link MethodHandle} with the auxiliary
+ * arguments bound to it.
+ */
+final class AttributeAccessors {
+
+    /** Reads a scalar. */
+    interface ScalarGetter {
+
+        /**
+         * @return the value
+         */
+        double get();
+    }
+
+    /** Writes a scalar. */
+    interface ScalarSetter {
+
+        /**
+         * @param value the value
+         */
+        void set(double value);
+    }
+
+    /** Reads any value. */
+    interface Getter {
+
+        /**
+         * @return the value
+         */
+        Object get();
+    }
+
+    /** Writes any value. */
+    interface Setter {
+
+        /**
+         * @param value the value
+         */
+        void set(Object value);
+    }
+
+    /** Lookup used to access attribute methods and to spin accessors. */
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    /**
+     * Factories of spun accessors, by accessor interface and method. Each
+     * takes the object whose method is called (nothing, for static methods)
+     * and returns an accessor.
+     */
+    private static final Map<List<Object>, MethodHandle> FACTORIES =
+            new HashMap<List<Object>, MethodHandle>();
+
+    /**
+     * No instances.
+     */
+    private AttributeAccessors() {
+    }
+
+    /**
+     * Find the public method behind an attribute.
+     *
+     * @param baseObject the object the method is called on
+     * @param methodName name of the method
+     * @param argumentDataTypes types of its arguments, or null for none
+     * @return the method, or null if there is none
+     */
+    static Method findMethod(final Object baseObject, final String methodName,
+            final Class<?>[] argumentDataTypes) {
+        try {
+            if (argumentDataTypes == null) {
+                return baseObject.getClass().getMethod(methodName);
+            } else {
+                return baseObject.getClass().getMethod(methodName,
+                        argumentDataTypes);
+            }
+        } catch (NoSuchMethodException e) {
+            return null;
+        } catch (SecurityException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Make an accessor reading the scalar returned by a producer's method.
+     *
+     * @param producer the producer
+     * @return the accessor, or null if the method does not return a double or
+     *         cannot be called
+     */
+    static ScalarGetter scalarGetter(final Attribute producer) {
+        Method method = findMethod(producer.getBaseObject(),
+                producer.getMethodName(), producer.getArgumentDataTypes());
+        if (method == null || method.getReturnType() != double.class) {
+            return null;
+        }
+        Object[] auxiliary = producer.getArgumentValues();
+        if (!hasValues(auxiliary)) {
+            MethodType type = MethodType.methodType(double.class);
+            Object getter = spin(ScalarGetter.class, "get", type, type,
+                    method, producer.getBaseObject());
+            if (getter != null) {
+                return (ScalarGetter) getter;
+            }
+        }
+        MethodHandle bound = bind(method, producer.getBaseObject(), 0,
+                auxiliary);
+        if (bound == null) {
+            return null;
+        }
+        final MethodHandle handle = bound.asType(MethodType
+                .methodType(double.class));
+        return new ScalarGetter() {
+            public double get() {
+                try {
+                    return (double) handle.invokeExact();
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Make an accessor passing a scalar to a consumer's method.
+     *
+     * @param consumer the consumer
+     * @return the accessor, or null if the method does not take a double or
+     *         cannot be called
+     */
+    static ScalarSetter scalarSetter(final Attribute consumer) {
+        Class<?>[] types = consumer.getArgumentDataTypes();
+        if (types == null || types.length == 0 || types[0] != double.class) {
+            return null;
+        }
+        Method method = findMethod(consumer.getBaseObject(),
+                consumer.getMethodName(), types);
+        if (method == null) {
+            return null;
+        }
+        Object[] auxiliary = consumer.getArgumentValues();
+        if (types.length == 1) {
+            MethodType type = MethodType.methodType(void.class,
+                    double.class);
+            Object setter = spin(ScalarSetter.class, "set", type, type,
+                    method, consumer.getBaseObject());
+            if (setter != null) {
+                return (ScalarSetter) setter;
+            }
+        }
+        MethodHandle bound = bind(method, consumer.getBaseObject(), 1,
+                types.length == 1 ? null : auxiliary);
+        if (bound == null) {
+            return null;
+        }
+        final MethodHandle handle = bound.asType(MethodType.methodType(
+                void.class, double.class));
+        return new ScalarSetter() {
+            public void set(double value) {
+                try {
+                    handle.invokeExact(value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Make an accessor reading the value returned by a method, boxing
+     * primitives.
+     *
+     * @param baseObject the object the method is called on
+     * @param methodName name of the method
+     * @param argumentDataTypes types of its arguments, or null for none
+     * @param argumentValues its arguments, or null for none
+     * @return the accessor, or null if the method cannot be found or called
+     */
+    static Getter getter(final Object baseObject, final String methodName,
+            final Class<?>[] argumentDataTypes, final Object[] argumentValues) {
+        Method method = findMethod(baseObject, methodName, argumentDataTypes);
+        if (method == null) {
+            return null;
+        }
+        Class<?> type = method.getReturnType();
+        if (!hasValues(argumentValues) && type != void.class) {
+            Object getter = spin(Getter.class, "get",
+                    MethodType.methodType(Object.class),
+                    MethodType.methodType(type.isPrimitive() ? Object.class
+                            : type), method, baseObject);
+            if (getter != null) {
+                return (Getter) getter;
+            }
+        }
+        MethodHandle bound = bind(method, baseObject, 0, argumentValues);
+        if (bound == null) {
+            return null;
+        }
+        final MethodHandle handle = bound.asType(MethodType
+                .methodType(Object.class));
+        return new Getter() {
+            public Object get() {
+                try {
+                    return (Object) handle.invokeExact();
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Make an accessor passing a value to a method, unboxing primitives. The
+     * first argument of the method is the value; the rest are auxiliary
+     * arguments.
+     *
+     * @param baseObject the object the method is called on
+     * @param methodName name of the method
+     * @param argumentDataTypes types of its arguments
+     * @param argumentValues its auxiliary arguments
+     * @return the accessor, or null if the method cannot be found or called
+     */
+    static Setter setter(final Object baseObject, final String methodName,
+            final Class<?>[] argumentDataTypes, final Object[] argumentValues) {
+        if (argumentDataTypes == null || argumentDataTypes.length == 0) {
+            return null;
+        }
+        Method method = findMethod(baseObject, methodName, argumentDataTypes);
+        if (method == null) {
+            return null;
+        }
+        if (argumentDataTypes.length == 1) {
+            Class<?> type = argumentDataTypes[0];
+            Object setter = spin(Setter.class, "set", MethodType.methodType(
+                    void.class, Object.class), MethodType.methodType(
+                    void.class, type.isPrimitive() ? Object.class : type),
+                    method, baseObject);
+            if (setter != null) {
+                return (Setter) setter;
+            }
+        }
+        MethodHandle bound = bind(method, baseObject, 1,
+                argumentDataTypes.length == 1 ? null : argumentValues);
+        if (bound == null) {
+            return null;
+        }
+        final MethodHandle handle = bound.asType(MethodType.methodType(
+                void.class, Object.class));
+        return new Setter() {
+            public void set(Object value) {
+                try {
+                    handle.invokeExact(value);
+                } catch (Throwable t) {
+                    throw propagate(t);
+                }
+            }
+        };
+    }
+
+    /**
+     * Make an accessor reading the value of a producer.
+     *
+     * @param producer the producer
+     * @return the accessor, or null if its method cannot be found or called
+     */
+    static Getter getter(final Attribute producer) {
+        return getter(producer.getBaseObject(), producer.getMethodName(),
+                producer.getArgumentDataTypes(),
+                producer.getArgumentValues());
+    }
+
+    /**
+     * Make an accessor passing a value to a consumer.
+     *
+     * @param consumer the consumer
+     * @return the accessor, or null if its method cannot be found or called
+     */
+    static Setter setter(final Attribute consumer) {
+        return setter(consumer.getBaseObject(), consumer.getMethodName(),
+                consumer.getArgumentDataTypes(),
+                consumer.getArgumentValues());
+    }
+
+    /**
+     * @param values argument values, or null
+     * @return whether there are any
+     */
+    private static boolean hasValues(final Object[] values) {
+        return values != null && values.length > 0;
+    }
+
+    /**
+     * Bind a method to the object it is called on and to its auxiliary
+     * arguments.
+     *
+     * @param method the method
+     * @param baseObject the object it is called on (ignored for static
+     *            methods)
+     * @param position index of the first auxiliary argument
+     * @param auxiliary the auxiliary arguments, or null for none
+     * @return the bound handle, or null if the method cannot be accessed or
+     *         the arguments do not fill its parameters
+     */
+    private static MethodHandle bind(final Method method,
+            final Object baseObject, final int position,
+            final Object[] auxiliary) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            return null;
+        }
+        if (!Modifier.isStatic(method.getModifiers())) {
+            handle = handle.bindTo(baseObject);
+        }
+        if (hasValues(auxiliary)) {
+            handle = MethodHandles.insertArguments(handle, position,
+                    auxiliary);
+        }
+        if (handle.type().parameterCount() != position) {
+            return null;
+        }
+        return handle;
+    }
+
+    /**
+     * Spin an accessor calling a method directly, reusing the accessor class
+     * made for that method if there is one.
+     *
+     * @param accessor the accessor interface
+     * @param name name of its method
+     * @param samType type of its method
+     * @param instantiatedType type of its method in terms of the types of
+     *            the attribute, where these are references
+     * @param method the attribute's method
+     * @param baseObject the object it is called on (ignored for static
+     *            methods)
+     * @return the accessor, or null if one cannot be spun for this method
+     */
+    private static Object spin(final Class<?> accessor, final String name,
+            final MethodType samType, final MethodType instantiatedType,
+            final Method method, final Object baseObject) {
+        // A spun class can only see classes of this class's loader, so methods
+        // of classes loaded elsewhere (by scripts, for instance) are called
+        // through method handles instead
+        Class<?> declaring = method.getDeclaringClass();
+        try {
+            if (Class.forName(declaring.getName(), false,
+                    AttributeAccessors.class.getClassLoader()) != declaring) {
+                return null;
+            }
+        } catch (ClassNotFoundException e) {
+            return null;
+        }
+        boolean isStatic = Modifier.isStatic(method.getModifiers());
+        List<Object> key = Arrays.<Object> asList(accessor, method);
+        try {
+            MethodHandle factory;
+            synchronized (FACTORIES) {
+                factory = FACTORIES.get(key);
+                if (factory == null) {
+                    MethodType factoryType = isStatic ? MethodType
+                            .methodType(accessor) : MethodType.methodType(
+                            accessor, declaring);
+                    CallSite site = LambdaMetafactory.metafactory(LOOKUP,
+                            name, factoryType, samType,
+                            LOOKUP.unreflect(method), instantiatedType);
+                    factory = site.getTarget();
+                    FACTORIES.put(key, factory);
+                }
+            }
+            return isStatic ? factory.invoke() : factory.invoke(baseObject);
+        } catch (IllegalAccessException e) {
+            return null;
+        } catch (LambdaConversionException e) {
+            return null;
+        } catch (Throwable t) {
+            throw propagate(t);
+        }
+    }
+
+    /**
+     * @param t a throwable thrown by an attribute's method
+     * @return the throwable, if unchecked, to be thrown by the caller
+     */
+    private static RuntimeException propagate(final Throwable t) {
+        if (t instanceof Error) {
+            throw (Error) t;
+        }
+        if (t instanceof RuntimeException) {
+            return (RuntimeException) t;
+        }
+        return new IllegalStateException(t);
+    }
+
+}
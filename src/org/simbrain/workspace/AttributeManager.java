@@ -17,8 +17,8 @@
  */
 package org.simbrain.workspace;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import org.simbrain.workspace.AttributeAccessors.Getter;
+import org.simbrain.workspace.AttributeAccessors.Setter;
 
 /**
  * The main usage of this class by API users is to create potential attributes
@@ -76,43 +76,30 @@ public class AttributeManager {
 
         Producer<?> producer = new Producer() {
 
-            private Method theMethod;
+            /** Calls the producer's method. */
+            private Getter getter;
 
             // Static initializer
             {
-                try {
-                    if (argumentDataTypes == null) {
-                        theMethod = parentObject.getClass().getMethod(
-                                methodName);
-                    } else {
-                        theMethod = parentObject.getClass().getMethod(
-                                methodName, argumentDataTypes);
-                    }
-                } catch (SecurityException e1) {
-                    e1.printStackTrace();
-                } catch (NoSuchMethodException e1) {
+                getter = AttributeAccessors.getter(parentObject, methodName,
+                        argumentDataTypes, argumentValues);
+                if (getter == null) {
                     System.err.println("Could not find method " + methodName
                             + " with return type of "
                             + dataType.getCanonicalName());
-                    e1.printStackTrace();
                 }
-
             }
 
             /**
              * {@inheritDoc}
              */
             public Object getValue() {
+                if (getter == null) {
+                    return null;
+                }
                 try {
-                    return theMethod.invoke(parentObject, argumentValues);
-                } catch (IllegalArgumentException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    // TODO Auto-generated catch block
+                    return getter.get();
+                } catch (RuntimeException e) {
                     e.printStackTrace();
                 }
                 return null;
@@ -210,17 +197,14 @@ public class AttributeManager {
 
         Consumer<?> consumer = new Consumer() {
 
-            private Method theMethod;
+            /** Calls the consumer's method. */
+            private Setter setter;
 
             // Static initializer
             {
-                // System.out.println(Arrays.asList(argumentDataTypes));
-                try {
-                    theMethod = parentObject.getClass().getMethod(methodName,
-                            argumentDataTypes);
-                } catch (SecurityException e1) {
-                    e1.printStackTrace();
-                } catch (NoSuchMethodException e1) {
+                setter = AttributeAccessors.setter(parentObject, methodName,
+                        argumentDataTypes, argumentValues);
+                if (setter == null) {
                     System.err.print("Could not find method " + methodName
                             + " ");
                     if (argumentDataTypes != null) {
@@ -228,9 +212,8 @@ public class AttributeManager {
                         for (Class<?> type : argumentDataTypes) {
                             System.err.print(type.getCanonicalName());
                         }
-                        System.err.println();
                     }
-                    e1.printStackTrace();
+                    System.err.println();
                 }
             }
 
@@ -238,25 +221,12 @@ public class AttributeManager {
              * {@inheritDoc}
              */
             public void setValue(Object value) {
+                if (setter == null) {
+                    return;
+                }
                 try {
-
-                    if (argumentDataTypes.length == 1) {
-                        theMethod.invoke(parentObject, new Object[] { value });
-                    } else {
-                        Object[] concatArray = new Object[argumentValues.length + 1];
-                        concatArray[0] = value;
-                        System.arraycopy(argumentValues, 0, concatArray, 1,
-                                argumentValues.length);
-                        theMethod.invoke(parentObject, concatArray);
-                    }
-                } catch (IllegalArgumentException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (IllegalAccessException e) {
-                    // TODO Auto-generated catch block
-                    e.printStackTrace();
-                } catch (InvocationTargetException e) {
-                    // TODO Auto-generated catch block
+                    setter.set(value);
+                } catch (RuntimeException e) {
                     e.printStackTrace();
                 }
             }
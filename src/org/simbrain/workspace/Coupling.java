@@ -150,13 +150,15 @@ public final class Coupling<E> {
                         new Callable<E>() {
                             public E call() throws Exception {
                                 consumer.setValue(buffer);
-                                LOGGER.debug(consumer.getParentComponent()
-                                        .getName()
-                                        + " just consumed "
-                                        + producer.getValue()
-                                        + " from "
-                                        + producer.getParentComponent()
-                                                .getName());
+                                if (LOGGER.isDebugEnabled()) {
+                                    LOGGER.debug(consumer.getParentComponent()
+                                            .getName()
+                                            + " just consumed "
+                                            + buffer
+                                            + " from "
+                                            + producer.getParentComponent()
+                                                    .getName());
+                                }
 
                                 return null;
                             }
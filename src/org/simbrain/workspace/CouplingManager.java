@@ -77,6 +77,15 @@ public class CouplingManager {
     /** List of listeners to fire updates when couplings are changed. */
     private List<CouplingListener> couplingListeners = new ArrayList<CouplingListener>();
 
+    /**
+     * Count of changes to the coupling list, used to tell when the compiled
+     * plan is out of date.
+     */
+    private volatile int version;
+
+    /** The couplings compiled for updating, or null if not yet compiled. */
+    private volatile CouplingPlan plan;
+
     /**
      * Construct a coupling manager.
      *
@@ -115,6 +124,8 @@ public class CouplingManager {
                      * {@ineritDoc}
                      */
                     public void potentialAttributesChanged() {
+                        // Vector regions may have moved
+                        version++;
                     }
 
                 };
@@ -172,6 +183,7 @@ public class CouplingManager {
      */
     public void clearCouplings() {
         couplingList.clear();
+        version++;
     }
 
     /**
@@ -197,18 +209,29 @@ public class CouplingManager {
     }
 
     /**
-     * Updates all couplings in the workspace.
+     * Updates all couplings in the workspace, using the compiled plan (see
+     * {@link #getPlan()}).
      */
     public void updateAllCouplings() {
         LOGGER.debug("updating all couplings");
-        for (Coupling<?> coupling : getCouplings()) {
-            LOGGER.trace(coupling.getClass());
-            coupling.setBuffer();
-        }
+        getPlan().run();
+    }
 
-        for (Coupling<?> coupling : getCouplings()) {
-            coupling.update();
+    /**
+     * Returns the couplings compiled into a plan for updating them. The plan
+     * is compiled again the first time it is asked for after any coupling is
+     * added or removed, or a component's attributes change.
+     *
+     * @return the plan
+     */
+    public CouplingPlan getPlan() {
+        int current = version;
+        CouplingPlan compiled = plan;
+        if (compiled == null || compiled.getVersion() != current) {
+            compiled = CouplingPlan.compile(getCouplings(), current);
+            plan = compiled;
         }
+        return compiled;
     }
 
     /**
@@ -323,6 +346,7 @@ public class CouplingManager {
             throw new MismatchedAttributesException(warning);
         }
         couplingList.add(coupling);
+        version++;
 
         // Populate source / target maps (used to return lists of couplings
         // connecting particular workspace components together)
@@ -470,6 +494,7 @@ public class CouplingManager {
         // consumingAttributes.remove(coupling.getConsumingAttribute());
 
         couplingList.remove(coupling);
+        version++;
 
         removeCouplingFromList(sourceTargetCouplings.get(sourceTarget),
                 coupling);
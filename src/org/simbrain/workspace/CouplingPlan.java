@@ -0,0 +1,692 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.simbrain.workspace.AttributeAccessors.Getter;
+import org.simbrain.workspace.AttributeAccessors.ScalarGetter;
+import org.simbrain.workspace.AttributeAccessors.ScalarSetter;
+import org.simbrain.workspace.AttributeAccessors.Setter;
+
+/**
+ * A set of couplings compiled into a flat plan for updating them all at once,
+ * as {@link Coupling#setBuffer()} followed by {@link Coupling#update()} would
+ * for each. Values are read from every producer, then written to every
+ * consumer; reads are grouped by producing component and writes by consuming
+ * component, so that the locks of each component are taken once per pass
+ * rather than once per coupling, and nothing is allocated while updating.
+ * Within a component couplings are updated in the order given.
+ * <p>
+ * Producers and consumers made by {@link AttributeManager} are called through
+ * compiled accessors (see {@link AttributeAccessors}): scalars are passed as
+ * doubles and other values by reference. Other attributes, and attributes
+ * whose methods cannot be compiled, are called through
+ * {@link Producer#getValue()} and {@link Consumer#setValue(Object)}.
+ * <p>
+ * Where both attributes of a coupling are backed by vectors (see
+ * {@link WorkspaceComponent#getVectorRegion(Attribute)}), values are copied
+ * between the vectors through a buffer kept by the plan, so a coupling
+ * between, say, a data table row and a neuron group allocates nothing. Scalar
+ * couplings from neighbouring elements of one vector to neighbouring elements
+ * of another, such as one coupling per neuron between two neuron groups, are
+ * collapsed into a single copy of the whole run of elements, written where
+ * the first coupling of the run would be. Elements written by more than one
+ * coupling are not collapsed, so the coupling written last stays the same.
+ * <p>
+ * The reads and writes of each component can also be run separately, with
+ * {@link #read(WorkspaceComponent)} and {@link #write(WorkspaceComponent)},
+ * so that an updater can interleave them with component updates (see
+ * {@link org.simbrain.workspace.updater.UpdateAllByDependency}). Buffered
+ * semantics are kept as long as every component's reads are run before its
+ * own update and before any of its writes, and every producer's reads are run
+ * before the writes to its consumers.
+ * <p>
+ * The plan is fixed when compiled; couplings added or removed afterwards, or
+ * changes to the attributes of the components coupled, need a new plan.
+ *
+ * @see CouplingManager#getPlan()
+ */
+public final class CouplingPlan {
+
+    /** A coupling compiled into a read and a write. */
+    private abstract static class Transfer {
+
+        /**
+         * Read the producer's value into the buffer.
+         */
+        abstract void read();
+
+        /**
+         * Write the buffer to the consumer.
+         */
+        abstract void write();
+    }
+
+    /** A transfer of a scalar. */
+    private static final class ScalarTransfer extends Transfer {
+
+        /** Reads the producer. */
+        private final ScalarGetter getter;
+
+        /** Writes the consumer. */
+        private final ScalarSetter setter;
+
+        /** The value read. */
+        private double buffer;
+
+        /**
+         * Construct a transfer.
+         *
+         * @param getter reads the producer
+         * @param setter writes the consumer
+         */
+        ScalarTransfer(final ScalarGetter getter, final ScalarSetter setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        void read() {
+            buffer = getter.get();
+        }
+
+        @Override
+        void write() {
+            setter.set(buffer);
+        }
+    }
+
+    /** A transfer of any other value, by reference. */
+    private static final class ReferenceTransfer extends Transfer {
+
+        /** Reads the producer. */
+        private final Getter getter;
+
+        /** Writes the consumer. */
+        private final Setter setter;
+
+        /** The value read. */
+        private Object buffer;
+
+        /**
+         * Construct a transfer.
+         *
+         * @param getter reads the producer
+         * @param setter writes the consumer
+         */
+        ReferenceTransfer(final Getter getter, final Setter setter) {
+            this.getter = getter;
+            this.setter = setter;
+        }
+
+        @Override
+        void read() {
+            buffer = getter.get();
+        }
+
+        @Override
+        void write() {
+            setter.set(buffer);
+        }
+    }
+
+    /** A copy of a whole vector into another. */
+    private static final class VectorTransfer extends Transfer {
+
+        /** The vector read. */
+        private final ValueVector source;
+
+        /** The vector written. */
+        private final ValueVector target;
+
+        /** The values read; grown as needed. */
+        private double[] buffer = new double[0];
+
+        /** The number of values read. */
+        private int count;
+
+        /**
+         * Construct a transfer.
+         *
+         * @param source the vector read
+         * @param target the vector written
+         */
+        VectorTransfer(final ValueVector source, final ValueVector target) {
+            this.source = source;
+            this.target = target;
+        }
+
+        @Override
+        void read() {
+            count = source.size();
+            if (buffer.length < count) {
+                buffer = new double[count];
+            }
+            source.get(0, buffer, 0, count);
+        }
+
+        @Override
+        void write() {
+            target.set(0, buffer, 0, Math.min(count, target.size()));
+        }
+    }
+
+    /** A copy of a run of elements of a vector into another. */
+    private static final class RegionTransfer extends Transfer {
+
+        /** The vector read. */
+        private final ValueVector source;
+
+        /** Index of the first element read. */
+        private final int sourceFrom;
+
+        /** The vector written. */
+        private final ValueVector target;
+
+        /** Index of the first element written. */
+        private final int targetFrom;
+
+        /** The values read. */
+        private final double[] buffer;
+
+        /**
+         * Construct a transfer.
+         *
+         * @param source the vector read
+         * @param sourceFrom index of the first element read
+         * @param target the vector written
+         * @param targetFrom index of the first element written
+         * @param count number of elements
+         */
+        RegionTransfer(final ValueVector source, final int sourceFrom,
+                final ValueVector target, final int targetFrom,
+                final int count) {
+            this.source = source;
+            this.sourceFrom = sourceFrom;
+            this.target = target;
+            this.targetFrom = targetFrom;
+            buffer = new double[count];
+        }
+
+        @Override
+        void read() {
+            source.get(sourceFrom, buffer, 0, buffer.length);
+        }
+
+        @Override
+        void write() {
+            target.set(targetFrom, buffer, 0, buffer.length);
+        }
+    }
+
+    /** A scalar coupling between elements of two vectors. */
+    private static final class ElementLink {
+
+        /** The coupling. */
+        private final Coupling<?> coupling;
+
+        /** Index of the element read. */
+        private final int source;
+
+        /** Index of the element written. */
+        private final int target;
+
+        /**
+         * Construct a link.
+         *
+         * @param coupling the coupling
+         * @param source index of the element read
+         * @param target index of the element written
+         */
+        ElementLink(final Coupling<?> coupling, final int source,
+                final int target) {
+            this.coupling = coupling;
+            this.source = source;
+            this.target = target;
+        }
+    }
+
+    /** Orders links by the element written. */
+    private static final Comparator<ElementLink> BY_TARGET =
+            new Comparator<ElementLink>() {
+                public int compare(ElementLink a, ElementLink b) {
+                    return Integer.compare(a.target, b.target);
+                }
+            };
+
+    /**
+     * A transfer through the coupling's own producer and consumer, using the
+     * coupling's buffer.
+     *
+     * @param <E> the coupling's value type
+     */
+    private static final class CouplingTransfer<E> extends Transfer {
+
+        /** The coupling. */
+        private final Coupling<E> coupling;
+
+        /**
+         * Construct a transfer.
+         *
+         * @param coupling the coupling
+         */
+        CouplingTransfer(final Coupling<E> coupling) {
+            this.coupling = coupling;
+        }
+
+        @Override
+        void read() {
+            coupling.buffer = coupling.getProducer().getValue();
+        }
+
+        @Override
+        void write() {
+            coupling.getConsumer().setValue(coupling.buffer);
+        }
+    }
+
+    /** The locks of a component and the transfers run while holding them. */
+    private static final class Stage {
+
+        /** The component's locks. */
+        private final Object[] locks;
+
+        /** The transfers. */
+        private final Transfer[] transfers;
+
+        /**
+         * Construct a stage.
+         *
+         * @param locks the component's locks
+         * @param transfers the transfers
+         */
+        Stage(final Object[] locks, final Transfer[] transfers) {
+            this.locks = locks;
+            this.transfers = transfers;
+        }
+    }
+
+    /** Version of the coupling list compiled. */
+    private final int version;
+
+    /** Reads, by producing component. */
+    private final Map<WorkspaceComponent, Stage> reads;
+
+    /** Writes, by consuming component. */
+    private final Map<WorkspaceComponent, Stage> writes;
+
+    /** The components producing for each consuming component. */
+    private final Map<WorkspaceComponent, Set<WorkspaceComponent>> sources;
+
+    /**
+     * Construct a plan.
+     *
+     * @param version version of the coupling list compiled
+     * @param reads reads, by producing component
+     * @param writes writes, by consuming component
+     * @param sources the components producing for each consuming component
+     */
+    private CouplingPlan(final int version,
+            final Map<WorkspaceComponent, Stage> reads,
+            final Map<WorkspaceComponent, Stage> writes,
+            final Map<WorkspaceComponent, Set<WorkspaceComponent>> sources) {
+        this.version = version;
+        this.reads = reads;
+        this.writes = writes;
+        this.sources = sources;
+    }
+
+    /**
+     * Compile a set of couplings.
+     *
+     * @param couplings the couplings
+     * @param version version of the coupling list compiled, used by the
+     *            caller to tell when the plan is out of date
+     * @return the plan
+     */
+    static CouplingPlan compile(final Collection<? extends Coupling<?>> couplings,
+            final int version) {
+        Map<WorkspaceComponent, List<Transfer>> reads =
+                new LinkedHashMap<WorkspaceComponent, List<Transfer>>();
+        Map<WorkspaceComponent, List<Transfer>> writes =
+                new LinkedHashMap<WorkspaceComponent, List<Transfer>>();
+        Map<List<ValueVector>, List<ElementLink>> links =
+                new LinkedHashMap<List<ValueVector>, List<ElementLink>>();
+        Map<List<Object>, Integer> writers =
+                new HashMap<List<Object>, Integer>();
+        Map<WorkspaceComponent, Set<WorkspaceComponent>> sources =
+                new HashMap<WorkspaceComponent, Set<WorkspaceComponent>>();
+        List<Coupling<?>> compiled = new ArrayList<Coupling<?>>();
+        List<VectorRegion> froms = new ArrayList<VectorRegion>();
+        List<VectorRegion> tos = new ArrayList<VectorRegion>();
+        for (Coupling<?> coupling : couplings) {
+            Producer<?> producer = coupling.getProducer();
+            Consumer<?> consumer = coupling.getConsumer();
+            if (producer == null || consumer == null) {
+                continue;
+            }
+            Set<WorkspaceComponent> producers = sources.get(consumer
+                    .getParentComponent());
+            if (producers == null) {
+                producers = new LinkedHashSet<WorkspaceComponent>();
+                sources.put(consumer.getParentComponent(), producers);
+            }
+            producers.add(producer.getParentComponent());
+            VectorRegion from = getVectorRegion(producer);
+            VectorRegion to = getVectorRegion(consumer);
+            compiled.add(coupling);
+            froms.add(from);
+            tos.add(to);
+            if (to != null) {
+                List<Object> key = Arrays.<Object> asList(to.getVector(),
+                        to.getIndex());
+                Integer count = writers.get(key);
+                writers.put(key, count == null ? 1 : count + 1);
+            }
+            if (from != null && to != null && !from.isWhole()
+                    && !to.isWhole()) {
+                List<ValueVector> key = Arrays.asList(from.getVector(),
+                        to.getVector());
+                List<ElementLink> list = links.get(key);
+                if (list == null) {
+                    list = new ArrayList<ElementLink>();
+                    links.put(key, list);
+                }
+                list.add(new ElementLink(coupling, from.getIndex(), to
+                        .getIndex()));
+            }
+        }
+        Map<Coupling<?>, Transfer> collapsed =
+                new IdentityHashMap<Coupling<?>, Transfer>();
+        for (Map.Entry<List<ValueVector>, List<ElementLink>> entry : links
+                .entrySet()) {
+            collapse(entry.getKey().get(0), entry.getKey().get(1),
+                    entry.getValue(), writers, collapsed);
+        }
+
+        // Add the transfers in the order of the couplings, each run at its
+        // first coupling
+        Set<Transfer> added = new HashSet<Transfer>();
+        for (int i = 0; i < compiled.size(); i++) {
+            Coupling<?> coupling = compiled.get(i);
+            Transfer transfer = collapsed.get(coupling);
+            if (transfer != null) {
+                if (!added.add(transfer)) {
+                    continue;
+                }
+            } else {
+                VectorRegion from = froms.get(i);
+                VectorRegion to = tos.get(i);
+                if (from != null && to != null && from.isWhole()
+                        && to.isWhole()) {
+                    transfer = new VectorTransfer(from.getVector(),
+                            to.getVector());
+                } else {
+                    transfer = compile(coupling);
+                }
+            }
+            addTo(reads, coupling.getProducer().getParentComponent(),
+                    transfer);
+            addTo(writes, coupling.getConsumer().getParentComponent(),
+                    transfer);
+        }
+        return new CouplingPlan(version, toStages(reads), toStages(writes),
+                sources);
+    }
+
+    /**
+     * Compile a coupling.
+     *
+     * @param <E> the coupling's value type
+     * @param coupling the coupling
+     * @return its transfer
+     */
+    private static <E> Transfer compile(final Coupling<E> coupling) {
+        Producer<E> producer = coupling.getProducer();
+        Consumer<E> consumer = coupling.getConsumer();
+        if (isCompilable(producer) && isCompilable(consumer)) {
+            if (producer.getDataType() == double.class) {
+                ScalarGetter getter = AttributeAccessors
+                        .scalarGetter(producer);
+                ScalarSetter setter = AttributeAccessors
+                        .scalarSetter(consumer);
+                if (getter != null && setter != null) {
+                    return new ScalarTransfer(getter, setter);
+                }
+            }
+            Getter getter = AttributeAccessors.getter(producer);
+            Setter setter = AttributeAccessors.setter(consumer);
+            if (getter != null && setter != null) {
+                return new ReferenceTransfer(getter, setter);
+            }
+        }
+        return new CouplingTransfer<E>(coupling);
+    }
+
+    /**
+     * Collapse scalar couplings between elements of two vectors into copies
+     * of runs of neighbouring elements. Couplings writing an element which is
+     * also written by another coupling are left out of the runs.
+     *
+     * @param source the vector read
+     * @param target the vector written
+     * @param links the couplings
+     * @param writers the number of couplings writing each element (and each
+     *            whole vector, at index -1), keyed by vector and index
+     * @param collapsed the run each collapsed coupling belongs to, filled in
+     */
+    private static void collapse(final ValueVector source,
+            final ValueVector target, final List<ElementLink> links,
+            final Map<List<Object>, Integer> writers,
+            final Map<Coupling<?>, Transfer> collapsed) {
+        List<ElementLink> sorted = new ArrayList<ElementLink>(links);
+        Collections.sort(sorted, BY_TARGET);
+        int start = 0;
+        for (int i = 1; i <= sorted.size(); i++) {
+            if (i < sorted.size()
+                    && sorted.get(i).target == sorted.get(i - 1).target + 1
+                    && sorted.get(i).source == sorted.get(i - 1).source + 1
+                    && isSoleWriter(writers, target, sorted.get(i - 1).target)
+                    && isSoleWriter(writers, target, sorted.get(i).target)) {
+                continue;
+            }
+            if (i - start > 1) {
+                ElementLink first = sorted.get(start);
+                Transfer transfer = new RegionTransfer(source, first.source,
+                        target, first.target, i - start);
+                for (int k = start; k < i; k++) {
+                    collapsed.put(sorted.get(k).coupling, transfer);
+                }
+            }
+            start = i;
+        }
+    }
+
+    /**
+     * @param writers the number of couplings writing each element
+     * @param vector a vector
+     * @param index index of an element of the vector
+     * @return whether exactly one coupling writes the element, and none
+     *         writes the whole vector
+     */
+    private static boolean isSoleWriter(
+            final Map<List<Object>, Integer> writers,
+            final ValueVector vector, final int index) {
+        return !writers.containsKey(Arrays.<Object> asList(vector, -1))
+                && writers.get(Arrays.<Object> asList(vector, index)) == 1;
+    }
+
+    /**
+     * @param attribute an attribute
+     * @return the region of a vector backing it, or null if there is none or
+     *         the attribute cannot be compiled
+     */
+    private static VectorRegion getVectorRegion(final Attribute attribute) {
+        if (!isCompilable(attribute)) {
+            return null;
+        }
+        return attribute.getParentComponent().getVectorRegion(attribute);
+    }
+
+    /**
+     * @param attribute an attribute
+     * @return whether it was made by an attribute manager, and so can be
+     *         compiled from its base object, method and arguments
+     */
+    private static boolean isCompilable(final Attribute attribute) {
+        return attribute.getClass().getEnclosingClass()
+                == AttributeManager.class;
+    }
+
+    /**
+     * Add a transfer to a component's list.
+     *
+     * @param map lists of transfers by component
+     * @param component the component
+     * @param transfer the transfer
+     */
+    private static void addTo(final Map<WorkspaceComponent, List<Transfer>> map,
+            final WorkspaceComponent component, final Transfer transfer) {
+        List<Transfer> list = map.get(component);
+        if (list == null) {
+            list = new ArrayList<Transfer>();
+            map.put(component, list);
+        }
+        list.add(transfer);
+    }
+
+    /**
+     * @param map lists of transfers by component
+     * @return a stage for each component
+     */
+    private static Map<WorkspaceComponent, Stage> toStages(
+            final Map<WorkspaceComponent, List<Transfer>> map) {
+        Map<WorkspaceComponent, Stage> stages =
+                new LinkedHashMap<WorkspaceComponent, Stage>();
+        for (Map.Entry<WorkspaceComponent, List<Transfer>> entry : map
+                .entrySet()) {
+            List<Transfer> transfers = entry.getValue();
+            stages.put(entry.getKey(), new Stage(entry.getKey().getLocks()
+                    .toArray(), transfers.toArray(new Transfer[transfers
+                    .size()])));
+        }
+        return stages;
+    }
+
+    /**
+     * @return version of the coupling list compiled
+     */
+    int getVersion() {
+        return version;
+    }
+
+    /**
+     * Update every coupling: read every producer, then write every consumer.
+     */
+    void run() {
+        for (Stage stage : reads.values()) {
+            run(stage, 0, true);
+        }
+        for (Stage stage : writes.values()) {
+            run(stage, 0, false);
+        }
+    }
+
+    /**
+     * Read the values of every coupling a component produces for.
+     *
+     * @param component the producing component
+     */
+    public void read(final WorkspaceComponent component) {
+        Stage stage = reads.get(component);
+        if (stage != null) {
+            run(stage, 0, true);
+        }
+    }
+
+    /**
+     * Write the values read for every coupling a component consumes from.
+     *
+     * @param component the consuming component
+     */
+    public void write(final WorkspaceComponent component) {
+        Stage stage = writes.get(component);
+        if (stage != null) {
+            run(stage, 0, false);
+        }
+    }
+
+    /**
+     * @param component a consuming component
+     * @return the components producing for it, possibly including itself
+     */
+    public Set<WorkspaceComponent> getSources(
+            final WorkspaceComponent component) {
+        Set<WorkspaceComponent> producers = sources.get(component);
+        if (producers == null) {
+            return Collections.emptySet();
+        }
+        return Collections.unmodifiableSet(producers);
+    }
+
+    /**
+     * Take the remaining locks of a stage and then run its transfers. An
+     * exception thrown by one transfer is reported and does not stop the
+     * rest, as with {@link Coupling#setBuffer()} and
+     * {@link Coupling#update()}.
+     *
+     * @param stage the stage
+     * @param lock index of the next lock to take
+     * @param read whether to read rather than write
+     */
+    private static void run(final Stage stage, final int lock,
+            final boolean read) {
+        if (lock < stage.locks.length) {
+            synchronized (stage.locks[lock]) {
+                run(stage, lock + 1, read);
+            }
+            return;
+        }
+        for (Transfer transfer : stage.transfers) {
+            try {
+                if (read) {
+                    transfer.read();
+                } else {
+                    transfer.write();
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+}
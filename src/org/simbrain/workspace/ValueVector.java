@@ -0,0 +1,62 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace;
+
+/**
+ * A vector of values held by a workspace component, such as the activations
+ * of a neuron group or the current row of a data table, which couplings can
+ * read and write in bulk. Components expose their attributes as regions of
+ * such vectors through {@link WorkspaceComponent#getVectorRegion(Attribute)};
+ * couplings between regions copy values straight from one vector to the
+ * other through a reused buffer, without boxing them or allocating arrays.
+ * <p>
+ * Two vectors over the same values must be equal, so that couplings to
+ * neighbouring elements of a vector can be recognized and copied together.
+ *
+ * @see VectorRegion
+ */
+public interface ValueVector {
+
+    /**
+     * @return the number of values
+     */
+    int size();
+
+    /**
+     * Copy values out of the vector.
+     *
+     * @param from index of the first value to copy
+     * @param dest the array to copy into
+     * @param offset where in the array to put the first value
+     * @param count number of values to copy
+     */
+    void get(int from, double[] dest, int offset, int count);
+
+    /**
+     * Copy values into the vector.
+     *
+     * @param from index of the first value to set
+     * @param src the array to copy from
+     * @param offset where in the array the first value is
+     * @param count number of values to copy
+     * @throws UnsupportedOperationException if the vector is read only
+     */
+    void set(int from, double[] src, int offset, int count);
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace;
+
+/**
+ * The values an attribute reads or writes, as a region of a
+ * {@link ValueVector}: the whole vector, for an attribute whose value is a
+ * double array, or a single element of it, for a scalar attribute.
+ *
+ * @see WorkspaceComponent#getVectorRegion(Attribute)
+ */
+public final class VectorRegion {
+
+    /** The vector. */
+    private final ValueVector vector;
+
+    /** Index of the element, or -1 for the whole vector. */
+    private final int index;
+
+    /**
+     * Construct a region.
+     *
+     * @param vector the vector
+     * @param index index of the element, or -1 for the whole vector
+     */
+    private VectorRegion(final ValueVector vector, final int index) {
+        if (vector == null) {
+            throw new IllegalArgumentException("vector cannot be null");
+        }
+        this.vector = vector;
+        this.index = index;
+    }
+
+    /**
+     * Make a region covering a whole vector, however many values it holds
+     * when read or written.
+     *
+     * @param vector the vector
+     * @return the region
+     */
+    public static VectorRegion whole(final ValueVector vector) {
+        return new VectorRegion(vector, -1);
+    }
+
+    /**
+     * Make a region covering one element of a vector.
+     *
+     * @param vector the vector
+     * @param index index of the element
+     * @return the region
+     */
+    public static VectorRegion element(final ValueVector vector,
+            final int index) {
+        if (index < 0) {
+            throw new IllegalArgumentException("index cannot be negative");
+        }
+        return new VectorRegion(vector, index);
+    }
+
+    /**
+     * @return the vector
+     */
+    public ValueVector getVector() {
+        return vector;
+    }
+
+    /**
+     * @return index of the element, or -1 if the region is the whole vector
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    /**
+     * @return whether the region is the whole vector
+     */
+    public boolean isWhole() {
+        return index < 0;
+    }
+
+}
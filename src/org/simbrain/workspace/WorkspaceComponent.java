@@ -303,6 +303,22 @@ public abstract class WorkspaceComponent {
         return Collections.singleton(this);
     }
 
+    /**
+     * Returns the values an attribute of this component reads or writes as a
+     * region of a vector, so that couplings between regions can copy values
+     * in bulk (see {@link ValueVector}): the whole vector for attributes whose
+     * value is a double array, or one element for scalar attributes. Regions
+     * are looked up when couplings are compiled, which happens again after
+     * this component fires a potential attributes changed event. By default
+     * attributes have no region.
+     *
+     * @param attribute a producer or consumer of this component
+     * @return the region, or null if the attribute is not backed by a vector
+     */
+    public VectorRegion getVectorRegion(final Attribute attribute) {
+        return null;
+    }
+
     /**
      * Called by Workspace to notify that updates have stopped.
      */
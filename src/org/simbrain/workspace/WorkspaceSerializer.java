@@ -131,8 +131,8 @@ public class WorkspaceSerializer {
             zipStream.putNextEntry(entry);
             serializer.serializeComponent(component);
 
-            GuiComponent<?> desktopComponent = SimbrainDesktop.getDesktop(
-                    workspace).getDesktopComponent(component);
+            GuiComponent<?> desktopComponent = desktop == null ? null
+                    : desktop.getDesktopComponent(component);
 
             /*
              * If there is a desktop component associated with the component
@@ -220,7 +220,10 @@ public class WorkspaceSerializer {
                 // created
                 workspace.addWorkspaceComponent(wc);
 
-                if (archivedComponent.getDesktopComponent() != null) {
+                // Without a desktop (e.g. in batch runs) window bounds are
+                // ignored.
+                if (desktop != null
+                        && archivedComponent.getDesktopComponent() != null) {
                     Rectangle bounds = (Rectangle) new XStream(new DomDriver())
                             .fromXML(new ByteArrayInputStream(entries
                                     .get(archivedComponent
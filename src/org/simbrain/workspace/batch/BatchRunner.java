@@ -0,0 +1,460 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceComponent;
+import org.simbrain.workspace.WorkspaceSerializer;
+
+import bsh.EvalError;
+import bsh.Interpreter;
+
+/**
+ * Runs a saved workspace headless for a fixed number of iterations, once for
+ * every point of a parameter sweep (and optionally several times per point),
+ * with the runs spread over a pool of threads. Each run loads its own copy of
+ * the workspace, so runs are independent; networks are run with update
+ * events turned off since no GUI is listening. Each run's metrics (see
+ * {@link MetricsWriter}) are streamed to its own csv file, and the parameter
+ * values of every run are listed in runs.csv, in the output directory.
+ *
+ * Swept parameters are either one of the {@link SweepParameter built in
+ * parameters}, applied to every network of the workspace, or are set by a
+ * BeanShell setup script, which is run on each workspace after the built in
+ * parameters are applied with the variables "workspace", "run", and one
+ * variable per swept parameter (a double) defined.
+ *
+ * Usage (see {@link #USAGE}):
+ *
+ * <pre>
+ * java org.simbrain.workspace.batch.BatchRunner --iterations 10000 \
+ *     --sweep spectralRadius=0.8:1.2:0.05 --sweep sparseDensity=0.05,0.1 \
+ *     --out results reservoir.zip
+ * </pre>
+ */
+public class BatchRunner {
+
+    /** Command line usage. */
+    public static final String USAGE = "Usage: BatchRunner [options]"
+            + " workspace.zip\n"
+            + "  --iterations N    number of workspace iterations per run"
+            + " (required)\n"
+            + "  --sweep P=VALUES  sweep parameter P over VALUES, given as"
+            + " v1,v2,... or\n"
+            + "                    start:stop:step; may be repeated\n"
+            + "  --repeats N       runs per sweep point (default 1)\n"
+            + "  --every N         record metrics every N iterations"
+            + " (default 1)\n"
+            + "  --jobs N          runs at a time (default: one per"
+            + " processor)\n"
+            + "  --threads N       component update threads per run"
+            + " (default 1)\n"
+            + "  --script FILE     BeanShell script run on each workspace"
+            + " before it runs\n"
+            + "  --out DIR         output directory (default batch)\n"
+            + "Built in parameters: sparseDensity, spectralRadius,"
+            + " stdpTauPlus, stdpTauMinus.\n"
+            + "Other parameters must be applied by the script.";
+
+    /** The saved workspace to run. */
+    private final File workspaceFile;
+
+    /** The parameter grid. */
+    private final ParameterSweep sweep = new ParameterSweep();
+
+    /** Number of workspace iterations per run. */
+    private int iterations;
+
+    /** Number of runs per point of the grid. */
+    private int repeats = 1;
+
+    /** Number of iterations between metric samples. */
+    private int sampleInterval = 1;
+
+    /** Number of runs to execute at a time. */
+    private int jobs = Runtime.getRuntime().availableProcessors();
+
+    /** Number of component update threads of each workspace. */
+    private int updaterThreads = 1;
+
+    /** Setup script run on each workspace, or null. */
+    private File setupScript;
+
+    /** Directory to write results to. */
+    private File outputDir = new File("batch");
+
+    /** The saved workspace, read once and loaded by every run. */
+    private byte[] archive;
+
+    /** The text of the setup script, if any. */
+    private String scriptText;
+
+    /**
+     * @param workspaceFile the saved workspace to run
+     */
+    public BatchRunner(final File workspaceFile) {
+        this.workspaceFile = workspaceFile;
+    }
+
+    /**
+     * Runs every run of the batch, and waits for them to finish.
+     *
+     * @return the number of runs which failed
+     * @throws IOException if the workspace or script can't be read or the
+     *             output directory can't be written
+     * @throws InterruptedException if interrupted while waiting for runs
+     */
+    public int run() throws IOException, InterruptedException {
+        if (iterations <= 0) {
+            throw new IllegalStateException("Number of iterations not set.");
+        }
+        for (String name : sweep.getNames()) {
+            if (SweepParameter.forName(name) == null && setupScript == null) {
+                throw new IllegalStateException("Parameter " + name
+                        + " is not built in and no setup script was given.");
+            }
+        }
+        archive = Files.readAllBytes(workspaceFile.toPath());
+        if (setupScript != null) {
+            scriptText = new String(Files.readAllBytes(setupScript.toPath()));
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Can't create " + outputDir);
+        }
+        final int numRuns = sweep.size() * repeats;
+        writeRunList(numRuns);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs,
+                numRuns));
+        final AtomicInteger finished = new AtomicInteger();
+        List<Future<Void>> results = new ArrayList<Future<Void>>(numRuns);
+        for (int i = 0; i < numRuns; i++) {
+            final int run = i;
+            results.add(pool.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    runOnce(run);
+                    System.out.println("Finished run " + run + " ("
+                            + finished.incrementAndGet() + " of " + numRuns
+                            + ")");
+                    return null;
+                }
+            }));
+        }
+        pool.shutdown();
+        int failures = 0;
+        for (int i = 0; i < numRuns; i++) {
+            try {
+                results.get(i).get();
+            } catch (ExecutionException e) {
+                failures++;
+                System.err.println("Run " + i + " failed:");
+                e.getCause().printStackTrace();
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Loads a fresh copy of the workspace, applies a run's parameters, and
+     * runs it, recording metrics.
+     *
+     * @param run the number of the run
+     * @throws Exception if the run fails
+     */
+    private void runOnce(final int run) throws Exception {
+        double[] point = sweep.getPoint(run / repeats);
+        Workspace workspace = new Workspace();
+        try {
+            new WorkspaceSerializer(workspace)
+                    .deserialize(new ByteArrayInputStream(archive));
+            workspace.setUpdateDelay(0);
+            workspace.getUpdater().setNotificationRate(0);
+            workspace.getUpdater().setNumThreads(updaterThreads);
+            for (WorkspaceComponent wc : workspace
+                    .getComponentList(NetworkComponent.class)) {
+                ((NetworkComponent) wc).getNetwork().setFireUpdates(false);
+            }
+            applyParameters(workspace, run, point);
+            MetricsWriter metrics = new MetricsWriter(workspace, new File(
+                    outputDir, getRunFileName(run)));
+            try {
+                metrics.sample();
+                for (int done = 0; done < iterations;) {
+                    int n = Math.min(sampleInterval, iterations - done);
+                    CountDownLatch latch = new CountDownLatch(1);
+                    workspace.iterate(latch, n);
+                    latch.await();
+                    done += n;
+                    metrics.sample();
+                }
+            } finally {
+                metrics.close();
+            }
+        } finally {
+            workspace.getUpdater().shutdown();
+        }
+    }
+
+    /**
+     * Applies the built in parameters of a run, in their declared order, and
+     * then runs the setup script.
+     *
+     * @param workspace the run's workspace
+     * @param run the number of the run
+     * @param point the values of the swept parameters
+     * @throws EvalError if the setup script fails
+     */
+    private void applyParameters(final Workspace workspace, final int run,
+            final double[] point) throws EvalError {
+        List<String> names = sweep.getNames();
+        for (SweepParameter p : SweepParameter.values()) {
+            int i = names.indexOf(p.getName());
+            if (i >= 0) {
+                p.apply(workspace, point[i]);
+            }
+        }
+        if (scriptText != null) {
+            Interpreter interpreter = new Interpreter();
+            interpreter.set("workspace", workspace);
+            interpreter.set("run", run);
+            for (int i = 0; i < point.length; i++) {
+                interpreter.set(names.get(i), point[i]);
+            }
+            interpreter.eval(scriptText);
+        }
+    }
+
+    /**
+     * Writes runs.csv, listing the parameter values of every run.
+     *
+     * @param numRuns the number of runs
+     * @throws IOException if the file can't be written
+     */
+    private void writeRunList(final int numRuns) throws IOException {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(new File(
+                outputDir, "runs.csv")));
+        try {
+            writer.write("run,file,repeat");
+            for (String name : sweep.getNames()) {
+                writer.write("," + MetricsWriter.quote(name));
+            }
+            writer.newLine();
+            for (int run = 0; run < numRuns; run++) {
+                writer.write(run + "," + getRunFileName(run) + ","
+                        + (run % repeats));
+                for (double value : sweep.getPoint(run / repeats)) {
+                    writer.write("," + value);
+                }
+                writer.newLine();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    /**
+     * @param run the number of a run
+     * @return the name of the run's metrics file.
+     */
+    private String getRunFileName(final int run) {
+        return String.format("run-%04d.csv", run);
+    }
+
+    /**
+     * @return the parameter grid, to which parameters may be added.
+     */
+    public ParameterSweep getSweep() {
+        return sweep;
+    }
+
+    /**
+     * @param iterations number of workspace iterations per run
+     */
+    public void setIterations(final int iterations) {
+        this.iterations = iterations;
+    }
+
+    /**
+     * @param repeats number of runs per point of the parameter grid
+     */
+    public void setRepeats(final int repeats) {
+        this.repeats = repeats;
+    }
+
+    /**
+     * @param sampleInterval number of iterations between metric samples
+     */
+    public void setSampleInterval(final int sampleInterval) {
+        this.sampleInterval = sampleInterval;
+    }
+
+    /**
+     * @param jobs number of runs to execute at a time
+     */
+    public void setJobs(final int jobs) {
+        this.jobs = jobs;
+    }
+
+    /**
+     * @param updaterThreads number of component update threads of each
+     *            workspace
+     */
+    public void setUpdaterThreads(final int updaterThreads) {
+        this.updaterThreads = updaterThreads;
+    }
+
+    /**
+     * @param setupScript BeanShell script run on each workspace, or null
+     */
+    public void setSetupScript(final File setupScript) {
+        this.setupScript = setupScript;
+    }
+
+    /**
+     * @param outputDir directory to write results to
+     */
+    public void setOutputDir(final File outputDir) {
+        this.outputDir = outputDir;
+    }
+
+    /**
+     * Runs a batch from the command line. Exits with status 1 if the
+     * arguments are bad or any run fails.
+     *
+     * @param args see {@link #USAGE}
+     */
+    public static void main(final String[] args) {
+        BatchRunner runner;
+        try {
+            runner = parseArguments(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(USAGE);
+            System.exit(1);
+            return;
+        }
+        int failures;
+        try {
+            failures = runner.run();
+        } catch (IOException | InterruptedException
+                | IllegalStateException e) {
+            System.err.println(e.getMessage());
+            System.exit(1);
+            return;
+        }
+        if (failures > 0) {
+            System.err.println(failures + " runs failed.");
+        }
+        // Exit explicitly: update actions may have left threads running.
+        System.exit(failures > 0 ? 1 : 0);
+    }
+
+    /**
+     * @param args command line arguments (see {@link #USAGE})
+     * @return a runner configured by the arguments
+     * @throws IllegalArgumentException if the arguments are bad
+     */
+    static BatchRunner parseArguments(final String[] args) {
+        File file = null;
+        List<String[]> options = new ArrayList<String[]>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--")) {
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value for "
+                            + args[i]);
+                }
+                options.add(new String[] { args[i], args[++i] });
+            } else if (file == null) {
+                file = new File(args[i]);
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: "
+                        + args[i]);
+            }
+        }
+        if (file == null) {
+            throw new IllegalArgumentException("No workspace given.");
+        }
+        BatchRunner runner = new BatchRunner(file);
+        for (String[] option : options) {
+            String name = option[0];
+            String value = option[1];
+            if (name.equals("--iterations")) {
+                runner.setIterations(parsePositive(name, value));
+            } else if (name.equals("--sweep")) {
+                runner.getSweep().addParameter(value);
+            } else if (name.equals("--repeats")) {
+                runner.setRepeats(parsePositive(name, value));
+            } else if (name.equals("--every")) {
+                runner.setSampleInterval(parsePositive(name, value));
+            } else if (name.equals("--jobs")) {
+                runner.setJobs(parsePositive(name, value));
+            } else if (name.equals("--threads")) {
+                runner.setUpdaterThreads(parsePositive(name, value));
+            } else if (name.equals("--script")) {
+                runner.setSetupScript(new File(value));
+            } else if (name.equals("--out")) {
+                runner.setOutputDir(new File(value));
+            } else {
+                throw new IllegalArgumentException("Unknown option: " + name);
+            }
+        }
+        if (runner.iterations <= 0) {
+            throw new IllegalArgumentException("--iterations is required.");
+        }
+        return runner;
+    }
+
+    /**
+     * @param option an option name
+     * @param value the option's value
+     * @return the value as a positive integer
+     * @throws IllegalArgumentException if it isn't one
+     */
+    private static int parsePositive(final String option, final String value) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0) {
+                return n;
+            }
+        } catch (NumberFormatException e) {
+            // Fall through.
+        }
+        throw new IllegalArgumentException(option
+                + " must be a positive integer: " + value);
+    }
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Neuron;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.NeuronGroup;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceComponent;
+
+/**
+ * Streams the metrics of one batch run to a csv file, one row per sample.
+ * The columns are the workspace time followed by, for each network, the mean
+ * activation of its loose neurons (if it has any) and the mean activation of
+ * each neuron group, plus the number of spiking neurons of each spiking
+ * neuron group. Rows are written as they are sampled, so a partial file is
+ * left if a run is interrupted.
+ */
+class MetricsWriter implements Closeable {
+
+    /** The file being written. */
+    private final BufferedWriter writer;
+
+    /** The neurons averaged for each mean activation column. */
+    private final List<List<Neuron>> meanColumns = new ArrayList<List<Neuron>>();
+
+    /** The neurons counted for each spike count column. */
+    private final List<List<Neuron>> spikeColumns = new ArrayList<List<Neuron>>();
+
+    /** The workspace being sampled. */
+    private final Workspace workspace;
+
+    /**
+     * Opens the file and writes the header.
+     *
+     * @param workspace the workspace to sample
+     * @param file the file to write
+     * @throws IOException if the file can't be written
+     */
+    MetricsWriter(final Workspace workspace, final File file)
+            throws IOException {
+        this.workspace = workspace;
+        List<String> meanNames = new ArrayList<String>();
+        List<String> spikeNames = new ArrayList<String>();
+        for (WorkspaceComponent wc : workspace
+                .getComponentList(NetworkComponent.class)) {
+            Network net = ((NetworkComponent) wc).getNetwork();
+            String prefix = wc.getName() + "/";
+            if (!net.getNeuronList().isEmpty()) {
+                meanNames.add(prefix + "neurons");
+                meanColumns.add(new ArrayList<Neuron>(net.getNeuronList()));
+            }
+            for (Group group : net.getFlatGroupList()) {
+                if (!(group instanceof NeuronGroup)) {
+                    continue;
+                }
+                NeuronGroup ng = (NeuronGroup) group;
+                meanNames.add(prefix + ng.getLabel());
+                meanColumns.add(ng.getNeuronListUnsafe());
+                if (ng.isSpikingNeuronGroup()) {
+                    spikeNames.add(prefix + ng.getLabel() + " spikes");
+                    spikeColumns.add(ng.getNeuronListUnsafe());
+                }
+            }
+        }
+        writer = new BufferedWriter(new FileWriter(file));
+        writer.write("time");
+        for (String name : meanNames) {
+            writer.write("," + quote(name));
+        }
+        for (String name : spikeNames) {
+            writer.write("," + quote(name));
+        }
+        writer.newLine();
+    }
+
+    /**
+     * Writes a row for the workspace's current state.
+     *
+     * @throws IOException if the file can't be written
+     */
+    void sample() throws IOException {
+        writer.write(Integer.toString(workspace.getTime()));
+        for (List<Neuron> neurons : meanColumns) {
+            double sum = 0;
+            for (int i = 0, n = neurons.size(); i < n; i++) {
+                sum += neurons.get(i).getActivation();
+            }
+            writer.write("," + (sum / neurons.size()));
+        }
+        for (List<Neuron> neurons : spikeColumns) {
+            int count = 0;
+            for (int i = 0, n = neurons.size(); i < n; i++) {
+                if (neurons.get(i).isSpike()) {
+                    count++;
+                }
+            }
+            writer.write("," + count);
+        }
+        writer.newLine();
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    /**
+     * @param name a column name
+     * @return the name quoted for csv if needed.
+     */
+    static String quote(final String name) {
+        if (name.indexOf(',') < 0 && name.indexOf('"') < 0) {
+            return name;
+        }
+        return "\"" + name.replace("\"", "\"\"") + "\"";
+    }
+
+}
@@ -0,0 +1,154 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The grid of parameter values of a batch run: every combination of the
+ * values given for each swept parameter. Values are given on the command line
+ * as a comma separated list ({@code name=0.8,0.9,1.0}) or as an inclusive
+ * range with a step ({@code name=0.8:1.2:0.1}).
+ */
+public class ParameterSweep {
+
+    /** Names of the swept parameters, in the order given. */
+    private final List<String> names = new ArrayList<String>();
+
+    /** Values of each swept parameter. */
+    private final List<double[]> values = new ArrayList<double[]>();
+
+    /**
+     * Adds a parameter from its command line form.
+     *
+     * @param spec the parameter as {@code name=v1,v2,...} or
+     *            {@code name=start:stop:step}
+     * @throws IllegalArgumentException if the specification is malformed or
+     *             the parameter has already been added
+     */
+    public void addParameter(final String spec) {
+        int eq = spec.indexOf('=');
+        if (eq <= 0 || eq == spec.length() - 1) {
+            throw new IllegalArgumentException("Expected name=values: "
+                    + spec);
+        }
+        String name = spec.substring(0, eq).trim();
+        String valueSpec = spec.substring(eq + 1).trim();
+        try {
+            if (valueSpec.indexOf(':') >= 0) {
+                String[] range = valueSpec.split(":");
+                if (range.length != 3) {
+                    throw new IllegalArgumentException(
+                            "Expected start:stop:step: " + spec);
+                }
+                addParameter(name, Double.parseDouble(range[0]),
+                        Double.parseDouble(range[1]),
+                        Double.parseDouble(range[2]));
+            } else {
+                String[] list = valueSpec.split(",");
+                double[] vals = new double[list.length];
+                for (int i = 0; i < list.length; i++) {
+                    vals[i] = Double.parseDouble(list[i].trim());
+                }
+                addParameter(name, vals);
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad value in " + spec, e);
+        }
+    }
+
+    /**
+     * Adds a parameter taking evenly spaced values.
+     *
+     * @param name the parameter name
+     * @param start the first value
+     * @param stop the last value (inclusive, up to rounding)
+     * @param step the spacing of values
+     */
+    public void addParameter(final String name, final double start,
+            final double stop, final double step) {
+        if (step == 0 || (stop - start) / step < 0) {
+            throw new IllegalArgumentException("Step " + step
+                    + " does not lead from " + start + " to " + stop);
+        }
+        // Allow for rounding error in the last step.
+        int n = (int) Math.floor((stop - start) / step + 1e-9) + 1;
+        double[] vals = new double[n];
+        for (int i = 0; i < n; i++) {
+            vals[i] = start + i * step;
+        }
+        addParameter(name, vals);
+    }
+
+    /**
+     * Adds a parameter taking a list of values.
+     *
+     * @param name the parameter name
+     * @param vals the values
+     */
+    public void addParameter(final String name, final double... vals) {
+        if (names.contains(name)) {
+            throw new IllegalArgumentException("Parameter " + name
+                    + " given twice.");
+        }
+        if (vals.length == 0) {
+            throw new IllegalArgumentException("No values for " + name);
+        }
+        names.add(name);
+        values.add(vals.clone());
+    }
+
+    /**
+     * @return the names of the swept parameters, in the order given.
+     */
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * @return the number of points in the grid.
+     */
+    public int size() {
+        int size = 1;
+        for (double[] vals : values) {
+            size *= vals.length;
+        }
+        return size;
+    }
+
+    /**
+     * @param index the index of a point, from zero to {@link #size()}
+     *            (exclusive). The last parameter varies fastest.
+     * @return the values of the parameters at that point, in the order of
+     *         {@link #getNames()}.
+     */
+    public double[] getPoint(final int index) {
+        double[] point = new double[names.size()];
+        int rest = index;
+        for (int i = point.length - 1; i >= 0; i--) {
+            double[] vals = values.get(i);
+            point[i] = vals[rest % vals.length];
+            rest /= vals.length;
+        }
+        return point;
+    }
+
+}
@@ -0,0 +1,219 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.batch;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.simbrain.network.NetworkComponent;
+import org.simbrain.network.connections.Sparse;
+import org.simbrain.network.core.Network;
+import org.simbrain.network.core.Synapse;
+import org.simbrain.network.groups.Group;
+import org.simbrain.network.groups.SynapseGroup;
+import org.simbrain.network.subnetworks.EchoStateNetwork;
+import org.simbrain.network.synapse_update_rules.STDPRule;
+import org.simbrain.network.util.io_utilities.GroupSerializer.Precision;
+import org.simbrain.workspace.Workspace;
+import org.simbrain.workspace.WorkspaceComponent;
+
+/**
+ * Parameters which a batch run can sweep without a script. Each is applied to
+ * every matching object in every network of a freshly loaded workspace, in
+ * the order they are declared here, so that synapse groups are reconnected
+ * before their synapses' learning rules are changed. Parameters not listed
+ * here can be swept with a setup script (see {@link BatchRunner}).
+ */
+public enum SweepParameter {
+
+    /**
+     * Connection density of every synapse group built by a {@link Sparse}
+     * connection. The groups are reconnected at the new density, with new
+     * synapses taking the parameters of the group's prototype synapses.
+     * Groups using a sparse matrix are reconnected straight into sparse mode
+     * at the same precision, and groups using event-driven propagation are
+     * put back in that mode afterwards.
+     */
+    SPARSE_DENSITY("sparseDensity") {
+        @Override
+        void apply(final Network network, final double value) {
+            for (Group group : network.getFlatGroupList()) {
+                if (!(group instanceof SynapseGroup)) {
+                    continue;
+                }
+                SynapseGroup sg = (SynapseGroup) group;
+                if (sg.getConnectionManager() == null
+                        || sg.getConnectionManager().getClass()
+                        != Sparse.class) {
+                    continue;
+                }
+                Sparse sparse = (Sparse) sg.getConnectionManager();
+                boolean sparseMatrix = sg.isUsingSparseMatrix();
+                boolean eventDriven = sg.isEventDriven();
+                sparse.setPermitDensityEditing(true);
+                sparse.setConnectionDensity(value);
+                if (sparseMatrix) {
+                    Precision precision = sg.getSparseMatrix().getPrecision();
+                    try {
+                        sg.makeSparseConnections(precision);
+                    } catch (IllegalStateException e) {
+                        // No connections at this density: the group is
+                        // deleted, as makeConnections() does
+                        if (!sg.isMarkedForDeletion()) {
+                            throw e;
+                        }
+                    }
+                } else {
+                    sg.makeConnections();
+                    if (eventDriven && !sg.isMarkedForDeletion()) {
+                        sg.setEventDriven(true);
+                    }
+                }
+            }
+        }
+    },
+
+    /**
+     * Spectral radius of the reservoir of every echo state network. The
+     * reservoir's recurrent weights are rescaled to have the value as their
+     * largest eigenvalue.
+     */
+    SPECTRAL_RADIUS("spectralRadius") {
+        @Override
+        void apply(final Network network, final double value) {
+            for (Group group : network.getGroupList()) {
+                if (group instanceof EchoStateNetwork) {
+                    EchoStateNetwork esn = (EchoStateNetwork) group;
+                    esn.setSpectralRadius(value);
+                    for (SynapseGroup sg : esn.getSynapseGroupList()) {
+                        if (sg.getSourceNeuronGroup() == esn
+                                .getReservoirLayer()
+                                && sg.getTargetNeuronGroup() == esn
+                                        .getReservoirLayer()) {
+                            sg.scaleToSpectralRadius(value);
+                        }
+                    }
+                }
+            }
+        }
+    },
+
+    /** Time constant of potentiation of every STDP synapse. */
+    STDP_TAU_PLUS("stdpTauPlus") {
+        @Override
+        void apply(final Network network, final double value) {
+            for (STDPRule rule : getSTDPRules(network)) {
+                rule.setTau_plus(value);
+            }
+        }
+    },
+
+    /** Time constant of depression of every STDP synapse. */
+    STDP_TAU_MINUS("stdpTauMinus") {
+        @Override
+        void apply(final Network network, final double value) {
+            for (STDPRule rule : getSTDPRules(network)) {
+                rule.setTau_minus(value);
+            }
+        }
+    };
+
+    /** The name of the parameter on the command line. */
+    private final String name;
+
+    /**
+     * @param name the name of the parameter on the command line
+     */
+    private SweepParameter(final String name) {
+        this.name = name;
+    }
+
+    /**
+     * Sets the parameter throughout a network.
+     *
+     * @param network the network
+     * @param value the value to set
+     */
+    abstract void apply(Network network, double value);
+
+    /**
+     * Sets the parameter throughout every network of a workspace.
+     *
+     * @param workspace the workspace
+     * @param value the value to set
+     */
+    public void apply(final Workspace workspace, final double value) {
+        for (WorkspaceComponent wc : workspace
+                .getComponentList(NetworkComponent.class)) {
+            apply(((NetworkComponent) wc).getNetwork(), value);
+        }
+    }
+
+    /**
+     * @return the name of the parameter on the command line.
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @param name a parameter name
+     * @return the built in parameter with that name, or null if there is none.
+     */
+    public static SweepParameter forName(final String name) {
+        for (SweepParameter p : values()) {
+            if (p.name.equals(name)) {
+                return p;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param network a network
+     * @return the STDP rules of the loose synapses and synapse groups of the
+     *         network. Groups using a sparse matrix have no synapse objects
+     *         to hold rules, so the rules of their prototypes are returned,
+     *         which their synapses take when they are recreated.
+     */
+    private static List<STDPRule> getSTDPRules(final Network network) {
+        List<Synapse> synapses = new ArrayList<Synapse>(
+                network.getSynapseList());
+        for (Group group : network.getFlatGroupList()) {
+            if (!(group instanceof SynapseGroup)) {
+                continue;
+            }
+            SynapseGroup sg = (SynapseGroup) group;
+            if (sg.isUsingSparseMatrix()) {
+                synapses.add(sg.getExcitatoryPrototype());
+                synapses.add(sg.getInhibitoryPrototype());
+            } else {
+                synapses.addAll(sg.getAllSynapses());
+            }
+        }
+        List<STDPRule> rules = new ArrayList<STDPRule>();
+        for (Synapse s : synapses) {
+            if (s.getLearningRule() instanceof STDPRule) {
+                rules.add((STDPRule) s.getLearningRule());
+            }
+        }
+        return rules;
+    }
+
+}
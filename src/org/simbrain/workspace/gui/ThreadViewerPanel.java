@@ -170,9 +170,8 @@ public class ThreadViewerPanel extends JPanel {
                      * {@inheritDoc}
                      */
                     public void updatedCouplings(int update) {
-                        listModel.getElementAt(update - 1).setText(
-                                "Thread " + update + ": updating couplings");
-                        threadViewer.repaint();
+                        // Couplings are updated by the workspace thread, which
+                        // has no row; update is not a thread number
                     }
 
                     /**
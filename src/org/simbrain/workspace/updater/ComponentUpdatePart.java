@@ -95,16 +95,26 @@ public class ComponentUpdatePart {
         return new Runnable() {
             public void run() {
                 synchronized (lock) {
-                    UpdateThread thread = (UpdateThread) Thread.currentThread();
-
-                    thread.setCurrentTask(ComponentUpdatePart.this);
+                    // Parts run by UpdateAllByDependency are on its own
+                    // pool, which reports the component update itself
+                    Thread current = Thread.currentThread();
+                    UpdateThread thread = null;
+                    if (current instanceof UpdateThread) {
+                        thread = (UpdateThread) current;
+                    }
+
+                    if (thread != null) {
+                        thread.setCurrentTask(ComponentUpdatePart.this);
+                    }
 
                     WorkspaceUpdater.LOGGER.trace("updating component part: "
                             + getDescription());
 
                     runnable.run();
 
-                    thread.clearCurrentTask(ComponentUpdatePart.this);
+                    if (thread != null) {
+                        thread.clearCurrentTask(ComponentUpdatePart.this);
+                    }
                     signal.done();
                 }
             }
@@ -0,0 +1,115 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.updater;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A fixed size ring of the records of workspace updates waiting to be
+ * delivered to listeners, passed from the thread updating the workspace to
+ * the thread notifying listeners without locking either. When updates are
+ * published faster than they are delivered the oldest records are
+ * overwritten, so the memory held is bounded however fast the workspace runs.
+ * <p>
+ * Only one thread may publish and only one thread may drain.
+ */
+final class NotificationRing {
+
+    /** The slots, indexed by sequence modulo their number. */
+    private final AtomicReferenceArray<TickRecord> slots;
+
+    /** Mask giving the slot of a sequence. */
+    private final int mask;
+
+    /** The sequence of the next record published. */
+    private final AtomicLong published = new AtomicLong();
+
+    /** The sequence of the next record to drain; used by the drainer only. */
+    private long drained;
+
+    /** The number of records overwritten before being drained. */
+    private volatile long dropped;
+
+    /**
+     * Construct a ring.
+     *
+     * @param capacity the number of records held, a power of two
+     */
+    NotificationRing(final int capacity) {
+        if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity " + capacity
+                    + " is not a power of two");
+        }
+        slots = new AtomicReferenceArray<TickRecord>(capacity);
+        mask = capacity - 1;
+    }
+
+    /**
+     * Publish a record, overwriting the oldest if the ring is full.
+     *
+     * @param record the record
+     */
+    void publish(final TickRecord record) {
+        long sequence = published.get();
+        record.setSequence(sequence);
+        slots.set((int) (sequence & mask), record);
+        published.set(sequence + 1);
+    }
+
+    /**
+     * Take every record published since the last drain, coalesced into the
+     * newest of them (see {@link TickRecord#coalesce(TickRecord)}).
+     *
+     * @return the newest record, or null if none has been published
+     */
+    TickRecord drain() {
+        long end = published.get();
+        long start = Math.max(drained, end - slots.length());
+        long lost = start - drained;
+        TickRecord newest = null;
+        for (long sequence = start; sequence < end; sequence++) {
+            int slot = (int) (sequence & mask);
+            TickRecord record = slots.get(slot);
+            // A newer record in the slot, or one replacing it while taken,
+            // means this one was overwritten
+            if (record != null && record.getSequence() == sequence
+                    && slots.compareAndSet(slot, record, null)) {
+                if (newest != null) {
+                    record.coalesce(newest);
+                }
+                newest = record;
+            } else {
+                lost++;
+            }
+        }
+        drained = end;
+        if (lost > 0) {
+            dropped += lost;
+        }
+        return newest;
+    }
+
+    /**
+     * @return the number of records overwritten before being drained
+     */
+    long getDropped() {
+        return dropped;
+    }
+}
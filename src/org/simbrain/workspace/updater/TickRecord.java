@@ -0,0 +1,160 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.updater;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.simbrain.workspace.WorkspaceComponent;
+
+/**
+ * The notifications of one workspace update, collected while the update runs
+ * and delivered to listeners together afterwards. Component updates may be
+ * recorded from any thread.
+ */
+final class TickRecord {
+
+    /** The number of the update. */
+    private final int time;
+
+    /** Component updates started and finished, in order. */
+    private final Queue<ComponentEvent> events = new ConcurrentLinkedQueue<ComponentEvent>();
+
+    /** The number of the last update in which couplings were updated, or -1. */
+    private volatile int couplingTime = -1;
+
+    /** Position of the record in the sequence of records published. */
+    private long sequence;
+
+    /**
+     * @param time the number of the update
+     */
+    TickRecord(final int time) {
+        this.time = time;
+    }
+
+    /**
+     * Record that a component has started or finished updating.
+     *
+     * @param component the component
+     * @param thread the number of the thread updating it
+     * @param started whether the update started, rather than finished
+     */
+    void componentUpdate(final WorkspaceComponent component,
+            final int thread, final boolean started) {
+        events.add(new ComponentEvent(component, thread, started));
+    }
+
+    /**
+     * Record that the couplings have been updated.
+     */
+    void couplingsUpdated() {
+        couplingTime = time;
+    }
+
+    /**
+     * Take the coupling update of an earlier record, when this record has
+     * none, so that it is not lost when the earlier record is not delivered.
+     *
+     * @param earlier the earlier record
+     */
+    void coalesce(final TickRecord earlier) {
+        if (couplingTime < earlier.couplingTime) {
+            couplingTime = earlier.couplingTime;
+        }
+    }
+
+    /**
+     * Deliver the notifications recorded.
+     *
+     * @param componentListeners listeners for component updates
+     * @param updaterListeners listeners for workspace updates
+     */
+    void deliver(final List<ComponentUpdateListener> componentListeners,
+            final List<WorkspaceUpdaterListener> updaterListeners) {
+        for (ComponentEvent event : events) {
+            for (ComponentUpdateListener listener : componentListeners) {
+                if (event.started) {
+                    listener.startingComponentUpdate(event.component, time,
+                            event.thread);
+                } else {
+                    listener.finishedComponentUpdate(event.component, time,
+                            event.thread);
+                }
+            }
+        }
+        int coupled = couplingTime;
+        for (WorkspaceUpdaterListener listener : updaterListeners) {
+            if (coupled >= 0) {
+                listener.updatedCouplings(coupled);
+            }
+            listener.workspaceUpdated();
+        }
+    }
+
+    /**
+     * @return the number of the update
+     */
+    int getTime() {
+        return time;
+    }
+
+    /**
+     * @return position of the record in the sequence of records published
+     */
+    long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * @param sequence position of the record in the sequence of records
+     *            published
+     */
+    void setSequence(final long sequence) {
+        this.sequence = sequence;
+    }
+
+    /**
+     * A component update started or finished.
+     */
+    private static final class ComponentEvent {
+
+        /** The component. */
+        private final WorkspaceComponent component;
+
+        /** The number of the thread updating it. */
+        private final int thread;
+
+        /** Whether the update started, rather than finished. */
+        private final boolean started;
+
+        /**
+         * @param component the component
+         * @param thread the number of the thread updating it
+         * @param started whether the update started
+         */
+        ComponentEvent(final WorkspaceComponent component, final int thread,
+                final boolean started) {
+            this.component = component;
+            this.thread = thread;
+            this.started = started;
+        }
+    }
+}
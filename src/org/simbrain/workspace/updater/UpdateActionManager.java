@@ -297,6 +297,9 @@ public class UpdateActionManager {
         // Default updater
         availableActionList.add(new UpdateAllBuffered(workspaceUpdater));
 
+        // Buffered updater which schedules components by their couplings
+        availableActionList.add(new UpdateAllByDependency(workspaceUpdater));
+
         // Add update actions for all components available
         for (WorkspaceComponent component : workspaceUpdater.getComponents()) {
             availableActionList.add(new UpdateComponent(workspaceUpdater,
@@ -0,0 +1,358 @@
+/*
+ * Part of Simbrain--a java-based neural network kit
+ * Copyright (C) 2005,2007 The Authors.  See http://www.simbrain.net/credits
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation; either version 2 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.simbrain.workspace.updater;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+import org.simbrain.workspace.CouplingPlan;
+import org.simbrain.workspace.WorkspaceComponent;
+
+/**
+ * Update all components and couplings with the same results as
+ * {@link UpdateAllBuffered}, but scheduled by the dependencies between
+ * components rather than in two global phases.
+ *
+ * Each component's update is split in two tasks. The first reads the values
+ * of every coupling the component produces for. The second writes the values
+ * read for every coupling the component consumes from, then updates the
+ * component. The second task of a component waits only for the first task of
+ * the component itself and of the components coupled to it, so a component
+ * with no couplings into it is updated as soon as its own values are read,
+ * and groups of components not coupled to one another never wait for each
+ * other. Every value is still read before the component it is read from is
+ * updated, as in a buffered update. The tasks run on a work-stealing pool
+ * with one worker per updater thread.
+ *
+ * After every update the time spent in each task is used to find the critical
+ * path through the update: the longest chain of tasks which had to run one
+ * after the other. Comparing it with the total time spent in all tasks shows
+ * how much the update gains from more threads.
+ */
+public class UpdateAllByDependency implements UpdateAction {
+
+    /** The static logger for the class. */
+    static final Logger LOGGER = Logger.getLogger(UpdateAllByDependency.class);
+
+    /** Provides access to workspace updater. */
+    private final WorkspaceUpdater updater;
+
+    /** Length of the critical path of the last update, in nanoseconds. */
+    private volatile long criticalPath;
+
+    /** Time spent in all tasks of the last update, in nanoseconds. */
+    private volatile long work;
+
+    /** The component ending the critical path of the last update. */
+    private volatile WorkspaceComponent criticalComponent;
+
+    /**
+     * @param controls update controls
+     */
+    public UpdateAllByDependency(WorkspaceUpdater controls) {
+        this.updater = controls;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void invoke() {
+        List<? extends WorkspaceComponent> components = updater.getComponents();
+
+        if (components.size() < 1) {
+            return;
+        }
+
+        CouplingPlan plan = updater.getWorkspace().getCouplingManager()
+                .getPlan();
+        Map<WorkspaceComponent, Node> nodes = new IdentityHashMap<WorkspaceComponent, Node>();
+        CountDownLatch latch = new CountDownLatch(components.size());
+        for (WorkspaceComponent component : components) {
+            nodes.put(component, new Node(component, plan, latch));
+        }
+        for (Node node : nodes.values()) {
+            for (WorkspaceComponent source : plan.getSources(node.component)) {
+                Node producer = nodes.get(source);
+                if (producer != null && producer != node) {
+                    producer.consumers.add(node);
+                    node.sources.add(producer);
+                }
+            }
+            // The node's own read, and one read per producer
+            node.pending.set(node.sources.size() + 1);
+        }
+
+        LOGGER.trace("updating by dependency");
+        ForkJoinPool pool = updater.getDependencyPool();
+        for (Node node : nodes.values()) {
+            pool.execute(new ReadTask(node));
+        }
+        LOGGER.trace("waiting");
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        updater.notifyCouplingsUpdated();
+
+        measure(nodes.values());
+        if (LOGGER.isDebugEnabled()) {
+            LOGGER.debug("critical path " + criticalPath / 1000 + " us ("
+                    + criticalComponent.getName() + ") of " + work / 1000
+                    + " us");
+        }
+        LOGGER.trace("update complete");
+    }
+
+    /**
+     * Find the critical path and total work of an update.
+     *
+     * @param nodes the nodes updated
+     */
+    private void measure(final Collection<Node> nodes) {
+        long longest = -1;
+        long total = 0;
+        WorkspaceComponent last = null;
+        for (Node node : nodes) {
+            long ready = node.readTime;
+            for (Node source : node.sources) {
+                ready = Math.max(ready, source.readTime);
+            }
+            long path = ready + node.updateTime;
+            if (path > longest) {
+                longest = path;
+                last = node.component;
+            }
+            total += node.readTime + node.updateTime;
+        }
+        criticalPath = longest;
+        work = total;
+        criticalComponent = last;
+    }
+
+    /**
+     * Returns the length of the critical path of the last update: the time
+     * the update would have taken with as many threads as it could use.
+     *
+     * @return the length in nanoseconds
+     */
+    public long getCriticalPath() {
+        return criticalPath;
+    }
+
+    /**
+     * Returns the total time spent reading, writing and updating in the last
+     * update: the time it would have taken with one thread.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getWork() {
+        return work;
+    }
+
+    /**
+     * @return the component updated last on the critical path of the last
+     *         update, or null if there has been no update
+     */
+    public WorkspaceComponent getCriticalComponent() {
+        return criticalComponent;
+    }
+
+    /**
+     * @return the number of the updater thread running the current task
+     */
+    private int getThreadNumber() {
+        Thread current = Thread.currentThread();
+        if (current instanceof ForkJoinWorkerThread) {
+            return ((ForkJoinWorkerThread) current).getPoolIndex()
+                    % updater.getNumThreads() + 1;
+        }
+        return 1;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Buffered update of all components and couplings, by dependency.";
+    }
+
+    @Override
+    public String getLongDescription() {
+        return "Buffered update of all components and couplings, where each "
+                + "component is updated as soon as the components coupled to "
+                + "it have been read.";
+    }
+
+    /**
+     * The tasks of one component in an update.
+     */
+    private static final class Node {
+
+        /** The component. */
+        private final WorkspaceComponent component;
+
+        /** The couplings being updated. */
+        private final CouplingPlan plan;
+
+        /** Counted down when the component has been updated. */
+        private final CountDownLatch latch;
+
+        /** The other components producing for this one. */
+        private final List<Node> sources = new ArrayList<Node>();
+
+        /** The other components consuming from this one. */
+        private final List<Node> consumers = new ArrayList<Node>();
+
+        /** The reads remaining before the component can be updated. */
+        private final AtomicInteger pending = new AtomicInteger();
+
+        /** Time spent reading, in nanoseconds. */
+        private long readTime;
+
+        /** Time spent writing and updating, in nanoseconds. */
+        private long updateTime;
+
+        /**
+         * @param component the component
+         * @param plan the couplings being updated
+         * @param latch counted down when the component has been updated
+         */
+        Node(final WorkspaceComponent component, final CouplingPlan plan,
+                final CountDownLatch latch) {
+            this.component = component;
+            this.plan = plan;
+            this.latch = latch;
+        }
+    }
+
+    /**
+     * Reads the values a component produces, then starts the update of each
+     * component which has nothing left to wait for.
+     */
+    private final class ReadTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The node whose values are read. */
+        private final Node node;
+
+        /**
+         * @param node the node whose values are read
+         */
+        ReadTask(final Node node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            try {
+                node.plan.read(node.component);
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            node.readTime = System.nanoTime() - start;
+
+            UpdateTask next = null;
+            if (node.pending.decrementAndGet() == 0) {
+                next = new UpdateTask(node);
+            }
+            for (Node consumer : node.consumers) {
+                if (consumer.pending.decrementAndGet() == 0) {
+                    if (next != null) {
+                        next.fork();
+                    }
+                    next = new UpdateTask(consumer);
+                }
+            }
+            if (next != null) {
+                next.compute();
+            }
+        }
+    }
+
+    /**
+     * Writes the values a component consumes, then updates it.
+     */
+    private final class UpdateTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        /** The node updated. */
+        private final Node node;
+
+        /**
+         * @param node the node updated
+         */
+        UpdateTask(final Node node) {
+            this.node = node;
+        }
+
+        @Override
+        protected void compute() {
+            long start = System.nanoTime();
+            try {
+                node.plan.write(node.component);
+                if (node.component.getUpdateOn()) {
+                    update(node.component);
+                }
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            } finally {
+                node.updateTime = System.nanoTime() - start;
+                node.latch.countDown();
+            }
+        }
+
+        /**
+         * Run the update parts of a component, in parallel if it has more
+         * than one.
+         *
+         * @param component the component
+         */
+        private void update(final WorkspaceComponent component) {
+            int thread = getThreadNumber();
+            updater.notifyComponentUpdateStarted(component, thread);
+            Collection<ComponentUpdatePart> parts = component.getUpdateParts();
+            if (parts.size() == 1) {
+                parts.iterator().next().getUpdate(CompletionSignal.IGNORE)
+                        .run();
+            } else {
+                List<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+                for (ComponentUpdatePart part : parts) {
+                    tasks.add(ForkJoinTask.adapt(part
+                            .getUpdate(CompletionSignal.IGNORE)));
+                }
+                invokeAll(tasks);
+            }
+            updater.notifyComponentUpdateFinished(component, thread);
+        }
+    }
+
+}
@@ -25,7 +25,11 @@ import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.simbrain.workspace.Workspace;
@@ -46,6 +50,13 @@ import org.simbrain.workspace.WorkspaceComponent;
  * thread pool with multiple threads that can be configured), for cases when
  * component updating happens concurrently.
  *
+ * The notifications of each workspace update (components updated, couplings
+ * updated, workspace updated) are not sent as they happen. They are collected
+ * into one record per update, and the records waiting are delivered together
+ * at most {@link #getNotificationRate()} times a second, the older ones being
+ * dropped when the workspace runs faster than that. With a rate of zero they
+ * are not collected at all, for running as fast as possible.
+ *
  * @author Matt Watson
  * @author Jeff Yoshimi
  */
@@ -63,8 +74,33 @@ public class WorkspaceUpdater {
     /** The executor service for doing the component updates. */
     private ExecutorService componentUpdates;
 
+    /**
+     * The work-stealing pool used by {@link UpdateAllByDependency}, created
+     * the first time it is needed.
+     */
+    private ForkJoinPool dependencyUpdates;
+
     /** The executor service for notifying listeners. */
-    private final ExecutorService notificationEvents;
+    private final ScheduledExecutorService notificationEvents;
+
+    /** Default number of times a second updates are delivered to listeners. */
+    public static final double DEFAULT_NOTIFICATION_RATE = 30;
+
+    /** Number of update records waiting to be delivered held at most. */
+    private static final int NOTIFICATION_CAPACITY = 64;
+
+    /** Update records waiting to be delivered to listeners. */
+    private final NotificationRing ticks = new NotificationRing(
+            NOTIFICATION_CAPACITY);
+
+    /** Record of the current update, or null if notifications are off. */
+    private volatile TickRecord tick;
+
+    /** Number of times a second updates are delivered to listeners. */
+    private volatile double notificationRate;
+
+    /** The periodic delivery of updates to listeners, or null if off. */
+    private ScheduledFuture<?> delivery;
 
     /** Component listeners. */
     private final List<ComponentUpdateListener> componentListeners = new CopyOnWriteArrayList<ComponentUpdateListener>();
@@ -108,7 +144,8 @@ public class WorkspaceUpdater {
                 new UpdaterThreadFactory());
 
         // A single thread to fire notification events
-        notificationEvents = Executors.newSingleThreadExecutor();
+        notificationEvents = Executors.newSingleThreadScheduledExecutor();
+        setNotificationRate(DEFAULT_NOTIFICATION_RATE);
 
         // Instantiate the update action manager
         updateActionManager = new UpdateActionManager(this);
@@ -171,6 +208,23 @@ public class WorkspaceUpdater {
         run = false;
     }
 
+    /**
+     * Stops the updater and releases its threads once any queued update has
+     * finished. The updater can't be used afterwards. Used when a workspace
+     * is discarded without exiting the application, e.g. by batch runs.
+     */
+    public void shutdown() {
+        stop();
+        workspaceUpdates.shutdown();
+        componentUpdates.shutdown();
+        synchronized (this) {
+            if (dependencyUpdates != null) {
+                dependencyUpdates.shutdown();
+            }
+        }
+        notificationEvents.shutdown();
+    }
+
     /**
      * Returns whether the updater is set to run.
      *
@@ -272,10 +326,19 @@ public class WorkspaceUpdater {
 
         LOGGER.trace("starting: " + time);
 
-        try {
-            Thread.sleep(workspace.getUpdateDelay());
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        TickRecord record = null;
+        if (notificationRate > 0) {
+            record = new TickRecord(time);
+        }
+        tick = record;
+
+        int delay = workspace.getUpdateDelay();
+        if (delay > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
         }
 
         for (UpdateAction action : updateActionManager.getActionList()) {
@@ -284,7 +347,10 @@ public class WorkspaceUpdater {
 
         synchManager.runTasks();
 
-        notifyWorkspaceUpdated();
+        tick = null;
+        if (record != null) {
+            ticks.publish(record);
+        }
 
         LOGGER.trace("done: " + time);
     }
@@ -351,15 +417,10 @@ public class WorkspaceUpdater {
      */
     void notifyComponentUpdateStarted(final WorkspaceComponent component,
             final int thread) {
-        final int time = this.time;
-
-        notificationEvents.submit(new Runnable() {
-            public void run() {
-                for (ComponentUpdateListener listener : componentListeners) {
-                    listener.startingComponentUpdate(component, time, thread);
-                }
-            }
-        });
+        TickRecord record = tick;
+        if (record != null) {
+            record.componentUpdate(component, thread, true);
+        }
     }
 
     /**
@@ -370,30 +431,20 @@ public class WorkspaceUpdater {
      */
     void notifyComponentUpdateFinished(final WorkspaceComponent component,
             final int thread) {
-        final int time = this.time;
-
-        notificationEvents.submit(new Runnable() {
-            public void run() {
-                for (ComponentUpdateListener listener : componentListeners) {
-                    listener.finishedComponentUpdate(component, time, thread);
-                }
-            }
-        });
+        TickRecord record = tick;
+        if (record != null) {
+            record.componentUpdate(component, thread, false);
+        }
     }
 
     /**
      * Called when the couplings are updated.
      */
     protected void notifyCouplingsUpdated() {
-        final int time = this.time;
-
-        notificationEvents.submit(new Runnable() {
-            public void run() {
-                for (WorkspaceUpdaterListener listener : updaterListeners) {
-                    listener.updatedCouplings(time);
-                }
-            }
-        });
+        TickRecord record = tick;
+        if (record != null) {
+            record.couplingsUpdated();
+        }
     }
 
     /**
@@ -413,9 +464,16 @@ public class WorkspaceUpdater {
      * Called when workspace update finishes.
      */
     private void notifyWorkspaceUpdateCompleted() {
+        final boolean notified = notificationRate > 0;
         notificationEvents.submit(new Runnable() {
             public void run() {
+                // Listeners see the last update before the end of the run,
+                // even when updates are not delivered
+                deliverUpdates();
                 for (WorkspaceUpdaterListener listener : updaterListeners) {
+                    if (!notified) {
+                        listener.workspaceUpdated();
+                    }
                     listener.updatingFinished();
                 }
             }
@@ -423,17 +481,72 @@ public class WorkspaceUpdater {
     }
 
     /**
-     * Called after every workspace update .
+     * Deliver the records of the updates waiting to listeners, coalesced into
+     * one. Only called on the notification thread.
      */
-    private void notifyWorkspaceUpdated() {
+    private void deliverUpdates() {
+        TickRecord record = ticks.drain();
+        if (record != null) {
+            try {
+                record.deliver(componentListeners, updaterListeners);
+            } catch (RuntimeException e) {
+                // An exception would cancel the periodic delivery
+                e.printStackTrace();
+            }
+        }
+    }
 
-        notificationEvents.submit(new Runnable() {
-            public void run() {
-                for (WorkspaceUpdaterListener listener : updaterListeners) {
-                    listener.workspaceUpdated();
+    /**
+     * Returns the number of times a second the notifications of workspace
+     * updates are delivered to listeners; zero if they are not delivered.
+     *
+     * @return the rate in hertz
+     */
+    public double getNotificationRate() {
+        return notificationRate;
+    }
+
+    /**
+     * Sets the number of times a second the notifications of workspace
+     * updates are delivered to listeners. All the updates since the last
+     * delivery are delivered as one: components updated in the last update,
+     * the last coupling update, and one workspace update. With a rate of zero
+     * no notifications are collected while updating, and listeners only learn
+     * of the last update, when a run finishes; this is best for batch runs or
+     * for running as fast as possible.
+     *
+     * @param rate the rate in hertz, or zero
+     */
+    public synchronized void setNotificationRate(final double rate) {
+        if (!(rate >= 0) || Double.isInfinite(rate)) {
+            throw new IllegalArgumentException("Invalid notification rate: "
+                    + rate);
+        }
+        if (delivery != null) {
+            delivery.cancel(false);
+            delivery = null;
+        }
+        notificationRate = rate;
+        if (rate > 0 && !notificationEvents.isShutdown()) {
+            long period = Math.max(1, (long) (1e9 / rate));
+            delivery = notificationEvents.scheduleAtFixedRate(new Runnable() {
+                public void run() {
+                    deliverUpdates();
                 }
-            }
-        });
+            }, period, period, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Returns the number of workspace updates whose notifications were
+     * dropped because updates were published faster than they were delivered
+     * and the oldest waiting were overwritten. Updates coalesced into one
+     * delivery are not counted.
+     *
+     * @return the number of updates dropped
+     */
+    public long getDroppedNotifications() {
+        return ticks.getDropped();
     }
 
     /**
@@ -467,8 +580,15 @@ public class WorkspaceUpdater {
             stop();
         }
         this.numThreads = numThreads;
+        componentUpdates.shutdown();
         this.componentUpdates = Executors.newFixedThreadPool(numThreads,
                 new UpdaterThreadFactory());
+        synchronized (this) {
+            if (dependencyUpdates != null) {
+                dependencyUpdates.shutdown();
+                dependencyUpdates = null;
+            }
+        }
         for (WorkspaceUpdaterListener listener : updaterListeners) {
             listener.changeNumThreads();
         }
@@ -630,6 +750,19 @@ public class WorkspaceUpdater {
         }
     }
 
+    /**
+     * Returns the work-stealing pool used to update components and couplings
+     * in dependency order, with one worker per updater thread.
+     *
+     * @return the pool
+     */
+    synchronized ForkJoinPool getDependencyPool() {
+        if (dependencyUpdates == null) {
+            dependencyUpdates = new ForkJoinPool(numThreads);
+        }
+        return dependencyUpdates;
+    }
+
     /**
      * Update couplings.
      */
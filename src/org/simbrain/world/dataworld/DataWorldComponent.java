@@ -28,9 +28,14 @@ import javax.swing.event.TableModelListener;
 
 import org.apache.log4j.Logger;
 import org.simbrain.util.table.NumericTable;
+import org.simbrain.workspace.Attribute;
 import org.simbrain.workspace.AttributeType;
+import org.simbrain.workspace.Consumer;
 import org.simbrain.workspace.PotentialConsumer;
 import org.simbrain.workspace.PotentialProducer;
+import org.simbrain.workspace.Producer;
+import org.simbrain.workspace.ValueVector;
+import org.simbrain.workspace.VectorRegion;
 import org.simbrain.workspace.WorkspaceComponent;
 
 /**
@@ -186,6 +191,87 @@ public class DataWorldComponent extends WorkspaceComponent {
         return returnList;
     }
 
+    /**
+     * Column values and the current row are backed by a vector over the
+     * current row, so that couplings to the row, and couplings to runs of
+     * columns, are copied in bulk.
+     */
+    @Override
+    public VectorRegion getVectorRegion(final Attribute attribute) {
+        Object object = attribute.getBaseObject();
+        String method = attribute.getMethodName();
+        boolean producer = attribute instanceof Producer;
+        boolean consumer = attribute instanceof Consumer;
+        if (object instanceof ColumnAttribute) {
+            if (producer && method.equals("getValue") || consumer
+                    && method.equals("setValue")) {
+                return VectorRegion.element(new RowVector(dataTable),
+                        ((ColumnAttribute) object).getIndex());
+            }
+        } else if (object == dataTable) {
+            if (producer && method.equals("getVectorCurrentRow")
+                    || consumer && method.equals("setVectorCurrentRow")) {
+                return VectorRegion.whole(new RowVector(dataTable));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The values of the current row of a table, as returned by
+     * {@link NumericTable#getVectorCurrentRow()}.
+     */
+    private static final class RowVector implements ValueVector {
+
+        /** The table. */
+        private final NumericTable table;
+
+        /**
+         * Construct a vector.
+         *
+         * @param table the table
+         */
+        RowVector(final NumericTable table) {
+            this.table = table;
+        }
+
+        @Override
+        public int size() {
+            return table.getColumnCount();
+        }
+
+        @Override
+        public void get(int from, double[] dest, int offset, int count) {
+            int row = table.getCurrentRow();
+            int columns = table.getLogicalColumnCount();
+            for (int i = 0; i < count; i++) {
+                int column = from + i;
+                dest[offset + i] = column < columns ? table.getLogicalValueAt(
+                        row, column) : 0;
+            }
+        }
+
+        @Override
+        public void set(int from, double[] src, int offset, int count) {
+            int row = table.getCurrentRow();
+            int columns = table.getLogicalColumnCount();
+            for (int i = 0; i < count && from + i < columns; i++) {
+                table.setLogicalValue(row, from + i, src[offset + i], false);
+            }
+            table.fireTableDataChanged();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof RowVector && ((RowVector) o).table == table;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(table);
+        }
+    }
+
     /**
      * Return the column producer with specified index, or null if none found.
      *
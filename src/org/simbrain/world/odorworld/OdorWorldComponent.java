@@ -23,10 +23,14 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.simbrain.workspace.Attribute;
 import org.simbrain.workspace.AttributeType;
 import org.simbrain.workspace.Coupling;
 import org.simbrain.workspace.PotentialConsumer;
 import org.simbrain.workspace.PotentialProducer;
+import org.simbrain.workspace.Producer;
+import org.simbrain.workspace.ValueVector;
+import org.simbrain.workspace.VectorRegion;
 import org.simbrain.workspace.WorkspaceComponent;
 import org.simbrain.world.odorworld.effectors.Effector;
 import org.simbrain.world.odorworld.effectors.Speech;
@@ -416,6 +420,75 @@ public class OdorWorldComponent extends WorkspaceComponent {
         return null;
     }
 
+    /**
+     * The values of smell sensors, as a whole or one at a time, are backed by
+     * a vector over the sensor's current value, so that couplings to them are
+     * copied in bulk.
+     */
+    @Override
+    public VectorRegion getVectorRegion(final Attribute attribute) {
+        if (!(attribute instanceof Producer)
+                || !(attribute.getBaseObject() instanceof SmellSensor)
+                || !attribute.getMethodName().equals("getCurrentValue")) {
+            return null;
+        }
+        SmellVector vector = new SmellVector(
+                (SmellSensor) attribute.getBaseObject());
+        Object[] arguments = attribute.getArgumentValues();
+        if (arguments == null || arguments.length == 0) {
+            return VectorRegion.whole(vector);
+        } else if (arguments.length == 1 && arguments[0] instanceof Integer) {
+            return VectorRegion.element(vector, (Integer) arguments[0]);
+        }
+        return null;
+    }
+
+    /**
+     * The current value of a smell sensor. Read only.
+     */
+    private static final class SmellVector implements ValueVector {
+
+        /** The sensor. */
+        private final SmellSensor sensor;
+
+        /**
+         * Construct a vector.
+         *
+         * @param sensor the sensor
+         */
+        SmellVector(final SmellSensor sensor) {
+            this.sensor = sensor;
+        }
+
+        @Override
+        public int size() {
+            return sensor.getCurrentValue().length;
+        }
+
+        @Override
+        public void get(int from, double[] dest, int offset, int count) {
+            System.arraycopy(sensor.getCurrentValue(), from, dest, offset,
+                    count);
+        }
+
+        @Override
+        public void set(int from, double[] src, int offset, int count) {
+            throw new UnsupportedOperationException(
+                    "Smell sensor values are read only");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SmellVector
+                    && ((SmellVector) o).sensor == sensor;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(sensor);
+        }
+    }
+
     @Override
     public Object getObjectFromKey(String objectKey) {
         String[] parsedKey = objectKey.split(":");
@@ -23,8 +23,12 @@ import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.simbrain.workspace.Attribute;
 import org.simbrain.workspace.AttributeType;
 import org.simbrain.workspace.PotentialProducer;
+import org.simbrain.workspace.Producer;
+import org.simbrain.workspace.ValueVector;
+import org.simbrain.workspace.VectorRegion;
 import org.simbrain.workspace.WorkspaceComponent;
 
 /**
@@ -100,6 +104,82 @@ public final class VisionWorldComponent extends WorkspaceComponent {
         return returnList;
     }
 
+    /**
+     * Sensor values are backed by a vector over the sensor matrix, in row
+     * major order, so that couplings to runs of sensors are copied in bulk.
+     */
+    @Override
+    public VectorRegion getVectorRegion(final Attribute attribute) {
+        if (!(attribute instanceof Producer)
+                || !(attribute.getBaseObject() instanceof Sensor)
+                || !attribute.getMethodName().equals("getValue")) {
+            return null;
+        }
+        Sensor sensor = (Sensor) attribute.getBaseObject();
+        SensorMatrix sensorMatrix = getVisionWorld().getModel()
+                .getSensorMatrix();
+        String[] rowCol = sensor.getKey().split(",");
+        int row = Integer.parseInt(rowCol[0]);
+        int column = Integer.parseInt(rowCol[1]);
+        if (row >= sensorMatrix.rows() || column >= sensorMatrix.columns()
+                || sensorMatrix.getSensor(row, column) != sensor) {
+            return null;
+        }
+        return VectorRegion.element(new SensorVector(sensorMatrix), row
+                * sensorMatrix.columns() + column);
+    }
+
+    /**
+     * The last samples of the sensors of a sensor matrix, in row major order.
+     * Read only.
+     */
+    private static final class SensorVector implements ValueVector {
+
+        /** The sensor matrix. */
+        private final SensorMatrix sensorMatrix;
+
+        /**
+         * Construct a vector.
+         *
+         * @param sensorMatrix the sensor matrix
+         */
+        SensorVector(final SensorMatrix sensorMatrix) {
+            this.sensorMatrix = sensorMatrix;
+        }
+
+        @Override
+        public int size() {
+            return sensorMatrix.rows() * sensorMatrix.columns();
+        }
+
+        @Override
+        public void get(int from, double[] dest, int offset, int count) {
+            int columns = sensorMatrix.columns();
+            for (int i = 0; i < count; i++) {
+                int index = from + i;
+                dest[offset + i] = sensorMatrix.getSensor(index / columns,
+                        index % columns).getLastSample();
+            }
+        }
+
+        @Override
+        public void set(int from, double[] src, int offset, int count) {
+            throw new UnsupportedOperationException(
+                    "Sensor values are read only");
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof SensorVector
+                    && ((SensorVector) o).sensorMatrix == sensorMatrix;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(sensorMatrix);
+        }
+    }
+
     @Override
     public Object getObjectFromKey(String objectKey) {
         String[] rowCol = objectKey.split(","); // todo check that string is